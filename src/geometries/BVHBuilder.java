@@ -0,0 +1,657 @@
+package geometries;
+
+import primitives.AABB;
+import primitives.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+
+/**
+ * BVHBuilder builds a bounding volume hierarchy over a list of intersectable objects.
+ * The hierarchy is built top-down with the Surface Area Heuristic (SAH): the centroids
+ * of the objects are distributed into bins along each axis and the cheapest plane
+ * between the bins is chosen. A node becomes a leaf when intersecting all its objects
+ * is cheaper than splitting it (and it is small enough).<br>
+ * The bounding box and the centroid of each object are calculated only once per build.<br>
+ * Objects without a finite bounding box (planes, tubes) are not put in the hierarchy, they would
+ * make every box on their way to the root infinite. They are returned in a flat list beside it,
+ * and groups with such objects are opened so only the unbounded objects themselves stay outside.<br>
+ * With {@link BVHMethod#LBVH} the hierarchy is emitted from the radix-sorted Morton codes of
+ * the centroids instead, a much faster build of a lower quality tree whose top levels can
+ * be rebuilt with SAH afterwards.<br>
+ * With {@link BVHMethod#SBVH} a node may also be split by a plane that clips the objects crossing it,
+ * so long thin objects (walls, floors) don't stretch overlapping boxes over the scene. The references
+ * duplicated by such splits are bounded by a budget, and the hierarchy is always compiled into a
+ * {@link FlatBVH} that tests every object once per ray. The spatial split build runs on a single thread.<br>
+ * Large builds run on a fork-join pool: the two sub-hierarchies of a large node are built
+ * concurrently and the top levels bin their objects in parallel chunks.
+ * @author Jeshurun and Binyamin
+ */
+public class BVHBuilder {
+    /*** The default maximal amount of objects in a leaf*/
+    private static final int DEFAULT_MAX_LEAF_SIZE = 4;
+    /*** The default amount of bins per axis*/
+    private static final int DEFAULT_BIN_COUNT = 16;
+    /*** The default cost of traversing a node, relative to the cost of intersecting an object*/
+    static final double DEFAULT_TRAVERSAL_COST = 0.125;
+    /*** The default amount of objects below which a sub-hierarchy is built by a single thread*/
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 2048;
+    /*** The amount of objects from which the Morton codes use 21 bits per axis instead of 10*/
+    private static final int LONG_MORTON_THRESHOLD = 1 << 15;
+    /*** The amount of bits of a radix sort digit*/
+    private static final int RADIX_BITS = 8;
+    /*** The default amount of additional references of a spatial split build, relative to the amount of objects*/
+    private static final double DEFAULT_SPLIT_BUDGET = 1;
+    /*** Amount of threads to spare for Java VM threads when using all the cores*/
+    private static final int SPARE_THREADS = 2;
+
+    /*** The maximal amount of objects in a leaf*/
+    private int maxLeafSize = DEFAULT_MAX_LEAF_SIZE;
+    /*** The amount of bins per axis*/
+    private int binCount = DEFAULT_BIN_COUNT;
+    /*** The cost of traversing a node*/
+    private double traversalCost = DEFAULT_TRAVERSAL_COST;
+    /*** The cost of intersecting a single object*/
+    private double intersectionCost = 1;
+    /*** Whether to compile the hierarchy into a {@link FlatBVH}*/
+    private boolean flatten = true;
+    /*** The amount of children of a compiled node: 2 for a {@link FlatBVH}, 4 or 8 for a {@link WideBVH}*/
+    private int width = 2;
+    /*** The amount of build threads: 0 - single thread, -1 - the common pool*/
+    private int threadsCount = defaultThreads();
+    /*** The amount of objects below which a sub-hierarchy is built by a single thread*/
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    /*** The construction method*/
+    private BVHMethod method = BVHMethod.SAH;
+    /*** The amount of top levels of a linear BVH that are rebuilt with SAH*/
+    private int refineLevels = 0;
+    /*** The amount of additional references of a spatial split build, relative to the amount of objects*/
+    private double splitBudget = DEFAULT_SPLIT_BUDGET;
+
+    /**
+     * Sets the maximal amount of objects in a leaf
+     * @param maxLeafSize the maximal amount of objects in a leaf
+     * @return the builder itself
+     */
+    public BVHBuilder setMaxLeafSize(int maxLeafSize) {
+        if (maxLeafSize < 1)
+            throw new IllegalArgumentException("Leaf size must be positive");
+        this.maxLeafSize = maxLeafSize;
+        return this;
+    }
+
+    /**
+     * Sets the amount of bins used along each axis for finding the split plane
+     * @param binCount the amount of bins
+     * @return the builder itself
+     */
+    public BVHBuilder setBinCount(int binCount) {
+        if (binCount < 2)
+            throw new IllegalArgumentException("There must be at least 2 bins");
+        this.binCount = binCount;
+        return this;
+    }
+
+    /**
+     * Sets the SAH costs of traversing a node and of intersecting an object
+     * @param traversalCost    the cost of traversing a node
+     * @param intersectionCost the cost of intersecting an object
+     * @return the builder itself
+     */
+    public BVHBuilder setCosts(double traversalCost, double intersectionCost) {
+        if (traversalCost < 0 || intersectionCost <= 0)
+            throw new IllegalArgumentException("Costs must be positive");
+        this.traversalCost = traversalCost;
+        this.intersectionCost = intersectionCost;
+        return this;
+    }
+
+    /**
+     * Sets whether the built hierarchy is compiled into flat arrays ({@link FlatBVH})
+     * or kept as a tree of {@link BVHNode}s
+     * @param flatten true to compile the hierarchy into flat arrays
+     * @return the builder itself
+     */
+    public BVHBuilder setFlatten(boolean flatten) {
+        this.flatten = flatten;
+        return this;
+    }
+
+    /**
+     * Sets the amount of children of a node in the compiled hierarchy: 2 compiles it into
+     * a {@link FlatBVH}, 4 or 8 collapse it into a {@link WideBVH}
+     * @param width the amount of children of a node
+     * @return the builder itself
+     */
+    public BVHBuilder setWidth(int width) {
+        if (width != 2 && width != 4 && width != 8)
+            throw new IllegalArgumentException("Width must be 2, 4 or 8");
+        this.width = width;
+        return this;
+    }
+
+    /**
+     * Set multi-threading of the build, with the same meaning as the camera multi-threading<br>
+     * Parameter value meaning:
+     * <ul>
+     * <li>-2 - number of threads is number of logical processors less 2 (the default)</li>
+     * <li>-1 - the common fork-join pool is used</li>
+     * <li>0 - multi-threading is not activated</li>
+     * <li>1 and more - literally number of threads</li>
+     * </ul>
+     * @param threads number of threads
+     * @return the builder itself
+     */
+    public BVHBuilder setMultithreading(int threads) {
+        if (threads < -2)
+            throw new IllegalArgumentException("Multithreading parameter must be -2 or higher");
+        threadsCount = threads == -2 ? defaultThreads() : threads;
+        return this;
+    }
+
+    /**
+     * Sets the amount of objects below which a sub-hierarchy is built by a single thread.
+     * Ranges larger than a few times the threshold also bin their objects in parallel.
+     * @param parallelThreshold the amount of objects
+     * @return the builder itself
+     */
+    public BVHBuilder setParallelThreshold(int parallelThreshold) {
+        if (parallelThreshold < 2)
+            throw new IllegalArgumentException("Parallel threshold must be at least 2");
+        this.parallelThreshold = parallelThreshold;
+        return this;
+    }
+
+    /**
+     * Sets the construction method of the hierarchy
+     * @param method the construction method
+     * @return the builder itself
+     */
+    public BVHBuilder setMethod(BVHMethod method) {
+        if (method == null)
+            throw new IllegalArgumentException("Construction method must not be null");
+        this.method = method;
+        return this;
+    }
+
+    /**
+     * Sets the amount of top levels of a linear BVH that are rebuilt with SAH.
+     * The sub-hierarchies below these levels are kept and the SAH build arranges them anew.
+     * @param refineLevels the amount of levels, 0 for no refinement
+     * @return the builder itself
+     */
+    public BVHBuilder setRefineLevels(int refineLevels) {
+        if (refineLevels < 0)
+            throw new IllegalArgumentException("Refine levels must not be negative");
+        this.refineLevels = refineLevels;
+        return this;
+    }
+
+    /**
+     * Sets the budget of the references duplicated by the spatial splits of {@link BVHMethod#SBVH}:
+     * the build never holds more than (1 + budget) references per object. 0 disables spatial splits
+     * @param splitBudget the amount of additional references, relative to the amount of objects
+     * @return the builder itself
+     */
+    public BVHBuilder setSplitBudget(double splitBudget) {
+        if (!(splitBudget >= 0))
+            throw new IllegalArgumentException("Split budget must not be negative");
+        this.splitBudget = splitBudget;
+        return this;
+    }
+
+    /**
+     * Builds the hierarchy over the objects
+     * @param objects the objects to put in the hierarchy
+     * @return the root of the hierarchy, or a {@link Geometries} of the root followed by the objects
+     * without a finite bounding box, or null if there are no objects
+     */
+    public Intersectable build(List<? extends Intersectable> objects) {
+        List<Intersectable> bounded = new ArrayList<>(objects.size());
+        List<Intersectable> unbounded = new ArrayList<>();
+        for (Intersectable object : objects) separate(object, bounded, unbounded);
+        Intersectable root = bounded.isEmpty() ? null : buildBounded(bounded);
+        if (unbounded.isEmpty()) return root;
+        if (root != null) unbounded.addFirst(root);
+        return unbounded.size() == 1 ? unbounded.getFirst() : new Geometries(unbounded);
+    }
+
+    /**
+     * Separates an object into the objects with a finite bounding box and the others.
+     * A group without a finite box is opened and its objects are separated.
+     * @param object    the object
+     * @param bounded   the objects with a finite bounding box
+     * @param unbounded the objects without a finite bounding box
+     */
+    static void separate(Intersectable object, List<Intersectable> bounded, List<Intersectable> unbounded) {
+        AABB box = object.getBoundingBox();
+        if (box != null && box.isFinite())
+            bounded.add(object);
+        else if (object instanceof Geometries group)
+            for (Intersectable child : group.geometries) separate(child, bounded, unbounded);
+        else
+            unbounded.add(object);
+    }
+
+    /**
+     * Builds the hierarchy over objects with finite bounding boxes
+     * @param objects the objects to put in the hierarchy
+     * @return the root of the hierarchy
+     */
+    private Intersectable buildBounded(List<Intersectable> objects) {
+        Intersectable[] array = objects.toArray(new Intersectable[0]);
+        Intersectable root;
+        if (method == BVHMethod.SBVH) {
+            // the leaves may share objects and hold clipped boxes, only the flat hierarchy handles them
+            root = new SpatialSplitBuild(array, splitBudget, maxLeafSize, binCount, traversalCost, intersectionCost)
+                    .build();
+            return new FlatBVH(root);
+        }
+        if (threadsCount == 0 || threadsCount == 1 || array.length < parallelThreshold)
+            root = build(array, false);
+        else if (threadsCount == -1)
+            root = ForkJoinPool.commonPool().invoke(ForkJoinTask.adapt(() -> build(array, true)));
+        else {
+            ForkJoinPool pool = new ForkJoinPool(threadsCount);
+            try {
+                root = pool.invoke(ForkJoinTask.adapt(() -> build(array, true)));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        if (!flatten || !(root instanceof BVHNode || root instanceof Geometries)) return root;
+        return width == 2 ? new FlatBVH(root) : new WideBVH(root, width);
+    }
+
+    /**
+     * Builds the hierarchy over the objects with the construction method
+     * @param objects  the objects to put in the hierarchy
+     * @param parallel whether the build runs on a fork-join pool
+     * @return the root of the hierarchy
+     */
+    private Intersectable build(Intersectable[] objects, boolean parallel) {
+        Build build = new Build(objects, parallel, maxLeafSize);
+        if (method == BVHMethod.LBVH) return build.linear();
+        return parallel ? build.task(0, objects.length).invoke() : build.build(0, objects.length);
+    }
+
+    /**
+     * Calculates the default amount of build threads: the logical processors less the spare ones
+     * @return the amount of threads
+     */
+    private static int defaultThreads() {
+        int cores = Runtime.getRuntime().availableProcessors() - SPARE_THREADS;
+        return cores <= 2 ? 1 : cores;
+    }
+
+    /**
+     * Calculates the surface area of a box
+     * @param box the box as min x,y,z and max x,y,z
+     * @return the surface area of the box
+     */
+    static double surfaceArea(double[] box) {
+        double dx = box[3] - box[0];
+        double dy = box[4] - box[1];
+        double dz = box[5] - box[2];
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+
+    /**
+     * Converts box coordinates into an AABB
+     * @param box the box as min x,y,z and max x,y,z
+     * @return the AABB
+     */
+    static AABB toAABB(double[] box) {
+        return new AABB(new Point(box[0], box[1], box[2]), new Point(box[3], box[4], box[5]));
+    }
+
+    /**
+     * Creates an empty box that any box merged into it replaces
+     * @return the empty box
+     */
+    static double[] emptyBox() {
+        double inf = Double.POSITIVE_INFINITY;
+        return new double[]{inf, inf, inf, -inf, -inf, -inf};
+    }
+
+    /**
+     * Grows a box to contain another box
+     * @param box   the box to grow
+     * @param other the box to contain
+     */
+    static void merge(double[] box, double[] other) {
+        for (int axis = 0; axis < 3; axis++) {
+            box[axis] = Math.min(box[axis], other[axis]);
+            box[axis + 3] = Math.max(box[axis + 3], other[axis + 3]);
+        }
+    }
+
+    /**
+     * Calculates the distance along a ray to the entry into a box by the slabs of its axes.
+     * NaN values (origin on a slab plane of a parallel axis) don't limit the interval.
+     * @param minX the minimal x coordinate of the box
+     * @param minY the minimal y coordinate of the box
+     * @param minZ the minimal z coordinate of the box
+     * @param maxX the maximal x coordinate of the box
+     * @param maxY the maximal y coordinate of the box
+     * @param maxZ the maximal z coordinate of the box
+     * @param ox   the x coordinate of the ray origin
+     * @param oy   the y coordinate of the ray origin
+     * @param oz   the z coordinate of the ray origin
+     * @param ix   the inverse of the x coordinate of the ray direction
+     * @param iy   the inverse of the y coordinate of the ray direction
+     * @param iz   the inverse of the z coordinate of the ray direction
+     * @param tMax the maximal distance
+     * @return the entry distance (0 if the origin is inside), or positive infinity if the box is missed
+     */
+    static double boxDistance(double minX, double minY, double minZ, double maxX, double maxY, double maxZ,
+                              double ox, double oy, double oz, double ix, double iy, double iz, double tMax) {
+        double tNear = 0;
+        double tFar = tMax;
+
+        double t0 = (minX - ox) * ix, t1 = (maxX - ox) * ix;
+        if (ix < 0) { double t = t0; t0 = t1; t1 = t; }
+        if (t0 > tNear) tNear = t0;
+        if (t1 < tFar) tFar = t1;
+
+        t0 = (minY - oy) * iy;
+        t1 = (maxY - oy) * iy;
+        if (iy < 0) { double t = t0; t0 = t1; t1 = t; }
+        if (t0 > tNear) tNear = t0;
+        if (t1 < tFar) tFar = t1;
+
+        t0 = (minZ - oz) * iz;
+        t1 = (maxZ - oz) * iz;
+        if (iz < 0) { double t = t0; t0 = t1; t1 = t; }
+        if (t0 > tNear) tNear = t0;
+        if (t1 < tFar) tFar = t1;
+
+        return tNear <= tFar ? tNear : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Spreads the lowest 21 bits of a value so there are two zero bits between every two bits
+     * @param value the value
+     * @return the spread bits
+     */
+    private static long spreadBits(long value) {
+        value &= 0x1fffffL;
+        value = (value | value << 32) & 0x1f00000000ffffL;
+        value = (value | value << 16) & 0x1f0000ff0000ffL;
+        value = (value | value << 8) & 0x100f00f00f00f00fL;
+        value = (value | value << 4) & 0x10c30c30c30c30c3L;
+        value = (value | value << 2) & 0x1249249249249249L;
+        return value;
+    }
+
+    /**
+     * The state of a single build: the objects with their cached bounds and centroids.
+     * The order array is partitioned in place while the hierarchy is built, every
+     * sub-hierarchy owns its own range so the ranges can be built concurrently.
+     */
+    private class Build extends BinnedSplit {
+        /*** The objects of the build*/
+        private final Intersectable[] objects;
+
+        /**
+         * Calculates and caches the bounds and the centroids of the objects
+         * @param objects  the objects of the build
+         * @param parallel whether the build runs on a fork-join pool
+         * @param leafSize the maximal amount of objects in a leaf
+         */
+        Build(Intersectable[] objects, boolean parallel, int leafSize) {
+            super(objects.length, parallel, leafSize, BVHBuilder.this.binCount, BVHBuilder.this.traversalCost,
+                    BVHBuilder.this.intersectionCost, BVHBuilder.this.parallelThreshold);
+            this.objects = objects;
+            IntStream indices = IntStream.range(0, objects.length);
+            (parallel ? indices.parallel() : indices).forEach(i -> {
+                AABB box = objects[i].getBoundingBox();
+                setBox(i, new double[]{box.getMin().getCoordinate(0), box.getMin().getCoordinate(1),
+                        box.getMin().getCoordinate(2), box.getMax().getCoordinate(0),
+                        box.getMax().getCoordinate(1), box.getMax().getCoordinate(2)});
+            });
+        }
+
+        /**
+         * Creates a fork-join task building the sub-hierarchy of a range of the order
+         * @param start the first index in the order (inclusive)
+         * @param end   the last index in the order (exclusive)
+         * @return the task
+         */
+        RecursiveTask<Intersectable> task(int start, int end) {
+            return new RecursiveTask<>() {
+                @Override
+                protected Intersectable compute() {
+                    if (end - start < parallelThreshold) return build(start, end);
+                    double[] box = new double[6];
+                    int mid = split(start, end, box);
+                    if (mid < 0) return leaf(start, end);
+                    // build the left side by another thread while this thread builds the right side
+                    RecursiveTask<Intersectable> left = task(start, mid);
+                    left.fork();
+                    Intersectable right = task(mid, end).invoke();
+                    return new BVHNode(left.join(), right, toAABB(box));
+                }
+            };
+        }
+
+        /**
+         * Builds the sub-hierarchy of the objects in a range of the order by the current thread
+         * @param start the first index in the order (inclusive)
+         * @param end   the last index in the order (exclusive)
+         * @return the root of the sub-hierarchy
+         */
+        Intersectable build(int start, int end) {
+            if (end - start == 1) return objects[order[start]];
+            double[] box = new double[6];
+            int mid = split(start, end, box);
+            if (mid < 0) return leaf(start, end);
+            return new BVHNode(build(start, mid), build(mid, end), toAABB(box));
+        }
+
+        /**
+         * Builds a linear BVH: the objects are sorted by the Morton codes of their centroids
+         * and every node is split where the highest bit that differs in its range changes.
+         * @return the root of the hierarchy
+         */
+        Intersectable linear() {
+            int n = objects.length;
+            double[] centroidBox = new double[6];
+            System.arraycopy(rangeBounds(0, n), 6, centroidBox, 0, 6);
+
+            int bits = n < LONG_MORTON_THRESHOLD ? 10 : 21;
+            long[] codes = new long[n];
+            IntStream indices = IntStream.range(0, n);
+            (parallel ? indices.parallel() : indices).forEach(i -> codes[i] = morton(i, centroidBox, bits));
+            radixSort(codes, 3 * bits);
+
+            Intersectable root = parallel ? linearTask(codes, 0, n).invoke() : linear(codes, 0, n);
+            if (refineLevels == 0 || !(root instanceof BVHNode)) return root;
+
+            // rebuild the top levels with SAH over the sub-hierarchies below them
+            List<Intersectable> clusters = new ArrayList<>();
+            collectClusters(root, 0, clusters);
+            return new Build(clusters.toArray(new Intersectable[0]), false, 1).build(0, clusters.size());
+        }
+
+        /**
+         * Creates a fork-join task emitting the linear BVH of a sorted range
+         * @param codes the sorted Morton codes
+         * @param start the first index in the order (inclusive)
+         * @param end   the last index in the order (exclusive)
+         * @return the task
+         */
+        private RecursiveTask<Intersectable> linearTask(long[] codes, int start, int end) {
+            return new RecursiveTask<>() {
+                @Override
+                protected Intersectable compute() {
+                    if (end - start < parallelThreshold) return linear(codes, start, end);
+                    int mid = linearSplit(codes, start, end);
+                    RecursiveTask<Intersectable> left = linearTask(codes, start, mid);
+                    left.fork();
+                    Intersectable right = linearTask(codes, mid, end).invoke();
+                    return node(left.join(), right);
+                }
+            };
+        }
+
+        /**
+         * Emits the linear BVH of a sorted range by the current thread
+         * @param codes the sorted Morton codes
+         * @param start the first index in the order (inclusive)
+         * @param end   the last index in the order (exclusive)
+         * @return the root of the sub-hierarchy
+         */
+        private Intersectable linear(long[] codes, int start, int end) {
+            int count = end - start;
+            if (count == 1) return objects[order[start]];
+            if (count <= leafSize) return leaf(start, end);
+            int mid = linearSplit(codes, start, end);
+            return node(linear(codes, start, mid), linear(codes, mid, end));
+        }
+
+        /**
+         * Finds where the highest differing bit of a sorted range of codes changes from 0 to 1
+         * @param codes the sorted Morton codes
+         * @param start the first index in the order (inclusive)
+         * @param end   the last index in the order (exclusive)
+         * @return the index of the first code of the right side
+         */
+        private int linearSplit(long[] codes, int start, int end) {
+            long bit = Long.highestOneBit(codes[start] ^ codes[end - 1]);
+            // all the codes are equal - split the range in the middle
+            if (bit == 0) return start + (end - start) / 2;
+            int low = start;
+            int high = end - 1;
+            while (high - low > 1) {
+                int mid = (low + high) >>> 1;
+                if ((codes[mid] & bit) != 0) high = mid;
+                else low = mid;
+            }
+            return high;
+        }
+
+        /**
+         * Creates an inner node bounding its two children
+         * @param left  the left child
+         * @param right the right child
+         * @return the node
+         */
+        private BVHNode node(Intersectable left, Intersectable right) {
+            return new BVHNode(left, right, AABB.surroundingBox(left.getBoundingBox(), right.getBoundingBox()));
+        }
+
+        /**
+         * Collects the sub-hierarchies below the levels that are rebuilt with SAH
+         * @param node     the current node
+         * @param depth    the depth of the node
+         * @param clusters the collected sub-hierarchies
+         */
+        private void collectClusters(Intersectable node, int depth, List<Intersectable> clusters) {
+            if (depth < refineLevels && node instanceof BVHNode inner) {
+                collectClusters(inner.getLeft(), depth + 1, clusters);
+                collectClusters(inner.getRight(), depth + 1, clusters);
+            } else
+                clusters.add(node);
+        }
+
+        /**
+         * Calculates the Morton code of the centroid of an object: the bits of the quantized
+         * coordinates relative to the centroid box, interleaved from the highest bit down
+         * @param object      the object index
+         * @param centroidBox the bounding box of all the centroids
+         * @param bits        the amount of bits per axis
+         * @return the Morton code
+         */
+        private long morton(int object, double[] centroidBox, int bits) {
+            long code = 0;
+            long cells = 1L << bits;
+            for (int axis = 0; axis < 3; axis++) {
+                double extent = centroidBox[axis + 3] - centroidBox[axis];
+                long q = extent <= 0 ? 0
+                        : Math.min(cells - 1, (long) (cells * (centroids[3 * object + axis] - centroidBox[axis]) / extent));
+                code |= spreadBits(q) << (2 - axis);
+            }
+            return code;
+        }
+
+        /**
+         * Sorts the codes together with the order by least significant digit radix sort.
+         * Every pass counts the digits of chunks of the codes (in parallel) and then moves
+         * each chunk to its offsets, keeping the sort stable.
+         * @param codes the codes of the objects, indexed like the order
+         * @param bits  the amount of significant bits in the codes
+         */
+        private void radixSort(long[] codes, int bits) {
+            int n = codes.length;
+            int digits = 1 << RADIX_BITS;
+            int chunks = parallel ? chunks(0, n) : 1;
+            int chunkSize = parallel ? parallelThreshold : n;
+            long[] keys = codes;
+            int[] values = order;
+            long[] tempKeys = new long[n];
+            int[] tempValues = new int[n];
+            int[][] offsets = new int[chunks][digits];
+
+            for (int shift = 0; shift < bits; shift += RADIX_BITS) {
+                int s = shift;
+                long[] fromKeys = keys;
+                int[] fromValues = values;
+                long[] toKeys = tempKeys;
+                int[] toValues = tempValues;
+
+                IntStream chunkIndices = IntStream.range(0, chunks);
+                (parallel ? chunkIndices.parallel() : chunkIndices).forEach(c -> {
+                    int[] histogram = offsets[c];
+                    Arrays.fill(histogram, 0);
+                    for (int i = c * chunkSize; i < Math.min(n, (c + 1) * chunkSize); i++)
+                        histogram[(int) (fromKeys[i] >>> s) & (digits - 1)]++;
+                });
+                // turn the counts into the first target index of each digit in each chunk
+                int sum = 0;
+                for (int d = 0; d < digits; d++)
+                    for (int c = 0; c < chunks; c++) {
+                        int count = offsets[c][d];
+                        offsets[c][d] = sum;
+                        sum += count;
+                    }
+                chunkIndices = IntStream.range(0, chunks);
+                (parallel ? chunkIndices.parallel() : chunkIndices).forEach(c -> {
+                    int[] offset = offsets[c];
+                    for (int i = c * chunkSize; i < Math.min(n, (c + 1) * chunkSize); i++) {
+                        int target = offset[(int) (fromKeys[i] >>> s) & (digits - 1)]++;
+                        toKeys[target] = fromKeys[i];
+                        toValues[target] = fromValues[i];
+                    }
+                });
+
+                tempKeys = fromKeys;
+                tempValues = fromValues;
+                keys = toKeys;
+                values = toValues;
+            }
+            if (keys != codes) {
+                System.arraycopy(keys, 0, codes, 0, n);
+                System.arraycopy(values, 0, order, 0, n);
+            }
+        }
+
+        /**
+         * Creates a leaf holding the objects in a range of the order
+         * @param start the first index in the order (inclusive)
+         * @param end   the last index in the order (exclusive)
+         * @return the leaf
+         */
+        private Intersectable leaf(int start, int end) {
+            List<Intersectable> leaf = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++)
+                leaf.add(objects[order[i]]);
+            return new Geometries(leaf);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package geometries;
+
+/**
+ * BVH construction methods
+ */
+public enum BVHMethod {
+   /** Top-down build with the binned surface area heuristic, slower build of a better tree */
+   SAH,
+   /** Linear BVH from sorted Morton codes of the centroids, fast build of a lower quality tree */
+   LBVH,
+   /**
+    * Binned SAH build that may also split the references to the objects by planes (spatial splits),
+    * an object may appear in several leaves. Slowest build of the tree with the least overlap
+    */
+   SBVH
+
+}
@@ -1,6 +1,7 @@
 package geometries;
 
 import primitives.AABB;
+import primitives.Double3;
 import primitives.Point;
 import primitives.Ray;
 
@@ -30,6 +31,19 @@ public class BVHNode extends Intersectable {
         this(geometries.geometries);
     }
 
+    /**
+     * Constructor of a node over two already built sub-hierarchies.
+     *
+     * @param left  the left child
+     * @param right the right child
+     * @param box   the bounding box of both children
+     */
+    BVHNode(Intersectable left, Intersectable right, AABB box) {
+        this.left = left;
+        this.right = right;
+        this.box = box;
+    }
+
     public int countObjects() {
         int count = 0;
         //if they are not null or BVHNode count them
@@ -112,26 +126,106 @@ public class BVHNode extends Intersectable {
         }
 
         List<Intersection> intersections = new ArrayList<>();
+        collectInChildren(ray, intersections);
+        return intersections.isEmpty() ? null : intersections;
+    }
+
+    @Override
+    protected void collectIntersectionsHelper(Ray ray, List<Intersection> intersections) {
+        if (box.intersects(ray)) collectInChildren(ray, intersections);
+    }
+
+    /**
+     * Adds the intersections in the children of a node whose box is hit by the ray to a list
+     * @param ray           the ray
+     * @param intersections the list the intersections are added to
+     */
+    private void collectInChildren(Ray ray, List<Intersection> intersections) {
+        // Recursively collect the intersections in the left and right nodes
+        if (left != null) left.collectIntersectionsHelper(ray, intersections);
+        if (right != null) right.collectIntersectionsHelper(ray, intersections);
+    }
+
+    @Override
+    protected boolean calculateClosestHitHelper(Ray ray, double tMin, HitRecord hit) {
+        return box.entryDistance(ray, hit.t) != Double.POSITIVE_INFINITY
+                && calculateClosestInChildren(ray, tMin, hit);
+    }
+
+    /**
+     * Finds the closest intersection in the children of a node whose box is hit by the ray.
+     * When both children are nodes, the nearer one is visited first and the further one
+     * is skipped if its box starts beyond the closest intersection found.
+     *
+     * @param ray  the ray
+     * @param tMin the minimal distance along the ray (exclusive)
+     * @param hit  the closest hit so far, updated if a closer hit is found
+     * @return true if a closer hit was found
+     */
+    private boolean calculateClosestInChildren(Ray ray, double tMin, HitRecord hit) {
+        boolean found = false;
+        if (left instanceof BVHNode leftNode && right instanceof BVHNode rightNode) {
+            BVHNode first = leftNode;
+            BVHNode second = rightNode;
+            double firstDistance = leftNode.box.entryDistance(ray, hit.t);
+            double secondDistance = rightNode.box.entryDistance(ray, hit.t);
+            if (secondDistance < firstDistance) {
+                first = rightNode;
+                second = leftNode;
+                double temp = firstDistance;
+                firstDistance = secondDistance;
+                secondDistance = temp;
+            }
+            if (firstDistance < hit.t) {
+                found = first.calculateClosestInChildren(ray, tMin, hit);
+            }
+            if (secondDistance < hit.t && second.calculateClosestInChildren(ray, tMin, hit)) {
+                found = true;
+            }
+            return found;
+        }
 
-        // Recursively calculate intersections in the left and right nodes
-        List<Intersection> leftHits = new ArrayList<>();
-        List<Intersection> rightHits = new ArrayList<>();
-        if(left != null) leftHits = left.calculateIntersections(ray);
-        if(right != null) rightHits = right.calculateIntersections(ray);
+        if (left != null) {
+            found = left.calculateClosestHitHelper(ray, tMin, hit);
+        }
+        if (right != null && right.calculateClosestHitHelper(ray, tMin, hit)) {
+            found = true;
+        }
+        return found;
+    }
 
-        if (leftHits != null) {
-            intersections.addAll(leftHits);
+    @Override
+    protected Double3 calculateTransparencyHelper(Ray ray, double maxDistance, Double3 ktr, double minK) {
+        if (box.entryDistance(ray, maxDistance) == Double.POSITIVE_INFINITY) {
+            return ktr;
         }
-        if (rightHits != null) {
-            intersections.addAll(rightHits);
+        if (left != null) {
+            ktr = left.calculateTransparencyHelper(ray, maxDistance, ktr, minK);
+            if (ktr.lowerThan(minK)) return ktr; // the ray is blocked
         }
-        return intersections.isEmpty() ? null : intersections;
+        return right == null ? ktr : right.calculateTransparencyHelper(ray, maxDistance, ktr, minK);
     }
 
     public AABB getBoundingBox() {
         return box;
     }
 
+    /**
+     * Returns the left child of the node
+     * @return the left child, may be null
+     */
+    Intersectable getLeft() {
+        return left;
+    }
+
+    /**
+     * Returns the right child of the node
+     * @return the right child, may be null
+     */
+    Intersectable getRight() {
+        return right;
+    }
+
     /**
      * Returns a comparator that sorts intersectable objects based on their bounding box center along the specified axis.
      *
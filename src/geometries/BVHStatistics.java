@@ -0,0 +1,293 @@
+package geometries;
+
+import primitives.AABB;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * BVHStatistics is a report of the quality of a bounding volume hierarchy: the shape of the tree,
+ * its SAH cost and the overlap between sibling boxes. When collected by a compiled hierarchy
+ * ({@link FlatBVH}, {@link WideBVH}) it also counts the nodes visited and the primitives tested
+ * by the rays traced through it, so a slow render can be traced to a bad tree.<br>
+ * The SAH cost is the expected cost of a ray that hits the root box, with the default costs
+ * of the {@link BVHBuilder}: the areas of the inner nodes times the traversal cost plus the
+ * areas of the leaves times their primitive counts, relative to the area of the root.<br>
+ * The overlap ratio is the average, over the inner nodes, of the area of the intersections
+ * of each pair of children relative to the area of the node.
+ * @author Jeshurun and Binyamin
+ */
+public class BVHStatistics {
+    /*** The depth of the tree, 1 for a single leaf*/
+    private int depth = 0;
+    /*** The amount of inner nodes*/
+    private int innerCount = 0;
+    /*** The amount of leaves*/
+    private int leafCount = 0;
+    /*** The amount of primitives in the leaves (an object in several leaves is counted in each)*/
+    private int primitiveCount = 0;
+    /*** The amount of leaves of each size*/
+    private int[] leafSizes = new int[1];
+    /*** The SAH cost of the tree*/
+    private double sahCost = 0;
+    /*** The sum of the overlap ratios of the inner nodes*/
+    private double overlapSum = 0;
+    /*** The area of the root box*/
+    private double rootArea = 0;
+
+    /*** The amount of traced rays*/
+    private final LongAdder rays = new LongAdder();
+    /*** The amount of nodes visited by the traced rays*/
+    private final LongAdder visitedNodes = new LongAdder();
+    /*** The amount of primitives tested by the traced rays*/
+    private final LongAdder testedPrimitives = new LongAdder();
+
+    /**
+     * Constructor of empty statistics for the hierarchy to fill
+     */
+    BVHStatistics() {
+    }
+
+    /**
+     * Calculates the statistics of the structure of a hierarchy: a tree of {@link BVHNode}s,
+     * a {@link FlatBVH} or a {@link WideBVH}. Any other object is reported as a single leaf.
+     * @param root the root of the hierarchy
+     * @return the statistics
+     */
+    public static BVHStatistics of(Intersectable root) {
+        if (root == null)
+            throw new IllegalArgumentException("Hierarchy must not be null");
+        BVHStatistics statistics = new BVHStatistics();
+        if (root instanceof FlatBVH flat) flat.collect(statistics);
+        else if (root instanceof WideBVH wide) wide.collect(statistics);
+        else {
+            AABB box = root.getBoundingBox();
+            statistics.setRootArea(box == null ? 0 : BVHBuilder.surfaceArea(box(box)));
+            statistics.collect(root, 1);
+        }
+        return statistics;
+    }
+
+    /**
+     * Adds a node of a tree of {@link BVHNode}s and its sub-tree
+     * @param node  the node
+     * @param depth the depth of the node
+     */
+    private void collect(Intersectable node, int depth) {
+        if (!(node instanceof BVHNode inner)) {
+            AABB box = node.getBoundingBox();
+            addLeaf(depth, box == null ? 0 : BVHBuilder.surfaceArea(box(box)),
+                    node instanceof Geometries geometries ? geometries.geometries.size() : 1);
+            return;
+        }
+        double[][] children = new double[2][];
+        int count = 0;
+        if (inner.getLeft() != null) children[count++] = box(inner.getLeft().getBoundingBox());
+        if (inner.getRight() != null) children[count++] = box(inner.getRight().getBoundingBox());
+        addInner(depth, BVHBuilder.surfaceArea(box(inner.getBoundingBox())), children, count);
+        if (inner.getLeft() != null) collect(inner.getLeft(), depth + 1);
+        if (inner.getRight() != null) collect(inner.getRight(), depth + 1);
+    }
+
+    /**
+     * Converts an AABB into box coordinates
+     * @param box the AABB
+     * @return the box as min x,y,z and max x,y,z
+     */
+    private static double[] box(AABB box) {
+        return new double[]{box.getMin().getCoordinate(0), box.getMin().getCoordinate(1), box.getMin().getCoordinate(2),
+                box.getMax().getCoordinate(0), box.getMax().getCoordinate(1), box.getMax().getCoordinate(2)};
+    }
+
+    /**
+     * Sets the area of the root box, the SAH cost is relative to it
+     * @param rootArea the surface area of the root box
+     */
+    void setRootArea(double rootArea) {
+        this.rootArea = rootArea;
+    }
+
+    /**
+     * Adds an inner node
+     * @param depth    the depth of the node, 1 for the root
+     * @param area     the surface area of the node box
+     * @param children the boxes of the children as min x,y,z and max x,y,z
+     * @param count    the amount of children
+     */
+    void addInner(int depth, double area, double[][] children, int count) {
+        this.depth = Math.max(this.depth, depth);
+        ++innerCount;
+        sahCost += BVHBuilder.DEFAULT_TRAVERSAL_COST * relativeArea(area);
+        if (area <= 0) return;
+        double overlap = 0;
+        for (int i = 0; i < count; i++)
+            for (int j = i + 1; j < count; j++)
+                overlap += overlapArea(children[i], children[j]);
+        overlapSum += overlap / area;
+    }
+
+    /**
+     * Adds a leaf
+     * @param depth the depth of the leaf, 1 for the root
+     * @param area  the surface area of the leaf box
+     * @param count the amount of primitives in the leaf
+     */
+    void addLeaf(int depth, double area, int count) {
+        this.depth = Math.max(this.depth, depth);
+        ++leafCount;
+        primitiveCount += count;
+        if (count >= leafSizes.length) leafSizes = Arrays.copyOf(leafSizes, count + 1);
+        ++leafSizes[count];
+        sahCost += count * relativeArea(area);
+    }
+
+    /**
+     * Records the traversal of a ray
+     * @param nodes      the amount of nodes the ray visited
+     * @param primitives the amount of primitives the ray tested
+     */
+    void record(int nodes, int primitives) {
+        rays.increment();
+        visitedNodes.add(nodes);
+        testedPrimitives.add(primitives);
+    }
+
+    /**
+     * Calculates an area relative to the root area
+     * @param area the area
+     * @return the relative area, 1 if the root box has no area
+     */
+    private double relativeArea(double area) {
+        return rootArea > 0 ? area / rootArea : 1;
+    }
+
+    /**
+     * Calculates the surface area of the intersection of two boxes
+     * @param a the first box
+     * @param b the second box
+     * @return the surface area of the common box, 0 if the boxes don't intersect
+     */
+    private static double overlapArea(double[] a, double[] b) {
+        double[] common = new double[6];
+        for (int axis = 0; axis < 3; axis++) {
+            common[axis] = Math.max(a[axis], b[axis]);
+            common[axis + 3] = Math.min(a[axis + 3], b[axis + 3]);
+            if (common[axis] > common[axis + 3]) return 0;
+        }
+        return BVHBuilder.surfaceArea(common);
+    }
+
+    /**
+     * Returns the depth of the tree
+     * @return the amount of levels, 1 for a single leaf
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the amount of nodes
+     * @return the amount of inner nodes and leaves
+     */
+    public int getNodeCount() {
+        return innerCount + leafCount;
+    }
+
+    /**
+     * Returns the amount of leaves
+     * @return the amount of leaves
+     */
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    /**
+     * Returns the amount of primitives in the leaves
+     * @return the amount of primitives, an object in several leaves is counted in each
+     */
+    public int getPrimitiveCount() {
+        return primitiveCount;
+    }
+
+    /**
+     * Returns the leaf size histogram
+     * @return the amount of leaves of each size, indexed by the size
+     */
+    public int[] getLeafSizeHistogram() {
+        return leafSizes.clone();
+    }
+
+    /**
+     * Returns the SAH cost of the tree
+     * @return the expected cost of a ray hitting the root box, in costs of a primitive intersection
+     */
+    public double getSAHCost() {
+        return sahCost;
+    }
+
+    /**
+     * Returns the overlap ratio between siblings
+     * @return the average overlap area of the children of an inner node relative to its area
+     */
+    public double getOverlapRatio() {
+        return innerCount == 0 ? 0 : overlapSum / innerCount;
+    }
+
+    /**
+     * Returns the amount of rays traced since the collection started
+     * @return the amount of rays
+     */
+    public long getRayCount() {
+        return rays.sum();
+    }
+
+    /**
+     * Returns the average amount of nodes visited by a ray
+     * @return the average amount of nodes, 0 if no ray was traced
+     */
+    public double getAverageVisitedNodes() {
+        long count = rays.sum();
+        return count == 0 ? 0 : visitedNodes.sum() / (double) count;
+    }
+
+    /**
+     * Returns the average amount of primitives tested by a ray
+     * @return the average amount of primitives, 0 if no ray was traced
+     */
+    public double getAverageTestedPrimitives() {
+        long count = rays.sum();
+        return count == 0 ? 0 : testedPrimitives.sum() / (double) count;
+    }
+
+    /**
+     * Resets the traversal counters
+     */
+    public void resetTraversal() {
+        rays.reset();
+        visitedNodes.reset();
+        testedPrimitives.reset();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder("BVH statistics:")
+                .append("\n  depth: ").append(depth)
+                .append("\n  nodes: ").append(getNodeCount())
+                .append(" (").append(innerCount).append(" inner, ").append(leafCount).append(" leaves)")
+                .append("\n  primitives: ").append(primitiveCount)
+                .append(String.format(" (%.2f per leaf)", leafCount == 0 ? 0.0 : primitiveCount / (double) leafCount))
+                .append("\n  leaf sizes:");
+        String separator = " ";
+        for (int size = 0; size < leafSizes.length; size++)
+            if (leafSizes[size] != 0) {
+                report.append(separator).append(size).append(" - ").append(leafSizes[size]);
+                separator = ", ";
+            }
+        report.append(String.format("%n  SAH cost: %.3f%n  sibling overlap: %.2f%%", sahCost, 100 * getOverlapRatio()));
+        long count = rays.sum();
+        if (count != 0)
+            report.append(String.format("%n  rays: %d, nodes per ray: %.2f, primitives per ray: %.2f",
+                    count, getAverageVisitedNodes(), getAverageTestedPrimitives()));
+        return report.toString();
+    }
+}
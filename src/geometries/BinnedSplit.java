@@ -0,0 +1,354 @@
+package geometries;
+
+import java.util.stream.IntStream;
+
+import static geometries.BVHBuilder.emptyBox;
+import static geometries.BVHBuilder.merge;
+import static geometries.BVHBuilder.surfaceArea;
+
+/**
+ * The binned Surface Area Heuristic split of ranges of primitives addressed by index.
+ * The primitives are given by their boxes only, so the same split serves the builds over
+ * objects ({@link BVHBuilder}) and over the faces of a mesh ({@link IndexedMesh}).<br>
+ * The centroids of a range are distributed into bins along each axis and the cheapest plane
+ * between the bins is chosen; the order array is partitioned in place by that plane, so every
+ * node of the hierarchy owns a consecutive range of it. A range becomes a leaf when intersecting
+ * all its primitives is cheaper than splitting it (and it is small enough).<br>
+ * In a parallel build the large ranges bin their primitives in parallel chunks.
+ * @author Jeshurun and Binyamin
+ */
+class BinnedSplit {
+    /*** The bounding boxes of the primitives, 6 values for each primitive (min x,y,z then max x,y,z)*/
+    final double[] bounds;
+    /*** The centroids of the boxes of the primitives, 3 values for each primitive*/
+    final double[] centroids;
+    /*** The order of the primitives, each node owns a consecutive range of it*/
+    final int[] order;
+    /*** Whether the split runs on a fork-join pool*/
+    final boolean parallel;
+    /*** The maximal amount of primitives in a leaf*/
+    final int leafSize;
+    /*** The amount of bins per axis*/
+    private final int binCount;
+    /*** The cost of traversing a node*/
+    private final double traversalCost;
+    /*** The cost of intersecting a single primitive*/
+    private final double intersectionCost;
+    /*** The amount of primitives of a chunk that is binned in parallel*/
+    private final int chunkSize;
+
+    /**
+     * Constructor of the split of primitives whose boxes are set afterwards
+     * @param count            the amount of primitives
+     * @param parallel         whether the split runs on a fork-join pool
+     * @param leafSize         the maximal amount of primitives in a leaf
+     * @param binCount         the amount of bins per axis
+     * @param traversalCost    the cost of traversing a node
+     * @param intersectionCost the cost of intersecting a single primitive
+     * @param chunkSize        the amount of primitives of a chunk that is binned in parallel
+     */
+    BinnedSplit(int count, boolean parallel, int leafSize, int binCount,
+                double traversalCost, double intersectionCost, int chunkSize) {
+        this.parallel = parallel;
+        this.leafSize = leafSize;
+        this.binCount = binCount;
+        this.traversalCost = traversalCost;
+        this.intersectionCost = intersectionCost;
+        this.chunkSize = chunkSize;
+        bounds = new double[6 * count];
+        centroids = new double[3 * count];
+        order = new int[count];
+    }
+
+    /**
+     * Constructor of the split of primitives by a single thread, whose boxes are set afterwards
+     * @param count            the amount of primitives
+     * @param leafSize         the maximal amount of primitives in a leaf
+     * @param binCount         the amount of bins per axis
+     * @param traversalCost    the cost of traversing a node
+     * @param intersectionCost the cost of intersecting a single primitive
+     */
+    BinnedSplit(int count, int leafSize, int binCount, double traversalCost, double intersectionCost) {
+        this(count, false, leafSize, binCount, traversalCost, intersectionCost, 1);
+    }
+
+    /**
+     * Sets the box of a primitive, its centroid and its place in the order
+     * @param i   the primitive index
+     * @param box the box as min x,y,z and max x,y,z
+     */
+    void setBox(int i, double[] box) {
+        for (int axis = 0; axis < 3; axis++) {
+            bounds[6 * i + axis] = box[axis];
+            bounds[6 * i + 3 + axis] = box[axis + 3];
+            centroids[3 * i + axis] = (box[axis] + box[axis + 3]) / 2;
+        }
+        order[i] = i;
+    }
+
+    /**
+     * The bins of a range of primitives along one axis: the amount of centroids in each bin
+     * and the bounding box of the primitives of each bin
+     */
+    private static class Bins {
+        /*** The amount of primitives in each bin*/
+        final int[] counts;
+        /*** The bounding boxes of the bins, 6 values for each bin*/
+        final double[] boxes;
+
+        /**
+         * Constructor of empty bins
+         * @param binCount the amount of bins
+         */
+        Bins(int binCount) {
+            counts = new int[binCount];
+            boxes = new double[6 * binCount];
+            for (int b = 0; b < binCount; b++)
+                System.arraycopy(emptyBox(), 0, boxes, 6 * b, 6);
+        }
+
+        /**
+         * Merges other bins into these bins
+         * @param other the other bins
+         * @return the bins themselves
+         */
+        Bins merge(Bins other) {
+            for (int b = 0; b < counts.length; b++) {
+                counts[b] += other.counts[b];
+                for (int axis = 0; axis < 3; axis++) {
+                    boxes[6 * b + axis] = Math.min(boxes[6 * b + axis], other.boxes[6 * b + axis]);
+                    boxes[6 * b + 3 + axis] = Math.max(boxes[6 * b + 3 + axis], other.boxes[6 * b + 3 + axis]);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Gets the bounding box of a bin
+         * @param b the bin index
+         * @return the box as min x,y,z and max x,y,z
+         */
+        double[] box(int b) {
+            double[] box = new double[6];
+            System.arraycopy(boxes, 6 * b, box, 0, 6);
+            return box;
+        }
+    }
+
+    /**
+     * Decides how to split a range of the order and partitions it accordingly
+     * @param start the first index in the order (inclusive)
+     * @param end   the last index in the order (exclusive)
+     * @param box   filled with the bounding box of the range
+     * @return the index of the first primitive of the right side, or -1 if the range should be a leaf
+     */
+    int split(int start, int end, double[] box) {
+        int count = end - start;
+        double[] rangeBounds = chunked(start, end)
+                ? IntStream.range(0, chunks(start, end)).parallel()
+                    .mapToObj(c -> rangeBounds(chunkStart(start, c), chunkEnd(start, end, c)))
+                    .reduce((a, b) -> { mergeAt(a, 0, b); mergeAt(a, 6, b); return a; }).orElseThrow()
+                : rangeBounds(start, end);
+        System.arraycopy(rangeBounds, 0, box, 0, 6);
+        double[] centroidBox = new double[6];
+        System.arraycopy(rangeBounds, 6, centroidBox, 0, 6);
+
+        // find the cheapest split: best[0] - cost, best[1] - axis, best[2] - last bin of the left side
+        double[] best = findSplit(start, end, box, centroidBox);
+        if (count <= leafSize && (best == null || count * intersectionCost <= best[0]))
+            return -1;
+
+        int mid = best == null ? start : partition(start, end, (int) best[1], (int) best[2], centroidBox);
+        // all the centroids are in the same place or on the same side - split the range in the middle
+        if (mid == start || mid == end) mid = start + count / 2;
+        return mid;
+    }
+
+    /**
+     * Calculates the bounding box and the centroid box of a range of the order
+     * @param start the first index in the order (inclusive)
+     * @param end   the last index in the order (exclusive)
+     * @return the bounding box (6 values) followed by the centroid box (6 values)
+     */
+    double[] rangeBounds(int start, int end) {
+        double inf = Double.POSITIVE_INFINITY;
+        double[] result = {inf, inf, inf, -inf, -inf, -inf, inf, inf, inf, -inf, -inf, -inf};
+        for (int i = start; i < end; i++) {
+            int o = order[i];
+            for (int axis = 0; axis < 3; axis++) {
+                result[axis] = Math.min(result[axis], bounds[6 * o + axis]);
+                result[axis + 3] = Math.max(result[axis + 3], bounds[6 * o + 3 + axis]);
+                result[axis + 6] = Math.min(result[axis + 6], centroids[3 * o + axis]);
+                result[axis + 9] = Math.max(result[axis + 9], centroids[3 * o + axis]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Merges the second box stored at an offset of an array into the box at the same offset
+     * @param box    the array of the box to grow
+     * @param offset the offset of the boxes in the arrays
+     * @param other  the array of the box to contain
+     */
+    private static void mergeAt(double[] box, int offset, double[] other) {
+        for (int axis = offset; axis < offset + 3; axis++) {
+            box[axis] = Math.min(box[axis], other[axis]);
+            box[axis + 3] = Math.max(box[axis + 3], other[axis + 3]);
+        }
+    }
+
+    /**
+     * Finds the split plane with the lowest SAH cost among the planes between the bins
+     * @param start       the first index in the order (inclusive)
+     * @param end         the last index in the order (exclusive)
+     * @param box         the bounding box of the range
+     * @param centroidBox the bounding box of the centroids in the range
+     * @return the cost, the axis and the last left bin of the best split,
+     * or null if the centroids can't be separated
+     */
+    private double[] findSplit(int start, int end, double[] box, double[] centroidBox) {
+        double area = surfaceArea(box);
+        double[] best = null;
+        double[] rightAreas = new double[binCount];
+        int[] rightCounts = new int[binCount];
+
+        for (int axis = 0; axis < 3; axis++) {
+            double extent = centroidBox[axis + 3] - centroidBox[axis];
+            if (extent <= 0) continue;
+
+            int binAxis = axis;
+            Bins bins = chunked(start, end)
+                    ? IntStream.range(0, chunks(start, end)).parallel()
+                        .mapToObj(c -> bin(chunkStart(start, c), chunkEnd(start, end, c),
+                                binAxis, centroidBox[binAxis], extent))
+                        .reduce(Bins::merge).orElseThrow()
+                    : bin(start, end, axis, centroidBox[axis], extent);
+
+            // sweep from the right to accumulate the right sides of the planes
+            double[] sweep = emptyBox();
+            int sweepCount = 0;
+            for (int b = binCount - 1; b > 0; b--) {
+                merge(sweep, bins.box(b));
+                sweepCount += bins.counts[b];
+                rightAreas[b] = sweepCount == 0 ? 0 : surfaceArea(sweep);
+                rightCounts[b] = sweepCount;
+            }
+
+            // sweep from the left, the plane after bin b separates bins 0..b from bins b+1..
+            sweep = emptyBox();
+            sweepCount = 0;
+            for (int b = 0; b < binCount - 1; b++) {
+                merge(sweep, bins.box(b));
+                sweepCount += bins.counts[b];
+                if (sweepCount == 0 || rightCounts[b + 1] == 0) continue;
+                double weighted = surfaceArea(sweep) * sweepCount + rightAreas[b + 1] * rightCounts[b + 1];
+                double cost = traversalCost + intersectionCost
+                        * (area > 0 ? weighted / area : sweepCount + rightCounts[b + 1]);
+                if (best == null || cost < best[0])
+                    best = new double[]{cost, axis, b};
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Distributes the primitives of a range of the order into bins along an axis
+     * @param start  the first index in the order (inclusive)
+     * @param end    the last index in the order (exclusive)
+     * @param axis   the axis
+     * @param min    the minimal centroid coordinate on the axis
+     * @param extent the extent of the centroids on the axis
+     * @return the bins
+     */
+    private Bins bin(int start, int end, int axis, double min, double extent) {
+        Bins bins = new Bins(binCount);
+        for (int i = start; i < end; i++) {
+            int o = order[i];
+            int b = bin(centroids[3 * o + axis], min, extent);
+            bins.counts[b]++;
+            for (int a = 0; a < 3; a++) {
+                bins.boxes[6 * b + a] = Math.min(bins.boxes[6 * b + a], bounds[6 * o + a]);
+                bins.boxes[6 * b + 3 + a] = Math.max(bins.boxes[6 * b + 3 + a], bounds[6 * o + 3 + a]);
+            }
+        }
+        return bins;
+    }
+
+    /**
+     * Checks whether a range is large enough to be scanned in parallel chunks
+     * @param start the first index in the order (inclusive)
+     * @param end   the last index in the order (exclusive)
+     * @return true if the range should be scanned in parallel
+     */
+    private boolean chunked(int start, int end) {
+        return parallel && end - start >= 4 * chunkSize;
+    }
+
+    /**
+     * Calculates the amount of chunks of a range scanned in parallel
+     * @param start the first index in the order (inclusive)
+     * @param end   the last index in the order (exclusive)
+     * @return the amount of chunks
+     */
+    int chunks(int start, int end) {
+        return (end - start + chunkSize - 1) / chunkSize;
+    }
+
+    /**
+     * Calculates the first index of a chunk
+     * @param start the first index of the range
+     * @param chunk the chunk number
+     * @return the first index of the chunk (inclusive)
+     */
+    private int chunkStart(int start, int chunk) {
+        return start + chunk * chunkSize;
+    }
+
+    /**
+     * Calculates the end of a chunk
+     * @param start the first index of the range
+     * @param end   the end of the range
+     * @param chunk the chunk number
+     * @return the last index of the chunk (exclusive)
+     */
+    private int chunkEnd(int start, int end, int chunk) {
+        return Math.min(end, chunkStart(start, chunk + 1));
+    }
+
+    /**
+     * Partitions a range of the order so the primitives in the left bins come first
+     * @param start       the first index in the order (inclusive)
+     * @param end         the last index in the order (exclusive)
+     * @param axis        the split axis
+     * @param lastBin     the last bin of the left side
+     * @param centroidBox the bounding box of the centroids in the range
+     * @return the index of the first primitive of the right side
+     */
+    private int partition(int start, int end, int axis, int lastBin, double[] centroidBox) {
+        double extent = centroidBox[axis + 3] - centroidBox[axis];
+        int i = start;
+        int j = end - 1;
+        while (i <= j) {
+            if (bin(centroids[3 * order[i] + axis], centroidBox[axis], extent) <= lastBin) {
+                i++;
+            } else {
+                int temp = order[i];
+                order[i] = order[j];
+                order[j--] = temp;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Finds the bin of a centroid coordinate
+     * @param c      the centroid coordinate
+     * @param min    the minimal centroid coordinate
+     * @param extent the extent of the centroids
+     * @return the bin index
+     */
+    private int bin(double c, double min, double extent) {
+        return Math.min(binCount - 1, (int) (binCount * (c - min) / extent));
+    }
+}
@@ -1,12 +1,21 @@
 package geometries;
 
+import primitives.AABB;
 import primitives.Point;
 import primitives.Ray;
 import primitives.Vector;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import static primitives.Util.alignZero;
+import static primitives.Util.isZero;
+
 /**
  * Class Cylinder is the class representing a cylinder in a Cartesian
- * 3-Dimensional coordinate system.
+ * 3-Dimensional coordinate system.<br>
+ * The cylinder is closed: its surface is the side of the tube between the bases and the two bases.
+ * The circles around the bases belong to the bases.
  * @author Jeshurun and Binyamin
  */
 public class Cylinder extends Tube {
@@ -19,9 +28,12 @@ public class Cylinder extends Tube {
      * @param radius the radius of the Cylinder
      * @param axis the axis of the Cylinder
      * @param height the height of the Cylinder
+     * @throws IllegalArgumentException if the height is not positive
      */
     public Cylinder(double radius, Ray axis, double height){
         super(radius, axis);
+        if (!(height > 0))
+            throw new IllegalArgumentException("Height must be positive");
         this.height = height;
     }
 
@@ -36,13 +48,154 @@ public class Cylinder extends Tube {
             return axis.getDir();
         }
         double t = axis.getDir().dotProduct(point.subtract(axis.getP0()));
-        if (t == 0){
+        if (isZero(t)){
             return axis.getDir().scale(-1);
-        } else if (t == height) {
+        } else if (isZero(t - height)) {
             return axis.getDir();
         } else {
             // The point is on the side of the cylinder
             return super.getNormal(point);
         }
     }
+
+    /**
+     * Calculates the distances along the ray's line to the surface of the cylinder:
+     * the side of the tube between the bases, and the bases up to the radius from the axis
+     * @param ray the ray
+     * @param t   the distances, filled in increasing order (at least 4 places)
+     * @param bases for each distance, -1 for the bottom base, 1 for the top base and 0 for the side
+     * @return the amount of distances
+     */
+    private int intersectionDistances(Ray ray, double[] t, int[] bases) {
+        Point p0 = ray.getP0();
+        Vector dir = ray.getDir();
+        Point axisHead = axis.getP0();
+        Vector axisDir = axis.getDir();
+        double ox = p0.getCoordinate(0), oy = p0.getCoordinate(1), oz = p0.getCoordinate(2);
+        double dx = dir.getCoordinate(0), dy = dir.getCoordinate(1), dz = dir.getCoordinate(2);
+        double vx = axisDir.getCoordinate(0), vy = axisDir.getCoordinate(1), vz = axisDir.getCoordinate(2);
+        double wx = ox - axisHead.getCoordinate(0), wy = oy - axisHead.getCoordinate(1), wz = oz - axisHead.getCoordinate(2);
+        double dv = dx * vx + dy * vy + dz * vz;
+        double wv = wx * vx + wy * vy + wz * vz;
+        int count = 0;
+
+        // the side, strictly between the bases
+        double[] side = sideDistances(ray);
+        if (side != null) {
+            for (double distance : side) {
+                double s = wv + distance * dv; // the height of the point along the axis
+                if (alignZero(s) > 0 && alignZero(s - height) < 0) {
+                    t[count] = distance;
+                    bases[count++] = 0;
+                }
+            }
+        }
+
+        // the bases, up to the radius from the axis
+        if (dv != 0) {
+            for (int base = -1; base <= 1; base += 2) {
+                double distance = ((base < 0 ? 0 : height) - wv) / dv;
+                double s = base < 0 ? 0 : height;
+                // the point relative to the center of the base
+                double rx = wx + distance * dx - s * vx;
+                double ry = wy + distance * dy - s * vy;
+                double rz = wz + distance * dz - s * vz;
+                if (alignZero(rx * rx + ry * ry + rz * rz - radius * radius) <= 0) {
+                    t[count] = distance;
+                    bases[count++] = base;
+                }
+            }
+        }
+
+        // sort the few distances
+        for (int i = 1; i < count; i++)
+            for (int j = i; j > 0 && t[j] < t[j - 1]; j--) {
+                double tempT = t[j];
+                t[j] = t[j - 1];
+                t[j - 1] = tempT;
+                int tempBase = bases[j];
+                bases[j] = bases[j - 1];
+                bases[j - 1] = tempBase;
+            }
+        return count;
+    }
+
+    /**
+     * Creates an intersection with the cylinder, with the normal of its part of the surface
+     * @param ray      the ray
+     * @param distance the distance along the ray
+     * @param base     -1 for the bottom base, 1 for the top base and 0 for the side
+     * @return the intersection
+     */
+    private Intersection intersection(Ray ray, double distance, int base) {
+        Intersection intersection = new Intersection(this, ray.getPoint(distance), distance);
+        Vector axisDir = axis.getDir();
+        double vx = axisDir.getCoordinate(0), vy = axisDir.getCoordinate(1), vz = axisDir.getCoordinate(2);
+        if (base != 0) {
+            intersection.normal = base < 0 ? Vector.unchecked(-vx, -vy, -vz) : axisDir;
+            return intersection;
+        }
+        // the part of the point perpendicular to the axis, at the radius from it on the side
+        Point head = axis.getP0();
+        double wx = intersection.point.getCoordinate(0) - head.getCoordinate(0);
+        double wy = intersection.point.getCoordinate(1) - head.getCoordinate(1);
+        double wz = intersection.point.getCoordinate(2) - head.getCoordinate(2);
+        double wv = wx * vx + wy * vy + wz * vz;
+        double nx = wx - wv * vx, ny = wy - wv * vy, nz = wz - wv * vz;
+        double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        intersection.normal = Vector.unchecked(nx / length, ny / length, nz / length);
+        return intersection;
+    }
+
+    @Override
+    public List<Intersection> calculateIntersectionsHelper(Ray ray) {
+        double[] t = new double[4];
+        int[] bases = new int[4];
+        int count = intersectionDistances(ray, t, bases);
+        List<Intersection> intersections = null;
+        for (int i = 0; i < count; i++) {
+            if (alignZero(t[i]) > 0) {
+                if (intersections == null) intersections = new ArrayList<>(2);
+                intersections.add(intersection(ray, t[i], bases[i]));
+            }
+        }
+        return intersections;
+    }
+
+    @Override
+    protected boolean calculateClosestHitHelper(Ray ray, double tMin, HitRecord hit) {
+        double[] t = new double[4];
+        int[] bases = new int[4];
+        int count = intersectionDistances(ray, t, bases);
+        for (int i = 0; i < count; i++) {
+            if (t[i] > tMin && t[i] < hit.t) {
+                return hit.record(this, t[i], bases[i]);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected Intersection toIntersection(Ray ray, HitRecord hit) {
+        return intersection(ray, hit.t, hit.primitive);
+    }
+
+    @Override
+    public AABB getBoundingBox() {
+        // the box of the two base disks: a disk of radius r and unit normal v
+        // reaches r * sqrt(1 - v[i]^2) from its center along the axis i
+        Point bottom = axis.getP0();
+        Vector axisDir = axis.getDir();
+        double[] min = new double[3];
+        double[] max = new double[3];
+        for (int i = 0; i < 3; i++) {
+            double v = axisDir.getCoordinate(i);
+            double extent = radius * Math.sqrt(Math.max(0, 1 - v * v));
+            double b = bottom.getCoordinate(i);
+            double top = b + height * v;
+            min[i] = Math.min(b, top) - extent;
+            max[i] = Math.max(b, top) + extent;
+        }
+        return new AABB(new Point(min[0], min[1], min[2]), new Point(max[0], max[1], max[2]));
+    }
 }
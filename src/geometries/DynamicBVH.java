@@ -0,0 +1,499 @@
+package geometries;
+
+import primitives.AABB;
+import primitives.Double3;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DynamicBVH is a mutable bounding volume hierarchy that is updated in place:
+ * <ul>
+ * <li>insert - the object is added as a sibling of the node where the Surface Area
+ * Heuristic says it costs the least</li>
+ * <li>remove - the leaf of the object is removed and its sibling takes the place of the parent</li>
+ * <li>refit - the boxes of the ancestors of moved objects (or of all the nodes) are recalculated</li>
+ * </ul>
+ * After every change the boxes of the ancestors are recalculated bottom-up and each ancestor
+ * tries a local rotation (swapping a child with a grandchild) that reduces the surface area,
+ * so the quality of the tree is kept without rebuilding it.<br>
+ * Objects without a finite bounding box are kept in a list beside the tree.
+ * @author Jeshurun and Binyamin
+ */
+public class DynamicBVH extends Intersectable {
+    /**
+     * A node of the tree, a leaf holds a single object
+     */
+    private static class Node {
+        /*** The parent node, null for the root*/
+        Node parent;
+        /*** The left child, null for a leaf*/
+        Node left;
+        /*** The right child, null for a leaf*/
+        Node right;
+        /*** The object of a leaf, null for an inner node*/
+        Intersectable object;
+        /*** The bounding box: min x,y,z then max x,y,z*/
+        final double[] box = new double[6];
+
+        /**
+         * Checks whether the node is a leaf
+         * @return true for a leaf
+         */
+        boolean isLeaf() {
+            return object != null;
+        }
+    }
+
+    /*** The root of the tree, null if the tree is empty*/
+    private Node root;
+    /*** The leaves of the objects in the tree*/
+    private final Map<Intersectable, Node> leaves = new IdentityHashMap<>();
+    /*** The objects without a finite bounding box*/
+    private final List<Intersectable> unbounded = new ArrayList<>();
+
+    /**
+     * Constructor of an empty hierarchy
+     */
+    public DynamicBVH() {
+        // objects are added by insert
+    }
+
+    /**
+     * Constructor of a hierarchy over objects
+     * @param objects the objects to insert
+     */
+    public DynamicBVH(List<? extends Intersectable> objects) {
+        for (Intersectable object : objects) add(object);
+    }
+
+    /**
+     * Returns the amount of objects in the hierarchy
+     * @return the amount of objects
+     */
+    public int size() {
+        return leaves.size() + unbounded.size();
+    }
+
+    /**
+     * Returns the objects of the hierarchy
+     * @return the objects, in no particular order
+     */
+    public List<Intersectable> getObjects() {
+        List<Intersectable> objects = new ArrayList<>(leaves.keySet());
+        objects.addAll(unbounded);
+        return objects;
+    }
+
+    /**
+     * Inserts an object into the hierarchy
+     * @param object the object
+     * @return the hierarchy itself
+     */
+    public DynamicBVH insert(Intersectable object) {
+        add(object);
+        return this;
+    }
+
+    /**
+     * Adds an object to the tree, or to the unbounded objects if it has no finite box
+     * @param object the object
+     */
+    private void add(Intersectable object) {
+        if (leaves.containsKey(object) || unbounded.contains(object))
+            throw new IllegalArgumentException("Object is already in the hierarchy");
+        AABB box = object.getBoundingBox();
+        if (box == null || !box.isFinite()) {
+            unbounded.add(object);
+            return;
+        }
+
+        Node leaf = new Node();
+        leaf.object = object;
+        setBox(leaf.box, box);
+        leaves.put(object, leaf);
+        if (root == null) {
+            root = leaf;
+            return;
+        }
+
+        Node sibling = findSibling(leaf.box);
+        Node parent = new Node();
+        replaceChild(sibling.parent, sibling, parent);
+        parent.left = sibling;
+        parent.right = leaf;
+        sibling.parent = parent;
+        leaf.parent = parent;
+        update(parent);
+    }
+
+    /**
+     * Removes an object from the hierarchy
+     * @param object the object
+     * @return true if the object was in the hierarchy
+     */
+    public boolean remove(Intersectable object) {
+        Node leaf = leaves.remove(object);
+        if (leaf == null) return unbounded.remove(object);
+
+        Node parent = leaf.parent;
+        if (parent == null) {
+            root = null;
+            return true;
+        }
+        // the sibling takes the place of the parent
+        Node sibling = parent.left == leaf ? parent.right : parent.left;
+        replaceChild(parent.parent, parent, sibling);
+        update(sibling.parent);
+        return true;
+    }
+
+    /**
+     * Refits the hierarchy after an object moved: the box of its leaf and the boxes of
+     * its ancestors are recalculated, and the ancestors are rotated if it improves the tree
+     * @param object the moved object
+     * @return the hierarchy itself
+     */
+    public DynamicBVH refit(Intersectable object) {
+        Node leaf = leaves.get(object);
+        if (leaf == null) {
+            if (!unbounded.contains(object))
+                throw new IllegalArgumentException("Object is not in the hierarchy");
+            // a formerly unbounded object may be bounded now
+            unbounded.remove(object);
+            return insert(object);
+        }
+        AABB box = object.getBoundingBox();
+        if (box == null || !box.isFinite()) {
+            remove(object);
+            unbounded.add(object);
+            return this;
+        }
+        setBox(leaf.box, box);
+        update(leaf.parent);
+        return this;
+    }
+
+    /**
+     * Refits the whole hierarchy bottom-up after many objects moved, without rotations.
+     * Objects that lost their finite bounding box are moved beside the tree.
+     * @return the hierarchy itself
+     */
+    public DynamicBVH refit() {
+        if (root == null) return this;
+        List<Intersectable> lost = new ArrayList<>();
+        refit(root, lost);
+        for (Intersectable object : lost) {
+            remove(object);
+            unbounded.add(object);
+        }
+        return this;
+    }
+
+    /**
+     * Calculates the total surface area of the inner nodes, a measure of the tree quality
+     * @return the sum of the surface areas of the inner nodes
+     */
+    public double getInnerArea() {
+        return innerArea(root);
+    }
+
+    @Override
+    public AABB getBoundingBox() {
+        if (!unbounded.isEmpty()) {
+            double inf = Double.POSITIVE_INFINITY;
+            return new AABB(new Point(-inf, -inf, -inf), new Point(inf, inf, inf));
+        }
+        return root == null ? null : BVHBuilder.toAABB(root.box);
+    }
+
+    @Override
+    protected List<Intersection> calculateIntersectionsHelper(Ray ray) {
+        List<Intersection> intersections = new ArrayList<>();
+        collectIntersectionsHelper(ray, intersections);
+        return intersections.isEmpty() ? null : intersections;
+    }
+
+    @Override
+    protected void collectIntersectionsHelper(Ray ray, List<Intersection> intersections) {
+        for (Intersectable object : unbounded)
+            object.collectIntersectionsHelper(ray, intersections);
+        if (root != null) intersections(root, ray, inverse(ray), intersections);
+    }
+
+    @Override
+    protected boolean calculateClosestHitHelper(Ray ray, double tMin, HitRecord hit) {
+        boolean found = false;
+        for (Intersectable object : unbounded) {
+            if (object.calculateClosestHitHelper(ray, tMin, hit)) found = true;
+        }
+        if (root == null) return found;
+        double[] inverse = inverse(ray);
+        if (boxDistance(root.box, ray.getP0(), inverse, hit.t) == Double.POSITIVE_INFINITY) return found;
+        return closest(root, ray, inverse, tMin, hit) || found;
+    }
+
+    @Override
+    protected Double3 calculateTransparencyHelper(Ray ray, double maxDistance, Double3 ktr, double minK) {
+        for (Intersectable object : unbounded) {
+            ktr = object.calculateTransparencyHelper(ray, maxDistance, ktr, minK);
+            if (ktr.lowerThan(minK)) return ktr;
+        }
+        return root == null ? ktr : transparency(root, ray, inverse(ray), maxDistance, ktr, minK);
+    }
+
+    /**
+     * Collects the intersections of a sub-tree
+     * @param node          the root of the sub-tree
+     * @param ray           the ray
+     * @param inverse       the inverse of the ray direction coordinates
+     * @param intersections the collected intersections
+     */
+    private void intersections(Node node, Ray ray, double[] inverse, List<Intersection> intersections) {
+        if (boxDistance(node.box, ray.getP0(), inverse, Double.POSITIVE_INFINITY) == Double.POSITIVE_INFINITY)
+            return;
+        if (node.isLeaf()) {
+            node.object.collectIntersectionsHelper(ray, intersections);
+            return;
+        }
+        intersections(node.left, ray, inverse, intersections);
+        intersections(node.right, ray, inverse, intersections);
+    }
+
+    /**
+     * Finds the closest hit in a sub-tree whose box is hit before the recorded hit,
+     * visiting the child whose box is entered first before the other
+     * @param node    the root of the sub-tree
+     * @param ray     the ray
+     * @param inverse the inverse of the ray direction coordinates
+     * @param tMin    the minimal distance (exclusive)
+     * @param hit     the closest hit so far, updated if a closer hit is found
+     * @return true if a closer hit was found
+     */
+    private boolean closest(Node node, Ray ray, double[] inverse, double tMin, HitRecord hit) {
+        if (node.isLeaf()) return node.object.calculateClosestHitHelper(ray, tMin, hit);
+
+        Node near = node.left;
+        Node far = node.right;
+        double nearDistance = boxDistance(near.box, ray.getP0(), inverse, hit.t);
+        double farDistance = boxDistance(far.box, ray.getP0(), inverse, hit.t);
+        if (farDistance < nearDistance) {
+            Node temp = near;
+            near = far;
+            far = temp;
+            double tempDistance = nearDistance;
+            nearDistance = farDistance;
+            farDistance = tempDistance;
+        }
+        boolean found = false;
+        if (nearDistance != Double.POSITIVE_INFINITY) {
+            found = closest(near, ray, inverse, tMin, hit);
+        }
+        if (farDistance < hit.t && closest(far, ray, inverse, tMin, hit)) {
+            found = true;
+        }
+        return found;
+    }
+
+    /**
+     * Calculates the transparency of a sub-tree, stopping when the ray is blocked
+     * @param node        the root of the sub-tree
+     * @param ray         the ray
+     * @param inverse     the inverse of the ray direction coordinates
+     * @param maxDistance the maximal distance (exclusive)
+     * @param ktr         the transparency product accumulated so far
+     * @param minK        the minimal value of the product that still needs calculation
+     * @return the transparency product including the sub-tree
+     */
+    private Double3 transparency(Node node, Ray ray, double[] inverse, double maxDistance, Double3 ktr, double minK) {
+        if (boxDistance(node.box, ray.getP0(), inverse, maxDistance) == Double.POSITIVE_INFINITY) return ktr;
+        if (node.isLeaf()) return node.object.calculateTransparencyHelper(ray, maxDistance, ktr, minK);
+        ktr = transparency(node.left, ray, inverse, maxDistance, ktr, minK);
+        if (ktr.lowerThan(minK)) return ktr;
+        return transparency(node.right, ray, inverse, maxDistance, ktr, minK);
+    }
+
+    /**
+     * Finds the node whose sibling a new leaf should be: descends from the root as long as
+     * the SAH cost of pairing the leaf with a child is lower than pairing it with the node
+     * @param box the box of the new leaf
+     * @return the sibling node
+     */
+    private Node findSibling(double[] box) {
+        double[] combined = new double[6];
+        Node node = root;
+        while (!node.isLeaf()) {
+            double area = BVHBuilder.surfaceArea(node.box);
+            union(combined, node.box, box);
+            double combinedArea = BVHBuilder.surfaceArea(combined);
+            // the cost of a new parent of the node and the leaf
+            double cost = 2 * combinedArea;
+            // the growth of the node box that any deeper placement adds
+            double inheritance = 2 * (combinedArea - area);
+            double leftCost = descendCost(node.left, box, combined) + inheritance;
+            double rightCost = descendCost(node.right, box, combined) + inheritance;
+            if (cost < leftCost && cost < rightCost) break;
+            node = leftCost < rightCost ? node.left : node.right;
+        }
+        return node;
+    }
+
+    /**
+     * Calculates the lower bound of the cost of placing a new leaf under a child
+     * @param child    the child
+     * @param box      the box of the new leaf
+     * @param combined a temporary box
+     * @return the cost
+     */
+    private double descendCost(Node child, double[] box, double[] combined) {
+        union(combined, child.box, box);
+        double area = BVHBuilder.surfaceArea(combined);
+        return child.isLeaf() ? area : area - BVHBuilder.surfaceArea(child.box);
+    }
+
+    /**
+     * Recalculates the boxes of a node and its ancestors, rotating each one if it improves the tree
+     * @param node the lowest changed node, null for none
+     */
+    private void update(Node node) {
+        while (node != null) {
+            union(node.box, node.left.box, node.right.box);
+            rotate(node);
+            node = node.parent;
+        }
+    }
+
+    /**
+     * Tries to swap a child of a node with a grandchild under the other child,
+     * choosing the swap that reduces the surface area of the other child the most
+     * @param node the node
+     */
+    private void rotate(Node node) {
+        Node left = node.left;
+        Node right = node.right;
+        double[] box = new double[6];
+        double best = 0;
+        Node child = null;
+        Node grandchild = null;
+
+        if (!right.isLeaf()) {
+            double area = BVHBuilder.surfaceArea(right.box);
+            union(box, left.box, right.right.box);
+            double gain = BVHBuilder.surfaceArea(box) - area;
+            if (gain < best) { best = gain; child = left; grandchild = right.left; }
+            union(box, right.left.box, left.box);
+            gain = BVHBuilder.surfaceArea(box) - area;
+            if (gain < best) { best = gain; child = left; grandchild = right.right; }
+        }
+        if (!left.isLeaf()) {
+            double area = BVHBuilder.surfaceArea(left.box);
+            union(box, right.box, left.right.box);
+            double gain = BVHBuilder.surfaceArea(box) - area;
+            if (gain < best) { best = gain; child = right; grandchild = left.left; }
+            union(box, left.left.box, right.box);
+            gain = BVHBuilder.surfaceArea(box) - area;
+            if (gain < best) { child = right; grandchild = left.right; }
+        }
+        if (child == null) return;
+
+        Node other = grandchild.parent;
+        replaceChild(node, child, grandchild);
+        replaceChild(other, grandchild, child);
+        union(other.box, other.left.box, other.right.box);
+    }
+
+    /**
+     * Replaces a child of a node with another node
+     * @param parent   the parent, null to replace the root
+     * @param child    the current child
+     * @param newChild the new child
+     */
+    private void replaceChild(Node parent, Node child, Node newChild) {
+        if (parent == null) root = newChild;
+        else if (parent.left == child) parent.left = newChild;
+        else parent.right = newChild;
+        newChild.parent = parent;
+    }
+
+    /**
+     * Recalculates the boxes of a sub-tree bottom-up. A leaf whose object has no finite
+     * bounding box anymore keeps its old box until it is removed.
+     * @param node the root of the sub-tree
+     * @param lost filled with the objects that have no finite bounding box anymore
+     */
+    private void refit(Node node, List<Intersectable> lost) {
+        if (node.isLeaf()) {
+            AABB box = node.object.getBoundingBox();
+            if (box == null || !box.isFinite()) lost.add(node.object);
+            else setBox(node.box, box);
+            return;
+        }
+        refit(node.left, lost);
+        refit(node.right, lost);
+        union(node.box, node.left.box, node.right.box);
+    }
+
+    /**
+     * Calculates the total surface area of the inner nodes of a sub-tree
+     * @param node the root of the sub-tree
+     * @return the sum of the surface areas
+     */
+    private double innerArea(Node node) {
+        if (node == null || node.isLeaf()) return 0;
+        return BVHBuilder.surfaceArea(node.box) + innerArea(node.left) + innerArea(node.right);
+    }
+
+    /**
+     * Copies an AABB into box coordinates
+     * @param box  the box coordinates
+     * @param aabb the AABB
+     */
+    private static void setBox(double[] box, AABB aabb) {
+        for (int axis = 0; axis < 3; axis++) {
+            box[axis] = aabb.getMin().getCoordinate(axis);
+            box[axis + 3] = aabb.getMax().getCoordinate(axis);
+        }
+    }
+
+    /**
+     * Calculates the union of two boxes
+     * @param result the box to fill, may be one of the boxes
+     * @param a      the first box
+     * @param b      the second box
+     */
+    private static void union(double[] result, double[] a, double[] b) {
+        for (int axis = 0; axis < 3; axis++) {
+            result[axis] = Math.min(a[axis], b[axis]);
+            result[axis + 3] = Math.max(a[axis + 3], b[axis + 3]);
+        }
+    }
+
+    /**
+     * Calculates the inverse of the ray direction coordinates
+     * @param ray the ray
+     * @return the inverse coordinates
+     */
+    private static double[] inverse(Ray ray) {
+        Vector dir = ray.getDir();
+        return new double[]{1 / dir.getCoordinate(0), 1 / dir.getCoordinate(1), 1 / dir.getCoordinate(2)};
+    }
+
+    /**
+     * Calculates the distance along a ray to the entry into a box with {@link BVHBuilder#boxDistance}
+     * @param box     the box coordinates
+     * @param p0      the ray origin
+     * @param inverse the inverse of the ray direction coordinates
+     * @param tMax    the maximal distance
+     * @return the entry distance (0 if the origin is inside), or positive infinity if the box is missed
+     */
+    private static double boxDistance(double[] box, Point p0, double[] inverse, double tMax) {
+        return BVHBuilder.boxDistance(box[0], box[1], box[2], box[3], box[4], box[5],
+                p0.getCoordinate(0), p0.getCoordinate(1), p0.getCoordinate(2),
+                inverse[0], inverse[1], inverse[2], tMax);
+    }
+}
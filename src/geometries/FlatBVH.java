@@ -0,0 +1,583 @@
+package geometries;
+
+import primitives.AABB;
+import primitives.Double3;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * FlatBVH is a compiled bounding volume hierarchy stored in flat arrays.<br>
+ * The nodes are stored in depth-first order, so the left child of a node is always
+ * the node right after it. For each node the arrays hold:
+ * <ul>
+ * <li>bounds - 6 values: min x,y,z then max x,y,z</li>
+ * <li>nodes - 2 values: the index of the right child (inner node) or of the first
+ * primitive (leaf), and the amount of primitives (0 for an inner node)</li>
+ * </ul>
+ * The primitives are reordered so the primitives of each leaf are consecutive.
+ * The traversal is a loop over an explicit stack instead of recursive calls.<br>
+ * An object may appear in several leaves (after spatial splits), then each thread keeps a
+ * {@link Mailbox} so the object is tested only once per ray, also by every ray of a packet.<br>
+ * A packet of rays is traversed together: every node is fetched once for the whole packet, the
+ * node is culled at once when the interval bounds of the packet miss its box, and otherwise the
+ * rays before the first ray that hits the box are inactive in the whole sub-hierarchy.<br>
+ * While {@link BVHStatistics} are collected, every traversal adds its visited nodes and tested primitives,
+ * and every ray of a packet adds the nodes whose boxes it enters and the primitives it tests.
+ * @author Jeshurun and Binyamin
+ */
+public class FlatBVH extends Intersectable {
+    /*** The bounds of the nodes, 6 values per node*/
+    private final double[] bounds;
+    /*** The offsets and the primitive counts of the nodes, 2 values per node*/
+    private final int[] nodes;
+    /*** The primitives in leaf order*/
+    private final Intersectable[] primitives;
+    /*** The index of the distinct object of each primitive, null if every object appears once*/
+    private final int[] objectIds;
+    /*** The mailboxes of the threads, null if every object appears once*/
+    private final ThreadLocal<Mailbox> mailboxes;
+    /*** The size of the traversal stack, the depth of the tree*/
+    private final int stackSize;
+    /*** The bounding box of the whole hierarchy*/
+    private final AABB box;
+    /*** The statistics the traversals are recorded into, null when they are not collected*/
+    private volatile BVHStatistics statistics;
+
+    /**
+     * Constructor that compiles a hierarchy of {@link BVHNode}s into flat arrays.
+     * Any object that is not a BVHNode becomes a leaf, the objects of a {@link Geometries}
+     * become the primitives of a single leaf.
+     * @param root the root of the hierarchy
+     */
+    public FlatBVH(Intersectable root) {
+        Compiler compiler = new Compiler();
+        compiler.compile(root, 1);
+        bounds = Arrays.copyOf(compiler.bounds, 6 * compiler.nodeCount);
+        nodes = Arrays.copyOf(compiler.nodes, 2 * compiler.nodeCount);
+        primitives = compiler.primitives.toArray(new Intersectable[0]);
+        objectIds = Mailbox.objectIds(primitives);
+        if (objectIds == null)
+            mailboxes = null;
+        else {
+            int distinct = Arrays.stream(objectIds).max().orElse(-1) + 1;
+            mailboxes = ThreadLocal.withInitial(() -> new Mailbox(distinct));
+        }
+        stackSize = compiler.depth;
+        box = root.getBoundingBox();
+    }
+
+    /**
+     * Returns the amount of nodes in the hierarchy
+     * @return the amount of nodes
+     */
+    public int getNodeCount() {
+        return nodes.length / 2;
+    }
+
+    /**
+     * Calculates the statistics of the hierarchy and starts recording the traversals into them
+     * @return the statistics
+     */
+    public BVHStatistics collectStatistics() {
+        statistics = BVHStatistics.of(this);
+        return statistics;
+    }
+
+    /**
+     * Stops recording the traversals into the collected statistics
+     */
+    public void stopStatistics() {
+        statistics = null;
+    }
+
+    @Override
+    public AABB getBoundingBox() {
+        return box;
+    }
+
+    @Override
+    protected List<Intersection> calculateIntersectionsHelper(Ray ray) {
+        List<Intersection> intersections = new ArrayList<>();
+        collectIntersectionsHelper(ray, intersections);
+        return intersections.isEmpty() ? null : intersections;
+    }
+
+    @Override
+    protected void collectIntersectionsHelper(Ray ray, List<Intersection> intersections) {
+        if (nodes.length == 0) {
+            record(null, 0, 0);
+            return;
+        }
+        Point p0 = ray.getP0();
+        Vector dir = ray.getDir();
+        double ox = p0.getCoordinate(0), oy = p0.getCoordinate(1), oz = p0.getCoordinate(2);
+        double ix = 1 / dir.getCoordinate(0), iy = 1 / dir.getCoordinate(1), iz = 1 / dir.getCoordinate(2);
+
+        int visited = 0;
+        int tested = 0;
+        Mailbox mailbox = mailboxes == null ? null : mailboxes.get().next();
+        int[] stack = new int[stackSize];
+        int top = 0;
+        int node = 0;
+        while (true) {
+            if (hitsBox(node, ox, oy, oz, ix, iy, iz, Double.POSITIVE_INFINITY)) {
+                ++visited;
+                int count = nodes[2 * node + 1];
+                if (count == 0) {
+                    // visit the left child now and the right child later
+                    stack[top++] = nodes[2 * node];
+                    ++node;
+                    continue;
+                }
+                int first = nodes[2 * node];
+                for (int i = first; i < first + count; i++) {
+                    if (mailbox != null && !mailbox.check(objectIds[i])) continue;
+                    ++tested;
+                    primitives[i].collectIntersectionsHelper(ray, intersections);
+                }
+            }
+            if (top == 0) {
+                record(null, visited, tested);
+                return;
+            }
+            node = stack[--top];
+        }
+    }
+
+    @Override
+    protected boolean calculateClosestHitHelper(Ray ray, double tMin, HitRecord hit) {
+        if (nodes.length == 0) return record(false, 0, 0);
+        Point p0 = ray.getP0();
+        Vector dir = ray.getDir();
+        double ox = p0.getCoordinate(0), oy = p0.getCoordinate(1), oz = p0.getCoordinate(2);
+        double ix = 1 / dir.getCoordinate(0), iy = 1 / dir.getCoordinate(1), iz = 1 / dir.getCoordinate(2);
+        if (!hitsBox(0, ox, oy, oz, ix, iy, iz, hit.t)) return record(false, 0, 0);
+
+        boolean found = false;
+        int visited = 0;
+        int tested = 0;
+        Mailbox mailbox = mailboxes == null ? null : mailboxes.get().next();
+        // the postponed further children with the distances to their boxes
+        int[] stack = new int[stackSize];
+        double[] distances = new double[stackSize];
+        int top = 0;
+        int node = 0;
+        while (true) {
+            ++visited;
+            int count = nodes[2 * node + 1];
+            if (count == 0) {
+                int near = node + 1;
+                int far = nodes[2 * node];
+                double nearDistance = boxDistance(near, ox, oy, oz, ix, iy, iz, hit.t);
+                double farDistance = boxDistance(far, ox, oy, oz, ix, iy, iz, hit.t);
+                if (farDistance < nearDistance) {
+                    int temp = near;
+                    near = far;
+                    far = temp;
+                    double tempDistance = nearDistance;
+                    nearDistance = farDistance;
+                    farDistance = tempDistance;
+                }
+                if (nearDistance != Double.POSITIVE_INFINITY) {
+                    if (farDistance != Double.POSITIVE_INFINITY) {
+                        stack[top] = far;
+                        distances[top++] = farDistance;
+                    }
+                    node = near;
+                    continue;
+                }
+            } else {
+                int first = nodes[2 * node];
+                for (int i = first; i < first + count; i++) {
+                    if (mailbox != null && !mailbox.check(objectIds[i])) continue;
+                    ++tested;
+                    if (primitives[i].calculateClosestHitHelper(ray, tMin, hit)) found = true;
+                }
+            }
+            // continue with a postponed node that starts before the closest hit
+            do {
+                if (top == 0) return record(found, visited, tested);
+                node = stack[--top];
+            } while (distances[top] >= hit.t);
+        }
+    }
+
+    @Override
+    protected void calculateClosestIntersectionsHelper(Ray[] rays, double[] tMax, Intersection[] closest) {
+        int n = rays.length;
+        if (nodes.length == 0 || n == 0) {
+            for (int r = 0; r < n; r++) record(null, 0, 0);
+            return;
+        }
+        Packet packet = new Packet(rays);
+        HitRecord hit = new HitRecord();
+        Mailbox mailbox = mailboxes == null ? null : mailboxes.get().nextPacket(n);
+        // the nodes each ray enters and the primitives it tests, counted only for statistics
+        int[] visited = statistics == null ? null : new int[n];
+        int[] tested = statistics == null ? null : new int[n];
+        // the postponed further children with the first active ray of each
+        int[] stack = new int[stackSize];
+        int[] firstStack = new int[stackSize];
+        int top = 0;
+        int node = 0;
+        int first = 0;
+        while (true) {
+            first = firstHit(packet, node, first, tMax);
+            if (first >= 0) {
+                if (visited != null)
+                    for (int r = first; r < n; r++)
+                        if (packet.boxDistance(node, r, tMax[r]) != Double.POSITIVE_INFINITY) ++visited[r];
+                int count = nodes[2 * node + 1];
+                if (count == 0) {
+                    // visit first the child that is nearer to the first active ray
+                    int near = node + 1;
+                    int far = nodes[2 * node];
+                    if (packet.boxDistance(far, first, tMax[first]) < packet.boxDistance(near, first, tMax[first])) {
+                        int temp = near;
+                        near = far;
+                        far = temp;
+                    }
+                    stack[top] = far;
+                    firstStack[top++] = first;
+                    node = near;
+                    continue;
+                }
+                int start = nodes[2 * node];
+                for (int r = first; r < n; r++) {
+                    if (packet.boxDistance(node, r, tMax[r]) == Double.POSITIVE_INFINITY) continue;
+                    boolean found = false;
+                    hit.reset(tMax[r]);
+                    for (int i = start; i < start + count; i++) {
+                        if (mailbox != null && !mailbox.check(objectIds[i], r)) continue;
+                        if (tested != null) ++tested[r];
+                        if (primitives[i].calculateClosestHitHelper(rays[r], 0, hit)) found = true;
+                    }
+                    if (found) {
+                        closest[r] = hit.toIntersection(rays[r]);
+                        tMax[r] = hit.t;
+                    }
+                }
+            }
+            if (top == 0) break;
+            node = stack[--top];
+            first = firstStack[top];
+        }
+        if (tested != null)
+            for (int r = 0; r < n; r++) record(null, visited[r], tested[r]);
+    }
+
+    /**
+     * Finds the first active ray of a packet that hits the box of a node
+     * @param packet the packet
+     * @param node   the node index
+     * @param first  the first active ray
+     * @param tMax   the maximal distance of each ray
+     * @return the index of the first ray from the active ones that hits the box, or -1 if none does
+     */
+    private int firstHit(Packet packet, int node, int first, double[] tMax) {
+        if (packet.misses(node)) return -1;
+        for (int r = first; r < tMax.length; r++)
+            if (packet.boxDistance(node, r, tMax[r]) != Double.POSITIVE_INFINITY) return r;
+        return -1;
+    }
+
+    @Override
+    protected Double3 calculateTransparencyHelper(Ray ray, double maxDistance, Double3 ktr, double minK) {
+        if (nodes.length == 0) return record(ktr, 0, 0);
+        Point p0 = ray.getP0();
+        Vector dir = ray.getDir();
+        double ox = p0.getCoordinate(0), oy = p0.getCoordinate(1), oz = p0.getCoordinate(2);
+        double ix = 1 / dir.getCoordinate(0), iy = 1 / dir.getCoordinate(1), iz = 1 / dir.getCoordinate(2);
+
+        int visited = 0;
+        int tested = 0;
+        Mailbox mailbox = mailboxes == null ? null : mailboxes.get().next();
+        int[] stack = new int[stackSize];
+        int top = 0;
+        int node = 0;
+        while (true) {
+            if (hitsBox(node, ox, oy, oz, ix, iy, iz, maxDistance)) {
+                ++visited;
+                int count = nodes[2 * node + 1];
+                if (count == 0) {
+                    stack[top++] = nodes[2 * node];
+                    ++node;
+                    continue;
+                }
+                int first = nodes[2 * node];
+                for (int i = first; i < first + count; i++) {
+                    if (mailbox != null && !mailbox.check(objectIds[i])) continue;
+                    ++tested;
+                    ktr = primitives[i].calculateTransparencyHelper(ray, maxDistance, ktr, minK);
+                    if (ktr.lowerThan(minK)) return record(ktr, visited, tested); // the ray is blocked
+                }
+            }
+            if (top == 0) return record(ktr, visited, tested);
+            node = stack[--top];
+        }
+    }
+
+    /**
+     * Records the traversal of a ray into the statistics, if they are collected
+     * @param result  the result of the traversal
+     * @param visited the amount of visited nodes
+     * @param tested  the amount of tested primitives
+     * @param <T>     the type of the result
+     * @return the result
+     */
+    private <T> T record(T result, int visited, int tested) {
+        BVHStatistics current = statistics;
+        if (current != null) current.record(visited, tested);
+        return result;
+    }
+
+    /**
+     * Adds the structure of the hierarchy to statistics
+     * @param statistics the statistics
+     */
+    void collect(BVHStatistics statistics) {
+        if (nodes.length == 0) return;
+        statistics.setRootArea(BVHBuilder.surfaceArea(nodeBox(0)));
+        collect(statistics, 0, 1);
+    }
+
+    /**
+     * Adds a node and its sub-hierarchy to statistics
+     * @param statistics the statistics
+     * @param node       the node index
+     * @param depth      the depth of the node
+     */
+    private void collect(BVHStatistics statistics, int node, int depth) {
+        double area = BVHBuilder.surfaceArea(nodeBox(node));
+        int count = nodes[2 * node + 1];
+        if (count != 0) {
+            statistics.addLeaf(depth, area, count);
+            return;
+        }
+        int right = nodes[2 * node];
+        statistics.addInner(depth, area, new double[][]{nodeBox(node + 1), nodeBox(right)}, 2);
+        collect(statistics, node + 1, depth + 1);
+        collect(statistics, right, depth + 1);
+    }
+
+    /**
+     * Copies the box of a node
+     * @param node the node index
+     * @return the box as min x,y,z and max x,y,z
+     */
+    private double[] nodeBox(int node) {
+        return Arrays.copyOfRange(bounds, 6 * node, 6 * node + 6);
+    }
+
+    /**
+     * Checks whether the ray hits the box of a node before a maximal distance
+     * @param node the node index
+     * @param ox   the x coordinate of the ray origin
+     * @param oy   the y coordinate of the ray origin
+     * @param oz   the z coordinate of the ray origin
+     * @param ix   the inverse of the x coordinate of the ray direction
+     * @param iy   the inverse of the y coordinate of the ray direction
+     * @param iz   the inverse of the z coordinate of the ray direction
+     * @param tMax the maximal distance
+     * @return true if the box is hit in front of the ray origin and before the maximal distance
+     */
+    private boolean hitsBox(int node, double ox, double oy, double oz,
+                            double ix, double iy, double iz, double tMax) {
+        return boxDistance(node, ox, oy, oz, ix, iy, iz, tMax) != Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Calculates the distance along the ray to the entry into the box of a node with {@link BVHBuilder#boxDistance}
+     * @param node the node index
+     * @param ox   the x coordinate of the ray origin
+     * @param oy   the y coordinate of the ray origin
+     * @param oz   the z coordinate of the ray origin
+     * @param ix   the inverse of the x coordinate of the ray direction
+     * @param iy   the inverse of the y coordinate of the ray direction
+     * @param iz   the inverse of the z coordinate of the ray direction
+     * @param tMax the maximal distance
+     * @return the entry distance (0 if the origin is inside), or positive infinity if the box is missed
+     */
+    private double boxDistance(int node, double ox, double oy, double oz,
+                               double ix, double iy, double iz, double tMax) {
+        int b = 6 * node;
+        return BVHBuilder.boxDistance(bounds[b], bounds[b + 1], bounds[b + 2],
+                bounds[b + 3], bounds[b + 4], bounds[b + 5], ox, oy, oz, ix, iy, iz, tMax);
+    }
+
+    /**
+     * The origins and the inverse directions of a packet of rays, and their intervals on each axis
+     * for culling a box for the whole packet
+     */
+    private class Packet {
+        /*** The origin coordinates of the rays, 3 values per ray*/
+        final double[] origins;
+        /*** The inverse direction coordinates of the rays, 3 values per ray*/
+        final double[] inverses;
+        /*** The minimal origin coordinate on each axis*/
+        final double[] originLow = new double[3];
+        /*** The maximal origin coordinate on each axis*/
+        final double[] originHigh = new double[3];
+        /*** The minimal inverse direction coordinate on each axis*/
+        final double[] inverseLow = new double[3];
+        /*** The maximal inverse direction coordinate on each axis*/
+        final double[] inverseHigh = new double[3];
+        /*** Whether the directions of all the rays have the same sign and a finite inverse on each axis*/
+        final boolean[] coherent = new boolean[3];
+
+        /**
+         * Gathers the ray data of a packet
+         * @param rays the rays
+         */
+        Packet(Ray[] rays) {
+            int n = rays.length;
+            origins = new double[3 * n];
+            inverses = new double[3 * n];
+            for (int r = 0; r < n; r++) {
+                Point p0 = rays[r].getP0();
+                Vector dir = rays[r].getDir();
+                for (int axis = 0; axis < 3; axis++) {
+                    origins[3 * r + axis] = p0.getCoordinate(axis);
+                    inverses[3 * r + axis] = 1 / dir.getCoordinate(axis);
+                }
+            }
+            for (int axis = 0; axis < 3; axis++) {
+                originLow[axis] = originHigh[axis] = origins[axis];
+                inverseLow[axis] = inverseHigh[axis] = inverses[axis];
+                for (int r = 1; r < n; r++) {
+                    originLow[axis] = Math.min(originLow[axis], origins[3 * r + axis]);
+                    originHigh[axis] = Math.max(originHigh[axis], origins[3 * r + axis]);
+                    inverseLow[axis] = Math.min(inverseLow[axis], inverses[3 * r + axis]);
+                    inverseHigh[axis] = Math.max(inverseHigh[axis], inverses[3 * r + axis]);
+                }
+                coherent[axis] = Double.isFinite(inverseLow[axis]) && Double.isFinite(inverseHigh[axis])
+                        && (inverseLow[axis] > 0 || inverseHigh[axis] < 0);
+            }
+        }
+
+        /**
+         * Checks by interval arithmetic whether all the rays of the packet miss the box of a node.
+         * On every coherent axis the entry distances of the rays are at least the lowest product of
+         * the intervals and the exit distances are at most the highest one.
+         * @param node the node index
+         * @return true if all the rays surely miss the box, false if some ray may hit it
+         */
+        boolean misses(int node) {
+            int b = 6 * node;
+            double near = 0;
+            double far = Double.POSITIVE_INFINITY;
+            for (int axis = 0; axis < 3; axis++) {
+                if (!coherent[axis]) continue;
+                boolean positive = inverseLow[axis] > 0;
+                double nearPlane = bounds[b + (positive ? axis : axis + 3)];
+                double farPlane = bounds[b + (positive ? axis + 3 : axis)];
+                near = Math.max(near, lowProduct(nearPlane - originHigh[axis], nearPlane - originLow[axis],
+                        inverseLow[axis], inverseHigh[axis]));
+                far = Math.min(far, -lowProduct(originHigh[axis] - farPlane, originLow[axis] - farPlane,
+                        inverseLow[axis], inverseHigh[axis]));
+            }
+            return near > far;
+        }
+
+        /**
+         * Calculates the distance along a ray of the packet to the entry into the box of a node
+         * @param node the node index
+         * @param r    the ray index
+         * @param tMax the maximal distance of the ray
+         * @return the entry distance (0 if the origin is inside), or positive infinity if the box is missed
+         */
+        double boxDistance(int node, int r, double tMax) {
+            return FlatBVH.this.boxDistance(node, origins[3 * r], origins[3 * r + 1], origins[3 * r + 2],
+                    inverses[3 * r], inverses[3 * r + 1], inverses[3 * r + 2], tMax);
+        }
+
+        /**
+         * Calculates the lowest product of two intervals
+         * @param a0 the low end of the first interval
+         * @param a1 the high end of the first interval
+         * @param b0 the low end of the second interval
+         * @param b1 the high end of the second interval
+         * @return the lowest product of values of the intervals
+         */
+        private static double lowProduct(double a0, double a1, double b0, double b1) {
+            return Math.min(Math.min(a0 * b0, a0 * b1), Math.min(a1 * b0, a1 * b1));
+        }
+    }
+
+    /**
+     * Compiler of a pointer based hierarchy into growing arrays in depth-first order
+     */
+    private static class Compiler {
+        /*** The bounds of the compiled nodes*/
+        double[] bounds = new double[6 * 64];
+        /*** The offsets and the counts of the compiled nodes*/
+        int[] nodes = new int[2 * 64];
+        /*** The amount of compiled nodes*/
+        int nodeCount = 0;
+        /*** The primitives in leaf order*/
+        final List<Intersectable> primitives = new ArrayList<>();
+        /*** The maximal depth of the compiled nodes*/
+        int depth = 0;
+
+        /**
+         * Compiles a node and its sub-hierarchy
+         * @param node  the node
+         * @param depth the depth of the node
+         */
+        void compile(Intersectable node, int depth) {
+            this.depth = Math.max(this.depth, depth);
+            int index = nodeCount++;
+            if (2 * nodeCount > nodes.length) {
+                bounds = Arrays.copyOf(bounds, 2 * bounds.length);
+                nodes = Arrays.copyOf(nodes, 2 * nodes.length);
+            }
+            AABB box = node.getBoundingBox();
+            for (int axis = 0; axis < 3; axis++) {
+                bounds[6 * index + axis] = box.getMin().getCoordinate(axis);
+                bounds[6 * index + 3 + axis] = box.getMax().getCoordinate(axis);
+            }
+            nodes[2 * index] = 0;
+            nodes[2 * index + 1] = 0;
+
+            if (node instanceof BVHNode inner) {
+                Intersectable left = inner.getLeft();
+                Intersectable right = inner.getRight();
+                if (left != null && right != null) {
+                    compile(left, depth + 1);
+                    nodes[2 * index] = nodeCount;
+                    compile(right, depth + 1);
+                    return;
+                }
+                // a node with a single child is a leaf of that child
+                Intersectable child = left != null ? left : right;
+                if (child != null && !(child instanceof BVHNode)) {
+                    leaf(index, child);
+                    return;
+                }
+                // replace the node with its only child
+                nodeCount = index;
+                if (child != null) compile(child, depth);
+                return;
+            }
+            leaf(index, node);
+        }
+
+        /**
+         * Fills a leaf node with the primitives of an object
+         * @param index  the node index
+         * @param object the object
+         */
+        private void leaf(int index, Intersectable object) {
+            int first = primitives.size();
+            if (object instanceof Geometries geometries) primitives.addAll(geometries.geometries);
+            else primitives.add(object);
+            nodes[2 * index] = first;
+            nodes[2 * index + 1] = primitives.size() - first;
+        }
+    }
+}
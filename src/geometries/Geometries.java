@@ -1,6 +1,7 @@
 package geometries;
 
 import primitives.AABB;
+import primitives.Double3;
 import primitives.Ray;
 
 import java.util.ArrayList;
@@ -12,6 +13,10 @@ public class Geometries extends Intersectable {
      * List of geometries
      */
     public final List<Intersectable> geometries = new java.util.LinkedList<>();
+    /**
+     * The dynamic hierarchy that holds the geometries after {@link #dynamicBVH()}, null if there is none
+     */
+    private DynamicBVH dynamic;
 
     /**
      * Default constructor
@@ -41,34 +46,132 @@ public class Geometries extends Intersectable {
 
 
     /**
-     * the method put all the geometries in a BVH tree
+     * the method put all the geometries in a BVH tree built with the surface area heuristic
      */
     public void BVH(){
-        if (geometries.isEmpty()) {
+        BVH(new BVHBuilder());
+    }
+
+    /**
+     * the method put all the geometries in a BVH tree
+     * @param builder the builder of the tree
+     */
+    public void BVH(BVHBuilder builder){
+        List<Intersectable> objects = dynamic != null ? dynamic.getObjects() : geometries;
+        if (objects.isEmpty()) {
             return; // No geometries to build BVH
         }
-        Intersectable bvhRoot = new BVHNode(geometries);
+        Intersectable bvhRoot = builder.build(objects);
+        dynamic = null;
+        geometries.clear();
+        if (bvhRoot instanceof Geometries split) {
+            geometries.addAll(split.geometries); // the tree of the bounded geometries and the unbounded ones
+        } else if (bvhRoot != null) {
+            geometries.add(bvhRoot);
+        }
+    }
+
+    /**
+     * the method put all the geometries in a kd-tree built with the surface area heuristic
+     */
+    public void KDTree(){
+        List<Intersectable> objects = dynamic != null ? dynamic.getObjects() : geometries;
+        if (objects.isEmpty()) {
+            return; // No geometries to build the tree
+        }
+        KDTree tree = new KDTree(objects);
+        dynamic = null;
         geometries.clear();
-        geometries.add(bvhRoot);
+        geometries.add(tree);
+    }
+
+    /**
+     * the method put all the geometries in a dynamic BVH tree, after it the geometries that are
+     * added or removed are inserted into the tree or removed from it, and moved geometries are
+     * updated by {@link #refit(Intersectable)}
+     */
+    public void dynamicBVH(){
+        if (dynamic != null) {
+            return; // already dynamic
+        }
+        dynamic = new DynamicBVH(geometries);
+        geometries.clear();
+        geometries.add(dynamic);
     }
 
     /**
      * Method to add a list of geometries to the list
      * @param geometries the list of geometries to add
      */
-    public void add(List<? extends Intersectable> geometries) { this.geometries.addAll(geometries);}
+    public void add(List<? extends Intersectable> geometries) {
+        if (dynamic == null) {
+            this.geometries.addAll(geometries);
+            return;
+        }
+        for (Intersectable geometry : geometries) dynamic.insert(geometry);
+    }
+
+    /**
+     * Method to remove a geometry
+     * @param geometry the geometry to remove
+     * @return true if the geometry was removed
+     */
+    public boolean remove(Intersectable geometry) {
+        return dynamic != null ? dynamic.remove(geometry) : geometries.remove(geometry);
+    }
+
+    /**
+     * Updates the dynamic BVH tree after a geometry moved, a list of geometries needs no update
+     * @param geometry the moved geometry
+     */
+    public void refit(Intersectable geometry) {
+        if (dynamic != null) dynamic.refit(geometry);
+    }
+
+    /**
+     * Updates the whole dynamic BVH tree after many geometries moved, a list of geometries needs no update
+     */
+    public void refit() {
+        if (dynamic != null) dynamic.refit();
+    }
 
     @Override
     public List<Intersection> calculateIntersectionsHelper(Ray ray) {
         List<Intersection> intersections = new ArrayList<>();
+        collectIntersectionsHelper(ray, intersections);
+        return intersections.isEmpty() ? null : intersections;
+    }
+
+    @Override
+    protected void collectIntersectionsHelper(Ray ray, List<Intersection> intersections) {
+        for (Intersectable geometry : geometries)
+            geometry.collectIntersectionsHelper(ray, intersections);
+    }
 
+    @Override
+    protected boolean calculateClosestHitHelper(Ray ray, double tMin, HitRecord hit) {
+        boolean found = false;
         for (Intersectable geometry : geometries) {
-            List<Intersection> geometryIntersections = geometry.calculateIntersectionsHelper(ray);
-            if (geometryIntersections != null) {
-                intersections.addAll(geometryIntersections);
-            }
+            // a hit shortens the recorded distance, so the next geometries must be closer
+            if (geometry.calculateClosestHitHelper(ray, tMin, hit)) found = true;
         }
-        return intersections.isEmpty() ? null : intersections;
+        return found;
+    }
+
+    @Override
+    protected void calculateClosestIntersectionsHelper(Ray[] rays, double[] tMax, Intersection[] closest) {
+        // every geometry shortens the maximal distances for the next ones
+        for (Intersectable geometry : geometries)
+            geometry.calculateClosestIntersectionsHelper(rays, tMax, closest);
+    }
+
+    @Override
+    protected Double3 calculateTransparencyHelper(Ray ray, double maxDistance, Double3 ktr, double minK) {
+        for (Intersectable geometry : geometries) {
+            ktr = geometry.calculateTransparencyHelper(ray, maxDistance, ktr, minK);
+            if (ktr.lowerThan(minK)) return ktr; // the ray is blocked
+        }
+        return ktr;
     }
 
     @Override
@@ -77,9 +180,11 @@ public class Geometries extends Intersectable {
             return null; // No geometries to calculate bounding box
         }
 
-        AABB box = geometries.getFirst().getBoundingBox();
-        for (int i = 1; i < geometries.size(); i++) {
-            box = AABB.surroundingBox(box, geometries.get(i).getBoundingBox());
+        AABB box = null;
+        for (Intersectable geometry : geometries) {
+            AABB geometryBox = geometry.getBoundingBox();
+            if (geometryBox == null) continue; // an empty group has nothing to bound
+            box = box == null ? geometryBox : AABB.surroundingBox(box, geometryBox);
         }
         return box;
     }
@@ -13,6 +13,22 @@ public abstract class Geometry extends Intersectable {
     protected Color emission = Color.BLACK;
     /***The material of the geometry*/
     private Material material = new Material();
+
+    /**
+     * Default constructor of a black geometry with the default material
+     */
+    protected Geometry() {
+    }
+
+    /**
+     * Constructor of a geometry with the emission and the material of another geometry
+     * @param appearance the geometry whose emission and material are taken
+     */
+    Geometry(Geometry appearance) {
+        emission = appearance.emission;
+        material = appearance.material;
+    }
+
     /**
      * Abstract function to calculate the normal to the geometry
      * @param point the point on the geometry
@@ -34,6 +50,25 @@ public abstract class Geometry extends Intersectable {
     @Override
     public abstract AABB getBoundingBox();
 
+    @Override
+    protected Double3 calculateTransparencyHelper(Ray ray, double maxDistance, Double3 ktr, double minK) {
+        // go over the intersections from the closest one, an opaque geometry stops at the first one
+        Double3 kT = material.kT;
+        HitRecord hit = new HitRecord();
+        double t = 0;
+        while (calculateClosestHitHelper(ray, t, hit.reset(maxDistance))) {
+            ktr = ktr.product(kT);
+            if (ktr.lowerThan(minK)) return ktr;
+            t = hit.t;
+        }
+        return ktr;
+    }
+
+    @Override
+    protected Intersection toIntersection(Ray ray, HitRecord hit) {
+        return new Intersection(this, ray.getPoint(hit.t), hit.t);
+    }
+
     public Material getMaterial() {
         return material;
     }
@@ -0,0 +1,359 @@
+package geometries;
+
+import primitives.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Grid is a regular (uniform) grid acceleration structure.<br>
+ * The bounding box of the objects is divided into equal cells, the resolution is chosen
+ * automatically from the amount of objects and the shape of the box. Each cell holds the
+ * objects whose bounding boxes overlap it. A ray walks through the cells it crosses in order
+ * (3D-DDA of Amanatides and Woo) and tests only the objects of those cells. An object that
+ * spans several cells is tested once per ray thanks to a per-thread mailbox.<br>
+ * Unbounded objects (planes, tubes) are kept aside and tested for every ray.
+ * @author Jeshurun and Binyamin
+ */
+public class Grid extends Intersectable {
+    /*** The wanted average amount of cells per object*/
+    private static final double DENSITY = 3;
+    /*** The maximal amount of cells along an axis*/
+    private static final int MAX_RESOLUTION = 256;
+
+    /*** The objects in the cells*/
+    private final Intersectable[] objects;
+    /*** The objects without a finite bounding box*/
+    private final Intersectable[] unbounded;
+    /*** The minimal corner of the grid*/
+    private final double[] min = new double[3];
+    /*** The size of a cell in each axis*/
+    private final double[] cellSize = new double[3];
+    /*** The amount of cells in each axis*/
+    private final int[] resolution = new int[3];
+    /*** The index of the first object of each cell in cellObjects, with an extra end index*/
+    private final int[] cellStart;
+    /*** The object indices of all the cells, cell after cell*/
+    private final int[] cellObjects;
+    /*** The bounding box of the grid*/
+    private final AABB box;
+    /*** The mailboxes of the threads: the last ray each object was tested with*/
+    private final ThreadLocal<Mailbox> mailboxes;
+
+    /**
+     * Constructor that builds the grid over the geometries. Nested {@link Geometries}
+     * are opened, any other object is put in the grid as is.
+     * @param geometries the geometries
+     */
+    public Grid(Geometries geometries) {
+        List<Intersectable> bounded = new ArrayList<>();
+        List<Intersectable> others = new ArrayList<>();
+        List<AABB> boxes = new ArrayList<>();
+        collect(geometries, bounded, boxes, others);
+        objects = bounded.toArray(new Intersectable[0]);
+        unbounded = others.toArray(new Intersectable[0]);
+        int n = objects.length;
+
+        double[] max = new double[3];
+        for (int axis = 0; axis < 3; axis++) {
+            min[axis] = Double.POSITIVE_INFINITY;
+            max[axis] = Double.NEGATIVE_INFINITY;
+        }
+        for (AABB objectBox : boxes) {
+            for (int axis = 0; axis < 3; axis++) {
+                min[axis] = Math.min(min[axis], objectBox.getMin().getCoordinate(axis));
+                max[axis] = Math.max(max[axis], objectBox.getMax().getCoordinate(axis));
+            }
+        }
+        if (n == 0) for (int axis = 0; axis < 3; axis++) min[axis] = max[axis] = 0;
+        chooseResolution(n, max);
+
+        // count the objects of each cell, then fill the cells
+        int cells = resolution[0] * resolution[1] * resolution[2];
+        cellStart = new int[cells + 1];
+        int[][] ranges = new int[n][];
+        for (int i = 0; i < n; i++) {
+            ranges[i] = cellRange(boxes.get(i));
+            forEachCell(ranges[i], cell -> cellStart[cell + 1]++);
+        }
+        for (int cell = 0; cell < cells; cell++) cellStart[cell + 1] += cellStart[cell];
+        cellObjects = new int[cellStart[cells]];
+        int[] fill = Arrays.copyOf(cellStart, cells);
+        for (int i = 0; i < n; i++) {
+            int object = i;
+            forEachCell(ranges[i], cell -> cellObjects[fill[cell]++] = object);
+        }
+
+        box = others.isEmpty()
+                ? new AABB(new Point(min[0], min[1], min[2]), new Point(max[0], max[1], max[2]))
+                : new AABB(new Point(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY),
+                           new Point(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY));
+        mailboxes = ThreadLocal.withInitial(() -> new Mailbox(n));
+    }
+
+    /**
+     * Collects the objects of geometries into bounded and unbounded objects
+     * @param geometries the geometries
+     * @param bounded    the objects with finite bounding boxes
+     * @param boxes      the bounding boxes of the bounded objects
+     * @param others     the unbounded objects
+     */
+    private static void collect(Geometries geometries, List<Intersectable> bounded, List<AABB> boxes,
+                                List<Intersectable> others) {
+        for (Intersectable object : geometries.geometries) {
+            if (object instanceof Geometries nested) {
+                collect(nested, bounded, boxes, others);
+                continue;
+            }
+            AABB objectBox = object.getBoundingBox();
+            if (objectBox != null && objectBox.isFinite()) {
+                bounded.add(object);
+                boxes.add(objectBox);
+            } else {
+                others.add(object);
+            }
+        }
+    }
+
+    /**
+     * Chooses the resolution so there are about DENSITY cells per object and the cells are
+     * close to cubes. Axes where the box is flat get a single cell.
+     * @param n   the amount of objects
+     * @param max the maximal corner of the grid
+     */
+    private void chooseResolution(int n, double[] max) {
+        double largest = 0;
+        for (int axis = 0; axis < 3; axis++) largest = Math.max(largest, max[axis] - min[axis]);
+        double product = 1;
+        int dimensions = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            double extent = max[axis] - min[axis];
+            if (extent > largest * 1e-6) {
+                product *= extent;
+                ++dimensions;
+            }
+        }
+        double cellsPerUnit = dimensions == 0 ? 0 : Math.pow(DENSITY * n / product, 1.0 / dimensions);
+        for (int axis = 0; axis < 3; axis++) {
+            double extent = max[axis] - min[axis];
+            int cells = extent > largest * 1e-6 ? (int) Math.round(extent * cellsPerUnit) : 1;
+            resolution[axis] = Math.max(1, Math.min(MAX_RESOLUTION, cells));
+            cellSize[axis] = extent > 0 ? extent / resolution[axis] : 1;
+        }
+    }
+
+    /**
+     * Returns the resolution of the grid
+     * @return the amount of cells along the x, y and z axes
+     */
+    public int[] getResolution() {
+        return resolution.clone();
+    }
+
+    @Override
+    public AABB getBoundingBox() {
+        return box;
+    }
+
+    /**
+     * Calculates the range of cells that a box overlaps
+     * @param objectBox the box
+     * @return the minimal and the maximal cell index in each axis
+     */
+    private int[] cellRange(AABB objectBox) {
+        int[] range = new int[6];
+        for (int axis = 0; axis < 3; axis++) {
+            range[axis] = cellIndex(objectBox.getMin().getCoordinate(axis), axis);
+            range[axis + 3] = cellIndex(objectBox.getMax().getCoordinate(axis), axis);
+        }
+        return range;
+    }
+
+    /**
+     * Calculates the index of the cell containing a coordinate, clamped into the grid
+     * @param coordinate the coordinate
+     * @param axis       the axis
+     * @return the cell index along the axis
+     */
+    private int cellIndex(double coordinate, int axis) {
+        int index = (int) Math.floor((coordinate - min[axis]) / cellSize[axis]);
+        return Math.max(0, Math.min(resolution[axis] - 1, index));
+    }
+
+    /**
+     * Runs an action on all the cells in a range
+     * @param range  the minimal and the maximal cell index in each axis
+     * @param action the action on the cell number
+     */
+    private void forEachCell(int[] range, IntConsumer action) {
+        for (int z = range[2]; z <= range[5]; z++)
+            for (int y = range[1]; y <= range[4]; y++)
+                for (int x = range[0]; x <= range[3]; x++)
+                    action.accept(x + resolution[0] * (y + resolution[1] * z));
+    }
+
+    /**
+     * Walker of a ray through the cells of the grid (3D-DDA)
+     */
+    private class Walker {
+        /*** The current cell index along each axis*/
+        final int[] cell = new int[3];
+        /*** The cell step along each axis: 1, -1 or 0*/
+        final int[] step = new int[3];
+        /*** The distance along the ray between cell boundaries of each axis*/
+        final double[] delta = new double[3];
+        /*** The distance along the ray to the next cell boundary of each axis*/
+        final double[] next = new double[3];
+        /*** The distance along the ray to the exit from the grid*/
+        double exit;
+
+        /**
+         * Starts walking a ray through the grid
+         * @param ray  the ray
+         * @param tMax the maximal distance along the ray
+         * @return false if the ray misses the grid before tMax
+         */
+        boolean start(Ray ray, double tMax) {
+            double[] origin = new double[3];
+            double[] direction = new double[3];
+            double enter = 0;
+            exit = tMax;
+            for (int axis = 0; axis < 3; axis++) {
+                origin[axis] = ray.getP0().getCoordinate(axis);
+                direction[axis] = ray.getDir().getCoordinate(axis);
+                double low = min[axis];
+                double high = min[axis] + cellSize[axis] * resolution[axis];
+                if (direction[axis] == 0) {
+                    if (origin[axis] < low || origin[axis] > high) return false;
+                    continue;
+                }
+                double t0 = (low - origin[axis]) / direction[axis];
+                double t1 = (high - origin[axis]) / direction[axis];
+                if (t0 > t1) { double t = t0; t0 = t1; t1 = t; }
+                enter = Math.max(enter, t0);
+                exit = Math.min(exit, t1);
+            }
+            if (enter > exit) return false;
+
+            for (int axis = 0; axis < 3; axis++) {
+                cell[axis] = cellIndex(origin[axis] + direction[axis] * enter, axis);
+                if (direction[axis] > 0) {
+                    step[axis] = 1;
+                    delta[axis] = cellSize[axis] / direction[axis];
+                    next[axis] = (min[axis] + (cell[axis] + 1) * cellSize[axis] - origin[axis]) / direction[axis];
+                } else if (direction[axis] < 0) {
+                    step[axis] = -1;
+                    delta[axis] = -cellSize[axis] / direction[axis];
+                    next[axis] = (min[axis] + cell[axis] * cellSize[axis] - origin[axis]) / direction[axis];
+                } else {
+                    step[axis] = 0;
+                    delta[axis] = Double.POSITIVE_INFINITY;
+                    next[axis] = Double.POSITIVE_INFINITY;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the number of the current cell
+         * @return the cell number
+         */
+        int current() {
+            return cell[0] + resolution[0] * (cell[1] + resolution[1] * cell[2]);
+        }
+
+        /**
+         * Returns the distance along the ray to the exit from the current cell
+         * @return the exit distance
+         */
+        double cellExit() {
+            return Math.min(next[0], Math.min(next[1], next[2]));
+        }
+
+        /**
+         * Moves to the next cell along the ray
+         * @return false if the ray left the grid or passed its maximal distance
+         */
+        boolean advance() {
+            int axis = next[0] < next[1]
+                    ? (next[0] < next[2] ? 0 : 2)
+                    : (next[1] < next[2] ? 1 : 2);
+            if (next[axis] > exit) return false;
+            cell[axis] += step[axis];
+            if (cell[axis] < 0 || cell[axis] >= resolution[axis]) return false;
+            next[axis] += delta[axis];
+            return true;
+        }
+    }
+
+    @Override
+    protected List<Intersection> calculateIntersectionsHelper(Ray ray) {
+        List<Intersection> intersections = new ArrayList<>();
+        collectIntersectionsHelper(ray, intersections);
+        return intersections.isEmpty() ? null : intersections;
+    }
+
+    @Override
+    protected void collectIntersectionsHelper(Ray ray, List<Intersection> intersections) {
+        for (Intersectable object : unbounded)
+            object.collectIntersectionsHelper(ray, intersections);
+        Walker walker = new Walker();
+        if (walker.start(ray, Double.POSITIVE_INFINITY)) {
+            Mailbox mailbox = mailboxes.get().next();
+            do {
+                int cell = walker.current();
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int object = cellObjects[i];
+                    if (!mailbox.check(object)) continue;
+                    objects[object].collectIntersectionsHelper(ray, intersections);
+                }
+            } while (walker.advance());
+        }
+    }
+
+    @Override
+    protected boolean calculateClosestHitHelper(Ray ray, double tMin, HitRecord hit) {
+        boolean found = false;
+        for (Intersectable object : unbounded) {
+            if (object.calculateClosestHitHelper(ray, tMin, hit)) found = true;
+        }
+        Walker walker = new Walker();
+        if (!walker.start(ray, hit.t)) return found;
+        Mailbox mailbox = mailboxes.get().next();
+        do {
+            int cell = walker.current();
+            for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                int object = cellObjects[i];
+                if (!mailbox.check(object)) continue;
+                // a hit beyond this cell is kept, so the object needn't be tested again in the next cells
+                if (objects[object].calculateClosestHitHelper(ray, tMin, hit)) found = true;
+            }
+            // no object in the next cells can be hit before a hit inside this cell
+            if (found && hit.t <= walker.cellExit()) return true;
+        } while (walker.advance());
+        return found;
+    }
+
+    @Override
+    protected Double3 calculateTransparencyHelper(Ray ray, double maxDistance, Double3 ktr, double minK) {
+        for (Intersectable object : unbounded) {
+            ktr = object.calculateTransparencyHelper(ray, maxDistance, ktr, minK);
+            if (ktr.lowerThan(minK)) return ktr;
+        }
+        Walker walker = new Walker();
+        if (!walker.start(ray, maxDistance)) return ktr;
+        Mailbox mailbox = mailboxes.get().next();
+        do {
+            int cell = walker.current();
+            for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                int object = cellObjects[i];
+                if (!mailbox.check(object)) continue;
+                ktr = objects[object].calculateTransparencyHelper(ray, maxDistance, ktr, minK);
+                if (ktr.lowerThan(minK)) return ktr; // the ray is blocked
+            }
+        } while (walker.advance());
+        return ktr;
+    }
+}
@@ -0,0 +1,467 @@
+package geometries;
+
+import primitives.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongToDoubleFunction;
+
+import static primitives.Util.alignZero;
+import static primitives.Util.isZero;
+
+/**
+ * IndexedMesh is the base of the meshes of triangles addressed by index: the vertices are shared
+ * by the faces, each face is 3 vertex indices, and the faces are reached through a bounding volume
+ * hierarchy in the layout of {@link FlatBVH}, built with the binned surface area heuristic:
+ * <ul>
+ * <li>inner node - the index of its right child and 0, its left child is the next node</li>
+ * <li>leaf - the index of its first triangle and the amount of its triangles</li>
+ * </ul>
+ * The triangles are numbered in leaf order, so the triangles of each leaf are consecutive.<br>
+ * The traversal and the intersections are implemented once, over accessors of the storage
+ * that each mesh implements: arrays on the heap ({@link TriangleMesh}) or memory segments
+ * outside of it ({@link OffHeapTriangleMesh}).<br>
+ * The intersections carry the normal and the material of their face. The edges and the vertices
+ * belong to the triangles, like in {@link Triangle}.
+ * @author Jeshurun and Binyamin
+ */
+public abstract class IndexedMesh extends Geometry {
+    /*** The maximal amount of triangles in a leaf*/
+    private static final int MAX_LEAF_SIZE = 4;
+    /*** The amount of bins of the surface area heuristic*/
+    private static final int BIN_COUNT = 16;
+    /*** The maximal amount of triangles, so the node bounds of the build fit in an array*/
+    static final int MAX_TRIANGLES = Integer.MAX_VALUE / 12;
+
+    /*** The materials of the faces, null if all the faces have the material of the mesh*/
+    final Material[] materials;
+
+    /**
+     * Constructor of the mesh base
+     * @param materials the materials of the faces, null if all the faces have the material of the mesh
+     */
+    IndexedMesh(Material[] materials) {
+        this.materials = materials;
+    }
+
+    /**
+     * Constructor of the mesh base with the emission and the material of another geometry
+     * @param materials  the materials of the faces, null if all the faces have the material of the mesh
+     * @param appearance the geometry whose emission and material are taken
+     */
+    IndexedMesh(Material[] materials, Geometry appearance) {
+        super(appearance);
+        this.materials = materials;
+    }
+
+    /**
+     * Returns the amount of triangles in the mesh
+     * @return the amount of triangles
+     */
+    public abstract int getTriangleCount();
+
+    /**
+     * Returns the amount of vertices in the mesh
+     * @return the amount of vertices
+     */
+    public abstract int getVertexCount();
+
+    /**
+     * Checks whether the mesh keeps its coordinates and bounds in single precision
+     * @return true for single precision, false for double precision
+     */
+    public abstract boolean isSinglePrecision();
+
+    /**
+     * Reads a coordinate of a vertex
+     * @param vertex the index of the vertex
+     * @param axis   the axis: 0, 1 or 2
+     * @return the coordinate
+     */
+    abstract double coordinate(int vertex, int axis);
+
+    /**
+     * Reads the index of a vertex of a triangle
+     * @param triangle the index of the triangle in leaf order
+     * @param corner   the corner of the triangle: 0, 1 or 2
+     * @return the index of the vertex
+     */
+    abstract int index(int triangle, int corner);
+
+    /**
+     * Reads the index of the material of a triangle, called only for a mesh with face materials
+     * @param triangle the index of the triangle in leaf order
+     * @return the index of the material in the materials of the mesh
+     */
+    abstract int faceMaterial(int triangle);
+
+    /**
+     * Reads a bound of a node
+     * @param node the node index
+     * @param i    the bound: min x,y,z then max x,y,z
+     * @return the bound
+     */
+    abstract double bound(int node, int i);
+
+    /**
+     * Reads a value of a node
+     * @param node  the node index
+     * @param value 0 for the right child or the first triangle, 1 for the triangle count
+     * @return the value
+     */
+    abstract int node(int node, int value);
+
+    /**
+     * Returns the amount of nodes of the hierarchy
+     * @return the amount of nodes, 0 for an empty mesh
+     */
+    abstract int nodeCount();
+
+    /**
+     * Returns the size of the traversal stack, the depth of the hierarchy
+     * @return the stack size
+     */
+    abstract int stackSize();
+
+    /**
+     * Checks the vertex indices and the material indices of the faces
+     * @param triangleCount the amount of triangles
+     * @param vertexCount   the amount of vertices
+     * @param materialCount the amount of materials of the faces
+     * @param index         the index of the vertex of a corner (0-2) of a triangle
+     * @param faceMaterial  the index of the material of a triangle, null if there are no face materials
+     * @throws IllegalArgumentException if an index is out of range
+     */
+    static void checkFaces(int triangleCount, int vertexCount, int materialCount,
+                           IntBinaryOperator index, IntUnaryOperator faceMaterial) {
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            for (int corner = 0; corner < 3; corner++) {
+                int vertex = index.applyAsInt(triangle, corner);
+                if (vertex < 0 || vertex >= vertexCount)
+                    throw new IllegalArgumentException("Vertex index out of range: " + vertex);
+            }
+            if (faceMaterial != null) {
+                int material = faceMaterial.applyAsInt(triangle);
+                if (material < 0 || material >= materialCount)
+                    throw new IllegalArgumentException("Material index out of range: " + material);
+            }
+        }
+    }
+
+    /**
+     * Rounds a number to the greatest float that is not greater than it
+     * @param value the number
+     * @return the float
+     */
+    static float roundDown(double value) {
+        float rounded = (float) value;
+        return rounded > value ? Math.nextDown(rounded) : rounded;
+    }
+
+    /**
+     * Rounds a number to the smallest float that is not smaller than it
+     * @param value the number
+     * @return the float
+     */
+    static float roundUp(double value) {
+        float rounded = (float) value;
+        return rounded < value ? Math.nextUp(rounded) : rounded;
+    }
+
+    /**
+     * Rounds a bound of a node outwards to a float: the minimum of a box rounds down and the maximum rounds up
+     * @param bounds the bounds of the nodes, 6 values per node
+     * @param i      the index of the bound
+     * @return the float
+     */
+    static float floatBound(double[] bounds, int i) {
+        return i % 6 < 3 ? roundDown(bounds[i]) : roundUp(bounds[i]);
+    }
+
+    /**
+     * Returns the material of a triangle
+     * @param triangle the index of the triangle in leaf order
+     * @return the material of the face, or the material of the mesh
+     */
+    private Material material(int triangle) {
+        return materials == null ? getMaterial() : materials[faceMaterial(triangle)];
+    }
+
+    /**
+     * Calculates the normal of a triangle, by the order of its vertices like the {@link Plane} of a {@link Polygon}
+     * @param triangle the index of the triangle in leaf order
+     * @return the unit normal, with NaN coordinates for a degenerate triangle
+     */
+    private Vector normal(int triangle) {
+        int a = index(triangle, 0), b = index(triangle, 1), c = index(triangle, 2);
+        double ax = coordinate(a, 0), ay = coordinate(a, 1), az = coordinate(a, 2);
+        double e1x = coordinate(b, 0) - ax, e1y = coordinate(b, 1) - ay, e1z = coordinate(b, 2) - az;
+        double e2x = coordinate(c, 0) - ax, e2y = coordinate(c, 1) - ay, e2z = coordinate(c, 2) - az;
+        double nx = e1y * e2z - e1z * e2y, ny = e1z * e2x - e1x * e2z, nz = e1x * e2y - e1y * e2x;
+        // a face that was hit is not degenerate, so its normal is not zero
+        double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        return Vector.unchecked(nx / length, ny / length, nz / length);
+    }
+
+    /**
+     * Calculates the distance along a ray to its intersection with a triangle, with the kernel of {@link Triangle}
+     * @param triangle the index of the triangle in leaf order
+     * @param ox       the x coordinate of the ray origin
+     * @param oy       the y coordinate of the ray origin
+     * @param oz       the z coordinate of the ray origin
+     * @param dx       the x coordinate of the ray direction
+     * @param dy       the y coordinate of the ray direction
+     * @param dz       the z coordinate of the ray direction
+     * @return the distance, or NaN if the ray misses the triangle
+     */
+    private double intersect(int triangle, double ox, double oy, double oz, double dx, double dy, double dz) {
+        int a = index(triangle, 0), b = index(triangle, 1), c = index(triangle, 2);
+        double ax = coordinate(a, 0), ay = coordinate(a, 1), az = coordinate(a, 2);
+        return Triangle.intersectionDistance(ax, ay, az,
+                coordinate(b, 0) - ax, coordinate(b, 1) - ay, coordinate(b, 2) - az,
+                coordinate(c, 0) - ax, coordinate(c, 1) - ay, coordinate(c, 2) - az,
+                ox, oy, oz, dx, dy, dz);
+    }
+
+    /**
+     * Creates the intersection of a ray with a triangle, with the normal and the material of the face
+     * @param ray      the ray
+     * @param triangle the index of the triangle in leaf order
+     * @param t        the distance along the ray
+     * @return the intersection
+     */
+    private Intersection intersection(Ray ray, int triangle, double t) {
+        Intersection intersection = new Intersection(this, ray.getPoint(t), t, material(triangle));
+        intersection.normal = normal(triangle);
+        return intersection;
+    }
+
+    @Override
+    public Vector getNormal(Point point) {
+        // the intersections carry their normals, this is a search for the face of any point on the mesh
+        double x = point.getCoordinate(0), y = point.getCoordinate(1), z = point.getCoordinate(2);
+        for (int triangle = 0; triangle < getTriangleCount(); triangle++) {
+            // a ray from above the point back to the face, a degenerate triangle with its NaN normal is missed
+            Vector normal = normal(triangle);
+            double nx = normal.getCoordinate(0), ny = normal.getCoordinate(1), nz = normal.getCoordinate(2);
+            double t = intersect(triangle, x + nx, y + ny, z + nz, -nx, -ny, -nz);
+            if (!Double.isNaN(t) && isZero(t - 1)) return normal;
+        }
+        throw new IllegalArgumentException("The point is not on the mesh");
+    }
+
+    @Override
+    public AABB getBoundingBox() {
+        if (nodeCount() == 0) return null;
+        return new AABB(new Point(bound(0, 0), bound(0, 1), bound(0, 2)),
+                new Point(bound(0, 3), bound(0, 4), bound(0, 5)));
+    }
+
+    @Override
+    public List<Intersection> calculateIntersectionsHelper(Ray ray) {
+        if (nodeCount() == 0) return null;
+        Point p0 = ray.getP0();
+        Vector dir = ray.getDir();
+        double ox = p0.getCoordinate(0), oy = p0.getCoordinate(1), oz = p0.getCoordinate(2);
+        double dx = dir.getCoordinate(0), dy = dir.getCoordinate(1), dz = dir.getCoordinate(2);
+        double ix = 1 / dx, iy = 1 / dy, iz = 1 / dz;
+        List<Intersection> intersections = null;
+        // both children are pushed, so the stack may hold one more node than the depth
+        int[] stack = new int[stackSize() + 1];
+        int top = 0;
+        stack[top++] = 0;
+        while (top != 0) {
+            int node = stack[--top];
+            if (boxDistance(node, ox, oy, oz, ix, iy, iz, Double.POSITIVE_INFINITY) == Double.POSITIVE_INFINITY)
+                continue;
+            int count = node(node, 1);
+            if (count == 0) {
+                stack[top++] = node(node, 0);
+                stack[top++] = node + 1;
+                continue;
+            }
+            int first = node(node, 0);
+            for (int triangle = first; triangle < first + count; triangle++) {
+                double t = intersect(triangle, ox, oy, oz, dx, dy, dz);
+                if (alignZero(t) > 0) {
+                    if (intersections == null) intersections = new ArrayList<>();
+                    intersections.add(intersection(ray, triangle, t));
+                }
+            }
+        }
+        return intersections;
+    }
+
+    @Override
+    protected boolean calculateClosestHitHelper(Ray ray, double tMin, HitRecord hit) {
+        if (nodeCount() == 0) return false;
+        Point p0 = ray.getP0();
+        Vector dir = ray.getDir();
+        double ox = p0.getCoordinate(0), oy = p0.getCoordinate(1), oz = p0.getCoordinate(2);
+        double dx = dir.getCoordinate(0), dy = dir.getCoordinate(1), dz = dir.getCoordinate(2);
+        double ix = 1 / dx, iy = 1 / dy, iz = 1 / dz;
+        double tMax = hit.t;
+        if (boxDistance(0, ox, oy, oz, ix, iy, iz, tMax) == Double.POSITIVE_INFINITY) return false;
+
+        int closest = -1;
+        // the postponed further children with the distances to their boxes
+        int stackSize = stackSize();
+        int[] stack = new int[stackSize];
+        double[] distances = new double[stackSize];
+        int top = 0;
+        int node = 0;
+        while (true) {
+            int count = node(node, 1);
+            if (count == 0) {
+                int near = node + 1;
+                int far = node(node, 0);
+                double nearDistance = boxDistance(near, ox, oy, oz, ix, iy, iz, tMax);
+                double farDistance = boxDistance(far, ox, oy, oz, ix, iy, iz, tMax);
+                if (farDistance < nearDistance) {
+                    int temp = near;
+                    near = far;
+                    far = temp;
+                    double tempDistance = nearDistance;
+                    nearDistance = farDistance;
+                    farDistance = tempDistance;
+                }
+                if (nearDistance != Double.POSITIVE_INFINITY) {
+                    if (farDistance != Double.POSITIVE_INFINITY) {
+                        stack[top] = far;
+                        distances[top++] = farDistance;
+                    }
+                    node = near;
+                    continue;
+                }
+            } else {
+                int first = node(node, 0);
+                for (int triangle = first; triangle < first + count; triangle++) {
+                    double t = intersect(triangle, ox, oy, oz, dx, dy, dz);
+                    if (t > tMin && t < tMax) {
+                        closest = triangle;
+                        tMax = t;
+                    }
+                }
+            }
+            // continue with a postponed node that starts before the closest intersection
+            do {
+                if (top == 0) return closest != -1 && hit.record(this, tMax, closest);
+                node = stack[--top];
+            } while (distances[top] >= tMax);
+        }
+    }
+
+    @Override
+    protected Double3 calculateTransparencyHelper(Ray ray, double maxDistance, Double3 ktr, double minK) {
+        // go over the hits from the closest one, each with the transparency of its face
+        HitRecord hit = new HitRecord();
+        double t = 0;
+        while (calculateClosestHitHelper(ray, t, hit.reset(maxDistance))) {
+            ktr = ktr.product(material(hit.primitive).kT);
+            if (ktr.lowerThan(minK)) return ktr;
+            t = hit.t;
+        }
+        return ktr;
+    }
+
+    @Override
+    protected Intersection toIntersection(Ray ray, HitRecord hit) {
+        return intersection(ray, hit.primitive, hit.t);
+    }
+
+    /**
+     * Calculates the distance along the ray to the entry into the box of a node
+     * @param node the node index
+     * @param ox   the x coordinate of the ray origin
+     * @param oy   the y coordinate of the ray origin
+     * @param oz   the z coordinate of the ray origin
+     * @param ix   the inverse of the x coordinate of the ray direction
+     * @param iy   the inverse of the y coordinate of the ray direction
+     * @param iz   the inverse of the z coordinate of the ray direction
+     * @param tMax the maximal distance
+     * @return the entry distance (0 if the origin is inside), or positive infinity if the box is missed
+     */
+    private double boxDistance(int node, double ox, double oy, double oz,
+                               double ix, double iy, double iz, double tMax) {
+        return BVHBuilder.boxDistance(bound(node, 0), bound(node, 1), bound(node, 2),
+                bound(node, 3), bound(node, 4), bound(node, 5), ox, oy, oz, ix, iy, iz, tMax);
+    }
+
+    /**
+     * Builds the hierarchy of the triangles top-down with the binned surface area heuristic
+     * of {@link BinnedSplit}, over the coordinates of the mesh, and lays the nodes out in
+     * depth-first order. The mesh stores the result in its own storage.
+     */
+    static final class Builder {
+        /*** The split of the triangles by their boxes*/
+        private final BinnedSplit split;
+        /*** The triangles in leaf order: the original index of each triangle*/
+        final int[] order;
+        /*** The bounds of the nodes, 6 values per node*/
+        final double[] bounds;
+        /*** The offsets and the triangle counts of the nodes, 2 values per node*/
+        final int[] nodes;
+        /*** The amount of nodes*/
+        int nodeCount = 0;
+        /*** The depth of the hierarchy*/
+        int depth = 0;
+
+        /**
+         * Constructor that builds the hierarchy of triangles
+         * @param count      the amount of triangles
+         * @param index      the index of the vertex of a corner (0-2) of a triangle, in the original order
+         * @param coordinate the coordinate at an index of the positions, 3 coordinates per vertex
+         */
+        Builder(int count, IntBinaryOperator index, LongToDoubleFunction coordinate) {
+            split = new BinnedSplit(count, MAX_LEAF_SIZE, BIN_COUNT, BVHBuilder.DEFAULT_TRAVERSAL_COST, 1);
+            order = split.order;
+            int maxNodes = Math.max(1, 2 * count - 1);
+            double[] nodeBounds = new double[6 * maxNodes];
+            int[] nodeValues = new int[2 * maxNodes];
+            double[] box = new double[6];
+            for (int face = 0; face < count; face++) {
+                for (int axis = 0; axis < 3; axis++) {
+                    double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+                    for (int corner = 0; corner < 3; corner++) {
+                        double c = coordinate.applyAsDouble(3L * index.applyAsInt(face, corner) + axis);
+                        min = Math.min(min, c);
+                        max = Math.max(max, c);
+                    }
+                    box[axis] = min;
+                    box[axis + 3] = max;
+                }
+                split.setBox(face, box);
+            }
+            if (count != 0) build(0, count, 1, nodeBounds, nodeValues);
+            bounds = Arrays.copyOf(nodeBounds, 6 * nodeCount);
+            nodes = Arrays.copyOf(nodeValues, 2 * nodeCount);
+        }
+
+        /**
+         * Builds the node of a range of triangles and its sub-hierarchy
+         * @param start      the first triangle in the order (inclusive)
+         * @param end        the last triangle in the order (exclusive)
+         * @param level      the depth of the node
+         * @param nodeBounds the bounds of the nodes
+         * @param nodeValues the offsets and the triangle counts of the nodes
+         */
+        private void build(int start, int end, int level, double[] nodeBounds, int[] nodeValues) {
+            depth = Math.max(depth, level);
+            int node = nodeCount++;
+            double[] box = new double[6];
+            int mid = split.split(start, end, box);
+            System.arraycopy(box, 0, nodeBounds, 6 * node, 6);
+            if (mid == -1) {
+                nodeValues[2 * node] = start;
+                nodeValues[2 * node + 1] = end - start;
+                return;
+            }
+            build(start, mid, level + 1, nodeBounds, nodeValues);
+            nodeValues[2 * node] = nodeCount;
+            build(mid, end, level + 1, nodeBounds, nodeValues);
+        }
+    }
+}
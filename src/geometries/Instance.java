@@ -0,0 +1,160 @@
+package geometries;
+
+import primitives.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Instance is a placement of a shared object (usually a bottom-level hierarchy of a mesh)
+ * in the scene by an affine transformation. The object is not copied: the rays are
+ * transformed into the space of the object and the intersections are transformed back,
+ * so many instances of one object cost only their transformation and bounding box.<br>
+ * A hierarchy built over the instances is the top level of a two-level acceleration structure.
+ * @author Jeshurun and Binyamin
+ */
+public class Instance extends Intersectable {
+    /*** The shared object in its own space*/
+    private final Intersectable object;
+    /*** The transformation from the space of the object to the scene*/
+    private Transform transform;
+    /*** The bounding box of the transformed object*/
+    private AABB box;
+
+    /**
+     * Constructor of an instance
+     * @param object    the shared object
+     * @param transform the transformation from the space of the object to the scene
+     */
+    public Instance(Intersectable object, Transform transform) {
+        if (object == null || transform == null)
+            throw new IllegalArgumentException("Instance must have an object and a transformation");
+        this.object = object;
+        this.transform = transform;
+        this.box = transformBox(object.getBoundingBox());
+    }
+
+    /**
+     * Returns the shared object
+     * @return the object in its own space
+     */
+    public Intersectable getObject() {
+        return object;
+    }
+
+    /**
+     * Returns the transformation of the instance
+     * @return the transformation from the space of the object to the scene
+     */
+    public Transform getTransform() {
+        return transform;
+    }
+
+    /**
+     * Moves the instance by replacing its transformation.
+     * A hierarchy containing the instance must be refitted or rebuilt afterwards.
+     * @param transform the new transformation from the space of the object to the scene
+     * @return the instance itself
+     */
+    public Instance setTransform(Transform transform) {
+        if (transform == null)
+            throw new IllegalArgumentException("Instance must have a transformation");
+        this.transform = transform;
+        this.box = transformBox(object.getBoundingBox());
+        return this;
+    }
+
+    @Override
+    public AABB getBoundingBox() {
+        return box;
+    }
+
+    @Override
+    protected List<Intersection> calculateIntersectionsHelper(Ray ray) {
+        Ray local = toObject(ray);
+        List<Intersection> intersections = object.calculateIntersectionsHelper(local);
+        if (intersections == null) return null;
+        double scale = scale(ray);
+        List<Intersection> result = new ArrayList<>(intersections.size());
+        for (Intersection intersection : intersections) {
+            double t = Double.isNaN(intersection.t) ? local.getP0().distance(intersection.point) : intersection.t;
+            result.add(toScene(intersection, t / scale));
+        }
+        return result;
+    }
+
+    @Override
+    protected boolean calculateClosestHitHelper(Ray ray, double tMin, HitRecord hit) {
+        // the distances along the object ray are the scene distances times the scale
+        double scale = scale(ray);
+        // the object searches with a record of its own, and its hit is moved to the scene right away
+        Intersection intersection = object.calculateClosestIntersectionHelper(toObject(ray), tMin * scale, hit.t * scale);
+        return intersection != null && hit.record(this, toScene(intersection, intersection.t / scale));
+    }
+
+    @Override
+    protected Double3 calculateTransparencyHelper(Ray ray, double maxDistance, Double3 ktr, double minK) {
+        return object.calculateTransparencyHelper(toObject(ray), maxDistance * scale(ray), ktr, minK);
+    }
+
+    /**
+     * Transforms a ray into the space of the object
+     * @param ray the ray in the scene
+     * @return the ray in the space of the object
+     */
+    private Ray toObject(Ray ray) {
+        return new Ray(transform.inversePoint(ray.getP0()), transform.inverseVector(ray.getDir()));
+    }
+
+    /**
+     * Calculates the length of a unit step along a scene ray in the space of the object
+     * @param ray the ray in the scene
+     * @return the ratio between the object distances and the scene distances
+     */
+    private double scale(Ray ray) {
+        return transform.inverseVector(ray.getDir()).length();
+    }
+
+    /**
+     * Transforms an intersection found in the space of the object into the scene.
+     * The normal is calculated in the space of the object, where the geometry is defined.
+     * @param intersection the intersection in the space of the object
+     * @param t            the distance of the intersection in the scene
+     * @return the intersection in the scene
+     */
+    private Intersection toScene(Intersection intersection, double t) {
+        Vector normal = intersection.normal != null
+                ? intersection.normal
+                : intersection.geometry.getNormal(intersection.point);
+        Intersection result = new Intersection(intersection.geometry, transform.transformPoint(intersection.point), t,
+                intersection.material);
+        result.normal = transform.transformNormal(normal);
+        return result;
+    }
+
+    /**
+     * Calculates the box bounding the 8 transformed corners of a box
+     * @param objectBox the box in the space of the object
+     * @return the box in the scene, null if the object has no box
+     */
+    private AABB transformBox(AABB objectBox) {
+        if (objectBox == null) return null;
+        if (!objectBox.isFinite()) {
+            double inf = Double.POSITIVE_INFINITY;
+            return new AABB(new Point(-inf, -inf, -inf), new Point(inf, inf, inf));
+        }
+        double[] min = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+        double[] max = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (int corner = 0; corner < 8; corner++) {
+            Point p = transform.transformPoint(new Point(
+                    ((corner & 1) == 0 ? objectBox.getMin() : objectBox.getMax()).getCoordinate(0),
+                    ((corner & 2) == 0 ? objectBox.getMin() : objectBox.getMax()).getCoordinate(1),
+                    ((corner & 4) == 0 ? objectBox.getMin() : objectBox.getMax()).getCoordinate(2)));
+            for (int axis = 0; axis < 3; axis++) {
+                min[axis] = Math.min(min[axis], p.getCoordinate(axis));
+                max[axis] = Math.max(max[axis], p.getCoordinate(axis));
+            }
+        }
+        return new AABB(new Point(min[0], min[1], min[2]), new Point(max[0], max[1], max[2]));
+    }
+}
@@ -2,6 +2,7 @@ package geometries;
 import lighting.LightSource;
 import primitives.*;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -43,6 +44,8 @@ public abstract class Intersectable {
         public Vector l;
         /*** dot product between the light source direction and the normal*/
         public double ln;
+        /*** The distance of the intersection point from the head of the ray, NaN if unknown*/
+        public double t = Double.NaN;
 
 
         public Intersection(Geometry geometry, Point point) {
@@ -56,6 +59,32 @@ public abstract class Intersectable {
             }
         }
 
+        /**
+         * Constructor of an intersection at a known distance along the ray
+         * @param geometry the intersected geometry
+         * @param point    the intersection point
+         * @param t        the distance of the point from the head of the ray
+         */
+        public Intersection(Geometry geometry, Point point, double t) {
+            this(geometry, point);
+            this.t = t;
+        }
+
+        /**
+         * Constructor of an intersection with a material of its own, for a geometry whose parts
+         * have different materials
+         * @param geometry the intersected geometry
+         * @param point    the intersection point
+         * @param t        the distance of the point from the head of the ray
+         * @param material the material at the intersection point
+         */
+        public Intersection(Geometry geometry, Point point, double t, Material material) {
+            this.geometry = geometry;
+            this.point = point;
+            this.material = material;
+            this.t = t;
+        }
+
         @Override
         public boolean equals(Object obj) {
             if (this == obj) return true;
@@ -70,6 +99,89 @@ public abstract class Intersectable {
                     '}';
         }
     }
+    /**
+     * A reusable record of the closest hit of a ray found so far.<br>
+     * The search for the closest intersection writes only numbers into the record: the distance
+     * of the hit, the object that found it and the primitive of that object (a face of a mesh,
+     * a base of a cylinder), so the objects that are passed over allocate nothing.
+     * The {@link Intersection} is built once, by the object that found the closest hit.
+     * Each thread keeps a record of its own for the searches it starts.
+     */
+    public static final class HitRecord {
+        /*** The record of each thread*/
+        private static final ThreadLocal<HitRecord> RECORDS = ThreadLocal.withInitial(HitRecord::new);
+
+        /*** The distance of the closest hit, the maximal distance (exclusive) for the next hits*/
+        public double t;
+        /*** The primitive of the object that was hit, -1 if the object is a single primitive*/
+        public int primitive;
+        /*** The object that found the closest hit and builds its intersection, null if there is no hit*/
+        private Intersectable owner;
+        /*** The intersection the owner built already, null if it builds it later from the numbers*/
+        private Intersection intersection;
+
+        /**
+         * Gets the record of the current thread, cleared for a new search
+         * @param tMax the maximal distance along the ray (exclusive)
+         * @return the record of the current thread
+         */
+        static HitRecord get(double tMax) {
+            return RECORDS.get().reset(tMax);
+        }
+
+        /**
+         * Clears the record for a new search
+         * @param tMax the maximal distance along the ray (exclusive)
+         * @return the record itself
+         */
+        public HitRecord reset(double tMax) {
+            t = tMax;
+            primitive = -1;
+            owner = null;
+            intersection = null;
+            return this;
+        }
+
+        /**
+         * Records a hit that is closer than the current one
+         * @param owner     the object that found the hit
+         * @param t         the distance of the hit along the ray
+         * @param primitive the primitive of the object that was hit
+         * @return true
+         */
+        public boolean record(Intersectable owner, double t, int primitive) {
+            this.t = t;
+            this.primitive = primitive;
+            this.owner = owner;
+            this.intersection = null;
+            return true;
+        }
+
+        /**
+         * Records a hit whose intersection is already built, closer than the current one
+         * @param owner        the object that found the hit
+         * @param intersection the intersection, with its distance
+         * @return true
+         */
+        public boolean record(Intersectable owner, Intersection intersection) {
+            record(owner, intersection.t, -1);
+            this.intersection = intersection;
+            return true;
+        }
+
+        /**
+         * Builds the intersection of the recorded hit
+         * @param ray the ray of the search
+         * @return the intersection with its distance, or null if there is no hit
+         */
+        public Intersection toIntersection(Ray ray) {
+            if (owner == null) return null;
+            if (intersection == null) intersection = owner.toIntersection(ray, this);
+            intersection.t = t;
+            return intersection;
+        }
+    }
+
     /**
      * Help to find the intersections between a ray and the geometry, returning a list of Intersection objects.
      * @param ray the ray to check for intersections
@@ -85,6 +197,175 @@ public abstract class Intersectable {
          return calculateIntersectionsHelper(ray);
     }
 
+    /**
+     * Adds the intersections between a ray and the geometry to a list.
+     * The structures that hold other objects override it to pass one list down to all of them
+     * instead of joining a list of every level.
+     * @param ray           the ray to check for intersections
+     * @param intersections the list the intersections are added to
+     */
+    protected void collectIntersectionsHelper(Ray ray, List<Intersection> intersections) {
+        List<Intersection> hits = calculateIntersectionsHelper(ray);
+        if (hits != null) intersections.addAll(hits);
+    }
+
+    /**
+     * Finds the closest intersection between a ray and the geometry.
+     * @param ray the ray to check for intersections
+     * @return the closest intersection in front of the ray head, or null if there is none
+     */
+    public final Intersection calculateClosestIntersection(Ray ray) {
+        return calculateClosestIntersection(ray, 0, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Finds the closest intersection between a ray and the geometry inside a distance interval.
+     * @param ray  the ray to check for intersections
+     * @param tMin the minimal distance along the ray (exclusive)
+     * @param tMax the maximal distance along the ray (exclusive)
+     * @return the closest intersection inside the interval, with its distance, or null if there is none
+     */
+    public final Intersection calculateClosestIntersection(Ray ray, double tMin, double tMax) {
+        HitRecord hit = HitRecord.get(tMax);
+        return calculateClosestHitHelper(ray, tMin, hit) ? hit.toIntersection(ray) : null;
+    }
+
+    /**
+     * Help to find the closest intersection inside a distance interval, with a record of its own.
+     * The search itself is {@link #calculateClosestHitHelper}, the structures that hold other
+     * objects call it directly with the record of their own search.
+     * @param ray  the ray to check for intersections
+     * @param tMin the minimal distance along the ray (exclusive)
+     * @param tMax the maximal distance along the ray (exclusive)
+     * @return the closest intersection inside the interval, with its distance, or null if there is none
+     */
+    protected Intersection calculateClosestIntersectionHelper(Ray ray, double tMin, double tMax) {
+        HitRecord hit = new HitRecord().reset(tMax);
+        return calculateClosestHitHelper(ray, tMin, hit) ? hit.toIntersection(ray) : null;
+    }
+
+    /**
+     * Help to find the closest hit between the minimal distance and the distance of the hit recorded so far.
+     * Geometries override it to record only the distance of a hit and to skip the parts beyond
+     * the recorded hit, the default implementation filters all the intersections.
+     * @param ray  the ray to check for intersections
+     * @param tMin the minimal distance along the ray (exclusive)
+     * @param hit  the closest hit so far, its distance is the maximal distance (exclusive);
+     *             updated if a closer hit is found
+     * @return true if a closer hit was found
+     */
+    protected boolean calculateClosestHitHelper(Ray ray, double tMin, HitRecord hit) {
+        List<Intersection> intersections = calculateIntersectionsHelper(ray);
+        if (intersections == null) return false;
+        Intersection closest = null;
+        double tMax = hit.t;
+        for (Intersection intersection : intersections) {
+            double t = Double.isNaN(intersection.t) ? ray.getP0().distance(intersection.point) : intersection.t;
+            if (t > tMin && t < tMax) {
+                closest = intersection;
+                tMax = t;
+            }
+        }
+        if (closest == null) return false;
+        closest.t = tMax;
+        return hit.record(this, closest);
+    }
+
+    /**
+     * Builds the intersection of a hit this object recorded with the numbers only.
+     * The objects that record their hits this way override it to build the intersection from
+     * the primitive, the default implementation finds all the intersections again and takes
+     * the one at the distance of the hit.
+     * @param ray the ray of the search
+     * @param hit the record of the hit
+     * @return the intersection
+     * @throws IllegalStateException if the object has no intersection with the ray
+     */
+    protected Intersection toIntersection(Ray ray, HitRecord hit) {
+        List<Intersection> intersections = calculateIntersectionsHelper(ray);
+        if (intersections == null || intersections.isEmpty())
+            throw new IllegalStateException("A hit was recorded for an object the ray doesn't intersect");
+        Intersection closest = null;
+        double closestDifference = Double.POSITIVE_INFINITY;
+        for (Intersection intersection : intersections) {
+            double t = Double.isNaN(intersection.t) ? ray.getP0().distance(intersection.point) : intersection.t;
+            double difference = Math.abs(t - hit.t);
+            if (difference < closestDifference) {
+                closest = intersection;
+                closestDifference = difference;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Finds the closest intersections of a packet of rays with the geometry, in front of the ray heads.
+     * Coherent rays (neighbouring primary rays) share the traversal of an acceleration structure.
+     * @param rays the rays of the packet
+     * @return the closest intersection of each ray, null where there is none
+     */
+    public final Intersection[] calculateClosestIntersections(Ray[] rays) {
+        Intersection[] closest = new Intersection[rays.length];
+        double[] tMax = new double[rays.length];
+        Arrays.fill(tMax, Double.POSITIVE_INFINITY);
+        calculateClosestIntersectionsHelper(rays, tMax, closest);
+        return closest;
+    }
+
+    /**
+     * Help to find the closest intersections of a packet of rays, each ray before its own maximal distance.
+     * Where a closer intersection is found it replaces the one of the ray and its distance becomes
+     * the maximal distance of the ray. The default implementation traces every ray on its own.
+     * @param rays    the rays of the packet
+     * @param tMax    the maximal distance of each ray (exclusive), updated with the found intersections
+     * @param closest the closest intersection found so far for each ray, updated with the found intersections
+     */
+    protected void calculateClosestIntersectionsHelper(Ray[] rays, double[] tMax, Intersection[] closest) {
+        HitRecord hit = new HitRecord();
+        for (int i = 0; i < rays.length; i++) {
+            if (calculateClosestHitHelper(rays[i], 0, hit.reset(tMax[i]))) {
+                closest[i] = hit.toIntersection(rays[i]);
+                tMax[i] = hit.t;
+            }
+        }
+    }
+
+    /**
+     * Calculates the transparency along a ray up to a maximal distance: the product of the
+     * transparency coefficients of the materials of all the intersections before that distance.
+     * The calculation stops as soon as the product is lower than a minimal value.
+     * @param ray         the ray to check for intersections
+     * @param maxDistance the maximal distance along the ray (exclusive)
+     * @param minK        the minimal value of the product that still needs calculation
+     * @return the transparency product, lower than minK if the ray is blocked
+     */
+    public final Double3 calculateTransparency(Ray ray, double maxDistance, double minK) {
+        return calculateTransparencyHelper(ray, maxDistance, Double3.ONE, minK);
+    }
+
+    /**
+     * Help to calculate the transparency along a ray up to a maximal distance.
+     * Geometries override it to skip the parts beyond the distance and to stop at the first
+     * opaque intersection, the default implementation goes over all the intersections.
+     * @param ray         the ray to check for intersections
+     * @param maxDistance the maximal distance along the ray (exclusive)
+     * @param ktr         the transparency product accumulated so far
+     * @param minK        the minimal value of the product that still needs calculation
+     * @return the transparency product including this geometry
+     */
+    protected Double3 calculateTransparencyHelper(Ray ray, double maxDistance, Double3 ktr, double minK) {
+        List<Intersection> intersections = calculateIntersectionsHelper(ray);
+        if (intersections == null) return ktr;
+        for (Intersection intersection : intersections) {
+            double t = Double.isNaN(intersection.t) ? ray.getP0().distance(intersection.point) : intersection.t;
+            if (t < maxDistance) {
+                ktr = ktr.product(intersection.material.kT);
+                if (ktr.lowerThan(minK)) return ktr;
+            }
+        }
+        return ktr;
+    }
+
     /**
      * Gets the bounding box of the geometry.
      * @return the bounding box of the geometry
@@ -0,0 +1,447 @@
+package geometries;
+
+import primitives.AABB;
+import primitives.Double3;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * KDTree is a space partitioning accelerator: every inner node splits its box by an axis
+ * aligned plane, and an object that crosses the plane is referenced from both sides.
+ * The split planes are chosen by the Surface Area Heuristic over the sorted box edges
+ * of the objects, which fits scenes with many axis aligned polygons well.<br>
+ * The nodes are stored in depth-first order (the child below the plane right after its parent)
+ * in a compact encoding of 2 ints and a double per node:
+ * <ul>
+ * <li>inner node - the split axis (0-2) in the low 2 bits of the first int and the index of the
+ * child above the plane in the rest of it, and the plane position in the double</li>
+ * <li>leaf - 3 in the low 2 bits of the first int and the amount of objects in the rest of it,
+ * and the offset of its object indices in the second int</li>
+ * </ul>
+ * The rays visit the leaves from near to far and stop at the first leaf that contains the
+ * closest intersection. Objects without a finite bounding box are kept beside the tree.
+ * @author Jeshurun and Binyamin
+ */
+public class KDTree extends Intersectable {
+    /*** The cost of intersecting an object, relative to the cost of traversing a node*/
+    private static final double INTERSECTION_COST = 80;
+    /*** The cost of traversing a node*/
+    private static final double TRAVERSAL_COST = 1;
+    /*** The cost reduction for splits that leave one side empty*/
+    private static final double EMPTY_BONUS = 0.5;
+    /*** The amount of objects below which a node is always a leaf*/
+    private static final int MAX_LEAF_SIZE = 1;
+    /*** The amount of splits that don't reduce the cost which are still tried on a path*/
+    private static final int MAX_BAD_REFINES = 3;
+    /*** The marker of a leaf in the low bits of a node*/
+    private static final int LEAF = 3;
+
+    /*** The objects with a finite bounding box*/
+    private final Intersectable[] objects;
+    /*** The objects without a finite bounding box*/
+    private final Intersectable[] unbounded;
+    /*** The encoded nodes, 2 ints per node*/
+    private final int[] nodes;
+    /*** The split positions of the inner nodes*/
+    private final double[] splits;
+    /*** The object indices of the leaves, leaf after leaf*/
+    private final int[] leafObjects;
+    /*** The maximal depth of the tree, the size of the traversal stack*/
+    private final int maxDepth;
+    /*** The bounds of the tree: min x,y,z then max x,y,z*/
+    private final double[] bounds;
+    /*** The bounding box of the tree*/
+    private final AABB box;
+    /*** The mailboxes of the threads: the last ray each object was tested with*/
+    private final ThreadLocal<Mailbox> mailboxes;
+
+    /**
+     * Constructor that builds the tree over objects. Groups without a finite bounding box
+     * are opened so only their unbounded objects stay outside of the tree.
+     * @param objects the objects
+     */
+    public KDTree(List<? extends Intersectable> objects) {
+        List<Intersectable> bounded = new ArrayList<>();
+        List<Intersectable> others = new ArrayList<>();
+        for (Intersectable object : objects) BVHBuilder.separate(object, bounded, others);
+        this.objects = bounded.toArray(new Intersectable[0]);
+        this.unbounded = others.toArray(new Intersectable[0]);
+        int n = this.objects.length;
+        maxDepth = (int) Math.round(8 + 1.3 * (Math.log(Math.max(n, 1)) / Math.log(2)));
+
+        Builder builder = new Builder();
+        bounds = BVHBuilder.emptyBox();
+        for (int i = 0; i < n; i++) BVHBuilder.merge(bounds, builder.objectBounds[i]);
+        int[] all = new int[n];
+        for (int i = 0; i < n; i++) all[i] = i;
+        if (n > 0) builder.build(bounds.clone(), all, maxDepth, 0);
+        nodes = Arrays.copyOf(builder.nodes, 2 * builder.nodeCount);
+        splits = Arrays.copyOf(builder.splits, builder.nodeCount);
+        leafObjects = Arrays.copyOf(builder.leafObjects, builder.leafObjectCount);
+
+        double inf = Double.POSITIVE_INFINITY;
+        box = unbounded.length > 0 ? new AABB(new Point(-inf, -inf, -inf), new Point(inf, inf, inf))
+                : n == 0 ? null : BVHBuilder.toAABB(bounds);
+        mailboxes = ThreadLocal.withInitial(() -> new Mailbox(n));
+    }
+
+    /**
+     * Returns the amount of nodes in the tree
+     * @return the amount of nodes
+     */
+    public int getNodeCount() {
+        return nodes.length / 2;
+    }
+
+    @Override
+    public AABB getBoundingBox() {
+        return box;
+    }
+
+    @Override
+    protected List<Intersection> calculateIntersectionsHelper(Ray ray) {
+        List<Intersection> intersections = new ArrayList<>();
+        collectIntersectionsHelper(ray, intersections);
+        return intersections.isEmpty() ? null : intersections;
+    }
+
+    @Override
+    protected void collectIntersectionsHelper(Ray ray, List<Intersection> intersections) {
+        for (Intersectable object : unbounded)
+            object.collectIntersectionsHelper(ray, intersections);
+        Walker walker = new Walker();
+        if (walker.start(ray, Double.POSITIVE_INFINITY)) {
+            Mailbox mailbox = mailboxes.get().next();
+            for (int leaf = walker.nextLeaf(Double.POSITIVE_INFINITY); leaf >= 0;
+                 leaf = walker.nextLeaf(Double.POSITIVE_INFINITY)) {
+                int offset = nodes[2 * leaf + 1];
+                for (int i = offset; i < offset + (nodes[2 * leaf] >>> 2); i++) {
+                    int object = leafObjects[i];
+                    if (!mailbox.check(object)) continue;
+                    objects[object].collectIntersectionsHelper(ray, intersections);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected boolean calculateClosestHitHelper(Ray ray, double tMin, HitRecord hit) {
+        boolean found = false;
+        for (Intersectable object : unbounded) {
+            if (object.calculateClosestHitHelper(ray, tMin, hit)) found = true;
+        }
+        Walker walker = new Walker();
+        if (!walker.start(ray, hit.t)) return found;
+        Mailbox mailbox = mailboxes.get().next();
+        for (int leaf = walker.nextLeaf(hit.t); leaf >= 0; leaf = walker.nextLeaf(hit.t)) {
+            int offset = nodes[2 * leaf + 1];
+            for (int i = offset; i < offset + (nodes[2 * leaf] >>> 2); i++) {
+                int object = leafObjects[i];
+                if (!mailbox.check(object)) continue;
+                // a hit beyond this leaf is kept, so the object needn't be tested again in the next leaves
+                if (objects[object].calculateClosestHitHelper(ray, tMin, hit)) found = true;
+            }
+            // no object in the next leaves can be hit before a hit inside this leaf
+            if (found && hit.t <= walker.leafExit()) return true;
+        }
+        return found;
+    }
+
+    @Override
+    protected Double3 calculateTransparencyHelper(Ray ray, double maxDistance, Double3 ktr, double minK) {
+        for (Intersectable object : unbounded) {
+            ktr = object.calculateTransparencyHelper(ray, maxDistance, ktr, minK);
+            if (ktr.lowerThan(minK)) return ktr;
+        }
+        Walker walker = new Walker();
+        if (!walker.start(ray, maxDistance)) return ktr;
+        Mailbox mailbox = mailboxes.get().next();
+        for (int leaf = walker.nextLeaf(maxDistance); leaf >= 0; leaf = walker.nextLeaf(maxDistance)) {
+            int offset = nodes[2 * leaf + 1];
+            for (int i = offset; i < offset + (nodes[2 * leaf] >>> 2); i++) {
+                int object = leafObjects[i];
+                if (!mailbox.check(object)) continue;
+                ktr = objects[object].calculateTransparencyHelper(ray, maxDistance, ktr, minK);
+                if (ktr.lowerThan(minK)) return ktr; // the ray is blocked
+            }
+        }
+        return ktr;
+    }
+
+    /**
+     * Walker of a ray through the leaves of the tree from near to far.
+     * For each node it keeps the interval of the ray inside the node, the far child of a node
+     * that the ray crosses both of its children is postponed on a stack.
+     */
+    private class Walker {
+        /*** The ray origin*/
+        private final double[] origin = new double[3];
+        /*** The ray direction*/
+        private final double[] dir = new double[3];
+        /*** The inverse of the ray direction coordinates*/
+        private final double[] inverse = new double[3];
+        /*** The postponed nodes*/
+        private final int[] stack = new int[maxDepth + 1];
+        /*** The entry distances into the postponed nodes*/
+        private final double[] stackMin = new double[maxDepth + 1];
+        /*** The exit distances from the postponed nodes*/
+        private final double[] stackMax = new double[maxDepth + 1];
+        /*** The amount of postponed nodes*/
+        private int top = 0;
+        /*** The next node, -1 if there is none, -2 if it has to be popped from the stack*/
+        private int node = -1;
+        /*** The entry distance into the next node*/
+        private double nodeMin;
+        /*** The exit distance from the next node*/
+        private double nodeMax;
+        /*** The exit distance from the last returned leaf*/
+        private double leafExit;
+
+        /**
+         * Starts the walk at the root
+         * @param ray  the ray
+         * @param tMax the maximal distance
+         * @return false if the ray misses the tree before the maximal distance
+         */
+        boolean start(Ray ray, double tMax) {
+            if (nodes.length == 0) return false;
+            Point p0 = ray.getP0();
+            Vector d = ray.getDir();
+            double tNear = 0;
+            double tFar = tMax;
+            for (int axis = 0; axis < 3; axis++) {
+                origin[axis] = p0.getCoordinate(axis);
+                dir[axis] = d.getCoordinate(axis);
+                inverse[axis] = 1 / dir[axis];
+                double t0 = (bounds[axis] - origin[axis]) * inverse[axis];
+                double t1 = (bounds[axis + 3] - origin[axis]) * inverse[axis];
+                if (inverse[axis] < 0) { double t = t0; t0 = t1; t1 = t; }
+                if (t0 > tNear) tNear = t0;
+                if (t1 < tFar) tFar = t1;
+            }
+            if (tNear > tFar) return false;
+            node = 0;
+            nodeMin = tNear;
+            nodeMax = tFar;
+            return true;
+        }
+
+        /**
+         * Descends to the next leaf along the ray
+         * @param tLimit the distance of the closest intersection found so far,
+         *               nodes the ray enters after it are skipped
+         * @return the index of the leaf, or -1 if there are no more leaves
+         */
+        int nextLeaf(double tLimit) {
+            if (node == -2) pop(tLimit);
+            while (node >= 0) {
+                int info = nodes[2 * node];
+                int axis = info & 3;
+                if (axis == LEAF) {
+                    int leaf = node;
+                    leafExit = nodeMax;
+                    node = -2; // the next node is popped when the leaf is done
+                    return leaf;
+                }
+                double split = splits[node];
+                double tPlane = (split - origin[axis]) * inverse[axis];
+                boolean belowFirst = origin[axis] < split || (origin[axis] == split && dir[axis] <= 0);
+                int first = belowFirst ? node + 1 : info >>> 2;
+                int second = belowFirst ? info >>> 2 : node + 1;
+                if (!(tPlane > 0 && tPlane <= nodeMax)) {
+                    node = first; // the ray doesn't reach the plane inside the node
+                } else if (tPlane < nodeMin) {
+                    node = second; // the ray crossed the plane before entering the node
+                } else {
+                    stack[top] = second;
+                    stackMin[top] = tPlane;
+                    stackMax[top++] = nodeMax;
+                    node = first;
+                    nodeMax = tPlane;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the exit distance of the ray from the last returned leaf
+         * @return the exit distance
+         */
+        double leafExit() {
+            return leafExit;
+        }
+
+        /**
+         * Continues with the nearest postponed node that the ray enters before a distance
+         * @param tLimit the distance
+         */
+        private void pop(double tLimit) {
+            while (top > 0) {
+                --top;
+                if (stackMin[top] < tLimit) {
+                    node = stack[top];
+                    nodeMin = stackMin[top];
+                    nodeMax = stackMax[top];
+                    return;
+                }
+            }
+            node = -1;
+        }
+    }
+
+    /**
+     * Builder of the encoded tree with the object bounds cached
+     */
+    private class Builder {
+        /*** The bounds of the objects, min x,y,z then max x,y,z*/
+        final double[][] objectBounds;
+        /*** The encoded nodes*/
+        int[] nodes = new int[2 * 64];
+        /*** The split positions*/
+        double[] splits = new double[64];
+        /*** The amount of nodes*/
+        int nodeCount = 0;
+        /*** The object indices of the leaves*/
+        int[] leafObjects = new int[64];
+        /*** The amount of object indices of the leaves*/
+        int leafObjectCount = 0;
+
+        /**
+         * Calculates the bounds of the objects
+         */
+        Builder() {
+            objectBounds = new double[objects.length][6];
+            for (int i = 0; i < objects.length; i++) {
+                AABB objectBox = objects[i].getBoundingBox();
+                for (int axis = 0; axis < 3; axis++) {
+                    objectBounds[i][axis] = objectBox.getMin().getCoordinate(axis);
+                    objectBounds[i][axis + 3] = objectBox.getMax().getCoordinate(axis);
+                }
+            }
+        }
+
+        /**
+         * Builds the sub-tree of a node
+         * @param nodeBounds  the bounds of the node
+         * @param objectIndex the objects that overlap the node
+         * @param depth       the amount of levels that may still be added
+         * @param badRefines  the amount of splits on the path that didn't reduce the cost
+         */
+        void build(double[] nodeBounds, int[] objectIndex, int depth, int badRefines) {
+            int index = nodeCount++;
+            if (nodeCount > splits.length) {
+                nodes = Arrays.copyOf(nodes, 4 * splits.length);
+                splits = Arrays.copyOf(splits, 2 * splits.length);
+            }
+            int n = objectIndex.length;
+            if (n <= MAX_LEAF_SIZE || depth == 0) {
+                leaf(index, objectIndex);
+                return;
+            }
+
+            // find the cheapest plane among the box edges of the objects on all the axes
+            double area = BVHBuilder.surfaceArea(nodeBounds);
+            double leafCost = INTERSECTION_COST * n;
+            double bestCost = Double.POSITIVE_INFINITY;
+            int bestAxis = -1;
+            double bestSplit = 0;
+            double[] starts = new double[n];
+            double[] ends = new double[n];
+            for (int axis = 0; axis < 3; axis++) {
+                for (int i = 0; i < n; i++) {
+                    starts[i] = objectBounds[objectIndex[i]][axis];
+                    ends[i] = objectBounds[objectIndex[i]][axis + 3];
+                }
+                Arrays.sort(starts);
+                Arrays.sort(ends);
+                // sweep the edges in order, a start edge before an end edge at the same position
+                int i = 0;
+                int j = 0;
+                while (i < n || j < n) {
+                    boolean start = i < n && (j == n || starts[i] <= ends[j]);
+                    double position = start ? starts[i] : ends[j];
+                    if (!start) ++j;
+                    if (position > nodeBounds[axis] && position < nodeBounds[axis + 3]) {
+                        // the objects that start before the plane are below it, the ones that end after it are above
+                        double cost = splitCost(nodeBounds, area, axis, position, i, n - j);
+                        if (cost < bestCost) {
+                            bestCost = cost;
+                            bestAxis = axis;
+                            bestSplit = position;
+                        }
+                    }
+                    if (start) ++i;
+                }
+            }
+
+            if (bestCost > leafCost) ++badRefines;
+            if (bestAxis < 0 || badRefines == MAX_BAD_REFINES || (bestCost > 4 * leafCost && n < 16)) {
+                leaf(index, objectIndex);
+                return;
+            }
+
+            // the objects that start before the plane are below it, the ones that end after it are above
+            int[] belowObjects = new int[n];
+            int[] aboveObjects = new int[n];
+            int belowCount = 0;
+            int aboveCount = 0;
+            for (int object : objectIndex) {
+                double min = objectBounds[object][bestAxis];
+                double max = objectBounds[object][bestAxis + 3];
+                if (min < bestSplit || (min == bestSplit && max == bestSplit)) belowObjects[belowCount++] = object;
+                if (max > bestSplit) aboveObjects[aboveCount++] = object;
+            }
+            double[] belowBounds = nodeBounds.clone();
+            belowBounds[bestAxis + 3] = bestSplit;
+            double[] aboveBounds = nodeBounds.clone();
+            aboveBounds[bestAxis] = bestSplit;
+
+            splits[index] = bestSplit;
+            build(belowBounds, Arrays.copyOf(belowObjects, belowCount), depth - 1, badRefines);
+            nodes[2 * index] = bestAxis | (nodeCount << 2);
+            build(aboveBounds, Arrays.copyOf(aboveObjects, aboveCount), depth - 1, badRefines);
+        }
+
+        /**
+         * Calculates the SAH cost of splitting a node by a plane
+         * @param nodeBounds the bounds of the node
+         * @param area       the surface area of the node
+         * @param axis       the axis of the plane
+         * @param position   the position of the plane
+         * @param below      the amount of objects below the plane
+         * @param above      the amount of objects above the plane
+         * @return the cost
+         */
+        private double splitCost(double[] nodeBounds, double area, int axis, double position, int below, int above) {
+            int a1 = (axis + 1) % 3;
+            int a2 = (axis + 2) % 3;
+            double d1 = nodeBounds[a1 + 3] - nodeBounds[a1];
+            double d2 = nodeBounds[a2 + 3] - nodeBounds[a2];
+            double belowArea = 2 * (d1 * d2 + (position - nodeBounds[axis]) * (d1 + d2));
+            double aboveArea = 2 * (d1 * d2 + (nodeBounds[axis + 3] - position) * (d1 + d2));
+            double bonus = below == 0 || above == 0 ? EMPTY_BONUS : 0;
+            double probability = area > 0 ? 1 / area : 0;
+            return TRAVERSAL_COST + INTERSECTION_COST * (1 - bonus)
+                    * (belowArea * probability * below + aboveArea * probability * above);
+        }
+
+        /**
+         * Encodes a leaf
+         * @param index       the node index
+         * @param objectIndex the objects of the leaf
+         */
+        private void leaf(int index, int[] objectIndex) {
+            if (leafObjectCount + objectIndex.length > leafObjects.length)
+                leafObjects = Arrays.copyOf(leafObjects, 2 * (leafObjectCount + objectIndex.length));
+            System.arraycopy(objectIndex, 0, leafObjects, leafObjectCount, objectIndex.length);
+            nodes[2 * index] = LEAF | (objectIndex.length << 2);
+            nodes[2 * index + 1] = leafObjectCount;
+            leafObjectCount += objectIndex.length;
+        }
+    }
+}
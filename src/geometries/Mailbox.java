@@ -0,0 +1,101 @@
+package geometries;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Mailbox of a single thread for an acceleration structure that references an object
+ * from several places (cells, leaves). It remembers the last ray each object was tested
+ * with, so an object is tested only once per ray. For a packet of rays it also remembers
+ * which rays of the current packet each object was tested with, a bit per ray.
+ * @author Jeshurun and Binyamin
+ */
+class Mailbox {
+    /*** The stamp of the last ray each object was tested with*/
+    private final int[] stamps;
+    /*** The stamp of the current ray or packet*/
+    private int stamp = 0;
+    /*** The rays of the current packet each object was tested with, a bit per ray, null until a packet starts*/
+    private long[] rays;
+    /*** The amount of 64-bit words of rays of each object in the current packet*/
+    private int words;
+
+    /**
+     * Constructor
+     * @param size the amount of objects
+     */
+    Mailbox(int size) {
+        stamps = new int[size];
+    }
+
+    /**
+     * Starts a new ray
+     * @return the mailbox itself
+     */
+    Mailbox next() {
+        if (++stamp == 0) { // all the stamps were used - start over
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+        return this;
+    }
+
+    /**
+     * Starts a new packet of rays
+     * @param size the amount of rays in the packet
+     * @return the mailbox itself
+     */
+    Mailbox nextPacket(int size) {
+        next();
+        words = (size + 63) >>> 6;
+        if (rays == null || rays.length < stamps.length * words) rays = new long[stamps.length * words];
+        return this;
+    }
+
+    /**
+     * Checks whether an object has to be tested with a ray of the current packet, and marks it as tested
+     * @param object the object index
+     * @param ray    the index of the ray in the packet
+     * @return true if the object was not tested with the ray yet
+     */
+    boolean check(int object, int ray) {
+        int start = object * words;
+        if (stamps[object] != stamp) { // the first ray of the packet that reaches the object
+            stamps[object] = stamp;
+            Arrays.fill(rays, start, start + words, 0);
+        }
+        int word = start + (ray >>> 6);
+        long bit = 1L << ray;
+        if ((rays[word] & bit) != 0) return false;
+        rays[word] |= bit;
+        return true;
+    }
+
+    /**
+     * Checks whether an object has to be tested with the current ray, and marks it as tested
+     * @param object the object index
+     * @return true if the object was not tested with the current ray yet
+     */
+    boolean check(int object) {
+        if (stamps[object] == stamp) return false;
+        stamps[object] = stamp;
+        return true;
+    }
+
+    /**
+     * Numbers the distinct objects of an array where an object may appear several times
+     * @param objects the objects
+     * @return the number of the object in each place of the array (the amount of distinct objects
+     * is the highest number plus one), or null if every object appears only once
+     */
+    static int[] objectIds(Intersectable[] objects) {
+        Map<Intersectable, Integer> ids = new IdentityHashMap<>();
+        int[] result = new int[objects.length];
+        for (int i = 0; i < objects.length; i++) {
+            Integer id = ids.putIfAbsent(objects[i], ids.size());
+            result[i] = id == null ? ids.size() - 1 : id;
+        }
+        return ids.size() == objects.length ? null : result;
+    }
+}
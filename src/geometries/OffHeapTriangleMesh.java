@@ -0,0 +1,296 @@
+package geometries;
+
+import primitives.Material;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.function.IntBinaryOperator;
+
+import static java.lang.foreign.ValueLayout.JAVA_DOUBLE;
+import static java.lang.foreign.ValueLayout.JAVA_FLOAT;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+
+/**
+ * OffHeapTriangleMesh is a mesh of triangles stored outside the Java heap, in memory segments:
+ * <ul>
+ * <li>positions - 3 coordinates per vertex, floats or doubles by the precision of the mesh</li>
+ * <li>indices - 3 vertex indices per triangle, in leaf order</li>
+ * <li>face materials - optionally, the index of the material of each triangle</li>
+ * <li>bounds - 6 values per node of the hierarchy, in the precision of the mesh</li>
+ * <li>nodes - 2 values per node: the index of the right child or of the first triangle, and the triangle count</li>
+ * </ul>
+ * Only the materials stay on the heap, so the heap doesn't grow with the size of the model and the
+ * garbage collector never scans the model. The mesh is either built from segments the vertices and
+ * the indices were written into directly (see {@code ObjReader.getOffHeapTriangleMeshFromOBJ}), or
+ * copied from a {@link TriangleMesh}. Building the hierarchy takes temporary heap arrays of the boxes
+ * of the triangles, which are dropped once the mesh is built.<br>
+ * The memory lives as long as its arena: a mesh of an automatic arena is freed when it is no longer
+ * reachable, a mesh of an arena that is closed can no longer be intersected. Rendering with several
+ * threads needs a shared or an automatic arena.<br>
+ * The traversal and the intersections are those of {@link IndexedMesh}.
+ * @author Jeshurun and Binyamin
+ */
+public class OffHeapTriangleMesh extends IndexedMesh {
+    /*** The coordinates of the vertices, 3 values per vertex*/
+    private final MemorySegment positions;
+    /*** The vertex indices of the triangles in leaf order, 3 values per triangle*/
+    private final MemorySegment indices;
+    /*** The index of the material of each triangle in leaf order, null if there are no face materials*/
+    private final MemorySegment faceMaterials;
+    /*** The bounds of the nodes, 6 values per node*/
+    private final MemorySegment bounds;
+    /*** The offsets and the triangle counts of the nodes, 2 values per node*/
+    private final MemorySegment nodes;
+    /*** Whether the coordinates and the bounds are floats*/
+    private final boolean singlePrecision;
+    /*** The amount of triangles*/
+    private final int triangleCount;
+    /*** The amount of vertices*/
+    private final int vertexCount;
+    /*** The amount of nodes*/
+    private final int nodeCount;
+    /*** The size of the traversal stack, the depth of the hierarchy*/
+    private final int stackSize;
+
+    /**
+     * Constructor that copies a mesh into memory that is freed when the copy is no longer reachable
+     * @param mesh the mesh
+     */
+    public OffHeapTriangleMesh(TriangleMesh mesh) {
+        this(mesh, Arena.ofAuto());
+    }
+
+    /**
+     * Constructor that copies a mesh into memory of an arena, with the material and the emission of the mesh
+     * @param mesh  the mesh
+     * @param arena the arena of the memory
+     */
+    public OffHeapTriangleMesh(TriangleMesh mesh, Arena arena) {
+        super(mesh.materials, mesh);
+        singlePrecision = mesh.isSinglePrecision();
+        ValueLayout real = singlePrecision ? JAVA_FLOAT : JAVA_DOUBLE;
+        triangleCount = mesh.getTriangleCount();
+        vertexCount = mesh.getVertexCount();
+        nodeCount = mesh.nodeCount();
+        stackSize = mesh.stackSize();
+
+        positions = allocate(arena, real, 3L * vertexCount);
+        for (int vertex = 0; vertex < vertexCount; vertex++)
+            for (int axis = 0; axis < 3; axis++)
+                setReal(positions, 3L * vertex + axis, mesh.coordinate(vertex, axis));
+        indices = allocate(arena, JAVA_INT, 3L * triangleCount);
+        for (int triangle = 0; triangle < triangleCount; triangle++)
+            for (int corner = 0; corner < 3; corner++)
+                indices.setAtIndex(JAVA_INT, 3L * triangle + corner, mesh.index(triangle, corner));
+        if (materials == null) faceMaterials = null;
+        else {
+            faceMaterials = allocate(arena, JAVA_INT, triangleCount);
+            for (int triangle = 0; triangle < triangleCount; triangle++)
+                faceMaterials.setAtIndex(JAVA_INT, triangle, mesh.faceMaterial(triangle));
+        }
+        bounds = allocate(arena, real, 6L * nodeCount);
+        nodes = allocate(arena, JAVA_INT, 2L * nodeCount);
+        for (int node = 0; node < nodeCount; node++) {
+            for (int i = 0; i < 6; i++) setReal(bounds, 6L * node + i, mesh.bound(node, i));
+            for (int value = 0; value < 2; value++) nodes.setAtIndex(JAVA_INT, 2L * node + value, mesh.node(node, value));
+        }
+    }
+
+    /**
+     * Constructor of a mesh whose faces have the material of the mesh, from segments of its vertices and its faces
+     * @param positions       the coordinates of the vertices, 3 floats or doubles per vertex (not copied)
+     * @param singlePrecision true if the coordinates are floats, false if they are doubles
+     * @param indices         the vertex indices of the triangles, 3 ints per triangle (not copied, reordered)
+     * @param arena           the arena of the memory of the hierarchy
+     * @throws IllegalArgumentException if the segments are not of whole vertices and triangles
+     *                                  or an index is out of range
+     */
+    public OffHeapTriangleMesh(MemorySegment positions, boolean singlePrecision, MemorySegment indices, Arena arena) {
+        this(positions, singlePrecision, indices, null, null, arena);
+    }
+
+    /**
+     * Constructor of a mesh with a material for each face, from segments of its vertices and its faces.
+     * The hierarchy is built over the segments, and the triangles and their material indices are
+     * reordered in place into leaf order, so the model is never copied to the heap.
+     * @param positions       the coordinates of the vertices, 3 floats or doubles per vertex (not copied)
+     * @param singlePrecision true if the coordinates are floats, false if they are doubles
+     * @param indices         the vertex indices of the triangles, 3 ints per triangle (not copied, reordered)
+     * @param materials       the materials of the faces, null for the material of the mesh
+     * @param faceMaterials   the index of the material of each triangle, an int per triangle
+     *                        (not copied, reordered), null for the material of the mesh
+     * @param arena           the arena of the memory of the hierarchy
+     * @throws IllegalArgumentException if the segments are not of whole vertices and triangles,
+     *                                  an index is out of range, or only one of the materials is given
+     */
+    public OffHeapTriangleMesh(MemorySegment positions, boolean singlePrecision, MemorySegment indices,
+                               Material[] materials, MemorySegment faceMaterials, Arena arena) {
+        super(materials);
+        ValueLayout real = singlePrecision ? JAVA_FLOAT : JAVA_DOUBLE;
+        if (positions.byteSize() % (3 * real.byteSize()) != 0)
+            throw new IllegalArgumentException("The positions must have 3 coordinates per vertex");
+        if (indices.byteSize() % (3 * JAVA_INT.byteSize()) != 0)
+            throw new IllegalArgumentException("The indices must have 3 vertices per triangle");
+        long vertices = positions.byteSize() / (3 * real.byteSize());
+        long triangles = indices.byteSize() / (3 * JAVA_INT.byteSize());
+        if (vertices > Integer.MAX_VALUE || triangles > MAX_TRIANGLES)
+            throw new IllegalArgumentException("The mesh has too many vertices or triangles");
+        if ((materials == null) != (faceMaterials == null))
+            throw new IllegalArgumentException("The materials and the face materials must be given together");
+        if (faceMaterials != null && faceMaterials.byteSize() != triangles * JAVA_INT.byteSize())
+            throw new IllegalArgumentException("There must be a material index for each triangle");
+
+        this.singlePrecision = singlePrecision;
+        this.positions = positions;
+        this.indices = indices;
+        this.faceMaterials = faceMaterials;
+        vertexCount = (int) vertices;
+        triangleCount = (int) triangles;
+        // the segments are still in their original order
+        IntBinaryOperator index = (triangle, corner) -> indices.getAtIndex(JAVA_INT, 3L * triangle + corner);
+        checkFaces(triangleCount, vertexCount, materials == null ? 0 : materials.length, index,
+                faceMaterials == null ? null : triangle -> faceMaterials.getAtIndex(JAVA_INT, triangle));
+        Builder builder = new Builder(triangleCount, index, singlePrecision
+                ? i -> positions.getAtIndex(JAVA_FLOAT, i) : i -> positions.getAtIndex(JAVA_DOUBLE, i));
+        reorder(builder.order, indices, faceMaterials);
+
+        nodeCount = builder.nodeCount;
+        stackSize = builder.depth;
+        bounds = allocate(arena, real, 6L * nodeCount);
+        for (int i = 0; i < builder.bounds.length; i++) {
+            if (singlePrecision) bounds.setAtIndex(JAVA_FLOAT, i, floatBound(builder.bounds, i));
+            else bounds.setAtIndex(JAVA_DOUBLE, i, builder.bounds[i]);
+        }
+        nodes = allocate(arena, JAVA_INT, 2L * nodeCount);
+        MemorySegment.copy(builder.nodes, 0, nodes, JAVA_INT, 0, builder.nodes.length);
+    }
+
+    /**
+     * Allocates memory of an arena for values of a layout
+     * @param arena  the arena
+     * @param layout the layout of a value
+     * @param count  the amount of values
+     * @return the memory segment
+     */
+    private static MemorySegment allocate(Arena arena, ValueLayout layout, long count) {
+        return arena.allocate(count * layout.byteSize(), layout.byteAlignment());
+    }
+
+    /**
+     * Moves the triangles and their material indices in place into leaf order, cycle after cycle of the order
+     * @param order         the original index of the triangle of each position, marked on the way as moved
+     * @param indices       the vertex indices of the triangles, 3 ints per triangle
+     * @param faceMaterials the index of the material of each triangle, null if there are no face materials
+     */
+    private static void reorder(int[] order, MemorySegment indices, MemorySegment faceMaterials) {
+        for (int start = 0; start < order.length; start++) {
+            if (order[start] < 0) continue; // moved in an earlier cycle
+            int a = indices.getAtIndex(JAVA_INT, 3L * start), b = indices.getAtIndex(JAVA_INT, 3L * start + 1),
+                    c = indices.getAtIndex(JAVA_INT, 3L * start + 2);
+            int material = faceMaterials == null ? 0 : faceMaterials.getAtIndex(JAVA_INT, start);
+            int position = start;
+            while (true) {
+                int from = order[position];
+                order[position] = ~from;
+                if (from == start) {
+                    setTriangle(indices, faceMaterials, position, a, b, c, material);
+                    break;
+                }
+                setTriangle(indices, faceMaterials, position, indices.getAtIndex(JAVA_INT, 3L * from),
+                        indices.getAtIndex(JAVA_INT, 3L * from + 1), indices.getAtIndex(JAVA_INT, 3L * from + 2),
+                        faceMaterials == null ? 0 : faceMaterials.getAtIndex(JAVA_INT, from));
+                position = from;
+            }
+        }
+    }
+
+    /**
+     * Writes the vertex indices and the material index of a triangle
+     * @param indices       the vertex indices of the triangles, 3 ints per triangle
+     * @param faceMaterials the index of the material of each triangle, null if there are no face materials
+     * @param triangle      the index of the triangle
+     * @param a             the index of the first vertex
+     * @param b             the index of the second vertex
+     * @param c             the index of the third vertex
+     * @param material      the index of the material, ignored if there are no face materials
+     */
+    private static void setTriangle(MemorySegment indices, MemorySegment faceMaterials,
+                                    int triangle, int a, int b, int c, int material) {
+        indices.setAtIndex(JAVA_INT, 3L * triangle, a);
+        indices.setAtIndex(JAVA_INT, 3L * triangle + 1, b);
+        indices.setAtIndex(JAVA_INT, 3L * triangle + 2, c);
+        if (faceMaterials != null) faceMaterials.setAtIndex(JAVA_INT, triangle, material);
+    }
+
+    /**
+     * Stores a number in the precision of the mesh (the numbers of a single precision mesh are floats already)
+     * @param segment the memory segment
+     * @param i       the index of the number
+     * @param value   the number
+     */
+    private void setReal(MemorySegment segment, long i, double value) {
+        if (singlePrecision) segment.setAtIndex(JAVA_FLOAT, i, (float) value);
+        else segment.setAtIndex(JAVA_DOUBLE, i, value);
+    }
+
+    /**
+     * Reads a number in the precision of the mesh
+     * @param segment the memory segment
+     * @param i       the index of the number
+     * @return the number
+     */
+    private double real(MemorySegment segment, long i) {
+        return singlePrecision ? segment.getAtIndex(JAVA_FLOAT, i) : segment.getAtIndex(JAVA_DOUBLE, i);
+    }
+
+    @Override
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+
+    @Override
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    @Override
+    public boolean isSinglePrecision() {
+        return singlePrecision;
+    }
+
+    @Override
+    double coordinate(int vertex, int axis) {
+        return real(positions, 3L * vertex + axis);
+    }
+
+    @Override
+    int index(int triangle, int corner) {
+        return indices.getAtIndex(JAVA_INT, 3L * triangle + corner);
+    }
+
+    @Override
+    int faceMaterial(int triangle) {
+        return faceMaterials.getAtIndex(JAVA_INT, triangle);
+    }
+
+    @Override
+    double bound(int node, int i) {
+        return real(bounds, 6L * node + i);
+    }
+
+    @Override
+    int node(int node, int value) {
+        return nodes.getAtIndex(JAVA_INT, 2L * node + value);
+    }
+
+    @Override
+    int nodeCount() {
+        return nodeCount;
+    }
+
+    @Override
+    int stackSize() {
+        return stackSize;
+    }
+}
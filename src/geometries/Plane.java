@@ -50,27 +50,42 @@ public class Plane extends Geometry {
         return getNormal();
     }
 
-    @Override
-    public List<Intersection> calculateIntersectionsHelper(Ray ray) {
+    /**
+     * Calculates the distance along the ray to the plane
+     * @param ray the ray
+     * @return the distance, or NaN if the ray is parallel to the plane or starts at the plane's point
+     */
+    double intersectionDistance(Ray ray) {
         // Check if the ray is parallel to the plane
         double denominator = normal.dotProduct(ray.getDir());
         if (denominator == 0) {
-            return null; // The ray is parallel to the plane
+            return Double.NaN; // The ray is parallel to the plane
         }
 
         if(ray.getP0().equals(q0)) {
-            return null; // The ray starts on the plane
+            return Double.NaN; // The ray starts on the plane
         }
         // Calculate the t value for the intersection point
-        double t = normal.dotProduct(q0.subtract(ray.getP0())) / denominator;
-        if (t < 0) {
-            return null; // The intersection point is behind the ray's origin
+        return normal.dotProduct(q0.subtract(ray.getP0())) / denominator;
+    }
+
+    @Override
+    public List<Intersection> calculateIntersectionsHelper(Ray ray) {
+        double t = intersectionDistance(ray);
+        if (Double.isNaN(t) || t < 0) {
+            return null; // No intersection or the intersection point is behind the ray's origin
         }
         // Calculate the intersection point
-        Intersection intersection = new Intersection(this, ray.getPoint(t));
+        Intersection intersection = new Intersection(this, ray.getPoint(t), t);
         return List.of(intersection);
     }
 
+    @Override
+    protected boolean calculateClosestHitHelper(Ray ray, double tMin, HitRecord hit) {
+        double t = intersectionDistance(ray);
+        return t > tMin && t < hit.t && hit.record(this, t, -1);
+    }
+
     @Override
     public AABB getBoundingBox() {
         // A plane is infinite in two dimensions, so its bounding box is infinite
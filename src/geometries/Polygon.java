@@ -26,6 +26,13 @@ public class Polygon extends Geometry {
      * The size of the polygon - the amount of the vertices in the polygon
      */
     private final int size;
+    /**
+     * The planes for the inside test, 4 values (normal x,y,z and offset) per plane:
+     * first the plane of the polygon, then for each edge the plane through the edge
+     * perpendicular to the polygon, with the normal towards the inside.
+     * Null for a {@link Triangle}, which has its own intersection
+     */
+    private final double[] edgePlanes;
 
     /**
      * Polygon constructor based on vertices list. The list must be ordered by edge
@@ -59,7 +66,8 @@ public class Polygon extends Geometry {
         // polygon with this plane.
         // The plane holds the invariant normal (orthogonal unit) vector to the polygon
         plane = new Plane(vertices[0], vertices[1], vertices[2]);
-        if (size == 3) return; // no need for more tests for a Triangle
+        edgePlanes = this instanceof Triangle ? null : new double[4 * (size + 1)];
+        if (edgePlanes == null) return; // no need for more tests for a Triangle
 
         Vector n = plane.getNormal(vertices[0]);
         // Subtracting any subsequent points will throw an IllegalArgumentException
@@ -85,6 +93,28 @@ public class Polygon extends Geometry {
             if (positive != (edge1.crossProduct(edge2).dotProduct(n) > 0))
                 throw new IllegalArgumentException("All vertices must be ordered and the polygon must be convex");
         }
+
+        setPlane(0, n, vertices[0]);
+        for (int i = 0; i < size; ++i) {
+            // the normal of the edge in the plane of the polygon, towards the inside of the polygon
+            Vector edgeNormal = n.crossProduct(vertices[(i + 1) % size].subtract(vertices[i])).normalize();
+            setPlane(i + 1, positive ? edgeNormal : edgeNormal.scale(-1), vertices[i]);
+        }
+    }
+
+    /**
+     * Stores a plane for the inside test
+     * @param index  the index of the plane
+     * @param normal the unit normal of the plane
+     * @param point  a point on the plane
+     */
+    private void setPlane(int index, Vector normal, Point point) {
+        double offset = 0;
+        for (int axis = 0; axis < 3; ++axis) {
+            edgePlanes[4 * index + axis] = normal.getCoordinate(axis);
+            offset += normal.getCoordinate(axis) * point.getCoordinate(axis);
+        }
+        edgePlanes[4 * index + 3] = offset;
     }
 
     public Polygon(List<Point> vertices) {
@@ -98,39 +128,39 @@ public class Polygon extends Geometry {
 
     @Override
     public List<Intersection> calculateIntersectionsHelper(Ray ray) {
-        List<Intersection> planeIntersections = plane.calculateIntersections(ray);
-        if (planeIntersections == null) {
+        double t = intersectionDistance(ray);
+        if (Double.isNaN(t) || t < 0) {
             return null;
         }
+        return List.of(new Intersection(this, ray.getPoint(t), t));
+    }
 
-        Point rayHead = ray.getP0();
-        Vector rayDirection = ray.getDir();
-
-        int size = vertices.size();
-        Vector[] normals = new Vector[size];
-
-        for (int i = 0; i < size; i++) {
-            Point pi = vertices.get(i);
-            Point pj = vertices.get((i + 1) % size);
-
-            Vector vi = pi.subtract(rayHead);
-            Vector vj = pj.subtract(rayHead);
-
-            normals[i] = vi.crossProduct(vj).normalize();
-        }
-
-        double dotProduct = alignZero(normals[0].dotProduct(rayDirection));
-        if (dotProduct == 0)
-            return null;
-
-        boolean isPositive = dotProduct > 0;
+    @Override
+    protected boolean calculateClosestHitHelper(Ray ray, double tMin, HitRecord hit) {
+        double t = intersectionDistance(ray);
+        return t > tMin && t < hit.t && hit.record(this, t, -1);
+    }
 
-        for (int i = 1; i < size; i++) {
-            dotProduct = alignZero(normals[i].dotProduct(rayDirection));
-            if (dotProduct == 0 || (dotProduct > 0) != isPositive)
-                return null;  // Return null if dotProduct is zero or signs don't match
-        }
-        return List.of(new Intersection(this, planeIntersections.getFirst().point));
+    /**
+     * Calculates the distance along the ray to its intersection with the inside of the polygon.
+     * The intersection with the plane is tested against the edge planes with a dot product each,
+     * the edges and the vertices don't belong to the polygon.
+     * @param ray the ray
+     * @return the distance (negative behind the ray head), or NaN if the ray misses the inside of the polygon
+     */
+    private double intersectionDistance(Ray ray) {
+        Point p0 = ray.getP0();
+        Vector dir = ray.getDir();
+        double ox = p0.getCoordinate(0), oy = p0.getCoordinate(1), oz = p0.getCoordinate(2);
+        double dx = dir.getCoordinate(0), dy = dir.getCoordinate(1), dz = dir.getCoordinate(2);
+        double denominator = edgePlanes[0] * dx + edgePlanes[1] * dy + edgePlanes[2] * dz;
+        if (denominator == 0) return Double.NaN; // the ray is parallel to the plane
+        double t = (edgePlanes[3] - edgePlanes[0] * ox - edgePlanes[1] * oy - edgePlanes[2] * oz) / denominator;
+        double x = ox + t * dx, y = oy + t * dy, z = oz + t * dz;
+        for (int e = 4; e < edgePlanes.length; e += 4)
+            if (alignZero(edgePlanes[e] * x + edgePlanes[e + 1] * y + edgePlanes[e + 2] * z - edgePlanes[e + 3]) <= 0)
+                return Double.NaN;
+        return t;
     }
 
     @Override
@@ -0,0 +1,495 @@
+package geometries;
+
+import primitives.AABB;
+import primitives.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static geometries.BVHBuilder.emptyBox;
+import static geometries.BVHBuilder.merge;
+import static geometries.BVHBuilder.surfaceArea;
+import static geometries.BVHBuilder.toAABB;
+
+/**
+ * A single build of a spatial split BVH (SBVH). The hierarchy is built over references to
+ * the objects: a reference is an object together with a box bounding the part of the object
+ * that belongs to the node. Besides the object splits of the binned SAH build, a node may be
+ * split by a plane that cuts references in two, so long thin objects don't stretch the boxes
+ * of the nodes over their whole length. A reference cut in two clips the object to each side
+ * of the plane - exactly for polygons, by the box of the reference for any other object.<br>
+ * Spatial splits are tried only where the children of the best object split overlap, and the
+ * total amount of references is bounded by a budget.<br>
+ * An object may appear in several leaves, and every leaf is returned wrapped in a {@link BVHNode}
+ * holding the clipped box, so the hierarchy must be compiled into a {@link FlatBVH}.
+ * @author Jeshurun and Binyamin
+ */
+class SpatialSplitBuild {
+    /*** The overlap of the children of an object split, relative to the root area, above which spatial splits are tried*/
+    private static final double OVERLAP_THRESHOLD = 1e-5;
+    /*** The depth below which no spatial splits are tried*/
+    private static final int MAX_SPATIAL_DEPTH = 64;
+
+    /*** The objects of the build*/
+    private final Intersectable[] objects;
+    /*** The vertices of the polygon objects, 3 values per vertex, null for the other objects*/
+    private final double[][] vertices;
+    /*** The boxes of the references, 6 values for each reference*/
+    private double[] boxes;
+    /*** The object index of each reference*/
+    private int[] objectOf;
+    /*** The amount of references*/
+    private int refCount;
+    /*** The maximal amount of references*/
+    private final int refLimit;
+    /*** The maximal amount of references in a leaf*/
+    private final int leafSize;
+    /*** The amount of bins per axis*/
+    private final int binCount;
+    /*** The cost of traversing a node*/
+    private final double traversalCost;
+    /*** The cost of intersecting a single object*/
+    private final double intersectionCost;
+    /*** The overlap area above which spatial splits are tried*/
+    private double minOverlap;
+
+    /**
+     * Constructor of a build
+     * @param objects          the objects with finite bounding boxes
+     * @param budget           the allowed amount of additional references, relative to the amount of objects
+     * @param leafSize         the maximal amount of references in a leaf
+     * @param binCount         the amount of bins per axis
+     * @param traversalCost    the cost of traversing a node
+     * @param intersectionCost the cost of intersecting a single object
+     */
+    SpatialSplitBuild(Intersectable[] objects, double budget, int leafSize, int binCount,
+                      double traversalCost, double intersectionCost) {
+        this.objects = objects;
+        this.leafSize = leafSize;
+        this.binCount = binCount;
+        this.traversalCost = traversalCost;
+        this.intersectionCost = intersectionCost;
+        int n = objects.length;
+        refLimit = n + (int) Math.min(Integer.MAX_VALUE - n, budget * n);
+        vertices = new double[n][];
+        boxes = new double[6 * n];
+        objectOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            if (objects[i] instanceof Polygon polygon) {
+                vertices[i] = new double[3 * polygon.vertices.size()];
+                for (int v = 0; v < polygon.vertices.size(); v++) {
+                    Point vertex = polygon.vertices.get(v);
+                    for (int axis = 0; axis < 3; axis++)
+                        vertices[i][3 * v + axis] = vertex.getCoordinate(axis);
+                }
+            }
+            AABB box = objects[i].getBoundingBox();
+            for (int axis = 0; axis < 3; axis++) {
+                boxes[6 * i + axis] = box.getMin().getCoordinate(axis);
+                boxes[6 * i + 3 + axis] = box.getMax().getCoordinate(axis);
+            }
+            objectOf[i] = i;
+        }
+        refCount = n;
+    }
+
+    /**
+     * Builds the hierarchy
+     * @return the root of the hierarchy
+     */
+    Intersectable build() {
+        int[] refs = new int[refCount];
+        for (int i = 0; i < refs.length; i++) refs[i] = i;
+        minOverlap = OVERLAP_THRESHOLD * surfaceArea(bounds(refs));
+        return build(refs, 0);
+    }
+
+    /**
+     * Builds the sub-hierarchy of references
+     * @param refs  the references
+     * @param depth the depth of the node
+     * @return the root of the sub-hierarchy
+     */
+    private Intersectable build(int[] refs, int depth) {
+        int n = refs.length;
+        double[] box = bounds(refs);
+        if (n == 1) return leaf(refs, box);
+
+        // object split: best[0] - cost, best[1] - axis, best[2] - last bin of the left side, best[3] - overlap
+        double[] centroidBox = centroidBounds(refs);
+        double[] objectSplit = findObjectSplit(refs, box, centroidBox);
+        // spatial split: best[0] - cost, best[1] - axis, best[2] - last bin of the left side
+        double[] spatialSplit = depth < MAX_SPATIAL_DEPTH && refCount < refLimit
+                && (objectSplit == null || objectSplit[3] > minOverlap)
+                ? findSpatialSplit(refs, box) : null;
+        double bestCost = Math.min(objectSplit == null ? Double.POSITIVE_INFINITY : objectSplit[0],
+                spatialSplit == null ? Double.POSITIVE_INFINITY : spatialSplit[0]);
+        if (n <= leafSize && n * intersectionCost <= bestCost) return leaf(refs, box);
+
+        int[][] sides = null;
+        if (spatialSplit != null && spatialSplit[0] == bestCost)
+            sides = spatialPartition(refs, (int) spatialSplit[1], (int) spatialSplit[2], box);
+        if (sides == null)
+            sides = objectPartition(refs, objectSplit, centroidBox);
+        return new BVHNode(build(sides[0], depth + 1), build(sides[1], depth + 1), toAABB(box));
+    }
+
+    /**
+     * Creates a leaf of references, wrapped in a node with the clipped box of the references
+     * @param refs the references
+     * @param box  the bounding box of the references
+     * @return the node of the leaf
+     */
+    private Intersectable leaf(int[] refs, double[] box) {
+        Intersectable leaf;
+        if (refs.length == 1)
+            leaf = objects[objectOf[refs[0]]];
+        else {
+            List<Intersectable> list = new ArrayList<>(refs.length);
+            for (int ref : refs) list.add(objects[objectOf[ref]]);
+            leaf = new Geometries(list);
+        }
+        return new BVHNode(leaf, null, toAABB(box));
+    }
+
+    /**
+     * Calculates the bounding box of references
+     * @param refs the references
+     * @return the box as min x,y,z and max x,y,z
+     */
+    private double[] bounds(int[] refs) {
+        double[] box = emptyBox();
+        for (int ref : refs) merge(box, Arrays.copyOfRange(boxes, 6 * ref, 6 * ref + 6));
+        return box;
+    }
+
+    /**
+     * Calculates the bounding box of the centroids of the boxes of references
+     * @param refs the references
+     * @return the box as min x,y,z and max x,y,z
+     */
+    private double[] centroidBounds(int[] refs) {
+        double[] box = emptyBox();
+        for (int ref : refs)
+            for (int axis = 0; axis < 3; axis++) {
+                double c = centroid(ref, axis);
+                box[axis] = Math.min(box[axis], c);
+                box[axis + 3] = Math.max(box[axis + 3], c);
+            }
+        return box;
+    }
+
+    /**
+     * Calculates the centroid coordinate of the box of a reference
+     * @param ref  the reference
+     * @param axis the axis
+     * @return the centroid coordinate
+     */
+    private double centroid(int ref, int axis) {
+        return (boxes[6 * ref + axis] + boxes[6 * ref + 3 + axis]) / 2;
+    }
+
+    /**
+     * Calculates the SAH cost of a split
+     * @param area       the surface area of the node
+     * @param leftArea   the surface area of the left side
+     * @param leftCount  the amount of references of the left side
+     * @param rightArea  the surface area of the right side
+     * @param rightCount the amount of references of the right side
+     * @return the cost
+     */
+    private double cost(double area, double leftArea, int leftCount, double rightArea, int rightCount) {
+        return traversalCost + intersectionCost * (area > 0
+                ? (leftArea * leftCount + rightArea * rightCount) / area
+                : leftCount + rightCount);
+    }
+
+    /**
+     * Finds the object split with the lowest SAH cost among the planes between centroid bins
+     * @param refs        the references
+     * @param box         the bounding box of the references
+     * @param centroidBox the bounding box of the centroids
+     * @return the cost, the axis, the last left bin and the overlap area of the sides of the best split,
+     * or null if the centroids can't be separated
+     */
+    private double[] findObjectSplit(int[] refs, double[] box, double[] centroidBox) {
+        double area = surfaceArea(box);
+        double[] best = null;
+        for (int axis = 0; axis < 3; axis++) {
+            double extent = centroidBox[axis + 3] - centroidBox[axis];
+            if (extent <= 0) continue;
+            int[] counts = new int[binCount];
+            double[][] binBoxes = new double[binCount][];
+            for (int b = 0; b < binCount; b++) binBoxes[b] = emptyBox();
+            for (int ref : refs) {
+                int b = bin(centroid(ref, axis), centroidBox[axis], extent);
+                counts[b]++;
+                merge(binBoxes[b], Arrays.copyOfRange(boxes, 6 * ref, 6 * ref + 6));
+            }
+            double[] split = sweep(area, axis, counts, counts, binBoxes);
+            if (split != null && (best == null || split[0] < best[0])) best = split;
+        }
+        return best;
+    }
+
+    /**
+     * Finds the spatial split with the lowest SAH cost among the planes between equal bins of the node box.
+     * A reference counts on every side it crosses, and its part in each bin is clipped to the bin.
+     * @param refs the references
+     * @param box  the bounding box of the references
+     * @return the cost, the axis and the last left bin of the best split,
+     * or null if there is no split within the reference budget
+     */
+    private double[] findSpatialSplit(int[] refs, double[] box) {
+        double area = surfaceArea(box);
+        double[] best = null;
+        for (int axis = 0; axis < 3; axis++) {
+            double min = box[axis];
+            double extent = box[axis + 3] - min;
+            if (extent <= 0) continue;
+            double width = extent / binCount;
+            int[] entries = new int[binCount];
+            int[] exits = new int[binCount];
+            double[][] binBoxes = new double[binCount][];
+            for (int b = 0; b < binCount; b++) binBoxes[b] = emptyBox();
+            for (int ref : refs) {
+                int first = bin(boxes[6 * ref + axis], min, extent);
+                int last = bin(boxes[6 * ref + 3 + axis], min, extent);
+                entries[first]++;
+                exits[last]++;
+                for (int b = first; b <= last; b++) {
+                    double[] part = first == last
+                            ? Arrays.copyOfRange(boxes, 6 * ref, 6 * ref + 6)
+                            : clip(ref, axis, min + b * width, b == last ? box[axis + 3] : min + (b + 1) * width);
+                    if (part != null) merge(binBoxes[b], part);
+                }
+            }
+            double[] split = sweep(area, axis, entries, exits, binBoxes);
+            if (split == null) continue;
+            // the references crossing the plane are duplicated
+            if (refCount + (int) split[4] + (int) split[5] - refs.length > refLimit) continue;
+            if (best == null || split[0] < best[0]) best = split;
+        }
+        return best;
+    }
+
+    /**
+     * Sweeps the planes between bins and finds the cheapest one
+     * @param area     the surface area of the node
+     * @param axis     the axis of the bins
+     * @param entries  the amount of references starting in each bin
+     * @param exits    the amount of references ending in each bin
+     * @param binBoxes the bounding boxes of the bins
+     * @return the cost, the axis, the last left bin, the overlap area of the sides and the amounts
+     * of references of the sides of the best plane, or null if no plane separates the references
+     */
+    private double[] sweep(double area, int axis, int[] entries, int[] exits, double[][] binBoxes) {
+        double[][] rightBoxes = new double[binCount][];
+        int[] rightCounts = new int[binCount];
+        double[] sweep = emptyBox();
+        int sweepCount = 0;
+        for (int b = binCount - 1; b > 0; b--) {
+            merge(sweep, binBoxes[b]);
+            sweepCount += exits[b];
+            rightBoxes[b] = sweep.clone();
+            rightCounts[b] = sweepCount;
+        }
+
+        double[] best = null;
+        sweep = emptyBox();
+        sweepCount = 0;
+        for (int b = 0; b < binCount - 1; b++) {
+            merge(sweep, binBoxes[b]);
+            sweepCount += entries[b];
+            int rightCount = rightCounts[b + 1];
+            if (sweepCount == 0 || rightCount == 0) continue;
+            double cost = cost(area, surfaceArea(sweep), sweepCount, surfaceArea(rightBoxes[b + 1]), rightCount);
+            if (best == null || cost < best[0])
+                best = new double[]{cost, axis, b, overlap(sweep, rightBoxes[b + 1]), sweepCount, rightCount};
+        }
+        return best;
+    }
+
+    /**
+     * Calculates the surface area of the intersection of two boxes
+     * @param a the first box
+     * @param b the second box
+     * @return the surface area of the common box, 0 if the boxes don't intersect
+     */
+    private static double overlap(double[] a, double[] b) {
+        double[] common = new double[6];
+        for (int axis = 0; axis < 3; axis++) {
+            common[axis] = Math.max(a[axis], b[axis]);
+            common[axis + 3] = Math.min(a[axis + 3], b[axis + 3]);
+            if (common[axis] > common[axis + 3]) return 0;
+        }
+        return surfaceArea(common);
+    }
+
+    /**
+     * Partitions references by the bins of their centroids
+     * @param refs        the references
+     * @param split       the object split, null if the centroids can't be separated
+     * @param centroidBox the bounding box of the centroids
+     * @return the references of the left side and of the right side
+     */
+    private int[][] objectPartition(int[] refs, double[] split, double[] centroidBox) {
+        int n = refs.length;
+        int[] left = new int[n];
+        int[] right = new int[n];
+        int leftCount = 0;
+        int rightCount = 0;
+        if (split != null) {
+            int axis = (int) split[1];
+            double extent = centroidBox[axis + 3] - centroidBox[axis];
+            for (int ref : refs)
+                if (bin(centroid(ref, axis), centroidBox[axis], extent) <= (int) split[2]) left[leftCount++] = ref;
+                else right[rightCount++] = ref;
+        }
+        // all the centroids are in the same place or on the same side - split the references in the middle
+        if (leftCount == 0 || rightCount == 0)
+            return new int[][]{Arrays.copyOfRange(refs, 0, n / 2), Arrays.copyOfRange(refs, n / 2, n)};
+        return new int[][]{Arrays.copyOf(left, leftCount), Arrays.copyOf(right, rightCount)};
+    }
+
+    /**
+     * Partitions references by a plane, the references crossing the plane are clipped to both sides
+     * @param refs    the references
+     * @param axis    the axis of the plane
+     * @param lastBin the last bin of the left side
+     * @param box     the bounding box of the references
+     * @return the references of the left side and of the right side, or null if a side is empty
+     */
+    private int[][] spatialPartition(int[] refs, int axis, int lastBin, double[] box) {
+        double plane = box[axis] + (lastBin + 1) * (box[axis + 3] - box[axis]) / binCount;
+        int n = refs.length;
+        int[] left = new int[n];
+        int[] right = new int[n];
+        int leftCount = 0;
+        int rightCount = 0;
+        for (int ref : refs) {
+            if (boxes[6 * ref + 3 + axis] <= plane) {
+                left[leftCount++] = ref;
+                continue;
+            }
+            if (boxes[6 * ref + axis] >= plane) {
+                right[rightCount++] = ref;
+                continue;
+            }
+            double[] leftPart = clip(ref, axis, Double.NEGATIVE_INFINITY, plane);
+            double[] rightPart = clip(ref, axis, plane, Double.POSITIVE_INFINITY);
+            if (leftPart == null && rightPart != null) {
+                // the object itself doesn't reach the left side
+                System.arraycopy(rightPart, 0, boxes, 6 * ref, 6);
+                right[rightCount++] = ref;
+                continue;
+            }
+            if (rightPart == null || refCount >= refLimit) {
+                // the object doesn't reach the right side, or there are no references left
+                if (rightPart == null && leftPart != null) System.arraycopy(leftPart, 0, boxes, 6 * ref, 6);
+                left[leftCount++] = ref;
+                continue;
+            }
+            System.arraycopy(leftPart, 0, boxes, 6 * ref, 6);
+            left[leftCount++] = ref;
+            right[rightCount++] = addReference(objectOf[ref], rightPart);
+        }
+        if (leftCount == 0 || rightCount == 0) return null;
+        return new int[][]{Arrays.copyOf(left, leftCount), Arrays.copyOf(right, rightCount)};
+    }
+
+    /**
+     * Adds a reference
+     * @param object the object index
+     * @param box    the box of the reference
+     * @return the reference
+     */
+    private int addReference(int object, double[] box) {
+        if (refCount == objectOf.length) {
+            objectOf = Arrays.copyOf(objectOf, 2 * objectOf.length);
+            boxes = Arrays.copyOf(boxes, 2 * boxes.length);
+        }
+        objectOf[refCount] = object;
+        System.arraycopy(box, 0, boxes, 6 * refCount, 6);
+        return refCount++;
+    }
+
+    /**
+     * Clips a reference to a slab between two planes along an axis
+     * @param ref  the reference
+     * @param axis the axis
+     * @param min  the lower plane coordinate
+     * @param max  the upper plane coordinate
+     * @return the box of the part of the reference in the slab, or null if the object doesn't reach the slab
+     */
+    private double[] clip(int ref, int axis, double min, double max) {
+        double[] box = Arrays.copyOfRange(boxes, 6 * ref, 6 * ref + 6);
+        box[axis] = Math.max(box[axis], min);
+        box[axis + 3] = Math.min(box[axis + 3], max);
+        double[] polygon = vertices[objectOf[ref]];
+        if (polygon != null) {
+            polygon = clipPolygon(clipPolygon(polygon, axis, min, true), axis, max, false);
+            if (polygon.length == 0) return null;
+            // the part of the polygon in the slab, within the box of the reference
+            double[] polygonBox = emptyBox();
+            for (int v = 0; v < polygon.length; v += 3)
+                for (int a = 0; a < 3; a++) {
+                    polygonBox[a] = Math.min(polygonBox[a], polygon[v + a]);
+                    polygonBox[a + 3] = Math.max(polygonBox[a + 3], polygon[v + a]);
+                }
+            for (int a = 0; a < 3; a++) {
+                box[a] = Math.max(box[a], polygonBox[a]);
+                box[a + 3] = Math.min(box[a + 3], polygonBox[a + 3]);
+            }
+        }
+        for (int a = 0; a < 3; a++)
+            if (box[a] > box[a + 3]) return null;
+        return box;
+    }
+
+    /**
+     * Clips a convex polygon by a plane orthogonal to an axis (Sutherland-Hodgman)
+     * @param polygon the vertices of the polygon, 3 values per vertex
+     * @param axis    the axis
+     * @param value   the plane coordinate
+     * @param above   true to keep the part above the plane, false to keep the part below it
+     * @return the vertices of the clipped polygon, empty if nothing is left
+     */
+    private static double[] clipPolygon(double[] polygon, int axis, double value, boolean above) {
+        if (Double.isInfinite(value) || polygon.length == 0) return polygon;
+        int count = polygon.length / 3;
+        double[] result = new double[3 * (count + 1)];
+        int size = 0;
+        for (int v = 0; v < count; v++) {
+            int p = 3 * v;
+            int q = 3 * ((v + 1) % count);
+            double dp = above ? polygon[p + axis] - value : value - polygon[p + axis];
+            double dq = above ? polygon[q + axis] - value : value - polygon[q + axis];
+            if (dp >= 0) {
+                System.arraycopy(polygon, p, result, size, 3);
+                size += 3;
+            }
+            if (dp >= 0 != dq >= 0) {
+                double t = dp / (dp - dq);
+                for (int a = 0; a < 3; a++)
+                    result[size + a] = polygon[p + a] + t * (polygon[q + a] - polygon[p + a]);
+                // keep the crossing point exactly on the plane
+                result[size + axis] = value;
+                size += 3;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Finds the bin of a coordinate
+     * @param c      the coordinate
+     * @param min    the minimal coordinate
+     * @param extent the extent of the coordinates
+     * @return the bin index
+     */
+    private int bin(double c, double min, double extent) {
+        return Math.max(0, Math.min(binCount - 1, (int) (binCount * (c - min) / extent)));
+    }
+}
@@ -31,16 +31,19 @@ public class Sphere extends RadialGeometry {
         Vector normal = point.subtract(center);
         return normal.normalize();
     }
-    @Override
-    public List<Intersection> calculateIntersectionsHelper(Ray ray) {
+    /**
+     * Calculates the distances along the ray to the sphere's surface
+     * @param ray the ray
+     * @return the distances of the closer and the further points on the ray's line,
+     * or null if the line misses the sphere
+     */
+    private double[] intersectionDistances(Ray ray) {
         Point p0 = ray.getP0();
         Vector dir = ray.getDir();
 
         if (p0.equals(center)) {
             // The ray starts at the center of the sphere
-            return List.of(
-                    new Intersection(this,
-                                    p0.add(dir.scale(radius))));
+            return new double[]{-radius, radius};
         }
         Vector u = center.subtract(p0); // vector from p0 to the center
         // The distance from p0 to the point that creates right angled triangle with the center, we'ill mark the point as p1
@@ -56,21 +59,47 @@ public class Sphere extends RadialGeometry {
         double th = Math.sqrt(radius * radius - d * d); //The distance from p1 to intersections on the line of the ray
         double t1 = Util.alignZero( tm - th); // The distance from the head of the ray to the closer intersection
         double t2 = Util.alignZero(tm + th); // The distance from the head of the ray to the further intersection
+        return new double[]{t1, t2};
+    }
+
+    @Override
+    public List<Intersection> calculateIntersectionsHelper(Ray ray) {
+        double[] t = intersectionDistances(ray);
+        if (t == null) {
+            return null;
+        }
 
         List<Intersection> intersections = new ArrayList<>();
-        if (t1 > 0) {
+        if (t[0] > 0) {
             intersections.add(
                     new Intersection(this,
-                                    ray.getPoint(t1)));
+                                    ray.getPoint(t[0]), t[0]));
         }
-        if (t2 > 0) {
+        if (t[1] > 0) {
             intersections.add(
                     new Intersection(this,
-                            ray.getPoint(t2)));
+                            ray.getPoint(t[1]), t[1]));
         }
         return intersections.isEmpty() ? null : intersections;
     }
 
+    @Override
+    protected boolean calculateClosestHitHelper(Ray ray, double tMin, HitRecord hit) {
+        double[] t = intersectionDistances(ray);
+        if (t == null) {
+            return false;
+        }
+        // both distances must be positive, as in the list of all the intersections
+        double tMinimal = Math.max(tMin, 0);
+        if (t[0] > tMinimal && t[0] < hit.t) {
+            return hit.record(this, t[0], -1);
+        }
+        if (t[1] > tMinimal && t[1] < hit.t) {
+            return hit.record(this, t[1], -1);
+        }
+        return false;
+    }
+
     @Override
     public AABB getBoundingBox() {
         // The bounding box of a sphere is a cube with the center at the center of the sphere and the side length equal to the diameter of the sphere
@@ -5,12 +5,24 @@ import primitives.Vector;
 
 import java.util.List;
 
+import static primitives.Util.alignZero;
+
 /**
  * Class Triangle is the class representing a 2-Dimensional triangle in a Cartesian
- * 3-Dimensional coordinate system.
+ * 3-Dimensional coordinate system.<br>
+ * The intersection is calculated with the Möller–Trumbore algorithm on the coordinates of the first
+ * vertex and of the two edges from it, kept as raw numbers, so a miss allocates nothing.
+ * The edges and the vertices belong to the triangle.
  * @author Jeshurun and Binyamin
  */
 public class Triangle extends Polygon{
+    /*** The coordinates of the first vertex*/
+    private final double ax, ay, az;
+    /*** The edge from the first vertex to the second one*/
+    private final double e1x, e1y, e1z;
+    /*** The edge from the first vertex to the third one*/
+    private final double e2x, e2y, e2z;
+
     /**
      * constructor creates the triangle
      * @param p1 the first point on the triangle
@@ -19,42 +31,84 @@ public class Triangle extends Polygon{
      */
     public Triangle(Point p1, Point p2, Point p3) {
         super(p1, p2, p3);
+        ax = p1.getCoordinate(0);
+        ay = p1.getCoordinate(1);
+        az = p1.getCoordinate(2);
+        e1x = p2.getCoordinate(0) - ax;
+        e1y = p2.getCoordinate(1) - ay;
+        e1z = p2.getCoordinate(2) - az;
+        e2x = p3.getCoordinate(0) - ax;
+        e2y = p3.getCoordinate(1) - ay;
+        e2z = p3.getCoordinate(2) - az;
     }
 
     @Override
     public List<Intersection> calculateIntersectionsHelper(Ray ray) {
-
-        List<Intersection> intersections = plane.calculateIntersectionsHelper(ray);
-        if (intersections == null) {
-            return null;
-        }
-        Point p = intersections.getFirst().point;
-        // check if the point is one of the vertices
-        if (p.equals(vertices.get(0)) || p.equals(vertices.get(1)) || p.equals(vertices.get(2))) {
-            return List.of(new Intersection(this, p));
-        }
-        // check if the point is on the edge of the triangle
-
-        // Check if the point is inside the triangle using the cross product
-        Vector v1 = vertices.get(0).subtract(p).normalize();
-        Vector v2 = vertices.get(1).subtract(p).normalize();
-        Vector v3 = vertices.get(2).subtract(p).normalize();
-        //check if they are the same
-        if (v1.equals(v2) || v1.equals(v3) || v2.equals(v3)) {
-            return null;
-        }
-        // check if the vectors are in the opposite direction
-        if (v1.equals(v2.scale(-1)) || v1.equals(v3.scale(-1)) || v2.equals(v3.scale(-1))) {
-            return List.of(new Intersection(this, p));
-        }
-        double s1 = v1.crossProduct(v2).dotProduct(plane.getNormal());
-        double s2 = v2.crossProduct(v3).dotProduct(plane.getNormal());
-        double s3 = v3.crossProduct(v1).dotProduct(plane.getNormal());
-        if (s1 > 0 && s2 > 0 && s3 > 0 || s1 < 0 && s2 < 0 && s3 < 0) {
-            return List.of(new Intersection(this, p));
-        } else {
+        double t = intersectionDistance(ray);
+        if (Double.isNaN(t) || t < 0) {
             return null;
         }
+        return List.of(new Intersection(this, ray.getPoint(t), t));
+    }
 
+    @Override
+    protected boolean calculateClosestHitHelper(Ray ray, double tMin, HitRecord hit) {
+        double t = intersectionDistance(ray);
+        return t > tMin && t < hit.t && hit.record(this, t, -1);
+    }
+
+    /**
+     * Calculates the distance along the ray to its intersection with the triangle
+     * @param ray the ray
+     * @return the distance (negative behind the ray head), or NaN if the ray misses the triangle
+     */
+    private double intersectionDistance(Ray ray) {
+        Point p0 = ray.getP0();
+        Vector dir = ray.getDir();
+        return intersectionDistance(ax, ay, az, e1x, e1y, e1z, e2x, e2y, e2z,
+                p0.getCoordinate(0), p0.getCoordinate(1), p0.getCoordinate(2),
+                dir.getCoordinate(0), dir.getCoordinate(1), dir.getCoordinate(2));
+    }
+
+    /**
+     * Calculates the distance along a ray to its intersection with a triangle (Möller–Trumbore).
+     * The barycentric coordinates of the intersection are compared with zero up to the accuracy
+     * of {@link primitives.Util#alignZero}, so the edges and the vertices belong to the triangle.
+     * @param ax  the x coordinate of the first vertex
+     * @param ay  the y coordinate of the first vertex
+     * @param az  the z coordinate of the first vertex
+     * @param e1x the x coordinate of the edge to the second vertex
+     * @param e1y the y coordinate of the edge to the second vertex
+     * @param e1z the z coordinate of the edge to the second vertex
+     * @param e2x the x coordinate of the edge to the third vertex
+     * @param e2y the y coordinate of the edge to the third vertex
+     * @param e2z the z coordinate of the edge to the third vertex
+     * @param ox  the x coordinate of the ray head
+     * @param oy  the y coordinate of the ray head
+     * @param oz  the z coordinate of the ray head
+     * @param dx  the x coordinate of the ray direction
+     * @param dy  the y coordinate of the ray direction
+     * @param dz  the z coordinate of the ray direction
+     * @return the distance (negative behind the ray head), or NaN if the ray is parallel to the
+     * triangle or passes outside it
+     */
+    static double intersectionDistance(double ax, double ay, double az,
+                                       double e1x, double e1y, double e1z,
+                                       double e2x, double e2y, double e2z,
+                                       double ox, double oy, double oz,
+                                       double dx, double dy, double dz) {
+        // p = d x e2
+        double px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+        double det = e1x * px + e1y * py + e1z * pz;
+        if (det == 0) return Double.NaN; // the ray is parallel to the triangle
+        double inverse = 1 / det;
+        double sx = ox - ax, sy = oy - ay, sz = oz - az;
+        double u = (sx * px + sy * py + sz * pz) * inverse;
+        if (alignZero(u) < 0 || alignZero(u - 1) > 0) return Double.NaN;
+        // q = s x e1
+        double qx = sy * e1z - sz * e1y, qy = sz * e1x - sx * e1z, qz = sx * e1y - sy * e1x;
+        double v = (dx * qx + dy * qy + dz * qz) * inverse;
+        if (alignZero(v) < 0 || alignZero(u + v - 1) > 0) return Double.NaN;
+        return (e2x * qx + e2y * qy + e2z * qz) * inverse;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,187 @@
+package geometries;
+
+import primitives.Material;
+
+import java.util.function.IntBinaryOperator;
+
+/**
+ * TriangleMesh is a mesh of triangles stored in primitive arrays instead of a {@link Triangle}
+ * object per face:
+ * <ul>
+ * <li>positions - 3 coordinates per vertex, shared by all the faces that use the vertex</li>
+ * <li>indices - 3 vertex indices per triangle</li>
+ * <li>face materials - optionally, the index of the material of each triangle</li>
+ * </ul>
+ * The triangles are addressed by their index inside the bounding volume hierarchy of {@link IndexedMesh},
+ * stored in flat arrays, and the index buffer is reordered so the triangles of each leaf are consecutive.<br>
+ * A mesh built from single precision coordinates keeps the coordinates and the node bounds as floats,
+ * which halves the memory of the mesh. The faces are the triangles of the rounded vertices, so the
+ * faces that share a vertex still meet exactly, and the bounds are rounded outwards so every box
+ * still contains its triangles. The rays and the intersection calculation stay in double precision.
+ * @author Jeshurun and Binyamin
+ */
+public class TriangleMesh extends IndexedMesh {
+    /*** The coordinates of the vertices, 3 values per vertex, null in single precision*/
+    private final double[] positions;
+    /*** The coordinates of the vertices in single precision, 3 values per vertex, null in double precision*/
+    private final float[] floatPositions;
+    /*** The vertex indices of the triangles in leaf order, 3 values per triangle*/
+    private final int[] indices;
+    /*** The index of the material of each triangle in leaf order, null if there are no face materials*/
+    private final int[] faceMaterials;
+    /*** The bounds of the nodes, 6 values per node, null in single precision*/
+    private final double[] bounds;
+    /*** The bounds of the nodes in single precision, rounded outwards, 6 values per node, null in double precision*/
+    private final float[] floatBounds;
+    /*** The index of the right child (inner node) or of the first triangle (leaf) and the triangle count, 2 values per node*/
+    private final int[] nodes;
+    /*** The size of the traversal stack, the depth of the hierarchy*/
+    private final int stackSize;
+
+    /**
+     * Constructor of a mesh whose faces have the material of the mesh
+     * @param positions the coordinates of the vertices, 3 values per vertex (not copied)
+     * @param indices   the vertex indices of the triangles, 3 values per triangle
+     * @throws IllegalArgumentException if the arrays are not of whole vertices and triangles
+     *                                  or an index is out of range
+     */
+    public TriangleMesh(double[] positions, int[] indices) {
+        this(positions, indices, null, null);
+    }
+
+    /**
+     * Constructor of a mesh with a material for each face
+     * @param positions     the coordinates of the vertices, 3 values per vertex (not copied)
+     * @param indices       the vertex indices of the triangles, 3 values per triangle
+     * @param materials     the materials of the faces, null for the material of the mesh
+     * @param faceMaterials the index of the material of each triangle, null for the material of the mesh
+     * @throws IllegalArgumentException if the arrays are not of whole vertices and triangles,
+     *                                  an index is out of range, or only one of the material arrays is given
+     */
+    public TriangleMesh(double[] positions, int[] indices, Material[] materials, int[] faceMaterials) {
+        this(positions, null, positions.length, indices, materials, faceMaterials);
+    }
+
+    /**
+     * Constructor of a mesh in single precision whose faces have the material of the mesh
+     * @param positions the coordinates of the vertices, 3 values per vertex (not copied)
+     * @param indices   the vertex indices of the triangles, 3 values per triangle
+     * @throws IllegalArgumentException if the arrays are not of whole vertices and triangles
+     *                                  or an index is out of range
+     */
+    public TriangleMesh(float[] positions, int[] indices) {
+        this(positions, indices, null, null);
+    }
+
+    /**
+     * Constructor of a mesh in single precision with a material for each face
+     * @param positions     the coordinates of the vertices, 3 values per vertex (not copied)
+     * @param indices       the vertex indices of the triangles, 3 values per triangle
+     * @param materials     the materials of the faces, null for the material of the mesh
+     * @param faceMaterials the index of the material of each triangle, null for the material of the mesh
+     * @throws IllegalArgumentException if the arrays are not of whole vertices and triangles,
+     *                                  an index is out of range, or only one of the material arrays is given
+     */
+    public TriangleMesh(float[] positions, int[] indices, Material[] materials, int[] faceMaterials) {
+        this(null, positions, positions.length, indices, materials, faceMaterials);
+    }
+
+    /**
+     * Constructor of a mesh in either precision
+     * @param positions      the coordinates of the vertices in double precision, or null
+     * @param floatPositions the coordinates of the vertices in single precision, or null
+     * @param length         the amount of coordinates
+     * @param indices        the vertex indices of the triangles, 3 values per triangle
+     * @param materials      the materials of the faces, null for the material of the mesh
+     * @param faceMaterials  the index of the material of each triangle, null for the material of the mesh
+     */
+    private TriangleMesh(double[] positions, float[] floatPositions, int length,
+                         int[] indices, Material[] materials, int[] faceMaterials) {
+        super(materials);
+        if (length % 3 != 0)
+            throw new IllegalArgumentException("The positions must have 3 coordinates per vertex");
+        if (indices.length % 3 != 0)
+            throw new IllegalArgumentException("The indices must have 3 vertices per triangle");
+        if ((materials == null) != (faceMaterials == null))
+            throw new IllegalArgumentException("The materials and the face materials must be given together");
+        int count = indices.length / 3;
+        if (faceMaterials != null && faceMaterials.length != count)
+            throw new IllegalArgumentException("There must be a material index for each triangle");
+        IntBinaryOperator index = (face, corner) -> indices[3 * face + corner];
+        checkFaces(count, length / 3, materials == null ? 0 : materials.length, index,
+                faceMaterials == null ? null : face -> faceMaterials[face]);
+
+        this.positions = positions;
+        this.floatPositions = floatPositions;
+        Builder builder = new Builder(count, index, floatPositions == null
+                ? i -> positions[(int) i] : i -> floatPositions[(int) i]);
+        if (floatPositions == null) {
+            bounds = builder.bounds;
+            floatBounds = null;
+        } else {
+            bounds = null;
+            floatBounds = new float[builder.bounds.length];
+            for (int i = 0; i < floatBounds.length; i++) floatBounds[i] = floatBound(builder.bounds, i);
+        }
+        nodes = builder.nodes;
+        stackSize = builder.depth;
+        // reorder the faces into leaf order
+        this.indices = new int[indices.length];
+        this.faceMaterials = faceMaterials == null ? null : new int[count];
+        for (int i = 0; i < count; i++) {
+            int face = builder.order[i];
+            System.arraycopy(indices, 3 * face, this.indices, 3 * i, 3);
+            if (faceMaterials != null) this.faceMaterials[i] = faceMaterials[face];
+        }
+    }
+
+    @Override
+    public int getTriangleCount() {
+        return indices.length / 3;
+    }
+
+    @Override
+    public int getVertexCount() {
+        return (positions != null ? positions.length : floatPositions.length) / 3;
+    }
+
+    @Override
+    public boolean isSinglePrecision() {
+        return floatPositions != null;
+    }
+
+    @Override
+    double coordinate(int vertex, int axis) {
+        return positions != null ? positions[3 * vertex + axis] : floatPositions[3 * vertex + axis];
+    }
+
+    @Override
+    int index(int triangle, int corner) {
+        return indices[3 * triangle + corner];
+    }
+
+    @Override
+    int faceMaterial(int triangle) {
+        return faceMaterials[triangle];
+    }
+
+    @Override
+    double bound(int node, int i) {
+        return bounds != null ? bounds[6 * node + i] : floatBounds[6 * node + i];
+    }
+
+    @Override
+    int node(int node, int value) {
+        return nodes[2 * node + value];
+    }
+
+    @Override
+    int nodeCount() {
+        return nodes.length / 2;
+    }
+
+    @Override
+    int stackSize() {
+        return stackSize;
+    }
+}
@@ -5,8 +5,12 @@ import primitives.Point;
 import primitives.Ray;
 import primitives.Vector;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import static primitives.Util.alignZero;
+import static primitives.Util.isZero;
+
 /**
  * Class Tube is the class representing a Tube(infinity cylinder) in Cartesian
  * 3-Dimensional coordinate system.
@@ -27,17 +31,73 @@ public class Tube extends RadialGeometry {
         this.axis = axis;
     }
 
+    /**
+     * Calculates the distances along the ray's line to the side of the tube in closed form:
+     * the parts of the ray perpendicular to the axis give a quadratic equation of the distance
+     * @param ray the ray
+     * @return the distances of the closer and the further points on the ray's line (negative behind
+     * the ray head), or null if the line misses the tube, touches it, or is parallel to the axis
+     */
+    protected double[] sideDistances(Ray ray) {
+        Point p0 = ray.getP0();
+        Vector dir = ray.getDir();
+        Point axisHead = axis.getP0();
+        Vector axisDir = axis.getDir();
+        double vx = axisDir.getCoordinate(0), vy = axisDir.getCoordinate(1), vz = axisDir.getCoordinate(2);
+        double dx = dir.getCoordinate(0), dy = dir.getCoordinate(1), dz = dir.getCoordinate(2);
+        double wx = p0.getCoordinate(0) - axisHead.getCoordinate(0);
+        double wy = p0.getCoordinate(1) - axisHead.getCoordinate(1);
+        double wz = p0.getCoordinate(2) - axisHead.getCoordinate(2);
+        // the parts of the direction and of the ray head perpendicular to the axis
+        double dv = dx * vx + dy * vy + dz * vz;
+        double wv = wx * vx + wy * vy + wz * vz;
+        double px = dx - dv * vx, py = dy - dv * vy, pz = dz - dv * vz;
+        double qx = wx - wv * vx, qy = wy - wv * vy, qz = wz - wv * vz;
+
+        double a = px * px + py * py + pz * pz;
+        if (isZero(a)) return null; // the ray is parallel to the axis
+        double halfB = px * qx + py * qy + pz * qz;
+        double c = qx * qx + qy * qy + qz * qz - radius * radius;
+        double discriminant = halfB * halfB - a * c;
+        if (alignZero(discriminant) <= 0) return null; // the line misses the tube or touches it
+        double root = Math.sqrt(discriminant);
+        return new double[]{(-halfB - root) / a, (-halfB + root) / a};
+    }
+
     @Override
     public List<Intersection> calculateIntersectionsHelper(Ray ray) {
-        // The tube is infinite, so we need to find the intersection of the ray with the axis
-        // and then check if the point is within the radius of the tube
-        return null;
+        double[] t = sideDistances(ray);
+        if (t == null) {
+            return null;
+        }
+        List<Intersection> intersections = new ArrayList<>(2);
+        for (double distance : t) {
+            if (alignZero(distance) > 0) {
+                intersections.add(new Intersection(this, ray.getPoint(distance), distance));
+            }
+        }
+        return intersections.isEmpty() ? null : intersections;
+    }
+
+    @Override
+    protected boolean calculateClosestHitHelper(Ray ray, double tMin, HitRecord hit) {
+        double[] t = sideDistances(ray);
+        if (t == null) {
+            return false;
+        }
+        for (double distance : t) {
+            if (distance > tMin && distance < hit.t) {
+                return hit.record(this, distance, -1);
+            }
+        }
+        return false;
     }
 
-    // if anyone ever want it, have fun with implementing everything
     @Override
     public AABB getBoundingBox() {
-        return null;
+        // A tube is infinite along its axis, so its bounding box is infinite
+        return new AABB(new Point(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY),
+                        new Point(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY));
     }
 
     @Override
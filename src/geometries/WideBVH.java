@@ -0,0 +1,533 @@
+package geometries;
+
+import primitives.AABB;
+import primitives.Double3;
+import primitives.Point;
+import primitives.Ray;
+import primitives.Vector;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * WideBVH is a bounding volume hierarchy whose nodes have 4 or 8 children, collapsed from
+ * a binary hierarchy by repeatedly opening the child with the largest surface area.<br>
+ * The boxes of the children of a node are stored in structure-of-arrays layout: for each
+ * coordinate (min x,y,z and max x,y,z) an array where the children of a node are consecutive.
+ * All the children of a node are tested against the ray at once, 4 or 8 lanes at a time by the
+ * {@code jdk.incubator.vector} kernel of {@code VectorBoxTest} when it is on the class path and the
+ * module is added ({@code --add-modules jdk.incubator.vector}), otherwise by a scalar loop with the
+ * same operations for every lane, which the JIT compiler may vectorize.
+ * For each child slot the arrays hold:
+ * <ul>
+ * <li>child - the index of the child node (inner child) or of the first primitive (leaf child)</li>
+ * <li>count - the amount of primitives of a leaf child, 0 for an inner child, -1 for an empty slot</li>
+ * </ul>
+ * Empty slots have an empty box, so they are never hit.<br>
+ * While {@link BVHStatistics} are collected, every traversal adds its visited nodes and tested primitives.
+ * @author Jeshurun and Binyamin
+ */
+public class WideBVH extends Intersectable {
+    /*** The box test of the Vector API kernel, null when the kernel or its module is not available*/
+    static final MethodHandle VECTOR_BOX_TEST = vectorBoxTest();
+
+    /*** The amount of child slots of a node*/
+    private final int width;
+    /*** The minimal x coordinates of the child boxes*/
+    private final double[] minX;
+    /*** The minimal y coordinates of the child boxes*/
+    private final double[] minY;
+    /*** The minimal z coordinates of the child boxes*/
+    private final double[] minZ;
+    /*** The maximal x coordinates of the child boxes*/
+    private final double[] maxX;
+    /*** The maximal y coordinates of the child boxes*/
+    private final double[] maxY;
+    /*** The maximal z coordinates of the child boxes*/
+    private final double[] maxZ;
+    /*** The child node or the first primitive of each slot*/
+    private final int[] child;
+    /*** The primitive count of each slot: 0 for an inner child, -1 for an empty slot*/
+    private final int[] count;
+    /*** The primitives in leaf order*/
+    private final Intersectable[] primitives;
+    /*** The size of the traversal stack*/
+    private final int stackSize;
+    /*** The bounding box of the whole hierarchy*/
+    private final AABB box;
+    /*** The statistics the traversals are recorded into, null when they are not collected*/
+    private volatile BVHStatistics statistics;
+
+    /**
+     * Constructor that collapses a hierarchy of {@link BVHNode}s into wide nodes.
+     * Any object that is not a BVHNode is a leaf child, the objects of a {@link Geometries}
+     * become the primitives of a single leaf.
+     * @param root  the root of the binary hierarchy
+     * @param width the amount of children of a node, 4 or 8
+     */
+    public WideBVH(Intersectable root, int width) {
+        if (width != 4 && width != 8)
+            throw new IllegalArgumentException("Width must be 4 or 8");
+        this.width = width;
+        Compiler compiler = new Compiler();
+        compiler.compile(root, 1);
+        int slots = width * compiler.nodeCount;
+        minX = Arrays.copyOf(compiler.bounds[0], slots);
+        minY = Arrays.copyOf(compiler.bounds[1], slots);
+        minZ = Arrays.copyOf(compiler.bounds[2], slots);
+        maxX = Arrays.copyOf(compiler.bounds[3], slots);
+        maxY = Arrays.copyOf(compiler.bounds[4], slots);
+        maxZ = Arrays.copyOf(compiler.bounds[5], slots);
+        child = Arrays.copyOf(compiler.child, slots);
+        count = Arrays.copyOf(compiler.count, slots);
+        primitives = compiler.primitives.toArray(new Intersectable[0]);
+        stackSize = compiler.depth * (width - 1) + 1;
+        box = root.getBoundingBox();
+    }
+
+    /**
+     * Returns the amount of wide nodes in the hierarchy
+     * @return the amount of nodes
+     */
+    public int getNodeCount() {
+        return child.length / width;
+    }
+
+    /**
+     * Returns the amount of children of a node
+     * @return the width of the nodes
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Calculates the statistics of the hierarchy and starts recording the traversals into them
+     * @return the statistics
+     */
+    public BVHStatistics collectStatistics() {
+        statistics = BVHStatistics.of(this);
+        return statistics;
+    }
+
+    /**
+     * Stops recording the traversals into the collected statistics
+     */
+    public void stopStatistics() {
+        statistics = null;
+    }
+
+    @Override
+    public AABB getBoundingBox() {
+        return box;
+    }
+
+    @Override
+    protected List<Intersection> calculateIntersectionsHelper(Ray ray) {
+        List<Intersection> intersections = new ArrayList<>();
+        collectIntersectionsHelper(ray, intersections);
+        return intersections.isEmpty() ? null : intersections;
+    }
+
+    @Override
+    protected void collectIntersectionsHelper(Ray ray, List<Intersection> intersections) {
+        double[] r = rayData(ray);
+        double[] distances = new double[width];
+        int visited = 0;
+        int tested = 0;
+        int[] stack = new int[stackSize];
+        int top = 0;
+        int node = 0;
+        while (true) {
+            ++visited;
+            testChildren(node, r, Double.POSITIVE_INFINITY, distances);
+            for (int lane = 0; lane < width; lane++) {
+                if (distances[lane] == Double.POSITIVE_INFINITY) continue;
+                int slot = node * width + lane;
+                if (count[slot] == 0) {
+                    stack[top++] = child[slot];
+                    continue;
+                }
+                tested += count[slot];
+                for (int i = child[slot]; i < child[slot] + count[slot]; i++) {
+                    primitives[i].collectIntersectionsHelper(ray, intersections);
+                }
+            }
+            if (top == 0) {
+                record(null, visited, tested);
+                return;
+            }
+            node = stack[--top];
+        }
+    }
+
+    @Override
+    protected boolean calculateClosestHitHelper(Ray ray, double tMin, HitRecord hit) {
+        double[] r = rayData(ray);
+        double[] distances = new double[width];
+        int[] order = new int[width];
+        double tMax = hit.t;
+        boolean found = false;
+        int visited = 0;
+        int tested = 0;
+        // the postponed child nodes with the distances to their boxes, the nearest on top
+        int[] stack = new int[stackSize];
+        double[] stackDistances = new double[stackSize];
+        int top = 0;
+        int node = 0;
+        while (true) {
+            ++visited;
+            testChildren(node, r, tMax, distances);
+            // sort the hit lanes from the farthest to the nearest
+            int hits = 0;
+            for (int lane = 0; lane < width; lane++) {
+                double distance = distances[lane];
+                if (distance == Double.POSITIVE_INFINITY) continue;
+                int j = hits++;
+                while (j > 0 && distances[order[j - 1]] < distance) {
+                    order[j] = order[j - 1];
+                    --j;
+                }
+                order[j] = lane;
+            }
+            for (int h = 0; h < hits; h++) {
+                int slot = node * width + order[h];
+                if (count[slot] == 0) {
+                    stack[top] = child[slot];
+                    stackDistances[top++] = distances[order[h]];
+                }
+            }
+            // leaves are intersected right away, from the nearest
+            for (int h = hits - 1; h >= 0; h--) {
+                int slot = node * width + order[h];
+                if (count[slot] == 0 || distances[order[h]] >= tMax) continue;
+                tested += count[slot];
+                for (int i = child[slot]; i < child[slot] + count[slot]; i++) {
+                    if (primitives[i].calculateClosestHitHelper(ray, tMin, hit)) {
+                        found = true;
+                        tMax = hit.t;
+                    }
+                }
+            }
+            // continue with a postponed node that starts before the closest hit
+            do {
+                if (top == 0) return record(found, visited, tested);
+                node = stack[--top];
+            } while (stackDistances[top] >= tMax);
+        }
+    }
+
+    @Override
+    protected Double3 calculateTransparencyHelper(Ray ray, double maxDistance, Double3 ktr, double minK) {
+        double[] r = rayData(ray);
+        double[] distances = new double[width];
+        int visited = 0;
+        int tested = 0;
+        int[] stack = new int[stackSize];
+        int top = 0;
+        int node = 0;
+        while (true) {
+            ++visited;
+            testChildren(node, r, maxDistance, distances);
+            for (int lane = 0; lane < width; lane++) {
+                if (distances[lane] == Double.POSITIVE_INFINITY) continue;
+                int slot = node * width + lane;
+                if (count[slot] == 0) {
+                    stack[top++] = child[slot];
+                    continue;
+                }
+                for (int i = child[slot]; i < child[slot] + count[slot]; i++) {
+                    ++tested;
+                    ktr = primitives[i].calculateTransparencyHelper(ray, maxDistance, ktr, minK);
+                    if (ktr.lowerThan(minK)) return record(ktr, visited, tested); // the ray is blocked
+                }
+            }
+            if (top == 0) return record(ktr, visited, tested);
+            node = stack[--top];
+        }
+    }
+
+    /**
+     * Records the traversal of a ray into the statistics, if they are collected
+     * @param result  the result of the traversal
+     * @param visited the amount of visited nodes
+     * @param tested  the amount of tested primitives
+     * @param <T>     the type of the result
+     * @return the result
+     */
+    private <T> T record(T result, int visited, int tested) {
+        BVHStatistics current = statistics;
+        if (current != null) current.record(visited, tested);
+        return result;
+    }
+
+    /**
+     * Adds the structure of the hierarchy to statistics. The leaf children of the wide nodes are leaves.
+     * @param statistics the statistics
+     */
+    void collect(BVHStatistics statistics) {
+        if (child.length == 0) return;
+        statistics.setRootArea(BVHBuilder.surfaceArea(nodeBox(0)));
+        collect(statistics, 0, 1);
+    }
+
+    /**
+     * Adds a wide node and its sub-hierarchy to statistics
+     * @param statistics the statistics
+     * @param node       the node index
+     * @param depth      the depth of the node
+     */
+    private void collect(BVHStatistics statistics, int node, int depth) {
+        double[][] children = new double[width][];
+        int used = 0;
+        for (int lane = 0; lane < width; lane++)
+            if (count[node * width + lane] >= 0) children[used++] = slotBox(node * width + lane);
+        statistics.addInner(depth, BVHBuilder.surfaceArea(nodeBox(node)), children, used);
+        for (int lane = 0; lane < width; lane++) {
+            int slot = node * width + lane;
+            if (count[slot] == 0) collect(statistics, child[slot], depth + 1);
+            else if (count[slot] > 0)
+                statistics.addLeaf(depth + 1, BVHBuilder.surfaceArea(slotBox(slot)), count[slot]);
+        }
+    }
+
+    /**
+     * Calculates the box of a wide node, bounding the boxes of its children
+     * @param node the node index
+     * @return the box as min x,y,z and max x,y,z
+     */
+    private double[] nodeBox(int node) {
+        double[] result = BVHBuilder.emptyBox();
+        for (int lane = 0; lane < width; lane++)
+            if (count[node * width + lane] >= 0) BVHBuilder.merge(result, slotBox(node * width + lane));
+        return result;
+    }
+
+    /**
+     * Copies the box of a child slot
+     * @param slot the slot index
+     * @return the box as min x,y,z and max x,y,z
+     */
+    private double[] slotBox(int slot) {
+        return new double[]{minX[slot], minY[slot], minZ[slot], maxX[slot], maxY[slot], maxZ[slot]};
+    }
+
+    /**
+     * Gathers the ray origin and the inverse of its direction coordinates
+     * @param ray the ray
+     * @return the origin x,y,z and the inverse direction x,y,z
+     */
+    private static double[] rayData(Ray ray) {
+        Point p0 = ray.getP0();
+        Vector dir = ray.getDir();
+        return new double[]{p0.getCoordinate(0), p0.getCoordinate(1), p0.getCoordinate(2),
+                1 / dir.getCoordinate(0), 1 / dir.getCoordinate(1), 1 / dir.getCoordinate(2)};
+    }
+
+    /**
+     * Looks up the box test of the Vector API kernel, which is compiled separately with the
+     * {@code jdk.incubator.vector} module. Loading fails if the kernel is not on the class path
+     * or the module was not added to the run.
+     * @return the box test, or null to use the scalar loop
+     */
+    private static MethodHandle vectorBoxTest() {
+        try {
+            Class<?> kernel = Class.forName(WideBVH.class.getPackageName() + ".VectorBoxTest",
+                    true, WideBVH.class.getClassLoader());
+            return MethodHandles.lookup().findStatic(kernel, "testChildren",
+                    MethodType.methodType(void.class, double[].class, double[].class, double[].class,
+                            double[].class, double[].class, double[].class, int.class, double[].class,
+                            double.class, double[].class));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Tests the ray against the boxes of all the children of a node at once.
+     * The near and far planes of each axis are chosen once by the direction sign, so every lane
+     * runs the same operations without swaps. The slabs are those of {@link BVHBuilder#boxDistance},
+     * and empty slots are always missed.
+     * @param node      the node index
+     * @param r         the ray origin and the inverse of its direction coordinates
+     * @param tMax      the maximal distance
+     * @param distances filled with the entry distance into the box of each child
+     *                  (0 if the origin is inside), or positive infinity if it is missed
+     */
+    private void testChildren(int node, double[] r, double tMax, double[] distances) {
+        double ix = r[3], iy = r[4], iz = r[5];
+        double[] nearX = ix >= 0 ? minX : maxX, farX = ix >= 0 ? maxX : minX;
+        double[] nearY = iy >= 0 ? minY : maxY, farY = iy >= 0 ? maxY : minY;
+        double[] nearZ = iz >= 0 ? minZ : maxZ, farZ = iz >= 0 ? maxZ : minZ;
+        int base = node * width;
+        if (VECTOR_BOX_TEST == null) {
+            testChildren(nearX, farX, nearY, farY, nearZ, farZ, base, r, tMax, distances);
+            return;
+        }
+        try {
+            VECTOR_BOX_TEST.invokeExact(nearX, farX, nearY, farY, nearZ, farZ, base, r, tMax, distances);
+        } catch (Throwable e) {
+            throw new IllegalStateException("The vector box test failed", e);
+        }
+    }
+
+    /**
+     * Tests the ray against the boxes of all the children of a node in a scalar loop,
+     * the fallback of the Vector API kernel
+     * @param nearX     the near x plane of each slot
+     * @param farX      the far x plane of each slot
+     * @param nearY     the near y plane of each slot
+     * @param farY      the far y plane of each slot
+     * @param nearZ     the near z plane of each slot
+     * @param farZ      the far z plane of each slot
+     * @param base      the first slot of the node
+     * @param r         the ray origin and the inverse of its direction coordinates
+     * @param tMax      the maximal distance
+     * @param distances filled with the entry distance into the box of each child, one per child
+     *                  of the node, or positive infinity if it is missed
+     */
+    static void testChildren(double[] nearX, double[] farX, double[] nearY, double[] farY,
+                             double[] nearZ, double[] farZ, int base, double[] r, double tMax,
+                             double[] distances) {
+        double ox = r[0], oy = r[1], oz = r[2], ix = r[3], iy = r[4], iz = r[5];
+        for (int lane = 0; lane < distances.length; lane++) {
+            int s = base + lane;
+            double tNear = 0;
+            double tFar = tMax;
+            double t0 = (nearX[s] - ox) * ix, t1 = (farX[s] - ox) * ix;
+            tNear = t0 > tNear ? t0 : tNear;
+            tFar = t1 < tFar ? t1 : tFar;
+            t0 = (nearY[s] - oy) * iy;
+            t1 = (farY[s] - oy) * iy;
+            tNear = t0 > tNear ? t0 : tNear;
+            tFar = t1 < tFar ? t1 : tFar;
+            t0 = (nearZ[s] - oz) * iz;
+            t1 = (farZ[s] - oz) * iz;
+            tNear = t0 > tNear ? t0 : tNear;
+            tFar = t1 < tFar ? t1 : tFar;
+            distances[lane] = tNear <= tFar ? tNear : Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Compiler of a binary hierarchy into growing arrays of wide nodes
+     */
+    private class Compiler {
+        /*** The 6 coordinate arrays of the child boxes*/
+        final double[][] bounds = new double[6][];
+        /*** The child of each slot*/
+        int[] child;
+        /*** The count of each slot*/
+        int[] count;
+        /*** The amount of compiled nodes*/
+        int nodeCount = 0;
+        /*** The primitives in leaf order*/
+        final List<Intersectable> primitives = new ArrayList<>();
+        /*** The maximal depth of the compiled nodes*/
+        int depth = 0;
+
+        /**
+         * Constructor of empty arrays
+         */
+        Compiler() {
+            for (int i = 0; i < 6; i++) bounds[i] = new double[16 * width];
+            child = new int[16 * width];
+            count = new int[16 * width];
+        }
+
+        /**
+         * Compiles a node and its sub-hierarchy into a wide node
+         * @param node  the node
+         * @param depth the depth of the node
+         * @return the index of the wide node
+         */
+        int compile(Intersectable node, int depth) {
+            this.depth = Math.max(this.depth, depth);
+            int index = nodeCount++;
+            if (nodeCount * width > child.length) {
+                for (int i = 0; i < 6; i++) bounds[i] = Arrays.copyOf(bounds[i], 2 * bounds[i].length);
+                child = Arrays.copyOf(child, 2 * child.length);
+                count = Arrays.copyOf(count, 2 * count.length);
+            }
+
+            List<Intersectable> children = new ArrayList<>(width);
+            addChildren(node, children);
+            // open the inner child with the largest surface area until the node is full
+            while (children.size() < width) {
+                int largest = -1;
+                double largestArea = -1;
+                for (int i = 0; i < children.size(); i++) {
+                    if (!(children.get(i) instanceof BVHNode)) continue;
+                    double area = area(children.get(i).getBoundingBox());
+                    if (area > largestArea) {
+                        largest = i;
+                        largestArea = area;
+                    }
+                }
+                if (largest < 0) break;
+                addChildren(children.remove(largest), children);
+            }
+
+            for (int lane = 0; lane < width; lane++) {
+                int slot = index * width + lane;
+                if (lane >= children.size()) {
+                    for (int i = 0; i < 3; i++) {
+                        bounds[i][slot] = Double.POSITIVE_INFINITY;
+                        bounds[i + 3][slot] = Double.NEGATIVE_INFINITY;
+                    }
+                    count[slot] = -1;
+                    continue;
+                }
+                Intersectable c = children.get(lane);
+                AABB childBox = c.getBoundingBox();
+                for (int i = 0; i < 3; i++) {
+                    bounds[i][slot] = childBox.getMin().getCoordinate(i);
+                    bounds[i + 3][slot] = childBox.getMax().getCoordinate(i);
+                }
+                if (c instanceof BVHNode) {
+                    int childIndex = compile(c, depth + 1);
+                    child[slot] = childIndex;
+                    count[slot] = 0;
+                } else {
+                    int first = primitives.size();
+                    if (c instanceof Geometries geometries) primitives.addAll(geometries.geometries);
+                    else primitives.add(c);
+                    child[slot] = first;
+                    count[slot] = primitives.size() - first;
+                }
+            }
+            return index;
+        }
+
+        /**
+         * Adds the children of a binary node, or the object itself if it isn't a node
+         * @param node     the node
+         * @param children the list to add to
+         */
+        private void addChildren(Intersectable node, List<Intersectable> children) {
+            if (node instanceof BVHNode inner) {
+                if (inner.getLeft() != null) children.add(inner.getLeft());
+                if (inner.getRight() != null) children.add(inner.getRight());
+            } else
+                children.add(node);
+        }
+
+        /**
+         * Calculates the surface area of a box
+         * @param box the box
+         * @return the surface area
+         */
+        private double area(AABB box) {
+            double[] coordinates = new double[6];
+            for (int i = 0; i < 3; i++) {
+                coordinates[i] = box.getMin().getCoordinate(i);
+                coordinates[i + 3] = box.getMax().getCoordinate(i);
+            }
+            return BVHBuilder.surfaceArea(coordinates);
+        }
+    }
+}
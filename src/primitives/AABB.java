@@ -20,6 +20,18 @@ public class AABB{
         return max;
     }
 
+    /**
+     * Checks whether the AABB is finite in all the axes
+     * @return true if all the coordinates of the AABB are finite numbers
+     */
+    public boolean isFinite() {
+        for (int i = 0; i < 3; i++) {
+            if (!Double.isFinite(min.getCoordinate(i)) || !Double.isFinite(max.getCoordinate(i)))
+                return false;
+        }
+        return true;
+    }
+
 
     /**
      * Checks if a ray intersects with the AABB.
@@ -61,6 +73,45 @@ public class AABB{
         return true;
     }
 
+    /**
+     * Calculates the distance along a ray to its entry into the AABB.
+     * @param ray  the ray
+     * @param tMax the maximal distance to check
+     * @return the entry distance (0 if the ray starts inside the AABB),
+     * or positive infinity if the ray misses the AABB in front of its head and before tMax
+     */
+    public double entryDistance(Ray ray, double tMax) {
+        double tMin = 0;
+        for (int i = 0; i < 3; i++) {
+            double origin = ray.getP0().getCoordinate(i);
+            double direction = ray.getDir().getCoordinate(i);
+
+            if (direction == 0) {
+                // Ray is parallel to the slab. If origin not within slab, no intersection.
+                if (origin < min.getCoordinate(i) || origin > max.getCoordinate(i)) {
+                    return Double.POSITIVE_INFINITY;
+                }
+                continue;
+            }
+
+            double invD = 1.0 / direction;
+            double t0 = (min.getCoordinate(i) - origin) * invD;
+            double t1 = (max.getCoordinate(i) - origin) * invD;
+            if (invD < 0) {
+                double temp = t0;
+                t0 = t1;
+                t1 = temp;
+            }
+
+            tMin = Math.max(tMin, t0);
+            tMax = Math.min(tMax, t1);
+
+            if (tMax < tMin)
+                return Double.POSITIVE_INFINITY;
+        }
+        return tMin;
+    }
+
     /**
      * Calculates the surrounding AABB that contains both input boxes.
      * @param box1 the first AABB
@@ -1,12 +1,16 @@
 package primitives;
 
+import static primitives.Util.isZero;
+
 /** Class Point is the basic class representing a point of Euclidean geometry in Cartesian
- * 3-Dimensional coordinate system.
+ * 3-Dimensional coordinate system.<br>
+ * The coordinates are kept in the point itself rather than in a {@link Double3}, so each operation
+ * allocates a single object, which escape analysis can often remove altogether.
  * @author Jeshurun and Binyamin
  */
 public class Point{
     /**3 coordinates of point*/
-    protected final Double3 xyz;
+    protected final double x, y, z;
 
     /**The beginning of labor */
     public static final Point ZERO = new Point(0,0,0);
@@ -18,7 +22,9 @@ public class Point{
      * @param z third coordinate
      */
     public Point(double x, double y, double z){
-        xyz = new Double3(x,y,z);
+        this.x = x;
+        this.y = y;
+        this.z = z;
     }
 
     /**
@@ -26,11 +32,22 @@ public class Point{
      * @param xyz 3 coordinates
      */
     public Point(Double3 xyz){
-        this.xyz = xyz;
+        this(xyz.d1(), xyz.d2(), xyz.d3());
     }
 
+    /**
+     * returns a coordinate of the point
+     * @param i the index of the coordinate: 0, 1 or 2
+     * @return the coordinate
+     * @throws IllegalArgumentException if the index is not 0, 1 or 2
+     */
     public double getCoordinate(int i) {
-        return xyz.getCoordinate(i);
+        switch (i) {
+            case 0 -> { return x; }
+            case 1 -> { return y; }
+            case 2 -> { return z; }
+            default -> throw new IllegalArgumentException("Index must be 0, 1, or 2");
+        }
     }
 
     /**
@@ -39,8 +56,7 @@ public class Point{
      * @return vector from the second point to the point
      */
     public Vector subtract(Point subtrahend){
-
-        return new Vector(this.xyz.subtract(subtrahend.xyz));
+        return new Vector(x - subtrahend.x, y - subtrahend.y, z - subtrahend.z);
     }
 
     /**
@@ -49,7 +65,7 @@ public class Point{
      * @return new point
      */
     public Point add(Point addend){
-        return new Point(this.xyz.add(addend.xyz));
+        return new Point(x + addend.x, y + addend.y, z + addend.z);
     }
 
     /**
@@ -58,10 +74,8 @@ public class Point{
      * @return squared distance
      */
     public double distanceSquared(Point target){
-            if (this.equals(target)) return 0;
-            Double3 distance = this.subtract(target).xyz;
-            distance = distance.product(distance);
-            return distance.d1() + distance.d2() + distance.d3();
+        double dx = x - target.x, dy = y - target.y, dz = z - target.z;
+        return dx * dx + dy * dy + dz * dz;
     }
 
     /**
@@ -78,13 +92,14 @@ public class Point{
     public boolean equals(Object obj) {
         if (this == obj) return true;
         return (obj instanceof Point other)
-                && this.xyz.equals(other.xyz);
+                && isZero(x - other.x)
+                && isZero(y - other.y)
+                && isZero(z - other.z);
     }
 
-
     @Override
     public String toString(){
-        return xyz.toString();
+        return "(" + x + "," + y + "," + z + ")";
     }
 
 
@@ -71,7 +71,7 @@ public class Ray {
         if (Util.isZero(t)) {
             return p0;
         }
-        return p0.add(dir.scale(t));
+        return new Point(p0.x + dir.x * t, p0.y + dir.y * t, p0.z + dir.z * t);
     }
 
     @Override
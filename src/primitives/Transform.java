@@ -0,0 +1,194 @@
+package primitives;
+
+import static primitives.Util.isZero;
+
+/**
+ * Class Transform represents an affine transformation of the 3-Dimensional space:
+ * a linear 3x3 part followed by a translation. The inverse transformation is calculated
+ * once on construction, so both directions cost the same.
+ * @author Jeshurun and Binyamin
+ */
+public class Transform {
+    /** The identity transformation */
+    public static final Transform IDENTITY = new Transform(new double[]{1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0});
+
+    /** The transformation matrix, 3 rows of 4 values: the linear part and the translation */
+    private final double[] m;
+    /** The matrix of the inverse transformation, in the same layout */
+    private final double[] inverse;
+
+    /**
+     * Constructor of a transformation from its matrix
+     * @param m the 3 rows of 4 values: the linear part and the translation
+     * @throws IllegalArgumentException if the linear part can't be inverted
+     */
+    private Transform(double[] m) {
+        this.m = m;
+        double c00 = m[5] * m[10] - m[6] * m[9];
+        double c01 = m[6] * m[8] - m[4] * m[10];
+        double c02 = m[4] * m[9] - m[5] * m[8];
+        double det = m[0] * c00 + m[1] * c01 + m[2] * c02;
+        if (isZero(det))
+            throw new IllegalArgumentException("Transformation must be invertible");
+
+        double[] inv = new double[12];
+        inv[0] = c00 / det;
+        inv[1] = (m[2] * m[9] - m[1] * m[10]) / det;
+        inv[2] = (m[1] * m[6] - m[2] * m[5]) / det;
+        inv[4] = c01 / det;
+        inv[5] = (m[0] * m[10] - m[2] * m[8]) / det;
+        inv[6] = (m[2] * m[4] - m[0] * m[6]) / det;
+        inv[8] = c02 / det;
+        inv[9] = (m[1] * m[8] - m[0] * m[9]) / det;
+        inv[10] = (m[0] * m[5] - m[1] * m[4]) / det;
+        // the inverse translation is the inverse linear part applied to the negated translation
+        for (int row = 0; row < 3; row++)
+            inv[4 * row + 3] = -(inv[4 * row] * m[3] + inv[4 * row + 1] * m[7] + inv[4 * row + 2] * m[11]);
+        this.inverse = inv;
+    }
+
+    /**
+     * Creates a translation
+     * @param offset the translation vector
+     * @return the translation
+     */
+    public static Transform translation(Vector offset) {
+        return new Transform(new double[]{
+                1, 0, 0, offset.getCoordinate(0),
+                0, 1, 0, offset.getCoordinate(1),
+                0, 0, 1, offset.getCoordinate(2)});
+    }
+
+    /**
+     * Creates a scaling around the origin
+     * @param sx the scale factor along the x axis
+     * @param sy the scale factor along the y axis
+     * @param sz the scale factor along the z axis
+     * @return the scaling
+     * @throws IllegalArgumentException if one of the factors is zero
+     */
+    public static Transform scaling(double sx, double sy, double sz) {
+        return new Transform(new double[]{sx, 0, 0, 0, 0, sy, 0, 0, 0, 0, sz, 0});
+    }
+
+    /**
+     * Creates a uniform scaling around the origin
+     * @param scale the scale factor
+     * @return the scaling
+     * @throws IllegalArgumentException if the factor is zero
+     */
+    public static Transform scaling(double scale) {
+        return scaling(scale, scale, scale);
+    }
+
+    /**
+     * Creates a rotation around an axis through the origin (right-hand rule)
+     * @param axis  the rotation axis
+     * @param angle the rotation angle in degrees
+     * @return the rotation
+     */
+    public static Transform rotation(Vector axis, double angle) {
+        Vector u = axis.normalize();
+        double x = u.getCoordinate(0), y = u.getCoordinate(1), z = u.getCoordinate(2);
+        double radians = Math.toRadians(angle);
+        double cos = Math.cos(radians), sin = Math.sin(radians), t = 1 - cos;
+        return new Transform(new double[]{
+                t * x * x + cos, t * x * y - sin * z, t * x * z + sin * y, 0,
+                t * x * y + sin * z, t * y * y + cos, t * y * z - sin * x, 0,
+                t * x * z - sin * y, t * y * z + sin * x, t * z * z + cos, 0});
+    }
+
+    /**
+     * Composes this transformation with a following one
+     * @param next the transformation applied after this one
+     * @return the transformation applying this one and then the next one
+     */
+    public Transform then(Transform next) {
+        double[] a = next.m;
+        double[] result = new double[12];
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 4; col++)
+                result[4 * row + col] = a[4 * row] * m[col] + a[4 * row + 1] * m[4 + col] + a[4 * row + 2] * m[8 + col];
+            result[4 * row + 3] += a[4 * row + 3];
+        }
+        return new Transform(result);
+    }
+
+    /**
+     * Transforms a point
+     * @param point the point
+     * @return the transformed point
+     */
+    public Point transformPoint(Point point) {
+        return applyToPoint(m, point);
+    }
+
+    /**
+     * Transforms a direction vector, the translation doesn't affect it and its length may change
+     * @param vector the vector
+     * @return the transformed vector
+     */
+    public Vector transformVector(Vector vector) {
+        return applyToVector(m, vector);
+    }
+
+    /**
+     * Transforms a normal vector by the inverse transpose of the linear part,
+     * so it stays orthogonal to the transformed surface
+     * @param normal the normal
+     * @return the transformed normal, normalized
+     */
+    public Vector transformNormal(Vector normal) {
+        double x = normal.getCoordinate(0), y = normal.getCoordinate(1), z = normal.getCoordinate(2);
+        return new Vector(
+                inverse[0] * x + inverse[4] * y + inverse[8] * z,
+                inverse[1] * x + inverse[5] * y + inverse[9] * z,
+                inverse[2] * x + inverse[6] * y + inverse[10] * z).normalize();
+    }
+
+    /**
+     * Transforms a point by the inverse transformation
+     * @param point the point
+     * @return the point before the transformation
+     */
+    public Point inversePoint(Point point) {
+        return applyToPoint(inverse, point);
+    }
+
+    /**
+     * Transforms a direction vector by the inverse transformation
+     * @param vector the vector
+     * @return the vector before the transformation
+     */
+    public Vector inverseVector(Vector vector) {
+        return applyToVector(inverse, vector);
+    }
+
+    /**
+     * Applies a matrix to a point
+     * @param matrix the matrix
+     * @param point  the point
+     * @return the transformed point
+     */
+    private static Point applyToPoint(double[] matrix, Point point) {
+        double x = point.getCoordinate(0), y = point.getCoordinate(1), z = point.getCoordinate(2);
+        return new Point(
+                matrix[0] * x + matrix[1] * y + matrix[2] * z + matrix[3],
+                matrix[4] * x + matrix[5] * y + matrix[6] * z + matrix[7],
+                matrix[8] * x + matrix[9] * y + matrix[10] * z + matrix[11]);
+    }
+
+    /**
+     * Applies the linear part of a matrix to a vector
+     * @param matrix the matrix
+     * @param vector the vector
+     * @return the transformed vector
+     */
+    private static Vector applyToVector(double[] matrix, Vector vector) {
+        double x = vector.getCoordinate(0), y = vector.getCoordinate(1), z = vector.getCoordinate(2);
+        return new Vector(
+                matrix[0] * x + matrix[1] * y + matrix[2] * z,
+                matrix[4] * x + matrix[5] * y + matrix[6] * z,
+                matrix[8] * x + matrix[9] * y + matrix[10] * z);
+    }
+}
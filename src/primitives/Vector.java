@@ -1,6 +1,8 @@
 package primitives;
 import primitives.Point;
 
+import static primitives.Util.isZero;
+
 /**
  * Class Vector is the basic class representing a vector in Cartesian
  * 3-Dimensional coordinate system.
@@ -25,14 +27,40 @@ public class Vector extends Point {
 
     }
 
+    /**
+     * creates the vector without checking it is not (0,0,0),
+     * for the results of the intersection kernels that cannot be zero, such as a unit normal.
+     * The caller is responsible for the vector not being (0,0,0)
+     *
+     * @param x first coordinate
+     * @param y second coordinate
+     * @param z third coordinate
+     * @return the vector
+     */
+    public static Vector unchecked(double x, double y, double z) {
+        return new Vector(x, y, z, false);
+    }
+
+    /**
+     * constructor creates the vector, checking it is not (0,0,0) on demand
+     *
+     * @param x        first coordinate
+     * @param y        second coordinate
+     * @param z        third coordinate
+     * @param validate whether to check the vector is not (0,0,0)
+     */
+    private Vector(double x, double y, double z, boolean validate) {
+        super(x, y, z);
+        if (validate) validation();
+    }
+
     /**
      * constractor create the vector xyz
      *
      * @param xyz 3 coordinates
      */
     public Vector(Double3 xyz) {
-        super(xyz);
-        validation();
+        this(xyz.d1(), xyz.d2(), xyz.d3());
     }
 
     /**
@@ -41,7 +69,7 @@ public class Vector extends Point {
      * @return new vector
      */
     public Vector add(Vector addend) {
-        return new Vector(this.xyz.add(addend.xyz));
+        return new Vector(x + addend.x, y + addend.y, z + addend.z);
     }
 
     /**
@@ -50,7 +78,7 @@ public class Vector extends Point {
      * @return new vector
      */
     public Vector scale(double scalar) {
-        return new Vector(this.xyz.scale(scalar));
+        return new Vector(x * scalar, y * scalar, z * scalar);
     }
 
     /**
@@ -59,7 +87,7 @@ public class Vector extends Point {
      * @return dot product
      */
     public double dotProduct(Vector other) {
-        return this.xyz.d1() * other.xyz.d1() + this.xyz.d2() * other.xyz.d2() + this.xyz.d3() * other.xyz.d3();
+        return x * other.x + y * other.y + z * other.z;
     }
 
     /**
@@ -69,9 +97,9 @@ public class Vector extends Point {
      */
     public Vector crossProduct(Vector other) {
         return new Vector(
-                this.xyz.d2() * other.xyz.d3() - this.xyz.d3() * other.xyz.d2(),
-                this.xyz.d3() * other.xyz.d1() - this.xyz.d1() * other.xyz.d3(),
-                this.xyz.d1() * other.xyz.d2() - this.xyz.d2() * other.xyz.d1());
+                y * other.z - z * other.y,
+                z * other.x - x * other.z,
+                x * other.y - y * other.x);
     }
 
     /**
@@ -79,7 +107,7 @@ public class Vector extends Point {
      * @return squared length
      */
     public double lengthSquared() {
-        return this.xyz.d1() * this.xyz.d1() + this.xyz.d2() * this.xyz.d2() + this.xyz.d3() * this.xyz.d3();
+        return x * x + y * y + z * z;
     }
 
     /**
@@ -95,7 +123,8 @@ public class Vector extends Point {
      * @return normalized vector
      */
     public Vector normalize() {
-        return scale(1 / length());
+        double scale = 1 / length();
+        return unchecked(x * scale, y * scale, z * scale);
     }
 
     /**
@@ -103,7 +132,7 @@ public class Vector extends Point {
      * throw exception if the vector is (0,0,0)
      */
     private void validation(){
-        if (this.xyz.equals(Double3.ZERO)) {
+        if (isZero(x) && isZero(y) && isZero(z)) {
             throw new IllegalArgumentException("Vector cannot be (0,0,0)");
         }
     }
@@ -113,7 +142,9 @@ public class Vector extends Point {
     public boolean equals(Object obj) {
         if (this == obj) return true;
         return (obj instanceof Vector other)
-                && this.xyz.equals(other.xyz);
+                && isZero(x - other.x)
+                && isZero(y - other.y)
+                && isZero(z - other.z);
     }
 
 }
@@ -8,6 +8,8 @@ import scene.Scene;
 
 import java.util.LinkedList;
 import java.util.MissingResourceException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.*;
 
 import static primitives.Util.isZero;
@@ -44,6 +46,13 @@ public class Camera implements Cloneable {
     private boolean antiAliasing = false;
     /*** define how many rays to cast per pixel for super sampling */
     private int raysPerPixel = 25;
+    /**
+     * The side of the square tiles of pixels whose rays are traced together as a packet,
+     * 1 - every ray is traced on its own
+     */
+    private int packetSize = 1;
+    /*** define if the secondary rays of the packets are sorted and traced breadth-first*/
+    private boolean raySorting = false;
     /** Amount of threads to use fore rendering image by the camera */
     private int threadsCount = 0;
     /**
@@ -153,6 +162,8 @@ public class Camera implements Cloneable {
      */
     public Camera renderImage() {
         pixelManager = new PixelManager(nY, nX, printInterval);
+        if (rayTracer instanceof WavefrontRayTracer) return renderImageWavefront();
+        if (packetSize > 1) return renderImageTiles();
         return switch (threadsCount) {
             case 0 -> renderImageNoThreads();
             case -1 -> renderImageStream();
@@ -160,6 +171,125 @@ public class Camera implements Cloneable {
         };
     }
     
+    /**
+     * Render image in square tiles of pixels, the rays of each tile are traced as packets
+     * @return the camera object itself
+     */
+    private Camera renderImageTiles() {
+        int tilesX = (nX + packetSize - 1) / packetSize;
+        int tiles = tilesX * ((nY + packetSize - 1) / packetSize);
+        switch (threadsCount) {
+            case 0 -> {
+                for (int tile = 0; tile < tiles; ++tile)
+                    colorTile(tile % tilesX, tile / tilesX);
+            }
+            case -1 -> IntStream.range(0, tiles).parallel().forEach(tile -> colorTile(tile % tilesX, tile / tilesX));
+            default -> {
+                AtomicInteger nextTile = new AtomicInteger();
+                var threads = new LinkedList<Thread>();
+                for (int t = 0; t < threadsCount; ++t)
+                    threads.add(new Thread(() -> {
+                        int tile;
+                        while ((tile = nextTile.getAndIncrement()) < tiles)
+                            colorTile(tile % tilesX, tile / tilesX);
+                    }));
+                for (var thread : threads) thread.start();
+                try {
+                    for (var thread : threads) thread.join();
+                } catch (InterruptedException ignored) {}
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Render image by tracing the rays through all the pixels together, the ray tracer processes them
+     * in waves. With anti-aliasing, every sample of all the pixels is traced together.<br>
+     * The rays are generated and the stages of the ray tracer run as parallel streams unless
+     * multi-threading is not activated: on the common fork-join pool for stream processing
+     * parallelization, and on a fork-join pool of the set amount of threads otherwise.
+     * @return the camera object itself
+     */
+    private Camera renderImageWavefront() {
+        if (threadsCount <= 0) return renderWaves();
+        // parallel streams run on the pool of the task that starts them
+        try (ForkJoinPool pool = new ForkJoinPool(threadsCount)) {
+            return pool.submit(this::renderWaves).join();
+        }
+    }
+
+    /**
+     * Render image by the waves of the ray tracer, on the current pool of threads
+     * @return the camera object itself
+     */
+    private Camera renderWaves() {
+        Ray[] rays = new Ray[nX * nY];
+        IntStream pixels = IntStream.range(0, rays.length);
+        if (threadsCount != 0) pixels = pixels.parallel();
+        pixels.forEach(p -> rays[p] = constructRay(nX, nY, p % nX, p / nX, 0, 0));
+        Color[] colors = rayTracer.traceRays(rays);
+
+        if (antiAliasing) {
+            //anti-aliasing: super sampling, the same sample of all the pixels together
+            for (int k = 1; k < raysPerPixel; k++) {
+                pixels = IntStream.range(0, rays.length);
+                if (threadsCount != 0) pixels = pixels.parallel();
+                pixels.forEach(p -> rays[p] = constructRay(nX, nY, p % nX, p / nX,
+                        Math.random() - 0.5, Math.random() - 0.5));
+                Color[] samples = rayTracer.traceRays(rays);
+                for (int p = 0; p < colors.length; ++p)
+                    colors[p] = colors[p].add(samples[p]);
+            }
+            for (int p = 0; p < colors.length; ++p)
+                colors[p] = colors[p].scale((double) 1 / raysPerPixel);
+        }
+
+        for (int p = 0; p < colors.length; ++p) {
+            imageWriter.writePixel(p % nX, p / nX, colors[p]);
+            pixelManager.pixelDone();
+        }
+        return this;
+    }
+
+    /**
+     * Colors a tile of pixels by tracing the rays through its pixels together.
+     * With anti-aliasing, the rays of the same sample in all the pixels of the tile form a packet.
+     * @param tileX the column of the tile
+     * @param tileY the row of the tile
+     */
+    private void colorTile(int tileX, int tileY) {
+        int firstCol = tileX * packetSize;
+        int firstRow = tileY * packetSize;
+        int cols = Math.min(packetSize, nX - firstCol);
+        int rows = Math.min(packetSize, nY - firstRow);
+        Ray[] rays = new Ray[cols * rows];
+        for (int r = 0; r < rows; ++r)
+            for (int c = 0; c < cols; ++c)
+                rays[r * cols + c] = constructRay(nX, nY, firstCol + c, firstRow + r, 0, 0);
+        Color[] colors = rayTracer.traceRays(rays);
+
+        if (antiAliasing) {
+            //anti-aliasing: super sampling, a packet for each sample
+            for (int k = 1; k < raysPerPixel; k++) {
+                for (int r = 0; r < rows; ++r)
+                    for (int c = 0; c < cols; ++c)
+                        rays[r * cols + c] = constructRay(nX, nY, firstCol + c, firstRow + r,
+                                Math.random() - 0.5, Math.random() - 0.5);
+                Color[] samples = rayTracer.traceRays(rays);
+                for (int p = 0; p < colors.length; ++p)
+                    colors[p] = colors[p].add(samples[p]);
+            }
+            for (int p = 0; p < colors.length; ++p)
+                colors[p] = colors[p].scale((double) 1 / raysPerPixel);
+        }
+
+        for (int r = 0; r < rows; ++r)
+            for (int c = 0; c < cols; ++c) {
+                imageWriter.writePixel(firstCol + c, firstRow + r, colors[r * cols + c]);
+                pixelManager.pixelDone();
+            }
+    }
+
     /**
      * Prints a grid on the image.
      * @param interval the interval between grid lines
@@ -331,13 +461,19 @@ public class Camera implements Cloneable {
             return this;
         }
 
+        /**
+         * Sets the ray tracer of the camera.
+         *
+         * @param scene         the scene to render
+         * @param rayTracerType the type of the ray tracer
+         * @return the builder instance
+         */
         public Builder setRayTracer(Scene scene, RayTracerType rayTracerType) {
-            // meanwhile, we will do it just for simple type
-            if (rayTracerType == RayTracerType.SIMPLE) {
-                camera.rayTracer = new SimpleRayTracer(scene);
-            } else {
-                camera.rayTracer = null;
-            }
+            camera.rayTracer = switch (rayTracerType) {
+                case SIMPLE -> new SimpleRayTracer(scene);
+                case GRID -> new GridRayTracer(scene);
+                case WAVEFRONT -> new WavefrontRayTracer(scene);
+            };
             return this;
         }
 
@@ -379,6 +515,30 @@ public class Camera implements Cloneable {
             return this;
         }
 
+        /**
+         * Sets the side of the square tiles of pixels whose rays are traced together as packets.
+         * Neighbouring rays share the traversal of the scene's acceleration structure.
+         * @param packetSize the side of the tiles in pixels (e.g. 2 or 8), 1 to trace every ray on its own
+         * @return builder object itself
+         */
+        public Builder setPacketSize(int packetSize) {
+            if (packetSize < 1) throw new IllegalArgumentException("Packet size must be positive");
+            camera.packetSize = packetSize;
+            return this;
+        }
+
+        /**
+         * Sets whether the reflected and transmitted rays of each packet are gathered, sorted by
+         * their direction and origin and traced in coherent batches instead of one by one.
+         * Takes effect with packets (see {@link #setPacketSize(int)}) and a {@link SimpleRayTracer}
+         * @param raySorting true to sort the secondary rays
+         * @return builder object itself
+         */
+        public Builder setRaySorting(boolean raySorting) {
+            camera.raySorting = raySorting;
+            return this;
+        }
+
         public Builder setRaysPerPixel(int raysPerPixel) {
             if (raysPerPixel <= 0) {
                 throw new IllegalArgumentException("Rays per pixel must be positive");
@@ -450,6 +610,10 @@ public class Camera implements Cloneable {
             if (camera.rayTracer == null) {
                 camera.rayTracer = new SimpleRayTracer(null);
             }
+            if (camera.rayTracer instanceof SimpleRayTracer simpleRayTracer)
+                simpleRayTracer.setRaySorting(camera.raySorting);
+            if (camera.rayTracer instanceof WavefrontRayTracer wavefrontRayTracer)
+                wavefrontRayTracer.setParallel(camera.threadsCount != 0);
             camera.vright = camera.vto.crossProduct(camera.vup).normalize();
             camera.imageWriter = new ImageWriter(camera.nX, camera.nY);
             try {
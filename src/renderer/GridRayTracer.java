@@ -0,0 +1,36 @@
+package renderer;
+
+import geometries.Grid;
+import geometries.Intersectable;
+import scene.Scene;
+
+/**
+ * GridRayTracer is a ray tracer that accelerates the scene's geometries with a regular grid.
+ * The grid is built on the first traced ray, so geometries may be added to the scene
+ * after the ray tracer is created.
+ * @author Jeshurun and Binyamin
+ */
+public class GridRayTracer extends SimpleRayTracer {
+    /*** The grid over the scene's geometries, built on demand*/
+    private volatile Grid grid;
+
+    /**
+     * Constructor for GridRayTracer
+     * @param scene the scene to be rendered
+     */
+    public GridRayTracer(Scene scene) {
+        super(scene);
+    }
+
+    @Override
+    protected Intersectable getGeometries() {
+        Grid result = grid;
+        if (result == null) {
+            synchronized (this) {
+                if (grid == null) grid = new Grid(scene.geometries);
+                result = grid;
+            }
+        }
+        return result;
+    }
+}
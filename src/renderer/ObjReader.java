@@ -1,8 +1,13 @@
 package renderer;
 
+import geometries.BVHBuilder;
 import geometries.Geometries;
 import geometries.Geometry;
+import geometries.Instance;
+import geometries.Intersectable;
+import geometries.OffHeapTriangleMesh;
 import geometries.Polygon;
+import geometries.TriangleMesh;
 import primitives.Color;
 import primitives.Double3;
 import primitives.Material;
@@ -10,7 +15,13 @@ import primitives.Point;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -125,20 +136,120 @@ public class ObjReader {
      * @return a list of Geometry objects representing the polygons
      */
     public List<Geometry> readPolygonsFromOBJ(String filePath) {
+        List<Point> vertices = new ArrayList<>();
+        List<int[]> faces = new ArrayList<>();
+        List<Material> faceMaterials = new ArrayList<>();
+        parseOBJ(filePath, new ObjSink() {
+            @Override
+            public void vertex(double x, double y, double z) {
+                vertices.add(new Point(x, y, z));
+            }
+
+            @Override
+            public void face(int[] faceVertices, Material material) {
+                faces.add(faceVertices);
+                faceMaterials.add(material);
+            }
+        });
+
+        // the polygons are made after the whole file is read, a face may use vertices that come after it
         List<Geometry> polygons = new ArrayList<>();
-        List<Point> vertices = readVerticesFromOBJ(filePath);
+        for (int f = 0; f < faces.size(); f++) {
+            List<Point> polygonVertices = new ArrayList<>();
+            try {
+                for (int vertex : faces.get(f)) polygonVertices.add(vertices.get(vertex));
+                polygons.add(new Polygon(polygonVertices).setMaterial(faceMaterials.get(f)));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                System.err.println("Error creating polygon: " + e.getMessage());
+            }
+        }
+        return polygons;
+    }
 
+    /**
+     * Reads an OBJ file and returns a Geometries object containing all the polygons in the file.
+     *
+     * @param filePath the path to the OBJ file
+     * @return a Geometries object containing all the polygons
+     */
+    public Geometries getGeometryFromOBJ(String filePath) {
+        List<Geometry> polygons = readPolygonsFromOBJ(filePath);
+        Geometries geometries = new Geometries();
+        geometries.add(polygons);
+        return geometries;
+    }
 
+    /**
+     * Reads an OBJ file into a single {@link TriangleMesh}: the vertices into one coordinate array,
+     * the faces (split into fans of triangles) into an index array with the index of the material
+     * of each face. Faces without a known material get the default material.
+     *
+     * @param filePath the path to the OBJ file
+     * @return the mesh of all the faces in the file
+     */
+    public TriangleMesh getTriangleMeshFromOBJ(String filePath) {
+        return getTriangleMeshFromOBJ(filePath, false);
+    }
+
+    /**
+     * Reads an OBJ file into a single {@link TriangleMesh}, in single or in double precision.
+     * A mesh in single precision takes half the memory for its coordinates and bounds,
+     * the coordinates are rounded to floats as they are read.
+     *
+     * @param filePath        the path to the OBJ file
+     * @param singlePrecision true to keep the coordinates in single precision
+     * @return the mesh of all the faces in the file
+     */
+    public TriangleMesh getTriangleMeshFromOBJ(String filePath, boolean singlePrecision) {
+        ArrayTriangleSink sink = new ArrayTriangleSink(singlePrecision);
+        parseOBJ(filePath, sink);
+        return sink.toMesh();
+    }
+
+    /**
+     * Reads an OBJ file into a single {@link OffHeapTriangleMesh}, writing the vertices and the faces
+     * directly into memory of an arena, so the model never passes through the heap.
+     * The file is read twice: once to count the vertices and the triangles, and once to fill the memory.
+     * The faces are split into fans of triangles, and faces without a known material get the default material.
+     *
+     * @param filePath        the path to the OBJ file
+     * @param singlePrecision true to keep the coordinates in single precision
+     * @param arena           the arena of the memory of the mesh
+     * @return the mesh of all the faces in the file
+     */
+    public OffHeapTriangleMesh getOffHeapTriangleMeshFromOBJ(String filePath, boolean singlePrecision, Arena arena) {
+        CountingTriangleSink count = new CountingTriangleSink();
+        parseOBJ(filePath, count);
+        SegmentTriangleSink sink = new SegmentTriangleSink(count.vertexCount, count.triangleCount, singlePrecision, arena);
+        parseOBJ(filePath, sink);
+        return sink.toMesh(arena);
+    }
+
+    /**
+     * Parses an OBJ file into a sink: the vertices as they are read, and the faces with the material
+     * of the last 'usemtl' line, taken from the MTL file of the last 'mtllib' line.
+     * A face before any 'usemtl' line has no material, and a face of an unknown material has the default material.
+     * An error ends the parsing and is reported.
+     *
+     * @param filePath the path to the OBJ file
+     * @param sink     the receiver of the vertices and the faces
+     */
+    private void parseOBJ(String filePath, ObjSink sink) {
         try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
             //define the map for the materials
-            Map<String, Material> materials = new java.util.HashMap<>();
+            Map<String, Material> materials = new HashMap<>();
             Material currentMaterial = null;
             String line;
 
             while ((line = br.readLine()) != null) {
                 line = line.trim();
+                if (line.startsWith("v ")) {
+                    String[] parts = line.split("\\s+");
+                    if (parts.length >= 4)
+                        sink.vertex(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]), Double.parseDouble(parts[3]));
+                }
                 //if line start with 'mtllib' read the materials from the mtl file
-                if (line.startsWith("mtllib ")) {
+                else if (line.startsWith("mtllib ")) {
                     //add the prefix of filePath to the mtl file path
                     String mtlFilePath = line.split("\\s+")[1];
                     mtlFilePath = filePath.substring(0, filePath.lastIndexOf('\\') + 1) + mtlFilePath;
@@ -155,39 +266,240 @@ public class ObjReader {
                 else if (line.startsWith("f ")) {
                     String[] parts = line.split("\\s+");
                     if (parts.length >= 4) {
-                        List<Point> polygonVertices = new ArrayList<>();
-                        for (int i = 1; i < parts.length; i++) {
-                            int vertexIndex = Integer.parseInt(parts[i].split("/")[0]) - 1;
-                            polygonVertices.add(vertices.get(vertexIndex));
-                        }
-                        try {
-                            polygons.add(new Polygon(polygonVertices)
-                                    .setMaterial(currentMaterial));
-                        } catch(IllegalArgumentException e) {
-                            System.err.println("Error creating polygon: " + e.getMessage());
-                        }
+                        int[] vertices = new int[parts.length - 1];
+                        for (int i = 1; i < parts.length; i++)
+                            vertices[i - 1] = Integer.parseInt(parts[i].split("/")[0]) - 1;
+                        sink.face(vertices, currentMaterial);
                     }
                 }
             }
         } catch (Exception e) {
             System.err.println("Error reading file: " + e.getMessage());
         }
-
-        return polygons;
     }
 
     /**
-     * Reads an OBJ file and returns a Geometries object containing all the polygons in the file.
+     * Reads an OBJ file into a bounding volume hierarchy that can be shared by
+     * many {@link Instance}s of the model, each with its own transformation.
      *
      * @param filePath the path to the OBJ file
-     * @return a Geometries object containing all the polygons
+     * @return the hierarchy of the polygons, or null if the file has no polygons
      */
-    public Geometries getGeometryFromOBJ(String filePath) {
-        List<Geometry> polygons = readPolygonsFromOBJ(filePath);
-        Geometries geometries = new Geometries();
-        geometries.add(polygons);
-        return geometries;
+    public Intersectable getMeshFromOBJ(String filePath) {
+        return new BVHBuilder().build(readPolygonsFromOBJ(filePath));
     }
 
+    /**
+     * Receiver of the contents of an OBJ file, as it is parsed
+     */
+    private interface ObjSink {
+        /**
+         * Receives a vertex
+         * @param x the x coordinate
+         * @param y the y coordinate
+         * @param z the z coordinate
+         */
+        void vertex(double x, double y, double z);
+
+        /**
+         * Receives a face of at least 3 vertices
+         * @param vertices the indices of the vertices of the face, from 0
+         * @param material the material of the face, null if no material was set
+         */
+        void face(int[] vertices, Material material);
+    }
+
+    /**
+     * Sink that splits the faces into fans of triangles around their first vertex, with the index of
+     * the material of each face. The default material is the first, every other material gets an index once.
+     */
+    private abstract static class TriangleSink implements ObjSink {
+        /*** The materials of the faces, the default material first*/
+        final List<Material> materials = new ArrayList<>(List.of(Material.DEFAULT));
+        /*** The index of every material in the list of materials*/
+        private final Map<Material, Integer> materialIndices = new IdentityHashMap<>();
+
+        @Override
+        public void face(int[] vertices, Material material) {
+            int index = material == null || material == Material.DEFAULT ? 0
+                    : materialIndices.computeIfAbsent(material, m -> {
+                materials.add(m);
+                return materials.size() - 1;
+            });
+            for (int i = 2; i < vertices.length; i++) triangle(vertices[0], vertices[i - 1], vertices[i], index);
+        }
 
-}
\ No newline at end of file
+        /**
+         * Receives a triangle of a face
+         * @param a        the index of the first vertex
+         * @param b        the index of the second vertex
+         * @param c        the index of the third vertex
+         * @param material the index of the material of the face
+         */
+        abstract void triangle(int a, int b, int c, int material);
+    }
+
+    /**
+     * Sink that counts the vertices and the triangles of an OBJ file
+     */
+    private static class CountingTriangleSink extends TriangleSink {
+        /*** The amount of vertices*/
+        long vertexCount = 0;
+        /*** The amount of triangles*/
+        long triangleCount = 0;
+
+        @Override
+        public void vertex(double x, double y, double z) {
+            ++vertexCount;
+        }
+
+        @Override
+        void triangle(int a, int b, int c, int material) {
+            ++triangleCount;
+        }
+    }
+
+    /**
+     * Sink that collects the vertices and the triangles of an OBJ file into growing arrays
+     */
+    private static class ArrayTriangleSink extends TriangleSink {
+        /*** The coordinates of the vertices in double precision, null in single precision*/
+        private double[] positions;
+        /*** The coordinates of the vertices in single precision, null in double precision*/
+        private float[] floatPositions;
+        /*** The amount of vertices*/
+        private int vertexCount = 0;
+        /*** The vertex indices of the triangles*/
+        private int[] indices = new int[3 * 1024];
+        /*** The index of the material of each triangle*/
+        private int[] faceMaterials = new int[1024];
+        /*** The amount of triangles*/
+        private int triangleCount = 0;
+
+        /**
+         * Constructor of empty arrays
+         * @param singlePrecision true to keep the coordinates in single precision
+         */
+        ArrayTriangleSink(boolean singlePrecision) {
+            if (singlePrecision) floatPositions = new float[3 * 1024];
+            else positions = new double[3 * 1024];
+        }
+
+        @Override
+        public void vertex(double x, double y, double z) {
+            if (floatPositions != null) {
+                if (3 * vertexCount + 3 > floatPositions.length)
+                    floatPositions = Arrays.copyOf(floatPositions, 2 * floatPositions.length);
+                floatPositions[3 * vertexCount] = (float) x;
+                floatPositions[3 * vertexCount + 1] = (float) y;
+                floatPositions[3 * vertexCount + 2] = (float) z;
+            } else {
+                if (3 * vertexCount + 3 > positions.length)
+                    positions = Arrays.copyOf(positions, 2 * positions.length);
+                positions[3 * vertexCount] = x;
+                positions[3 * vertexCount + 1] = y;
+                positions[3 * vertexCount + 2] = z;
+            }
+            ++vertexCount;
+        }
+
+        @Override
+        void triangle(int a, int b, int c, int material) {
+            if (3 * triangleCount + 3 > indices.length) {
+                indices = Arrays.copyOf(indices, 2 * indices.length);
+                faceMaterials = Arrays.copyOf(faceMaterials, 2 * faceMaterials.length);
+            }
+            indices[3 * triangleCount] = a;
+            indices[3 * triangleCount + 1] = b;
+            indices[3 * triangleCount + 2] = c;
+            faceMaterials[triangleCount++] = material;
+        }
+
+        /**
+         * Creates the mesh of the collected vertices and triangles
+         * @return the mesh
+         */
+        TriangleMesh toMesh() {
+            int[] meshIndices = Arrays.copyOf(indices, 3 * triangleCount);
+            Material[] meshMaterials = materials.toArray(new Material[0]);
+            int[] meshFaceMaterials = Arrays.copyOf(faceMaterials, triangleCount);
+            return floatPositions != null
+                    ? new TriangleMesh(Arrays.copyOf(floatPositions, 3 * vertexCount), meshIndices, meshMaterials, meshFaceMaterials)
+                    : new TriangleMesh(Arrays.copyOf(positions, 3 * vertexCount), meshIndices, meshMaterials, meshFaceMaterials);
+        }
+    }
+
+    /**
+     * Sink that writes the vertices and the triangles of an OBJ file into memory segments of counted sizes
+     */
+    private static class SegmentTriangleSink extends TriangleSink {
+        /*** The layout of a coordinate, float or double*/
+        private final ValueLayout real;
+        /*** The coordinates of the vertices*/
+        private final MemorySegment positions;
+        /*** The vertex indices of the triangles*/
+        private final MemorySegment indices;
+        /*** The index of the material of each triangle*/
+        private final MemorySegment faceMaterials;
+        /*** The amount of vertices the memory has room for*/
+        private final long vertexCapacity;
+        /*** The amount of triangles the memory has room for*/
+        private final long triangleCapacity;
+        /*** The amount of written vertices*/
+        private long vertexCount = 0;
+        /*** The amount of written triangles*/
+        private long triangleCount = 0;
+
+        /**
+         * Constructor that allocates the memory of the mesh
+         * @param vertexCapacity   the amount of vertices
+         * @param triangleCapacity the amount of triangles
+         * @param singlePrecision  true to keep the coordinates in single precision
+         * @param arena            the arena of the memory
+         */
+        SegmentTriangleSink(long vertexCapacity, long triangleCapacity, boolean singlePrecision, Arena arena) {
+            this.vertexCapacity = vertexCapacity;
+            this.triangleCapacity = triangleCapacity;
+            real = singlePrecision ? ValueLayout.JAVA_FLOAT : ValueLayout.JAVA_DOUBLE;
+            positions = arena.allocate(3 * vertexCapacity * real.byteSize(), real.byteAlignment());
+            indices = arena.allocate(3 * triangleCapacity * Integer.BYTES, Integer.BYTES);
+            faceMaterials = arena.allocate(triangleCapacity * Integer.BYTES, Integer.BYTES);
+        }
+
+        @Override
+        public void vertex(double x, double y, double z) {
+            if (vertexCount == vertexCapacity) return; // the file grew between the passes
+            long v = 3 * vertexCount++;
+            if (real == ValueLayout.JAVA_FLOAT) {
+                positions.setAtIndex(ValueLayout.JAVA_FLOAT, v, (float) x);
+                positions.setAtIndex(ValueLayout.JAVA_FLOAT, v + 1, (float) y);
+                positions.setAtIndex(ValueLayout.JAVA_FLOAT, v + 2, (float) z);
+            } else {
+                positions.setAtIndex(ValueLayout.JAVA_DOUBLE, v, x);
+                positions.setAtIndex(ValueLayout.JAVA_DOUBLE, v + 1, y);
+                positions.setAtIndex(ValueLayout.JAVA_DOUBLE, v + 2, z);
+            }
+        }
+
+        @Override
+        void triangle(int a, int b, int c, int material) {
+            if (triangleCount == triangleCapacity) return; // the file grew between the passes
+            indices.setAtIndex(ValueLayout.JAVA_INT, 3 * triangleCount, a);
+            indices.setAtIndex(ValueLayout.JAVA_INT, 3 * triangleCount + 1, b);
+            indices.setAtIndex(ValueLayout.JAVA_INT, 3 * triangleCount + 2, c);
+            faceMaterials.setAtIndex(ValueLayout.JAVA_INT, triangleCount++, material);
+        }
+
+        /**
+         * Creates the mesh of the written vertices and triangles.
+         * A file that changed or failed between the passes keeps only the faces that were read.
+         * @param arena the arena of the memory of the mesh
+         * @return the mesh
+         */
+        OffHeapTriangleMesh toMesh(Arena arena) {
+            return new OffHeapTriangleMesh(positions.asSlice(0, 3 * vertexCount * real.byteSize()),
+                    real == ValueLayout.JAVA_FLOAT, indices.asSlice(0, 3 * triangleCount * Integer.BYTES),
+                    materials.toArray(new Material[0]), faceMaterials.asSlice(0, triangleCount * Integer.BYTES), arena);
+        }
+    }
+}
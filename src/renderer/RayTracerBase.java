@@ -26,4 +26,18 @@ public abstract class RayTracerBase {
      * @return the color of the pixel
      */
     public abstract Color traceRay(Ray ray);
+
+    /**
+     * Traces a packet of rays and returns the colors of their pixels.
+     * Ray tracers that can trace coherent rays together override it,
+     * the default implementation traces every ray on its own.
+     * @param rays the rays to be traced
+     * @return the color of each ray
+     */
+    public Color[] traceRays(Ray[] rays) {
+        Color[] colors = new Color[rays.length];
+        for (int i = 0; i < rays.length; i++)
+            colors[i] = traceRay(rays[i]);
+        return colors;
+    }
 }
@@ -7,6 +7,8 @@ public enum RayTracerType {
    /** Simple (basic) ray tracer */
    SIMPLE,
    /** Ray tracer using regular grid */
-   GRID
+   GRID,
+   /** Ray tracer processing the rays of the whole image in waves of stages */
+   WAVEFRONT
 
 }
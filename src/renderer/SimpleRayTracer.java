@@ -4,8 +4,12 @@ package renderer;
 import lighting.LightSource;
 import primitives.*;
 import scene.Scene;
-import geometries.Intersectable. Intersection;
+import geometries.Intersectable;
+import geometries.Intersectable.Intersection;
 
+
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 import static java.lang.Math.abs;
@@ -15,17 +19,37 @@ import static primitives.Util.alignZero;
 /**
  * SimpleRayTracer class that extends RayTracerBase
  * This class is responsible for rendering a scene using ray tracing
- * It calculates the color of each pixel based on the light sources and the geometry in the scene
+ * It calculates the color of each pixel based on the light sources and the geometry in the scene<br>
+ * A packet of rays (a tile of pixels) may trace its secondary rays breadth-first: the reflected and
+ * transmitted rays of all the hits of a generation are queued, sorted by their direction octant and
+ * the cell of their origin, and traced in coherent packets, instead of depth-first one by one.
 
  * @author Jeshurun and Binyamin
  */
 public class SimpleRayTracer extends RayTracerBase{
     /*** The maximum number of color levels used for shading*/
-    private static final int MAX_CALC_COLOR_LEVEL = 10;
+    static final int MAX_CALC_COLOR_LEVEL = 10;
     /*** The minimum color level used for shading*/
-    private static final double MIN_CALC_COLOR_K = 0.001;
+    static final double MIN_CALC_COLOR_K = 0.001;
     /*** The initial color value used for shading*/
-    private static final Double3 INITIAL_K = Double3.ONE;
+    static final Double3 INITIAL_K = Double3.ONE;
+    /*** The amount of bits of each origin coordinate in the sorting key of a secondary ray*/
+    private static final int ORIGIN_BITS = 10;
+
+    /*** Whether the secondary rays of a packet are sorted and traced in coherent packets*/
+    private boolean raySorting = false;
+
+    /**
+     * A queued secondary ray with the state of its path
+     * @param ray    the ray
+     * @param pixel  the index of the ray in the packet whose color the ray contributes to
+     * @param level  the recursion level of the ray
+     * @param k      the product of the coefficients along the path, including the ray
+     * @param weight the scale of the color of the ray in the color of the pixel
+     * @param key    the sorting key: the direction octant followed by the Morton code of the origin cell
+     */
+    private record SecondaryRay(Ray ray, int pixel, int level, Double3 k, Double3 weight, long key) {
+    }
 
     /**
      * Constructor for SimpleRayTracer
@@ -35,6 +59,16 @@ public class SimpleRayTracer extends RayTracerBase{
         super(scene);
     }
 
+    /**
+     * Sets whether the secondary rays of a packet are traced breadth-first in sorted coherent packets
+     * @param raySorting true to sort the secondary rays of packets
+     * @return the ray tracer itself
+     */
+    public SimpleRayTracer setRaySorting(boolean raySorting) {
+        this.raySorting = raySorting;
+        return this;
+    }
+
     @Override
     public Color traceRay(Ray ray) {
         Intersection intersection = findClosestIntersection(ray);
@@ -42,6 +76,142 @@ public class SimpleRayTracer extends RayTracerBase{
                 ? scene.background
                 : calcColor(intersection, ray);
     }
+
+    @Override
+    public Color[] traceRays(Ray[] rays) {
+        Intersection[] intersections = getGeometries().calculateClosestIntersections(rays);
+        Color[] colors = new Color[rays.length];
+        if (!raySorting) {
+            for (int i = 0; i < rays.length; i++)
+                colors[i] = intersections[i] == null
+                        ? scene.background
+                        : calcColor(intersections[i], rays[i]);
+            return colors;
+        }
+
+        List<SecondaryRay> queue = new ArrayList<>();
+        for (int i = 0; i < rays.length; i++) {
+            Intersection intersection = intersections[i];
+            if (intersection == null)
+                colors[i] = scene.background;
+            else if (!preprocessIntersection(intersection, rays[i].getDir()))
+                colors[i] = Color.BLACK;
+            else {
+                colors[i] = scene.ambientLight.getIntensity()
+                        .scale(intersection.material.kA)
+                        .add(calcColorLocalEffects(intersection, INITIAL_K));
+                queueSecondaryRays(queue, intersection, i, MAX_CALC_COLOR_LEVEL, INITIAL_K, Double3.ONE);
+            }
+        }
+        // every generation of secondary rays is sorted and traced in packets of the same octant
+        while (!queue.isEmpty()) {
+            List<SecondaryRay> generation = sortSecondaryRays(queue);
+            queue = new ArrayList<>();
+            for (int start = 0, end; start < generation.size(); start = end) {
+                long octant = generation.get(start).key() >>> (3 * ORIGIN_BITS);
+                end = start + 1;
+                while (end < generation.size() && generation.get(end).key() >>> (3 * ORIGIN_BITS) == octant) ++end;
+                Ray[] packet = new Ray[end - start];
+                for (int r = start; r < end; r++) packet[r - start] = generation.get(r).ray();
+                Intersection[] hits = getGeometries().calculateClosestIntersections(packet);
+                for (int r = start; r < end; r++)
+                    shadeSecondaryRay(queue, generation.get(r), hits[r - start], colors);
+            }
+        }
+        return colors;
+    }
+
+    /**
+     * Queues the transmitted and the reflected rays of an intersection, the same rays as
+     * {@link #calcGlobalEffects} traces, unless their contribution is too small
+     * @param queue        the queue of secondary rays
+     * @param intersection the intersection
+     * @param pixel        the index of the pixel in the packet
+     * @param level        the recursion level of the intersection
+     * @param k            the product of the coefficients along the path to the intersection
+     * @param weight       the scale of the color of the intersection in the color of the pixel
+     */
+    private void queueSecondaryRays(List<SecondaryRay> queue, Intersection intersection, int pixel,
+                                    int level, Double3 k, Double3 weight) {
+        if (level == 1) return;
+        queueSecondaryRay(queue, calcTransparentRay(intersection), pixel, level, k, weight, intersection.material.kT);
+        queueSecondaryRay(queue, calcReflectedRay(intersection), pixel, level, k, weight, intersection.material.kR);
+    }
+
+    /**
+     * Queues a secondary ray unless its contribution is too small
+     * @param queue  the queue of secondary rays
+     * @param ray    the secondary ray
+     * @param pixel  the index of the pixel in the packet
+     * @param level  the recursion level of the intersection the ray starts at
+     * @param k      the product of the coefficients along the path to the intersection
+     * @param weight the scale of the color of the intersection in the color of the pixel
+     * @param kx     the coefficient of the ray (transparency or reflection)
+     */
+    private void queueSecondaryRay(List<SecondaryRay> queue, Ray ray, int pixel, int level,
+                                   Double3 k, Double3 weight, Double3 kx) {
+        Double3 kkx = k.product(kx);
+        if (kkx.lowerThan(MIN_CALC_COLOR_K)) return;
+        queue.add(new SecondaryRay(ray, pixel, level, kkx, weight.product(kx), 0));
+    }
+
+    /**
+     * Sorts a generation of secondary rays by the octant of their direction and the Morton code
+     * of the cell of their origin in the bounding box of all the origins
+     * @param queue the secondary rays
+     * @return the sorted rays with their keys
+     */
+    private List<SecondaryRay> sortSecondaryRays(List<SecondaryRay> queue) {
+        double[] min = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+        double[] max = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (SecondaryRay secondary : queue)
+            for (int axis = 0; axis < 3; axis++) {
+                double c = secondary.ray().getP0().getCoordinate(axis);
+                min[axis] = Math.min(min[axis], c);
+                max[axis] = Math.max(max[axis], c);
+            }
+        long cells = 1L << ORIGIN_BITS;
+        List<SecondaryRay> sorted = new ArrayList<>(queue.size());
+        for (SecondaryRay secondary : queue) {
+            long key = 0;
+            for (int axis = 0; axis < 3; axis++) {
+                if (secondary.ray().getDir().getCoordinate(axis) < 0) key |= 1L << axis;
+                double extent = max[axis] - min[axis];
+                long cell = extent <= 0 ? 0 : Math.min(cells - 1,
+                        (long) (cells * (secondary.ray().getP0().getCoordinate(axis) - min[axis]) / extent));
+                // interleave the bits of the cell coordinates above the octant bits
+                for (int bit = 0; bit < ORIGIN_BITS; bit++)
+                    key |= ((cell >>> bit) & 1) << (3 + 3 * bit + 2 - axis);
+            }
+            // the octant bits go above the origin bits
+            key = (key & 7) << (3 * ORIGIN_BITS) | key >>> 3;
+            sorted.add(new SecondaryRay(secondary.ray(), secondary.pixel(), secondary.level(),
+                    secondary.k(), secondary.weight(), key));
+        }
+        sorted.sort(Comparator.comparingLong(SecondaryRay::key));
+        return sorted;
+    }
+
+    /**
+     * Adds the color of a traced secondary ray to its pixel and queues its own secondary rays,
+     * as {@link #calcGlobalEffect} does recursively
+     * @param queue        the queue of the next generation of secondary rays
+     * @param secondary    the secondary ray
+     * @param intersection the closest intersection of the ray, null if there is none
+     * @param colors       the colors of the pixels of the packet
+     */
+    private void shadeSecondaryRay(List<SecondaryRay> queue, SecondaryRay secondary, Intersection intersection,
+                                   Color[] colors) {
+        int pixel = secondary.pixel();
+        if (intersection == null) {
+            colors[pixel] = colors[pixel].add(scene.background.scale(secondary.weight()));
+            return;
+        }
+        if (!preprocessIntersection(intersection, secondary.ray().getDir())) return;
+        colors[pixel] = colors[pixel].add(calcColorLocalEffects(intersection, secondary.k()).scale(secondary.weight()));
+        queueSecondaryRays(queue, intersection, pixel, secondary.level() - 1, secondary.k(), secondary.weight());
+    }
+
     /**
      * Calculate the color of the intersection point
      * @param intersection the intersection point
@@ -51,7 +221,7 @@ public class SimpleRayTracer extends RayTracerBase{
     public Color calcColor(Intersection intersection, Ray ray) {
         if(preprocessIntersection(intersection, ray.getDir())) {
             return scene.ambientLight.getIntensity()
-                    .scale(intersection.geometry.getMaterial().kA)
+                    .scale(intersection.material.kA)
                     .add(calcColor(intersection, MAX_CALC_COLOR_LEVEL, INITIAL_K));
         }
         return Color.BLACK;
@@ -69,7 +239,9 @@ public class SimpleRayTracer extends RayTracerBase{
      */
     public boolean preprocessIntersection(Intersection intersection, Vector intersectionRay){
         intersection.v = intersectionRay;
-        intersection.normal = intersection.geometry.getNormal(intersection.point);
+        // transformed instances provide the normal together with the intersection
+        if (intersection.normal == null)
+            intersection.normal = intersection.geometry.getNormal(intersection.point);
         intersection.nv = alignZero(
                 intersection.v
                 .dotProduct(intersection.normal)
@@ -121,7 +293,7 @@ public class SimpleRayTracer extends RayTracerBase{
         if(intersection.ln != 0){
             r = r.subtract(intersection.normal.scale(2 * intersection.ln));
         }
-        return intersection.geometry.getMaterial().kS
+        return intersection.material.kS
                 .scale(
                         Math.pow(
                                 max(
@@ -135,7 +307,7 @@ public class SimpleRayTracer extends RayTracerBase{
      * @return the diffusive color
      */
     Double3 calcDiffusive(Intersection intersection){
-        return intersection.geometry.getMaterial().kD.scale(abs(intersection.ln));
+        return intersection.material.kD.scale(abs(intersection.ln));
     }
 
     /**
@@ -144,26 +316,14 @@ public class SimpleRayTracer extends RayTracerBase{
      * @return true if the intersection point is unshaded, false otherwise
      */
     private boolean unshaded(Intersection intersection){
-        Vector pointToLight = intersection.l.scale(-1); // from point to light source
-        Ray shadowRay = new Ray(intersection.point, pointToLight, intersection.normal);
-
-        var intersections = scene.geometries.calculateIntersections(shadowRay);
-        if (intersections == null) {
-            return true;
-        }
-        for (Intersection i : intersections) {
-            if (i.point.distance(shadowRay.getP0()) < intersection.light.getDistance(shadowRay.getP0())) {
-                return !i.material.kT.lowerThan(MIN_CALC_COLOR_K); // if the intersection is transparent, we can ignore it
-            }
-        }
-        return true;
+        return !transparency(intersection).lowerThan(MIN_CALC_COLOR_K);
     }
     /**
      * Calculate the reflected ray based on the intersection point
      * @param intersection the intersection point
      * @return the reflected ray
      */
-    private Ray calcReflectedRay(Intersection intersection){
+    Ray calcReflectedRay(Intersection intersection){
         Vector v = intersection.v;
         Vector n = intersection.normal;
         Vector r = v.subtract(n.scale(2 * v.dotProduct(n)));
@@ -175,7 +335,7 @@ public class SimpleRayTracer extends RayTracerBase{
      * @param intersection the intersection point
      * @return the refracted ray
      */
-    private Ray calcTransparentRay(Intersection intersection){
+    Ray calcTransparentRay(Intersection intersection){
         return new Ray(intersection.point, intersection.v, intersection.normal);
     }
 
@@ -226,26 +386,37 @@ public class SimpleRayTracer extends RayTracerBase{
      * @return the closest intersection point
      */
     private Intersection findClosestIntersection(Ray ray){
-        List<Intersection> intersections = scene.geometries.calculateIntersections(ray);
-        if (intersections == null || intersections.isEmpty()) {
-            return null;
-        }
-        return ray.findClosestIntersection(intersections);
+        return getGeometries().calculateClosestIntersection(ray);
     }
-    private Double3 transparency(Intersection intersection){
+
+    /**
+     * Returns the geometries the rays are traced against
+     * @return the scene's geometries
+     */
+    protected Intersectable getGeometries() {
+        return scene.geometries;
+    }
+    /**
+     * Calculate the shadow ray from the intersection point towards its light source
+     * @param intersection the intersection point with its light source
+     * @return the shadow ray
+     */
+    Ray calcShadowRay(Intersection intersection){
         Vector pointToLight = intersection.l.scale(-1); // from point to light source
-        Ray shadowRay = new Ray(intersection.point, pointToLight, intersection.normal);
-
-        Double3 ktr = Double3.ONE;
-        var intersections = scene.geometries.calculateIntersections(shadowRay);
-        if (intersections != null) {
-            for (Intersection i : intersections) {
-                if (i.point.distance(shadowRay.getP0()) < intersection.light.getDistance(shadowRay.getP0())) {
-                    ktr = ktr.product(i.material.kT); // if the intersection is transparent, we can ignore it
-                }
-            }
-        }
-        return ktr;
+        return new Ray(intersection.point, pointToLight, intersection.normal);
+    }
+
+    /**
+     * Calculate the transparency between the intersection point and the light source.
+     * The shadow ray stops at the light source and at the first opaque geometry.
+     * @param intersection the intersection point with its light source
+     * @return the transparency product of the geometries between the point and the light source
+     */
+    private Double3 transparency(Intersection intersection){
+        Ray shadowRay = calcShadowRay(intersection);
+        return getGeometries().calculateTransparency(shadowRay,
+                intersection.light.getDistance(shadowRay.getP0()),
+                MIN_CALC_COLOR_K);
     }
 
 }
\ No newline at end of file
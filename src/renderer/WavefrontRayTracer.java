@@ -0,0 +1,274 @@
+package renderer;
+
+import geometries.Intersectable.Intersection;
+import lighting.LightSource;
+import primitives.Color;
+import primitives.Double3;
+import primitives.Ray;
+import scene.Scene;
+
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * WavefrontRayTracer traces packets of rays in waves instead of recursively. A wave holds the state
+ * of all its rays in arrays (the ray, its pixel, level, coefficient and weight) and goes through
+ * the stages one after the other:
+ * <ul>
+ * <li>extend - finds the closest intersections of the rays, in packets of neighbouring rays</li>
+ * <li>shade - the emission and the ambient light of the hits, the shadow rays towards the lights
+ * and the reflected and transmitted rays of the next wave</li>
+ * <li>shadow - the transparency along the shadow rays</li>
+ * <li>accumulate - adds the contributions of the wave to the colors of the pixels</li>
+ * </ul>
+ * The rays themselves are generated by the camera. The colors are those of the {@link SimpleRayTracer}
+ * up to the order of the additions.
+ * @author Jeshurun and Binyamin
+ */
+public class WavefrontRayTracer extends SimpleRayTracer {
+    /*** The maximal amount of primary rays in a wave*/
+    private static final int WAVE_SIZE = 1 << 16;
+    /*** The amount of neighbouring rays traced together in the extend stage*/
+    private static final int PACKET_SIZE = 64;
+
+    /*** Whether the stages run as parallel streams*/
+    private boolean parallel = false;
+
+    /**
+     * The state of the rays of a wave, each field in its own array
+     */
+    private static class Wave {
+        /*** The rays*/
+        final Ray[] rays;
+        /*** The index of the pixel each ray contributes to*/
+        final int[] pixels;
+        /*** The recursion level of each ray*/
+        final int[] levels;
+        /*** The product of the coefficients along the path of each ray*/
+        final Double3[] k;
+        /*** The scale of the color of each ray in the color of its pixel*/
+        final Double3[] weights;
+        /*** The closest intersection of each ray, null if it misses everything*/
+        final Intersection[] hits;
+        /*** The amount of rays in the wave*/
+        int size = 0;
+
+        /**
+         * Constructor of an empty wave
+         * @param capacity the maximal amount of rays
+         */
+        Wave(int capacity) {
+            rays = new Ray[capacity];
+            pixels = new int[capacity];
+            levels = new int[capacity];
+            k = new Double3[capacity];
+            weights = new Double3[capacity];
+            hits = new Intersection[capacity];
+        }
+
+        /**
+         * Adds a ray to the wave
+         * @param ray    the ray
+         * @param pixel  the index of the pixel
+         * @param level  the recursion level
+         * @param k      the product of the coefficients along the path
+         * @param weight the scale of the color of the ray in the color of the pixel
+         */
+        void add(Ray ray, int pixel, int level, Double3 k, Double3 weight) {
+            rays[size] = ray;
+            pixels[size] = pixel;
+            levels[size] = level;
+            this.k[size] = k;
+            weights[size] = weight;
+            ++size;
+        }
+    }
+
+    /**
+     * The shadow rays of a wave, a slot for each light of each ray of the wave
+     */
+    private static class Shadows {
+        /*** The shadow rays, null if the light doesn't reach the hit*/
+        final Ray[] rays;
+        /*** The distance from the origin of each shadow ray to its light*/
+        final double[] distances;
+        /*** The color the light adds to the hit if nothing blocks it*/
+        final Color[] colors;
+        /*** The transparency along each shadow ray*/
+        final Double3[] transparency;
+
+        /**
+         * Constructor of empty slots
+         * @param capacity the amount of slots
+         */
+        Shadows(int capacity) {
+            rays = new Ray[capacity];
+            distances = new double[capacity];
+            colors = new Color[capacity];
+            transparency = new Double3[capacity];
+        }
+    }
+
+    /**
+     * Constructor for WavefrontRayTracer
+     * @param scene the scene to be rendered
+     */
+    public WavefrontRayTracer(Scene scene) {
+        super(scene);
+    }
+
+    /**
+     * Sets whether the stages run as parallel streams, on the fork-join pool of the calling task
+     * or on the common pool if the caller is not a task of a pool
+     * @param parallel true to run the stages in parallel
+     * @return the ray tracer itself
+     */
+    public WavefrontRayTracer setParallel(boolean parallel) {
+        this.parallel = parallel;
+        return this;
+    }
+
+    @Override
+    public Color[] traceRays(Ray[] rays) {
+        Color[] colors = new Color[rays.length];
+        for (int start = 0; start < rays.length; start += WAVE_SIZE) {
+            int end = Math.min(rays.length, start + WAVE_SIZE);
+            Wave wave = new Wave(end - start);
+            for (int i = start; i < end; i++) {
+                wave.add(rays[i], i, MAX_CALC_COLOR_LEVEL, INITIAL_K, Double3.ONE);
+                colors[i] = Color.BLACK;
+            }
+            while (wave.size != 0) {
+                extend(wave);
+                Color[] emitted = new Color[wave.size];
+                Shadows shadows = new Shadows(wave.size * scene.lights.size());
+                Wave next = new Wave(2 * wave.size);
+                shade(wave, emitted, shadows, next);
+                shadow(shadows);
+                accumulate(wave, emitted, shadows, colors);
+                wave = next;
+            }
+        }
+        return colors;
+    }
+
+    /**
+     * Runs a stage on every index, in parallel if requested
+     * @param count the amount of indices
+     * @param stage the stage for a single index
+     */
+    private void forEach(int count, IntConsumer stage) {
+        if (parallel) IntStream.range(0, count).parallel().forEach(stage);
+        else for (int i = 0; i < count; i++) stage.accept(i);
+    }
+
+    /**
+     * The extend stage: finds the closest intersection of every ray of the wave
+     * @param wave the wave
+     */
+    private void extend(Wave wave) {
+        forEach((wave.size + PACKET_SIZE - 1) / PACKET_SIZE, packet -> {
+            int first = packet * PACKET_SIZE;
+            Ray[] rays = new Ray[Math.min(PACKET_SIZE, wave.size - first)];
+            System.arraycopy(wave.rays, first, rays, 0, rays.length);
+            Intersection[] hits = getGeometries().calculateClosestIntersections(rays);
+            System.arraycopy(hits, 0, wave.hits, first, hits.length);
+        });
+    }
+
+    /**
+     * The shade stage: calculates the emitted color of every hit, prepares its shadow rays
+     * and spawns its reflected and transmitted rays. The rays of the next wave are placed in two
+     * slots for each ray and compacted after the stage.
+     * @param wave    the wave
+     * @param emitted the emitted color of each ray, scaled by its weight
+     * @param shadows the shadow rays, a slot for each light of each ray
+     * @param next    the next wave
+     */
+    private void shade(Wave wave, Color[] emitted, Shadows shadows, Wave next) {
+        List<LightSource> lights = scene.lights;
+        Ray[] spawned = new Ray[2 * wave.size];
+        Double3[] spawnedK = new Double3[2 * wave.size];
+        Double3[] spawnedWeights = new Double3[2 * wave.size];
+        forEach(wave.size, i -> {
+            Intersection intersection = wave.hits[i];
+            if (intersection == null) {
+                emitted[i] = scene.background.scale(wave.weights[i]);
+                return;
+            }
+            if (!preprocessIntersection(intersection, wave.rays[i].getDir())) {
+                emitted[i] = Color.BLACK;
+                return;
+            }
+            Color color = intersection.geometry.getEmission();
+            if (wave.levels[i] == MAX_CALC_COLOR_LEVEL) // the ambient light is added to the primary hits only
+                color = color.add(scene.ambientLight.getIntensity().scale(intersection.material.kA));
+            emitted[i] = color.scale(wave.weights[i]);
+
+            for (int l = 0; l < lights.size(); l++) {
+                LightSource lightSource = lights.get(l);
+                if (!setLightSource(intersection, lightSource)) continue;
+                int slot = i * lights.size() + l;
+                shadows.rays[slot] = calcShadowRay(intersection);
+                shadows.distances[slot] = lightSource.getDistance(shadows.rays[slot].getP0());
+                shadows.colors[slot] = lightSource.getIntensity(intersection.point)
+                        .scale(calcDiffusive(intersection).add(calcSpecular(intersection)));
+            }
+
+            if (wave.levels[i] == 1) return;
+            Double3 kT = intersection.material.kT;
+            Double3 kkT = wave.k[i].product(kT);
+            if (!kkT.lowerThan(MIN_CALC_COLOR_K)) {
+                spawned[2 * i] = calcTransparentRay(intersection);
+                spawnedK[2 * i] = kkT;
+                spawnedWeights[2 * i] = wave.weights[i].product(kT);
+            }
+            Double3 kR = intersection.material.kR;
+            Double3 kkR = wave.k[i].product(kR);
+            if (!kkR.lowerThan(MIN_CALC_COLOR_K)) {
+                spawned[2 * i + 1] = calcReflectedRay(intersection);
+                spawnedK[2 * i + 1] = kkR;
+                spawnedWeights[2 * i + 1] = wave.weights[i].product(kR);
+            }
+        });
+        for (int slot = 0; slot < spawned.length; slot++)
+            if (spawned[slot] != null)
+                next.add(spawned[slot], wave.pixels[slot / 2], wave.levels[slot / 2] - 1,
+                        spawnedK[slot], spawnedWeights[slot]);
+    }
+
+    /**
+     * The shadow stage: calculates the transparency along every shadow ray
+     * @param shadows the shadow rays
+     */
+    private void shadow(Shadows shadows) {
+        forEach(shadows.rays.length, slot -> {
+            if (shadows.rays[slot] != null)
+                shadows.transparency[slot] = getGeometries().calculateTransparency(shadows.rays[slot],
+                        shadows.distances[slot], MIN_CALC_COLOR_K);
+        });
+    }
+
+    /**
+     * The accumulate stage: adds the emitted colors and the unblocked lights of the wave
+     * to the colors of the pixels
+     * @param wave    the wave
+     * @param emitted the emitted color of each ray, scaled by its weight
+     * @param shadows the shadow rays with their transparency
+     * @param colors  the colors of the pixels
+     */
+    private void accumulate(Wave wave, Color[] emitted, Shadows shadows, Color[] colors) {
+        int lights = scene.lights.size();
+        for (int i = 0; i < wave.size; i++) {
+            int pixel = wave.pixels[i];
+            Color color = emitted[i];
+            for (int slot = i * lights; slot < (i + 1) * lights; slot++) {
+                Double3 ktr = shadows.transparency[slot];
+                if (ktr != null && !ktr.product(wave.k[i]).lowerThan(MIN_CALC_COLOR_K))
+                    color = color.add(shadows.colors[slot].scale(ktr).scale(wave.weights[i]));
+            }
+            colors[pixel] = colors[pixel].add(color);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.BVHBuilder}
+ * @author Jeshurun and Binyamin
+ */
+class BVHBuilderTest {
+    /** Delta value for accuracy when comparing the numbers of type 'double' in assertEquals */
+    private static final double DELTA = 0.000001;
+
+    /**
+     * Creates a lattice of small spheres and triangles
+     * @return the lattice objects
+     */
+    private List<Intersectable> lattice() {
+        List<Intersectable> objects = new ArrayList<>();
+        for (int i = 0; i < 6; i++)
+            for (int j = 0; j < 6; j++)
+                for (int k = 0; k < 6; k++) {
+                    if ((i + j + k) % 2 == 0)
+                        objects.add(new Sphere(0.4, new Point(i, j, k)));
+                    else
+                        objects.add(new Triangle(
+                                new Point(i - 0.4, j - 0.4, k),
+                                new Point(i + 0.4, j - 0.4, k),
+                                new Point(i, j + 0.4, k)));
+                }
+        return objects;
+    }
+
+    /**
+     * Test method for {@link geometries.BVHBuilder#build(List)}.
+     */
+    @Test
+    void testBuild() {
+        List<Intersectable> objects = lattice();
+        Geometries flat = new Geometries(objects);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The root box surrounds all the objects
+        Intersectable root = new BVHBuilder().build(objects);
+        assertEquals(new Point(-0.4, -0.4, -0.4), root.getBoundingBox().getMin(), "wrong min of the root box");
+        assertEquals(new Point(5.4, 5.4, 5.4), root.getBoundingBox().getMax(), "wrong max of the root box");
+
+        // TC02: The tree finds the same intersections as the flat list
+        Ray[] rays = {
+                new Ray(new Point(-5, 0, 0), new Vector(1, 0, 0)),
+                new Ray(new Point(2, 3, -5), new Vector(0, 0, 1)),
+                new Ray(new Point(-3, -2, -1), new Vector(1, 0.7, 0.45)),
+                new Ray(new Point(10, 10, 10), new Vector(-1, -1, -1)),
+                new Ray(new Point(0, 0, 20), new Vector(1, 1, 1))
+        };
+        for (Ray ray : rays) {
+            var expected = flat.calculateIntersections(ray);
+            var actual = root.calculateIntersections(ray);
+            assertEquals(expected == null ? 0 : expected.size(), actual == null ? 0 : actual.size(),
+                    "wrong amount of intersections for " + ray.getDir());
+        }
+
+        // TC03: Leaves of a single object
+        root = new BVHBuilder().setMaxLeafSize(1).build(objects);
+        for (Ray ray : rays) {
+            var expected = flat.calculateIntersections(ray);
+            var actual = root.calculateIntersections(ray);
+            assertEquals(expected == null ? 0 : expected.size(), actual == null ? 0 : actual.size(),
+                    "wrong amount of intersections with single object leaves");
+        }
+
+        // =============== Boundary Values Tests ==================
+        // TC11: A single object is its own hierarchy
+        Sphere sphere = new Sphere(1, Point.ZERO);
+        assertSame(sphere, new BVHBuilder().build(List.of(sphere)), "single object should not be wrapped");
+
+        // TC12: All the objects in the same place
+        List<Intersectable> same = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            same.add(new Sphere(1, Point.ZERO));
+        root = new BVHBuilder().build(same);
+        assertEquals(20, root.calculateIntersections(new Ray(new Point(-5, 0, 0), Vector.AXIS_X)).size(),
+                "wrong amount of intersections for objects in the same place");
+
+        // TC13: No objects
+        assertNull(new BVHBuilder().build(List.of()), "empty hierarchy should be null");
+    }
+
+    /**
+     * Test method for {@link geometries.BVHBuilder#build(List)} with objects without a finite bounding box.
+     */
+    @Test
+    void testBuildUnbounded() {
+        List<Intersectable> objects = lattice();
+        Plane floor = new Plane(new Point(0, 0, -1), Vector.AXIS_Z);
+        Tube tube = new Tube(0.5, new Ray(new Point(10, 0, 0), Vector.AXIS_Y));
+        objects.add(floor);
+        objects.add(new Geometries(tube, new Geometries()));
+        Geometries flat = new Geometries(objects);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The unbounded objects are beside the hierarchy, which keeps a finite box
+        Intersectable root = new BVHBuilder().build(objects);
+        List<Intersectable> parts = assertInstanceOf(Geometries.class, root, "unbounded objects should be split").geometries;
+        assertEquals(3, parts.size(), "wrong amount of parts");
+        assertTrue(parts.getFirst().getBoundingBox().isFinite(), "hierarchy box should be finite");
+        assertSame(floor, parts.get(1), "plane should be beside the hierarchy");
+        assertSame(tube, parts.get(2), "tube should be taken out of its group");
+
+        // TC02: The split scene finds the same intersections as the flat list
+        Ray[] rays = {
+                new Ray(new Point(-5, 0, 0), new Vector(1, 0, 0)),
+                new Ray(new Point(2, 3, 20), new Vector(0, 0, -1)),
+                new Ray(new Point(3, 3, 20), new Vector(0.1, 0, -1))
+        };
+        for (Ray ray : rays) {
+            var expected = flat.calculateIntersections(ray);
+            var actual = root.calculateIntersections(ray);
+            assertEquals(expected == null ? 0 : expected.size(), actual == null ? 0 : actual.size(),
+                    "wrong amount of intersections with unbounded objects");
+        }
+
+        // TC03: The scene geometries keep the unbounded objects at the top level
+        flat.BVH();
+        assertEquals(3, flat.geometries.size(), "wrong amount of scene parts");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: Only unbounded objects
+        assertSame(floor, new BVHBuilder().build(List.of(floor, new Geometries())), "single plane should be returned");
+        // TC12: Only empty groups
+        assertNull(new BVHBuilder().build(List.of(new Geometries())), "empty groups should have no hierarchy");
+    }
+
+    /**
+     * Test method for {@link geometries.BVHBuilder#setMethod(BVHMethod)}.
+     */
+    @Test
+    void testLinearBuild() {
+        List<Intersectable> objects = lattice();
+        Geometries flat = new Geometries(objects);
+        Ray[] rays = {
+                new Ray(new Point(-5, 0, 0), new Vector(1, 0, 0)),
+                new Ray(new Point(2, 3, -5), new Vector(0, 0, 1)),
+                new Ray(new Point(-3, -2, -1), new Vector(1, 0.7, 0.45)),
+                new Ray(new Point(10, 10, 10), new Vector(-1, -1, -1))
+        };
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The linear BVH finds the same intersections as the flat list
+        Intersectable root = new BVHBuilder().setMethod(BVHMethod.LBVH).build(objects);
+        assertEquals(new Point(-0.4, -0.4, -0.4), root.getBoundingBox().getMin(), "wrong min of the root box");
+        assertEquals(new Point(5.4, 5.4, 5.4), root.getBoundingBox().getMax(), "wrong max of the root box");
+        for (Ray ray : rays)
+            assertEquals(flat.calculateIntersections(ray).size(), root.calculateIntersections(ray).size(),
+                    "wrong amount of intersections in linear BVH");
+
+        // TC02: The linear BVH with SAH refinement of the top levels
+        root = new BVHBuilder().setMethod(BVHMethod.LBVH).setRefineLevels(3).build(objects);
+        for (Ray ray : rays)
+            assertEquals(flat.calculateIntersections(ray).size(), root.calculateIntersections(ray).size(),
+                    "wrong amount of intersections in refined linear BVH");
+
+        // TC03: The parallel linear build emits the same hierarchy as the sequential build
+        FlatBVH sequential = (FlatBVH) new BVHBuilder().setMethod(BVHMethod.LBVH).setMultithreading(0).build(objects);
+        FlatBVH parallel = (FlatBVH) new BVHBuilder().setMethod(BVHMethod.LBVH)
+                .setMultithreading(4).setParallelThreshold(8).build(objects);
+        assertEquals(sequential.getNodeCount(), parallel.getNodeCount(), "wrong amount of nodes in parallel build");
+        for (Ray ray : rays)
+            assertEquals(sequential.calculateIntersections(ray).size(), parallel.calculateIntersections(ray).size(),
+                    "wrong amount of intersections in parallel linear build");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: All the objects have the same Morton code
+        List<Intersectable> same = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            same.add(new Sphere(1, Point.ZERO));
+        root = new BVHBuilder().setMethod(BVHMethod.LBVH).build(same);
+        assertEquals(20, root.calculateIntersections(new Ray(new Point(-5, 0, 0), Vector.AXIS_X)).size(),
+                "wrong amount of intersections for objects with the same code");
+
+        // TC12: Illegal parameters
+        assertThrows(IllegalArgumentException.class, () -> new BVHBuilder().setRefineLevels(-1),
+                "refine levels must not be negative");
+        assertThrows(IllegalArgumentException.class, () -> new BVHBuilder().setMethod(null),
+                "method must not be null");
+    }
+
+    /**
+     * Test method for {@link geometries.BVHBuilder#setMultithreading(int)}.
+     */
+    @Test
+    void testParallelBuild() {
+        List<Intersectable> objects = lattice();
+        Ray[] rays = {
+                new Ray(new Point(-5, 0, 0), new Vector(1, 0, 0)),
+                new Ray(new Point(-3, -2, -1), new Vector(1, 0.7, 0.45)),
+                new Ray(new Point(10, 10, 10), new Vector(-1, -1, -1))
+        };
+        FlatBVH sequential = (FlatBVH) new BVHBuilder().setMultithreading(0).build(objects);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: A parallel build with small tasks builds the same hierarchy as a sequential build
+        FlatBVH parallel = (FlatBVH) new BVHBuilder().setMultithreading(4).setParallelThreshold(8).build(objects);
+        assertEquals(sequential.getNodeCount(), parallel.getNodeCount(), "wrong amount of nodes in parallel build");
+        for (Ray ray : rays)
+            assertEquals(sequential.calculateIntersections(ray).size(), parallel.calculateIntersections(ray).size(),
+                    "wrong amount of intersections in parallel build");
+
+        // TC02: A parallel build on the common pool
+        parallel = (FlatBVH) new BVHBuilder().setMultithreading(-1).setParallelThreshold(8).build(objects);
+        assertEquals(sequential.getNodeCount(), parallel.getNodeCount(), "wrong amount of nodes in common pool build");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: Illegal parameters
+        assertThrows(IllegalArgumentException.class, () -> new BVHBuilder().setMultithreading(-3),
+                "multithreading parameter must be -2 or higher");
+        assertThrows(IllegalArgumentException.class, () -> new BVHBuilder().setParallelThreshold(1),
+                "parallel threshold must be at least 2");
+    }
+
+    /**
+     * Test method for {@link geometries.BVHBuilder#setSplitBudget(double)}.
+     */
+    @Test
+    void testSpatialSplitBuild() {
+        // long thin triangles crossing each other, like the beams and boards of a building, and transparent spheres
+        Random random = new Random(7);
+        List<Intersectable> objects = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            objects.add(new Triangle(new Point(-20, i, 0), new Point(20, i + 0.3, 0), new Point(20, i + 0.6, 0.5)));
+            objects.add(new Triangle(new Point(i, -20, 1), new Point(i + 0.3, 20, 1), new Point(i + 0.6, 20, 1.5)));
+            objects.add(new Polygon(new Point(-20, -20, i), new Point(20, 20, i),
+                    new Point(20, 20, i + 0.2), new Point(-20, -20, i + 0.2)));
+        }
+        for (int i = 0; i < 30; i++)
+            objects.add(new Sphere(0.5, new Point(random.nextDouble() * 20, random.nextDouble() * 20,
+                    random.nextDouble() * 20)).setMaterial(new Material().setKT(0.5)));
+        Geometries all = new Geometries(objects);
+        List<Ray> rays = new ArrayList<>();
+        for (int i = 0; i < 300; i++)
+            rays.add(new Ray(new Point(random.nextDouble() * 20, random.nextDouble() * 20, 30),
+                    new Vector(random.nextDouble() - 0.5, random.nextDouble() - 0.5, -1)));
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The spatial split hierarchy finds every object once and the same closest intersections
+        Intersectable root = new BVHBuilder().setMethod(BVHMethod.SBVH).setSplitBudget(1).build(objects);
+        assertInstanceOf(FlatBVH.class, root, "spatial split hierarchy should be compiled");
+        for (Ray ray : rays) {
+            var expected = all.calculateIntersections(ray);
+            var actual = root.calculateIntersections(ray);
+            assertEquals(expected == null ? 0 : expected.size(), actual == null ? 0 : actual.size(),
+                    "wrong amount of intersections in spatial split BVH");
+            var closest = all.calculateClosestIntersection(ray);
+            var found = root.calculateClosestIntersection(ray);
+            assertEquals(closest == null, found == null, "wrong closest intersection in spatial split BVH");
+            if (closest != null) assertEquals(closest.t, found.t, DELTA, "wrong closest distance in spatial split BVH");
+            assertEquals(all.calculateTransparency(ray, 40, 0.001).d1(),
+                    root.calculateTransparency(ray, 40, 0.001).d1(), DELTA, "wrong transparency in spatial split BVH");
+        }
+
+        // TC02: The spatial splits test less than half the primitives of the object splits per closest hit ray
+        FlatBVH split = (FlatBVH) root;
+        FlatBVH unsplit = (FlatBVH) new BVHBuilder().setMethod(BVHMethod.SBVH).setSplitBudget(0).build(objects);
+        BVHStatistics splitStatistics = split.collectStatistics();
+        BVHStatistics unsplitStatistics = unsplit.collectStatistics();
+        for (Ray ray : rays) {
+            split.calculateClosestIntersection(ray);
+            unsplit.calculateClosestIntersection(ray);
+        }
+        split.stopStatistics();
+        unsplit.stopStatistics();
+        assertTrue(splitStatistics.getAverageTestedPrimitives() < unsplitStatistics.getAverageTestedPrimitives() / 2,
+                "spatial splits should test fewer primitives");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: No budget - the references are never split
+        root = new BVHBuilder().setMethod(BVHMethod.SBVH).setSplitBudget(0).build(objects);
+        for (Ray ray : rays) {
+            var expected = all.calculateIntersections(ray);
+            var actual = root.calculateIntersections(ray);
+            assertEquals(expected == null ? 0 : expected.size(), actual == null ? 0 : actual.size(),
+                    "wrong amount of intersections without a split budget");
+        }
+
+        // TC12: A single object
+        root = new BVHBuilder().setMethod(BVHMethod.SBVH).build(List.of(objects.getFirst()));
+        assertEquals(1, root.calculateIntersections(new Ray(new Point(0, 0.2, 5), new Vector(0, 0, -1))).size(),
+                "wrong amount of intersections with a single object");
+
+        // TC13: Illegal parameters
+        assertThrows(IllegalArgumentException.class, () -> new BVHBuilder().setSplitBudget(-0.5),
+                "split budget must not be negative");
+    }
+
+    /**
+     * Test method for {@link geometries.BVHBuilder#setMaxLeafSize(int)}.
+     */
+    @Test
+    void testSetters() {
+        // =============== Boundary Values Tests ==================
+        // TC11: Illegal parameters
+        assertThrows(IllegalArgumentException.class, () -> new BVHBuilder().setMaxLeafSize(0),
+                "leaf size must be positive");
+        assertThrows(IllegalArgumentException.class, () -> new BVHBuilder().setBinCount(1),
+                "there must be at least 2 bins");
+        assertThrows(IllegalArgumentException.class, () -> new BVHBuilder().setCosts(1, 0),
+                "intersection cost must be positive");
+    }
+}
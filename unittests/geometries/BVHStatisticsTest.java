@@ -0,0 +1,113 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.BVHStatistics}
+ * @author Jeshurun and Binyamin
+ */
+class BVHStatisticsTest {
+    /** Delta value for accuracy when comparing the numbers of type 'double' in assertEquals */
+    private static final double DELTA = 0.000001;
+
+    /** Two unit spheres 4 apart: a root box of area 56 and leaf boxes of area 24 */
+    private final List<Intersectable> spheres = List.of(
+            new Sphere(1, Point.ZERO), new Sphere(1, new Point(4, 0, 0)));
+
+    /**
+     * Test method for {@link geometries.BVHStatistics#of(Intersectable)}.
+     */
+    @Test
+    void testStructure() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The compiled hierarchy of two spheres - a root with two leaves
+        BVHStatistics statistics = BVHStatistics.of(new BVHBuilder().build(spheres));
+        assertEquals(2, statistics.getDepth(), "wrong depth");
+        assertEquals(3, statistics.getNodeCount(), "wrong amount of nodes");
+        assertEquals(2, statistics.getLeafCount(), "wrong amount of leaves");
+        assertEquals(2, statistics.getPrimitiveCount(), "wrong amount of primitives");
+        assertArrayEquals(new int[]{0, 2}, statistics.getLeafSizeHistogram(), "wrong leaf size histogram");
+        assertEquals(0.125 + 2 * 24.0 / 56, statistics.getSAHCost(), DELTA, "wrong SAH cost");
+        assertEquals(0, statistics.getOverlapRatio(), DELTA, "separate spheres should not overlap");
+
+        // TC02: The same tree of BVH nodes and the same collapsed wide hierarchy
+        for (Intersectable root : List.of(new BVHBuilder().setFlatten(false).build(spheres),
+                new BVHBuilder().setWidth(4).build(spheres))) {
+            BVHStatistics other = BVHStatistics.of(root);
+            assertEquals(statistics.getNodeCount(), other.getNodeCount(), "wrong amount of nodes");
+            assertEquals(statistics.getSAHCost(), other.getSAHCost(), DELTA, "wrong SAH cost");
+        }
+
+        // TC03: Overlapping siblings - two spheres of radius 2 overlap in a box of 2x4x4
+        BVHStatistics overlapping = BVHStatistics.of(new BVHBuilder().build(List.of(
+                new Sphere(2, Point.ZERO), new Sphere(2, new Point(2, 0, 0)))));
+        // the root box is 6x4x4 with area 128, the common box has area 64
+        assertEquals(0.5, overlapping.getOverlapRatio(), DELTA, "wrong overlap ratio");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: A single object is a single leaf
+        statistics = BVHStatistics.of(spheres.getFirst());
+        assertEquals(1, statistics.getDepth(), "wrong depth of a single object");
+        assertEquals(1, statistics.getLeafCount(), "wrong amount of leaves of a single object");
+        assertEquals(1, statistics.getSAHCost(), DELTA, "wrong SAH cost of a single object");
+
+        // TC12: A leaf of several objects
+        List<Intersectable> many = new ArrayList<>();
+        for (int i = 0; i < 3; i++) many.add(new Sphere(1, Point.ZERO));
+        statistics = BVHStatistics.of(new BVHBuilder().build(many));
+        assertArrayEquals(new int[]{0, 0, 0, 1}, statistics.getLeafSizeHistogram(), "wrong histogram of a single leaf");
+
+        // TC13: No hierarchy
+        assertThrows(IllegalArgumentException.class, () -> BVHStatistics.of(null), "hierarchy must not be null");
+    }
+
+    /**
+     * Test method for {@link geometries.FlatBVH#collectStatistics()}.
+     */
+    @Test
+    void testTraversal() {
+        Ray ray = new Ray(new Point(-5, 0, 0), Vector.AXIS_X);
+        Ray miss = new Ray(new Point(-5, 5, 0), Vector.AXIS_X);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The closest intersection visits the root and the near leaf, the far leaf is behind the hit
+        FlatBVH flat = (FlatBVH) new BVHBuilder().build(spheres);
+        BVHStatistics statistics = flat.collectStatistics();
+        flat.calculateClosestIntersection(ray);
+        assertEquals(1, statistics.getRayCount(), "wrong amount of rays");
+        assertEquals(2, statistics.getAverageVisitedNodes(), DELTA, "wrong amount of visited nodes");
+        assertEquals(1, statistics.getAverageTestedPrimitives(), DELTA, "wrong amount of tested primitives");
+
+        // TC02: All the intersections visit all the nodes and test both spheres
+        statistics.resetTraversal();
+        flat.calculateIntersections(ray);
+        assertEquals(3, statistics.getAverageVisitedNodes(), DELTA, "wrong amount of visited nodes");
+        assertEquals(2, statistics.getAverageTestedPrimitives(), DELTA, "wrong amount of tested primitives");
+
+        // TC03: The wide hierarchy visits a single node for all the intersections
+        WideBVH wide = (WideBVH) new BVHBuilder().setWidth(4).build(spheres);
+        statistics = wide.collectStatistics();
+        wide.calculateIntersections(ray);
+        assertEquals(1, statistics.getAverageVisitedNodes(), DELTA, "wrong amount of visited wide nodes");
+        assertEquals(2, statistics.getAverageTestedPrimitives(), DELTA, "wrong amount of tested primitives");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: A ray missing the root box is counted without visited nodes
+        statistics = flat.collectStatistics();
+        flat.calculateClosestIntersection(miss);
+        assertEquals(1, statistics.getRayCount(), "missing ray should be counted");
+        assertEquals(0, statistics.getAverageVisitedNodes(), DELTA, "missing ray should visit no nodes");
+
+        // TC12: Nothing is recorded after the collection stops
+        flat.stopStatistics();
+        flat.calculateClosestIntersection(ray);
+        assertEquals(1, statistics.getRayCount(), "stopped statistics should not record rays");
+        assertTrue(statistics.toString().contains("rays: 1"), "report should show the traced rays");
+    }
+}
@@ -2,6 +2,10 @@ package geometries;
 
 import org.junit.jupiter.api.Test;
 import primitives.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class CylinderTest {
@@ -59,4 +63,111 @@ class CylinderTest {
                 c.getNormal(new Point(5, 1, 0)),
                 "ERROR: getNormal() wrong value");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testConstructor() {
+        Ray axis = new Ray(new Point(0, 0, 0), new Vector(1, 0, 0));
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Negative height
+        assertThrows(IllegalArgumentException.class, () -> new Cylinder(1, axis, -1),
+                "ERROR: a negative height should throw");
+        // =============== Boundary Values Tests ==================
+        // TC11: Zero height
+        assertThrows(IllegalArgumentException.class, () -> new Cylinder(1, axis, 0),
+                "ERROR: a zero height should throw");
+    }
+
+    @Test
+    void findIntersections() {
+        Cylinder c = new Cylinder(
+                1,
+                new Ray(new Point(0, 0, 0), new Vector(0, 0, 1)),
+                4);
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Ray crosses the side twice (2 points)
+        assertEquals(
+                List.of(new Point(-1, 0, 2), new Point(1, 0, 2)),
+                c.findIntersections(new Ray(new Point(-2, 0, 2), new Vector(1, 0, 0))),
+                "ERROR: findIntersections() wrong value");
+        // TC02: Ray crosses both bases (2 points)
+        assertEquals(
+                List.of(new Point(0.5, 0, 4), new Point(0.5, 0, 0)),
+                c.findIntersections(new Ray(new Point(0.5, 0, 6), new Vector(0, 0, -1))),
+                "ERROR: findIntersections() wrong value");
+        // TC03: Ray crosses the top base and the side (2 points)
+        List<Intersectable.Intersection> result =
+                c.calculateIntersections(new Ray(new Point(0, 0, 5), new Vector(1, 0, -2)));
+        assertEquals(2, result.size(), "ERROR: findIntersections() wrong number of points");
+        assertEquals(new Point(0.5, 0, 4), result.get(0).point, "ERROR: findIntersections() wrong value");
+        assertEquals(new Point(1, 0, 3), result.get(1).point, "ERROR: findIntersections() wrong value");
+        assertEquals(new Vector(0, 0, 1), result.get(0).normal, "ERROR: wrong normal of the top base");
+        assertEquals(new Vector(1, 0, 0), result.get(1).normal, "ERROR: wrong normal of the side");
+        // TC04: Ray starts inside the cylinder (1 point)
+        assertEquals(
+                List.of(new Point(0, 0, 0)),
+                c.findIntersections(new Ray(new Point(0, 0, 2), new Vector(0, 0, -1))),
+                "ERROR: findIntersections() wrong value");
+        // TC05: Ray crosses the tube beyond the top of the cylinder (0 points)
+        assertNull(
+                c.findIntersections(new Ray(new Point(-2, 0, 5), new Vector(1, 0, 0))),
+                "ERROR: findIntersections() wrong value");
+        // TC06: Ray passes beside the cylinder (0 points)
+        assertNull(
+                c.findIntersections(new Ray(new Point(2, 2, 6), new Vector(0, 0, -1))),
+                "ERROR: findIntersections() wrong value");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: Ray along the side through the circles of the bases, which belong to the bases (2 points)
+        result = c.calculateIntersections(new Ray(new Point(1, 0, 6), new Vector(0, 0, -1)));
+        assertEquals(2, result.size(), "ERROR: findIntersections() wrong number of points");
+        assertEquals(new Vector(0, 0, 1), result.get(0).normal, "ERROR: wrong normal on the circle");
+        // TC12: Ray on the plane of a base (0 points)
+        assertNull(
+                c.findIntersections(new Ray(new Point(-2, 0, 4), new Vector(1, 0, 0))),
+                "ERROR: findIntersections() wrong value");
+        // TC13: Ray tangent to the side (0 points)
+        assertNull(
+                c.findIntersections(new Ray(new Point(-2, 1, 2), new Vector(1, 0, 0))),
+                "ERROR: findIntersections() wrong value");
+        // TC14: The closest intersection within the distance only
+        Ray ray = new Ray(new Point(0.5, 0, 6), new Vector(0, 0, -1));
+        assertEquals(new Point(0.5, 0, 0), c.calculateClosestIntersection(ray, 3, 10).point,
+                "ERROR: calculateClosestIntersection() wrong value");
+        assertNull(c.calculateClosestIntersection(ray, 0, 1),
+                "ERROR: calculateClosestIntersection() wrong value");
+    }
+
+    @Test
+    void getBoundingBox() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The box of a slanted cylinder is finite and tight
+        Cylinder slanted = new Cylinder(1, new Ray(new Point(1, 2, 3), new Vector(1, 1, 0)), 2);
+        AABB box = slanted.getBoundingBox();
+        double side = Math.sqrt(0.5); // the reach of the bases along x and y
+        double reach = 2 * side;      // the reach of the axis along x and y
+        assertTrue(box.isFinite(), "ERROR: the box of a cylinder should be finite");
+        assertEquals(new Point(1 - side, 2 - side, 2), box.getMin(), "ERROR: wrong minimum of the box");
+        assertEquals(new Point(1 + reach + side, 2 + reach + side, 4), box.getMax(), "ERROR: wrong maximum of the box");
+
+        // TC02: Cylinders in a BVH find the same intersections as the flat list
+        List<Intersectable> cylinders = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            cylinders.add(new Cylinder(0.4, new Ray(new Point(i % 5 * 2, i / 5 * 2, 0),
+                    new Vector(0.1 * (i % 3), 0.1 * (i % 4), 1)), 1 + i % 3));
+        Geometries flat = new Geometries(cylinders);
+        Geometries tree = new Geometries(cylinders);
+        tree.BVH();
+        assertTrue(tree.getBoundingBox().isFinite(), "ERROR: the tree of cylinders should have a finite box");
+        for (int i = 0; i < 30; i++) {
+            Ray ray = new Ray(new Point(-3, 0.27 * i, 0.1 * i), new Vector(1, 0.02 * (i % 7), 0.03 * (i % 5)));
+            var expected = flat.calculateClosestIntersection(ray);
+            var actual = tree.calculateClosestIntersection(ray);
+            if (expected == null) {
+                assertNull(actual, "ERROR: the tree should miss too");
+            } else {
+                assertNotNull(actual, "ERROR: the tree should hit too");
+                assertEquals(expected.point, actual.point, "ERROR: wrong closest intersection in the tree");
+            }
+        }
+    }
+}
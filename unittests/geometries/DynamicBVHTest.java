@@ -0,0 +1,178 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.DynamicBVH}
+ * @author Jeshurun and Binyamin
+ */
+class DynamicBVHTest {
+    /** Delta value for accuracy when comparing the numbers of type 'double' in assertEquals */
+    private static final double DELTA = 0.000001;
+
+    /**
+     * Creates random rays through the area of the objects
+     * @return the rays
+     */
+    private List<Ray> rays() {
+        Random random = new Random(11);
+        List<Ray> rays = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            rays.add(new Ray(new Point(-20, random.nextDouble() * 100, random.nextDouble() * 100),
+                    new Vector(1, random.nextDouble() - 0.5, random.nextDouble() - 0.5)));
+        return rays;
+    }
+
+    /**
+     * Asserts that a hierarchy finds the same closest intersections and amounts of intersections as a list
+     * @param expected the list of the objects
+     * @param actual   the hierarchy
+     * @param message  the message on failure
+     */
+    private void assertSameHits(Geometries expected, Intersectable actual, String message) {
+        for (Ray ray : rays()) {
+            var e = expected.calculateClosestIntersection(ray);
+            var a = actual.calculateClosestIntersection(ray);
+            assertEquals(e == null, a == null, message);
+            if (e != null) assertEquals(e.t, a.t, DELTA, message);
+            var all = expected.calculateIntersections(ray);
+            var found = actual.calculateIntersections(ray);
+            assertEquals(all == null ? 0 : all.size(), found == null ? 0 : found.size(), message);
+        }
+    }
+
+    /**
+     * Test method for {@link geometries.DynamicBVH#insert(Intersectable)} and
+     * {@link geometries.DynamicBVH#remove(Intersectable)}.
+     */
+    @Test
+    void testInsertRemove() {
+        Random random = new Random(3);
+        List<Intersectable> objects = new ArrayList<>();
+        for (int i = 0; i < 300; i++)
+            objects.add(new Sphere(1 + random.nextDouble() * 3,
+                    new Point(random.nextDouble() * 100, random.nextDouble() * 100, random.nextDouble() * 100)));
+        DynamicBVH bvh = new DynamicBVH(objects);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The inserted objects are found like in a list
+        assertEquals(300, bvh.size(), "wrong amount of objects");
+        assertSameHits(new Geometries(objects), bvh, "wrong hits after insert");
+
+        // TC02: The removed objects are not found anymore
+        List<Intersectable> kept = new ArrayList<>();
+        for (int i = 0; i < objects.size(); i++) {
+            if (i % 3 == 0) assertTrue(bvh.remove(objects.get(i)), "object should be removed");
+            else kept.add(objects.get(i));
+        }
+        assertSameHits(new Geometries(kept), bvh, "wrong hits after remove");
+
+        // TC03: Objects without a finite box are kept beside the tree
+        Plane plane = new Plane(new Point(0, 0, 50), Vector.AXIS_Z);
+        bvh.insert(plane);
+        kept.add(plane);
+        assertSameHits(new Geometries(kept), bvh, "wrong hits with a plane");
+        assertFalse(bvh.getBoundingBox().isFinite(), "box with a plane should be infinite");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: Removing an object that is not in the hierarchy
+        assertFalse(bvh.remove(objects.getFirst()), "removed object should not be removed again");
+        // TC12: Inserting an object twice
+        assertThrows(IllegalArgumentException.class, () -> bvh.insert(plane), "object should be inserted once");
+        // TC13: Removing all the objects
+        for (Intersectable object : bvh.getObjects()) bvh.remove(object);
+        assertNull(bvh.getBoundingBox(), "empty hierarchy should have no box");
+        assertNull(bvh.calculateClosestIntersection(rays().getFirst()), "empty hierarchy should have no hits");
+    }
+
+    /**
+     * Test method for {@link geometries.DynamicBVH#refit(Intersectable)}.
+     */
+    @Test
+    void testRefit() {
+        Random random = new Random(4);
+        List<Intersectable> objects = new ArrayList<>();
+        List<Instance> moving = new ArrayList<>();
+        Sphere shared = new Sphere(2, Point.ZERO);
+        for (int i = 0; i < 200; i++) {
+            Instance instance = new Instance(shared, Transform.translation(
+                    new Vector(random.nextDouble() * 100, random.nextDouble() * 100, random.nextDouble() * 100 + 1)));
+            objects.add(instance);
+            moving.add(instance);
+        }
+        DynamicBVH bvh = new DynamicBVH(objects);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Moved objects are found in their new places after refitting each of them
+        for (int i = 0; i < 50; i++) {
+            Instance instance = moving.get(i);
+            instance.setTransform(Transform.translation(
+                    new Vector(random.nextDouble() * 100, random.nextDouble() * 100, random.nextDouble() * 100 + 1)));
+            bvh.refit(instance);
+        }
+        assertSameHits(new Geometries(objects), bvh, "wrong hits after refit of moved objects");
+
+        // TC02: All the objects moved and the whole tree is refitted
+        for (Instance instance : moving)
+            instance.setTransform(instance.getTransform().then(Transform.translation(new Vector(0, 3, -2))));
+        bvh.refit();
+        assertSameHits(new Geometries(objects), bvh, "wrong hits after refit of the whole tree");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: Refitting an object that is not in the hierarchy
+        assertThrows(IllegalArgumentException.class, () -> bvh.refit(shared), "unknown object should throw");
+        // TC12: An object whose box became unbounded is moved beside the tree by the whole tree refit
+        Geometries group = new Geometries(new Sphere(1, new Point(50, 50, 30)));
+        bvh.insert(group);
+        objects.add(group);
+        group.add(new Plane(new Point(0, 0, 40), Vector.AXIS_Z));
+        bvh.refit();
+        assertEquals(objects.size(), bvh.size(), "object with an unbounded box should stay in the hierarchy");
+        assertFalse(bvh.getBoundingBox().isFinite(), "box with an unbounded object should be infinite");
+        assertSameHits(new Geometries(objects), bvh, "wrong hits after refit of an unbounded object");
+        // TC13: An object whose box became null is moved beside the tree by the whole tree refit
+        Sphere lonely = new Sphere(1, new Point(30, 60, 20));
+        Geometries emptied = new Geometries(lonely);
+        bvh.insert(emptied);
+        objects.add(emptied);
+        emptied.remove(lonely);
+        bvh.refit();
+        assertEquals(objects.size(), bvh.size(), "object without a box should stay in the hierarchy");
+        assertSameHits(new Geometries(objects), bvh, "wrong hits after refit of an object without a box");
+    }
+
+    /**
+     * Test method for {@link geometries.Geometries#dynamicBVH()}.
+     */
+    @Test
+    void testGeometriesDynamicBVH() {
+        Geometries geometries = new Geometries();
+        List<Intersectable> all = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Sphere sphere = new Sphere(1, new Point(3 * i, 0, 0));
+            geometries.add(sphere);
+            all.add(sphere);
+        }
+        geometries.dynamicBVH();
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Geometries added after the tree was built are inserted into it
+        Sphere added = new Sphere(1, new Point(-10, 0, 0));
+        geometries.add(added);
+        all.add(added);
+        assertEquals(1, geometries.geometries.size(), "added geometry should be in the tree");
+        Ray ray = new Ray(new Point(-20, 0, 0), Vector.AXIS_X);
+        assertEquals(2 * all.size(), geometries.calculateIntersections(ray).size(), "wrong amount of intersections");
+
+        // TC02: Removed geometries are removed from the tree
+        assertTrue(geometries.remove(added), "geometry should be removed");
+        assertEquals(19, geometries.calculateClosestIntersection(ray).t, DELTA, "wrong closest intersection");
+    }
+}
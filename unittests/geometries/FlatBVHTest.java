@@ -0,0 +1,231 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.FlatBVH}
+ * @author Jeshurun and Binyamin
+ */
+class FlatBVHTest {
+
+    /**
+     * Creates a row of spheres along the x axis
+     * @param count the amount of spheres
+     * @return the spheres
+     */
+    private List<Intersectable> spheres(int count) {
+        List<Intersectable> spheres = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            spheres.add(new Sphere(0.5, new Point(2 * i, (i * 7) % 5, (i * 3) % 4)));
+        return spheres;
+    }
+
+    /**
+     * Test method for {@link geometries.FlatBVH#calculateIntersections(Ray)}.
+     */
+    @Test
+    void testCalculateIntersections() {
+        List<Intersectable> spheres = spheres(50);
+        Intersectable tree = new BVHBuilder().setFlatten(false).setMaxLeafSize(2).build(spheres);
+        FlatBVH flat = new FlatBVH(tree);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The flat hierarchy has the same bounding box as the tree
+        assertEquals(tree.getBoundingBox().getMin(), flat.getBoundingBox().getMin(), "wrong min of the box");
+        assertEquals(tree.getBoundingBox().getMax(), flat.getBoundingBox().getMax(), "wrong max of the box");
+
+        // TC02: The flat hierarchy finds the same intersections as the tree
+        for (int i = 0; i < 50; i++) {
+            Ray ray = new Ray(new Point(2 * i, -10, (i * 3) % 4), new Vector(0, 1, 0));
+            assertEquals(tree.calculateIntersections(ray).size(), flat.calculateIntersections(ray).size(),
+                    "wrong amount of intersections");
+        }
+
+        // TC03: A ray that misses all the spheres
+        assertNull(flat.calculateIntersections(new Ray(new Point(0, 20, 0), new Vector(1, 0, 0))),
+                "ray should miss all the spheres");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: A ray that starts inside the hierarchy
+        assertEquals(1, flat.calculateIntersections(new Ray(new Point(0, 0, 0), new Vector(0, 0, 1))).size(),
+                "ray from the center of a sphere should hit it once");
+
+        // TC12: A ray behind the hierarchy
+        assertNull(flat.calculateIntersections(new Ray(new Point(-10, 0, 0), new Vector(-1, 0, 0))),
+                "ray going away from the hierarchy should miss it");
+
+        // TC13: The legacy tree with single child nodes
+        BVHNode legacy = new BVHNode(spheres(7));
+        FlatBVH compiled = new FlatBVH(legacy);
+        Ray ray = new Ray(new Point(-5, 0, 0), new Vector(1, 0, 0));
+        assertEquals(legacy.calculateIntersections(ray).size(), compiled.calculateIntersections(ray).size(),
+                "wrong amount of intersections of the compiled legacy tree");
+    }
+
+    /**
+     * Test method for {@link geometries.FlatBVH#calculateClosestIntersection(Ray, double, double)}.
+     */
+    @Test
+    void testCalculateClosestIntersection() {
+        List<Intersectable> spheres = spheres(50);
+        Geometries all = new Geometries(spheres);
+        Intersectable tree = new BVHBuilder().setFlatten(false).setMaxLeafSize(1).build(spheres);
+        FlatBVH flat = new FlatBVH(tree);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The closest intersection is the same as the closest of all the intersections
+        Ray[] rays = {
+                new Ray(new Point(-10, 0, 0), new Vector(1, 0, 0)),
+                new Ray(new Point(110, 2, 1), new Vector(-1, 0, 0)),
+                new Ray(new Point(-10, -10, -10), new Vector(30, 12, 8)),
+                new Ray(new Point(50, 20, 2), new Vector(-1, -3, 0))
+        };
+        for (Ray ray : rays) {
+            var expected = ray.findClosestIntersection(all.calculateIntersections(ray));
+            var fromFlat = flat.calculateClosestIntersection(ray);
+            var fromTree = tree.calculateClosestIntersection(ray);
+            var fromList = all.calculateClosestIntersection(ray);
+            if (expected.point == null) {
+                assertNull(fromFlat, "flat hierarchy should find no intersection");
+                assertNull(fromTree, "tree should find no intersection");
+                assertNull(fromList, "list should find no intersection");
+            } else {
+                assertEquals(expected.point, fromFlat.point, "wrong closest intersection of the flat hierarchy");
+                assertEquals(expected.point, fromTree.point, "wrong closest intersection of the tree");
+                assertEquals(expected.point, fromList.point, "wrong closest intersection of the list");
+                assertEquals(ray.getP0().distance(expected.point), fromFlat.t, 1e-9, "wrong distance");
+            }
+        }
+
+        // =============== Boundary Values Tests ==================
+        // TC11: The interval ends before the first sphere
+        Ray ray = new Ray(new Point(-10, 0, 0), new Vector(1, 0, 0));
+        assertNull(flat.calculateClosestIntersection(ray, 0, 9), "intersection beyond the interval");
+        // TC12: The interval starts after the first surface
+        assertEquals(new Point(0.5, 0, 0), flat.calculateClosestIntersection(ray, 9.6, 100).point,
+                "wrong intersection after the start of the interval");
+    }
+
+    /**
+     * Test method for {@link geometries.FlatBVH#calculateClosestIntersections(Ray[])}.
+     */
+    @Test
+    void testCalculateClosestIntersections() {
+        List<Intersectable> spheres = spheres(50);
+        FlatBVH flat = (FlatBVH) new BVHBuilder().setMaxLeafSize(2).build(spheres);
+        // a tile of primary rays from a common origin, some of them miss all the spheres
+        Ray[] tile = new Ray[64];
+        for (int i = 0; i < 64; i++)
+            tile[i] = new Ray(new Point(-10, 2, 1), new Vector(10, (i % 8 - 3.5) * 0.6, (i / 8 - 3.5) * 0.6));
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: A coherent packet finds the closest intersection of each ray
+        Intersectable.Intersection[] found = flat.calculateClosestIntersections(tile);
+        for (int i = 0; i < tile.length; i++) {
+            var expected = flat.calculateClosestIntersection(tile[i]);
+            assertEquals(expected == null, found[i] == null, "wrong closest intersection of a packet ray");
+            if (expected != null) assertEquals(expected.t, found[i].t, 1e-9, "wrong distance of a packet ray");
+        }
+
+        // TC02: An incoherent packet, with directions of different signs
+        Ray[] mixed = {
+                new Ray(new Point(-10, 0, 0), new Vector(1, 0, 0)),
+                new Ray(new Point(110, 2, 1), new Vector(-1, 0, 0)),
+                new Ray(new Point(50, 20, 2), new Vector(-1, -3, 0)),
+                new Ray(new Point(0, 20, 0), new Vector(1, 0, 0))
+        };
+        Geometries scene = new Geometries(flat, new Plane(new Point(0, -5, 0), Vector.AXIS_Y));
+        found = scene.calculateClosestIntersections(mixed);
+        assertEquals(new Point(-0.5, 0, 0), found[0].point, "wrong closest intersection of the first ray");
+        assertEquals(new Point(62.5, 2, 1), found[1].point, "wrong closest intersection of the second ray");
+        assertEquals(scene.calculateClosestIntersection(mixed[2]).point, found[2].point,
+                "wrong closest intersection of the third ray");
+        assertNull(found[3], "ray parallel to the plane should miss everything");
+
+        // TC03: Every ray of a packet tests a board split into many leaves of a spatial split hierarchy once
+        Map<Ray, Integer> tests = new IdentityHashMap<>();
+        List<Intersectable> objects = new ArrayList<>();
+        objects.add(new Polygon(new Point(-20, -20, 0), new Point(20, 20, 0), new Point(20, 20, 1), new Point(-20, -20, 1)) {
+            @Override
+            protected boolean calculateClosestHitHelper(Ray ray, double tMin, HitRecord hit) {
+                tests.merge(ray, 1, Integer::sum);
+                return super.calculateClosestHitHelper(ray, tMin, hit);
+            }
+        });
+        // small spheres along the board make the builder split it
+        for (int i = 0; i < 80; i++)
+            objects.add(new Sphere(0.2, new Point(-20 + i * 0.5, -19.2 + i * 0.5, 0.5)));
+        FlatBVH split = (FlatBVH) new BVHBuilder().setMethod(BVHMethod.SBVH).setSplitBudget(1).build(objects);
+        // rays along the board, beside it
+        Ray[] grazing = new Ray[16];
+        for (int i = 0; i < grazing.length; i++)
+            grazing[i] = new Ray(new Point(-25, -25.3 - i * 0.01, 0.1 + i * 0.05), new Vector(1, 1, 0));
+        found = split.calculateClosestIntersections(grazing);
+        for (int i = 0; i < grazing.length; i++) {
+            assertEquals(1, tests.getOrDefault(grazing[i], 0), "a ray of a packet should test the board once");
+            assertNull(found[i], "ray beside the board should miss everything");
+        }
+
+        // TC04: The statistics count the nodes of each ray of a packet, a ray that misses the hierarchy visits none
+        BVHStatistics statistics = flat.collectStatistics();
+        Ray missing = new Ray(new Point(-10, 50, 50), new Vector(-1, 0, 0));
+        flat.calculateClosestIntersections(new Ray[]{mixed[0]});
+        double alone = statistics.getAverageVisitedNodes();
+        statistics.resetTraversal();
+        flat.calculateClosestIntersections(new Ray[]{mixed[0], missing});
+        assertEquals(alone / 2, statistics.getAverageVisitedNodes(), 1e-9, "wrong visited nodes of the rays of a packet");
+        flat.stopStatistics();
+
+        // =============== Boundary Values Tests ==================
+        // TC11: A packet of a single ray
+        assertEquals(new Point(-0.5, 0, 0), flat.calculateClosestIntersections(new Ray[]{mixed[0]})[0].point,
+                "wrong closest intersection of a single ray packet");
+        // TC12: An empty packet
+        assertEquals(0, flat.calculateClosestIntersections(new Ray[0]).length, "empty packet should have no results");
+    }
+
+    /**
+     * Test method for {@link geometries.FlatBVH#calculateTransparency(Ray, double, double)}.
+     */
+    @Test
+    void testCalculateTransparency() {
+        List<Intersectable> spheres = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            spheres.add(new Sphere(0.5, new Point(2 * i, 0, 0)).setMaterial(new Material().setKT(0.5)));
+        spheres.add(new Sphere(0.5, new Point(0, 5, 0)));
+        Geometries all = new Geometries(spheres);
+        Intersectable flat = new BVHBuilder().setMaxLeafSize(1).build(spheres);
+        Ray ray = new Ray(new Point(-1, 0, 0), new Vector(1, 0, 0));
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Two surfaces of a sphere before the distance
+        assertEquals(new Double3(0.25), flat.calculateTransparency(ray, 2, 0.001),
+                "wrong transparency through one sphere");
+        assertEquals(new Double3(0.25), all.calculateTransparency(ray, 2, 0.001),
+                "wrong transparency of the list through one sphere");
+
+        // TC02: The product stops when it is lower than the minimal value
+        assertTrue(flat.calculateTransparency(ray, 100, 0.001).lowerThan(0.001),
+                "transparency through all the spheres should be lower than the minimal value");
+
+        // TC03: An opaque sphere blocks the ray
+        Ray up = new Ray(new Point(0, 1, 0), new Vector(0, 1, 0));
+        assertEquals(Double3.ZERO, flat.calculateTransparency(up, 10, 0.001), "opaque sphere should block the ray");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: The distance ends before the first surface
+        assertEquals(Double3.ONE, flat.calculateTransparency(ray, 0.5, 0.001),
+                "nothing should block the ray before the distance");
+        // TC12: The distance ends inside the sphere
+        assertEquals(new Double3(0.5), flat.calculateTransparency(ray, 1, 0.001),
+                "only the first surface should be counted");
+    }
+}
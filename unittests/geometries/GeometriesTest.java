@@ -3,6 +3,8 @@ package geometries;
 import org.junit.jupiter.api.Test;
 import primitives.*;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class GeometriesTest {
@@ -78,4 +80,60 @@ class GeometriesTest {
                 "ERROR: findIntersections() wrong value");
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void calculateClosestIntersection() {
+        Ray ray = new Ray(new Point(0, 0, 0), new Vector(1, 0, 0));
+        Sphere sphere = new Sphere(1, new Point(6, 0, 0));
+        Cylinder cylinder = new Cylinder(1, new Ray(new Point(3, 0, 0), new Vector(1, 0, 0)), 1);
+        Instance instance = new Instance(new Sphere(1, Point.ZERO),
+                Transform.scaling(2).then(Transform.translation(new Vector(10, 0, 0))));
+        Geometries nested = new Geometries(sphere, new Geometries(instance, cylinder));
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The closest intersection in nested geometries is built by the geometry that was hit,
+        // with the normal of the base of the cylinder
+        Intersectable.Intersection closest = nested.calculateClosestIntersection(ray);
+        assertSame(cylinder, closest.geometry, "ERROR: calculateClosestIntersection() wrong geometry");
+        assertEquals(new Point(3, 0, 0), closest.point, "ERROR: calculateClosestIntersection() wrong value");
+        assertEquals(3, closest.t, 0.000001, "ERROR: calculateClosestIntersection() wrong distance");
+        assertEquals(new Vector(-1, 0, 0), closest.normal, "ERROR: calculateClosestIntersection() wrong normal");
+
+        // TC02: The closest intersection after a minimal distance, in a transformed instance
+        closest = nested.calculateClosestIntersection(ray, 7, Double.POSITIVE_INFINITY);
+        assertEquals(new Point(8, 0, 0), closest.point, "ERROR: calculateClosestIntersection() wrong value");
+        assertEquals(8, closest.t, 0.000001, "ERROR: calculateClosestIntersection() wrong distance");
+
+        // TC03: An object that records its hits with the distance only builds the intersection
+        // from its list of intersections
+        Intersectable numeric = new Intersectable() {
+            @Override
+            protected List<Intersection> calculateIntersectionsHelper(Ray ray) {
+                return sphere.calculateIntersectionsHelper(ray);
+            }
+
+            @Override
+            protected boolean calculateClosestHitHelper(Ray ray, double tMin, HitRecord hit) {
+                boolean found = false;
+                for (Intersection intersection : sphere.calculateIntersectionsHelper(ray))
+                    if (intersection.t > tMin && intersection.t < hit.t) found = hit.record(this, intersection.t, -1);
+                return found;
+            }
+
+            @Override
+            protected AABB getBoundingBox() {
+                return sphere.getBoundingBox();
+            }
+        };
+        closest = numeric.calculateClosestIntersection(ray, 6, Double.POSITIVE_INFINITY);
+        assertSame(sphere, closest.geometry, "ERROR: calculateClosestIntersection() wrong geometry");
+        assertEquals(new Point(7, 0, 0), closest.point, "ERROR: calculateClosestIntersection() wrong value");
+        assertEquals(7, closest.t, 0.000001, "ERROR: calculateClosestIntersection() wrong distance");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: The intersections of the nested geometries are all found in one list
+        assertEquals(6, nested.findIntersections(ray).size(), "ERROR: findIntersections() wrong value");
+        // TC12: No intersection before the maximal distance
+        assertNull(nested.calculateClosestIntersection(ray, 0, 3), "ERROR: calculateClosestIntersection() wrong value");
+    }
+}
@@ -0,0 +1,88 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.Grid}
+ * @author Jeshurun and Binyamin
+ */
+class GridTest {
+
+    /**
+     * Creates a cloud of spheres and triangles with a floor plane
+     * @return the geometries
+     */
+    private Geometries cloud() {
+        Random random = new Random(5);
+        Geometries geometries = new Geometries();
+        for (int i = 0; i < 200; i++) {
+            Point center = new Point(random.nextDouble() * 100, random.nextDouble() * 100, random.nextDouble() * 100);
+            if (i % 2 == 0)
+                geometries.add(new Sphere(1 + random.nextDouble() * 4, center)
+                        .setMaterial(new Material().setKT(i % 4 == 0 ? 0.5 : 0)));
+            else
+                geometries.add(new Triangle(center, center.add(new Vector(5, 0, 1)), center.add(new Vector(0, 5, 2))));
+        }
+        geometries.add(new Plane(new Point(0, 0, -10), new Vector(0, 0, 1)));
+        return geometries;
+    }
+
+    /**
+     * Test method for {@link geometries.Grid#Grid(Geometries)}.
+     */
+    @Test
+    void testGrid() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: About 3 cells per object in a cubic cloud
+        int[] resolution = new Grid(cloud()).getResolution();
+        assertTrue(resolution[0] >= 7 && resolution[0] <= 10, "wrong resolution");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: A flat scene gets a single cell along the flat axis
+        Geometries flat = new Geometries();
+        for (int i = 0; i < 100; i++)
+            flat.add(new Triangle(new Point(i, 0, 0), new Point(i + 1, 0, 0), new Point(i, (i % 10) + 1, 0)));
+        assertEquals(1, new Grid(flat).getResolution()[2], "flat axis should have a single cell");
+
+        // TC12: An empty grid
+        assertNull(new Grid(new Geometries()).calculateClosestIntersection(new Ray(Point.ZERO, Vector.AXIS_X)),
+                "empty grid should have no intersections");
+    }
+
+    /**
+     * Test method for {@link geometries.Grid#calculateClosestIntersection(Ray)}.
+     */
+    @Test
+    void testCalculateIntersections() {
+        Geometries geometries = cloud();
+        Grid grid = new Grid(geometries);
+        Random random = new Random(7);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The grid finds the same intersections as the list of geometries
+        for (int i = 0; i < 200; i++) {
+            Point origin = new Point(random.nextDouble() * 200 - 50, random.nextDouble() * 200 - 50,
+                    random.nextDouble() * 200 - 50);
+            Point target = new Point(random.nextDouble() * 40 + 30, random.nextDouble() * 40 + 30,
+                    random.nextDouble() * 40 + 30);
+            Ray ray = new Ray(origin, target.subtract(origin));
+            var all = geometries.calculateIntersections(ray);
+            var gridAll = grid.calculateIntersections(ray);
+            assertEquals(all == null ? 0 : all.size(), gridAll == null ? 0 : gridAll.size(),
+                    "wrong amount of intersections");
+
+            var closest = geometries.calculateClosestIntersection(ray);
+            var gridClosest = grid.calculateClosestIntersection(ray);
+            if (closest == null) assertNull(gridClosest, "grid should find no intersection");
+            else assertEquals(closest.point, gridClosest.point, "wrong closest intersection");
+
+            assertEquals(geometries.calculateTransparency(ray, 80, 0.001),
+                    grid.calculateTransparency(ray, 80, 0.001), "wrong transparency");
+        }
+    }
+}
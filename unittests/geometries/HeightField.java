@@ -0,0 +1,53 @@
+package geometries;
+
+/**
+ * Test fixture of a height field on the xy plane, a grid of vertices with varying heights
+ * and two triangles in every cell, shared by the tests of the triangle meshes
+ * @author Jeshurun and Binyamin
+ */
+final class HeightField {
+    /** The side of the height field, in vertices */
+    static final int SIDE = 9;
+
+    /**
+     * Private constructor, the class only has static factories
+     */
+    private HeightField() {
+    }
+
+    /**
+     * Creates the vertices of the height field
+     * @return the coordinates, 3 values per vertex
+     */
+    static double[] positions() {
+        double[] positions = new double[3 * SIDE * SIDE];
+        for (int y = 0; y < SIDE; y++)
+            for (int x = 0; x < SIDE; x++) {
+                int v = 3 * (y * SIDE + x);
+                positions[v] = x;
+                positions[v + 1] = y;
+                positions[v + 2] = ((x * 7 + y * 3) % 5) * 0.2;
+            }
+        return positions;
+    }
+
+    /**
+     * Creates the indices of the two triangles of every cell of the height field
+     * @return the indices, 3 values per triangle
+     */
+    static int[] indices() {
+        int[] indices = new int[6 * (SIDE - 1) * (SIDE - 1)];
+        int i = 0;
+        for (int y = 0; y < SIDE - 1; y++)
+            for (int x = 0; x < SIDE - 1; x++) {
+                int v = y * SIDE + x;
+                indices[i++] = v;
+                indices[i++] = v + 1;
+                indices[i++] = v + SIDE;
+                indices[i++] = v + 1;
+                indices[i++] = v + SIDE + 1;
+                indices[i++] = v + SIDE;
+            }
+        return indices;
+    }
+}
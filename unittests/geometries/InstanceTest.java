@@ -0,0 +1,100 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.Instance}
+ * @author Jeshurun and Binyamin
+ */
+class InstanceTest {
+    /** Delta value for accuracy when comparing the numbers of type 'double' in assertEquals */
+    private static final double DELTA = 0.000001;
+
+    /**
+     * Test method for {@link geometries.Instance#calculateClosestIntersection(Ray)}.
+     */
+    @Test
+    void testCalculateClosestIntersection() {
+        Sphere sphere = new Sphere(1, Point.ZERO);
+        Instance instance = new Instance(sphere,
+                Transform.scaling(2).then(Transform.translation(new Vector(10, 0, 0))));
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: A ray hits the scaled and moved sphere, the distance is in the scene
+        Ray ray = new Ray(new Point(0, 0, 0), Vector.AXIS_X);
+        var intersection = instance.calculateClosestIntersection(ray);
+        assertNotNull(intersection, "ray should hit the instance");
+        assertEquals(new Point(8, 0, 0), intersection.point, "wrong intersection point");
+        assertEquals(8, intersection.t, DELTA, "wrong intersection distance");
+        assertEquals(new Vector(-1, 0, 0), intersection.normal, "wrong normal");
+
+        // TC02: A ray misses the instance where the shared object is
+        assertNull(instance.calculateClosestIntersection(new Ray(new Point(0, 0, -5), Vector.AXIS_Z)),
+                "ray through the object space position should miss");
+
+        // TC03: The distance interval is in the scene
+        assertNull(instance.calculateClosestIntersection(ray, 0, 7.5), "hit beyond tMax should be ignored");
+        assertEquals(12, instance.calculateClosestIntersection(ray, 8, 100).t, DELTA, "wrong far hit distance");
+
+        // TC04: The normal of a non uniformly scaled plane is still orthogonal to it
+        Instance tilted = new Instance(new Plane(Point.ZERO, Vector.AXIS_Z),
+                Transform.rotation(Vector.AXIS_X, 45).then(Transform.scaling(1, 1, 3)));
+        var hit = tilted.calculateClosestIntersection(new Ray(new Point(0, 0, 10), new Vector(0, 0, -1)));
+        assertNotNull(hit, "ray should hit the transformed plane");
+        Vector inPlane = tilted.getTransform().transformVector(Vector.AXIS_Y);
+        assertEquals(0, hit.normal.dotProduct(inPlane), DELTA, "normal should be orthogonal to the plane");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: Identity instance gives the same intersections as the object
+        Instance same = new Instance(sphere, Transform.IDENTITY);
+        Ray through = new Ray(new Point(-5, 0.5, 0), Vector.AXIS_X);
+        assertEquals(sphere.findIntersections(through), same.findIntersections(through),
+                "identity instance should not change the intersections");
+    }
+
+    /**
+     * Test method for {@link geometries.Instance#getBoundingBox()}.
+     */
+    @Test
+    void testGetBoundingBox() {
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The box bounds the transformed corners
+        Instance instance = new Instance(new Sphere(1, Point.ZERO),
+                Transform.scaling(1, 2, 3).then(Transform.translation(new Vector(5, 0, 0))));
+        assertEquals(new Point(4, -2, -3), instance.getBoundingBox().getMin(), "wrong min of the box");
+        assertEquals(new Point(6, 2, 3), instance.getBoundingBox().getMax(), "wrong max of the box");
+
+        // TC02: Moving the instance moves its box
+        instance.setTransform(Transform.translation(new Vector(0, 0, 10)));
+        assertEquals(new Point(-1, -1, 9), instance.getBoundingBox().getMin(), "wrong min of the moved box");
+    }
+
+    /**
+     * Test of a top-level hierarchy over instances of one shared bottom-level hierarchy
+     */
+    @Test
+    void testTwoLevels() {
+        List<Intersectable> mesh = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+            mesh.add(new Triangle(new Point(i, 0, 0), new Point(i + 1, 0, 0), new Point(i, 1, 0)));
+        Intersectable shared = new BVHBuilder().build(mesh);
+
+        List<Intersectable> instances = new ArrayList<>();
+        for (int i = 1; i <= 20; i++)
+            instances.add(new Instance(shared, Transform.translation(new Vector(0, 0, -2 * i))));
+        Intersectable top = new BVHBuilder().build(instances);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: A ray through all the copies hits each of them
+        Ray ray = new Ray(new Point(0.2, 0.2, 1), new Vector(0, 0, -1));
+        assertEquals(20, top.calculateIntersections(ray).size(), "wrong amount of intersections");
+        // TC02: The closest copy is the first one
+        assertEquals(3, top.calculateClosestIntersection(ray).t, DELTA, "wrong closest copy");
+    }
+}
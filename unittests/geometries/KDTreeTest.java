@@ -0,0 +1,117 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.KDTree}
+ * @author Jeshurun and Binyamin
+ */
+class KDTreeTest {
+    /** Delta value for accuracy when comparing the numbers of type 'double' in assertEquals */
+    private static final double DELTA = 0.000001;
+
+    /**
+     * Creates a room of axis aligned wall polygons with spheres inside, some of them transparent
+     * @return the objects
+     */
+    private List<Intersectable> room() {
+        Random random = new Random(12);
+        List<Intersectable> objects = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            for (int j = 0; j < 20; j++) {
+                objects.add(new Polygon(new Point(i, j, 0), new Point(i + 1, j, 0),
+                        new Point(i + 1, j + 1, 0), new Point(i, j + 1, 0)));
+                objects.add(new Polygon(new Point(0, i, j), new Point(0, i + 1, j),
+                        new Point(0, i + 1, j + 1), new Point(0, i, j + 1)));
+            }
+        for (int i = 0; i < 100; i++)
+            objects.add(new Sphere(0.2 + random.nextDouble(),
+                    new Point(random.nextDouble() * 20, random.nextDouble() * 20, random.nextDouble() * 20))
+                    .setMaterial(new Material().setKT(i % 3 == 0 ? 0.6 : 0)));
+        return objects;
+    }
+
+    /**
+     * Creates random rays into the room, and rays along the walls
+     * @return the rays
+     */
+    private List<Ray> rays() {
+        Random random = new Random(13);
+        List<Ray> rays = new ArrayList<>();
+        for (int i = 0; i < 300; i++)
+            rays.add(new Ray(new Point(30, random.nextDouble() * 30, random.nextDouble() * 30),
+                    new Vector(-1, random.nextDouble() - 0.5, random.nextDouble() - 0.8)));
+        rays.add(new Ray(new Point(5.5, 5.5, 30), new Vector(0, 0, -1)));
+        rays.add(new Ray(new Point(30, 5, 5), new Vector(-1, 0, 0)));
+        rays.add(new Ray(new Point(30, 5.5, 5.5), new Vector(-1, 0, 0)));
+        return rays;
+    }
+
+    /**
+     * Test method for {@link geometries.KDTree#calculateClosestIntersection(Ray)}.
+     */
+    @Test
+    void testIntersections() {
+        List<Intersectable> objects = room();
+        Geometries all = new Geometries(objects);
+        KDTree tree = new KDTree(objects);
+
+        // ============ Equivalence Partitions Tests ==============
+        for (Ray ray : rays()) {
+            // TC01: The same amount of intersections as the list, objects in several leaves are counted once
+            var expected = all.calculateIntersections(ray);
+            var actual = tree.calculateIntersections(ray);
+            assertEquals(expected == null ? 0 : expected.size(), actual == null ? 0 : actual.size(),
+                    "wrong amount of intersections");
+            // TC02: The same closest intersection as the list
+            var closest = all.calculateClosestIntersection(ray);
+            var found = tree.calculateClosestIntersection(ray);
+            assertEquals(closest == null, found == null, "wrong closest intersection");
+            if (closest != null) assertEquals(closest.t, found.t, DELTA, "wrong closest distance");
+            // TC03: The same transparency as the list
+            assertEquals(all.calculateTransparency(ray, 25, 0.001).d1(),
+                    tree.calculateTransparency(ray, 25, 0.001).d1(), DELTA, "wrong transparency");
+        }
+
+        // TC04: The tree splits the scene
+        assertTrue(tree.getNodeCount() > 100, "tree should have many nodes");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: Unbounded objects are kept beside the tree
+        List<Intersectable> withPlane = new ArrayList<>(objects);
+        withPlane.add(new Plane(new Point(0, 0, 10), Vector.AXIS_Z));
+        Ray down = new Ray(new Point(25, 25, 30), new Vector(0, 0, -1));
+        assertEquals(20, new KDTree(withPlane).calculateClosestIntersection(down).t, DELTA,
+                "plane should be found beside the tree");
+        // TC12: An empty tree
+        assertNull(new KDTree(List.of()).calculateClosestIntersection(down), "empty tree should have no hits");
+        // TC13: Objects in the same place
+        List<Intersectable> same = new ArrayList<>();
+        for (int i = 0; i < 10; i++) same.add(new Sphere(1, Point.ZERO));
+        assertEquals(20, new KDTree(same).calculateIntersections(new Ray(new Point(-5, 0, 0), Vector.AXIS_X)).size(),
+                "wrong amount of intersections for objects in the same place");
+    }
+
+    /**
+     * Test method for {@link geometries.Geometries#KDTree()}.
+     */
+    @Test
+    void testGeometriesKDTree() {
+        Geometries geometries = new Geometries(room());
+        Ray ray = new Ray(new Point(5.5, 5.5, 30), new Vector(0, 0, -1));
+        var expected = geometries.calculateClosestIntersection(ray);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The group is replaced by a kd-tree with the same closest intersection
+        geometries.KDTree();
+        assertInstanceOf(KDTree.class, geometries.geometries.getFirst(), "group should hold a kd-tree");
+        assertEquals(expected.t, geometries.calculateClosestIntersection(ray).t, DELTA, "wrong closest distance");
+    }
+}
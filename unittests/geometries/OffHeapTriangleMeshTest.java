@@ -0,0 +1,254 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.List;
+
+import static geometries.HeightField.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.OffHeapTriangleMesh}
+ * @author Jeshurun and Binyamin
+ */
+class OffHeapTriangleMeshTest {
+    /** Delta value for accuracy when comparing the numbers of type 'double' in assertEquals */
+    private static final double DELTA = 0.000001;
+
+    /** The materials of the faces of the height field */
+    private static final Material[] MATERIALS = {new Material().setKD(0.5), new Material().setKT(0.5)};
+
+    /**
+     * Creates the material indices of the faces of the height field, a transparent material on every third face
+     * @return the material indices, 1 per triangle
+     */
+    private int[] faceMaterials() {
+        int[] faceMaterials = new int[2 * (SIDE - 1) * (SIDE - 1)];
+        for (int f = 0; f < faceMaterials.length; f++) faceMaterials[f] = f % 3 == 0 ? 1 : 0;
+        return faceMaterials;
+    }
+
+    /**
+     * Creates the height field as a mesh on the heap
+     * @param singlePrecision true for a mesh in single precision
+     * @return the mesh
+     */
+    private TriangleMesh heightField(boolean singlePrecision) {
+        double[] positions = positions();
+        if (!singlePrecision) return new TriangleMesh(positions, indices(), MATERIALS, faceMaterials());
+        float[] floatPositions = new float[positions.length];
+        for (int v = 0; v < positions.length; v++) floatPositions[v] = (float) positions[v];
+        return new TriangleMesh(floatPositions, indices(), MATERIALS, faceMaterials());
+    }
+
+    /**
+     * Writes the coordinates of the vertices of the height field into memory of an arena
+     * @param arena           the arena
+     * @param singlePrecision true to write floats, false to write doubles
+     * @return the memory segment of the coordinates
+     */
+    private MemorySegment positionSegment(Arena arena, boolean singlePrecision) {
+        double[] positions = positions();
+        if (!singlePrecision) return doubles(arena, positions);
+        MemorySegment segment = arena.allocate(4L * positions.length, 4);
+        for (int v = 0; v < positions.length; v++) segment.setAtIndex(ValueLayout.JAVA_FLOAT, v, (float) positions[v]);
+        return segment;
+    }
+
+    /**
+     * Writes doubles into memory of an arena
+     * @param arena  the arena
+     * @param values the values
+     * @return the memory segment of the values
+     */
+    private MemorySegment doubles(Arena arena, double[] values) {
+        MemorySegment segment = arena.allocate(8L * values.length, 8);
+        for (int i = 0; i < values.length; i++) segment.setAtIndex(ValueLayout.JAVA_DOUBLE, i, values[i]);
+        return segment;
+    }
+
+    /**
+     * Writes ints into memory of an arena
+     * @param arena  the arena
+     * @param values the values
+     * @return the memory segment of the values
+     */
+    private MemorySegment ints(Arena arena, int... values) {
+        MemorySegment segment = arena.allocate(4L * values.length, 4);
+        MemorySegment.copy(values, 0, segment, ValueLayout.JAVA_INT, 0, values.length);
+        return segment;
+    }
+
+    /**
+     * Test method for {@link geometries.OffHeapTriangleMesh#OffHeapTriangleMesh(TriangleMesh, Arena)}.
+     */
+    @Test
+    void testConstructor() {
+        TriangleMesh mesh = heightField(false);
+        mesh.setMaterial(new Material().setKS(0.3));
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The copy has the sizes, the box and the material of the mesh
+        OffHeapTriangleMesh copy = new OffHeapTriangleMesh(mesh);
+        assertEquals(mesh.getTriangleCount(), copy.getTriangleCount(), "wrong amount of triangles");
+        assertEquals(mesh.getVertexCount(), copy.getVertexCount(), "wrong amount of vertices");
+        assertEquals(mesh.getBoundingBox().getMin(), copy.getBoundingBox().getMin(), "wrong minimum of the box");
+        assertEquals(mesh.getBoundingBox().getMax(), copy.getBoundingBox().getMax(), "wrong maximum of the box");
+        assertSame(mesh.getMaterial(), copy.getMaterial(), "wrong material of the mesh");
+        // TC02: The copy keeps the precision of the mesh
+        assertFalse(copy.isSinglePrecision(), "copy of a double precision mesh should be in double precision");
+        assertTrue(new OffHeapTriangleMesh(heightField(true)).isSinglePrecision(),
+                "copy of a single precision mesh should be in single precision");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: An empty mesh has no box and no intersections
+        OffHeapTriangleMesh empty = new OffHeapTriangleMesh(new TriangleMesh(new double[0], new int[0]));
+        assertNull(empty.getBoundingBox(), "empty mesh should have no box");
+        assertNull(empty.calculateIntersections(new Ray(Point.ZERO, Vector.AXIS_Z)), "empty mesh should have no intersections");
+        assertNull(empty.calculateClosestIntersection(new Ray(Point.ZERO, Vector.AXIS_Z)), "empty mesh should have no intersection");
+        // TC12: The memory of a closed arena can no longer be intersected
+        OffHeapTriangleMesh closed;
+        try (Arena arena = Arena.ofConfined()) {
+            closed = new OffHeapTriangleMesh(mesh, arena);
+            assertNotNull(closed.calculateClosestIntersection(new Ray(new Point(2, 3, 5), new Vector(0, 0, -1))),
+                    "mesh of an open arena should be intersected");
+        }
+        assertThrows(IllegalStateException.class,
+                () -> closed.calculateClosestIntersection(new Ray(new Point(2, 3, 5), new Vector(0, 0, -1))),
+                "mesh of a closed arena should not be intersected");
+    }
+
+    /**
+     * Test method for {@link geometries.OffHeapTriangleMesh#calculateClosestIntersection(Ray)}.
+     */
+    @Test
+    void testCalculateClosestIntersection() {
+        for (boolean singlePrecision : new boolean[]{false, true}) {
+            TriangleMesh mesh = heightField(singlePrecision);
+            try (Arena arena = Arena.ofShared()) {
+                OffHeapTriangleMesh copy = new OffHeapTriangleMesh(mesh, arena);
+
+                // ============ Equivalence Partitions Tests ==============
+                // TC01: The copy finds the same closest intersections, normals and materials as the mesh
+                for (int i = 0; i < 40; i++) {
+                    Ray ray = new Ray(new Point(0.37 + i * 0.191, 0.53 + i * 0.173, 5),
+                            new Vector(0.05 * (i % 3), -0.04 * (i % 5), -1));
+                    var expected = mesh.calculateClosestIntersection(ray);
+                    var found = copy.calculateClosestIntersection(ray);
+                    if (expected == null) {
+                        assertNull(found, "copy should find no intersection");
+                        continue;
+                    }
+                    assertNotNull(found, "copy should find an intersection");
+                    assertEquals(expected.t, found.t, DELTA, "wrong distance of the closest intersection");
+                    assertSame(expected.material, found.material, "wrong material of the face");
+                    assertEquals(expected.normal, found.normal, "wrong normal of the face");
+                    assertEquals(found.normal, copy.getNormal(found.point), "wrong normal of a point on the mesh");
+                }
+
+                // TC02: A ray along the mesh crosses the same faces
+                Ray along = new Ray(new Point(-1, 3.3, 0.4), new Vector(1, 0.01, 0));
+                List<Intersectable.Intersection> expectedList = mesh.calculateIntersections(along);
+                List<Intersectable.Intersection> foundList = copy.calculateIntersections(along);
+                assertEquals(expectedList == null ? 0 : expectedList.size(), foundList == null ? 0 : foundList.size(),
+                        "wrong amount of intersections along the mesh");
+
+                // TC03: The transparency through the faces of each material
+                Ray through = new Ray(new Point(0.3, 0.2, 5), new Vector(0, 0, -1));
+                assertEquals(mesh.calculateTransparency(through, 10, 0.001), copy.calculateTransparency(through, 10, 0.001),
+                        "wrong transparency through the mesh");
+
+                // TC04: The copy inside a hierarchy finds the same intersection as on its own
+                Geometries scene = new Geometries(copy, new Sphere(0.5, new Point(20, 20, 20)));
+                scene.BVH();
+                Ray ray = new Ray(new Point(4.1, 4.2, 5), new Vector(0, 0, -1));
+                assertEquals(copy.calculateClosestIntersection(ray).point, scene.calculateClosestIntersection(ray).point,
+                        "wrong intersection of the copy in a hierarchy");
+
+                // =============== Boundary Values Tests ==================
+                // TC11: A ray through a vertex and a ray just outside the border of the mesh
+                assertNotNull(copy.calculateClosestIntersection(new Ray(new Point(2, 3, 5), new Vector(0, 0, -1))),
+                        "ray through a vertex should hit the mesh");
+                assertNull(copy.calculateClosestIntersection(new Ray(new Point(0.5, -0.001, 5), new Vector(0, 0, -1))),
+                        "ray outside the edge should miss the mesh");
+            }
+        }
+    }
+
+    /**
+     * Test method for
+     * {@link geometries.OffHeapTriangleMesh#OffHeapTriangleMesh(MemorySegment, boolean, MemorySegment, Material[], MemorySegment, Arena)}.
+     */
+    @Test
+    void testSegmentConstructor() {
+        try (Arena arena = Arena.ofConfined()) {
+            for (boolean singlePrecision : new boolean[]{false, true}) {
+                TriangleMesh mesh = heightField(singlePrecision);
+                MemorySegment indices = ints(arena, indices());
+                OffHeapTriangleMesh direct = new OffHeapTriangleMesh(positionSegment(arena, singlePrecision),
+                        singlePrecision, indices, MATERIALS, ints(arena, faceMaterials()), arena);
+
+                // ============ Equivalence Partitions Tests ==============
+                // TC01: The mesh built on the segments has the sizes, the precision and the box of the heap mesh
+                assertEquals(mesh.getTriangleCount(), direct.getTriangleCount(), "wrong amount of triangles");
+                assertEquals(mesh.getVertexCount(), direct.getVertexCount(), "wrong amount of vertices");
+                assertEquals(singlePrecision, direct.isSinglePrecision(), "wrong precision");
+                assertEquals(mesh.getBoundingBox().getMin(), direct.getBoundingBox().getMin(), "wrong minimum of the box");
+                assertEquals(mesh.getBoundingBox().getMax(), direct.getBoundingBox().getMax(), "wrong maximum of the box");
+                // TC02: The faces are reordered in place into the leaf order of the heap mesh
+                for (int triangle = 0; triangle < mesh.getTriangleCount(); triangle++)
+                    for (int corner = 0; corner < 3; corner++)
+                        assertEquals(mesh.index(triangle, corner),
+                                indices.getAtIndex(ValueLayout.JAVA_INT, 3L * triangle + corner),
+                                "wrong order of the faces");
+                // TC03: The same closest intersections, normals and materials as the heap mesh
+                for (int i = 0; i < 40; i++) {
+                    Ray ray = new Ray(new Point(0.37 + i * 0.191, 0.53 + i * 0.173, 5),
+                            new Vector(0.05 * (i % 3), -0.04 * (i % 5), -1));
+                    var expected = mesh.calculateClosestIntersection(ray);
+                    var found = direct.calculateClosestIntersection(ray);
+                    if (expected == null) {
+                        assertNull(found, "mesh on segments should find no intersection");
+                        continue;
+                    }
+                    assertEquals(expected.t, found.t, DELTA, "wrong distance of the closest intersection");
+                    assertSame(expected.material, found.material, "wrong material of the face");
+                    assertEquals(expected.normal, found.normal, "wrong normal of the face");
+                }
+            }
+
+            // =============== Boundary Values Tests ==================
+            // TC11: A mesh without face materials has the material of the mesh
+            OffHeapTriangleMesh plain = new OffHeapTriangleMesh(positionSegment(arena, false), false,
+                    ints(arena, indices()), arena);
+            Material material = new Material().setKS(0.2);
+            plain.setMaterial(material);
+            assertSame(material, plain.calculateClosestIntersection(new Ray(new Point(2.5, 3.5, 5), new Vector(0, 0, -1))).material,
+                    "wrong material of a mesh without face materials");
+            // TC12: Segments that are not of whole vertices or triangles
+            assertThrows(IllegalArgumentException.class,
+                    () -> new OffHeapTriangleMesh(doubles(arena, new double[]{0, 0}), false,
+                            ints(arena, indices()), arena),
+                    "positions of a partial vertex should throw");
+            assertThrows(IllegalArgumentException.class,
+                    () -> new OffHeapTriangleMesh(positionSegment(arena, false), false,
+                            ints(arena, 0, 1), arena),
+                    "indices of a partial triangle should throw");
+            // TC13: A vertex index out of range
+            assertThrows(IllegalArgumentException.class,
+                    () -> new OffHeapTriangleMesh(positionSegment(arena, false), false,
+                            ints(arena, 0, 1, SIDE * SIDE), arena),
+                    "a vertex index out of range should throw");
+            // TC14: Face materials without materials
+            assertThrows(IllegalArgumentException.class,
+                    () -> new OffHeapTriangleMesh(positionSegment(arena, false), false,
+                            ints(arena, indices()), null,
+                            ints(arena, faceMaterials()), arena),
+                    "face materials without materials should throw");
+        }
+    }
+}
@@ -86,4 +86,57 @@ class PolygonTests {
          assertEquals(0d, result.dotProduct(pts[i].subtract(pts[i == 0 ? 3 : i - 1])), DELTA,
                       "Polygon's normal is not orthogonal to one of the edges");
    }
+
+   /** Test method for {@link geometries.Polygon#findIntersections(primitives.Ray)}. */
+   @Test
+   void testFindIntersections() {
+      // a counterclockwise square on the xy plane and a clockwise pentagon around the z axis
+      Polygon square = new Polygon(new Point(0, 0, 0), new Point(2, 0, 0), new Point(2, 2, 0), new Point(0, 2, 0));
+      Polygon pentagon = new Polygon(new Point(1, 0, 1), new Point(0.3, -1, 1), new Point(-0.8, -0.6, 1),
+                                     new Point(-0.8, 0.6, 1), new Point(0.3, 1, 1));
+      Point p001 = new Point(0.5, 0.5, 1);
+
+      // ============ Equivalence Partitions Tests ==============
+      // TC01: Ray passes through the polygon (1 point)
+      assertEquals(List.of(new Point(1, 1.5, 0)), square.findIntersections(new Ray(p001, new Vector(0.5, 1, -1))),
+                   "Wrong intersection with the polygon");
+      // TC02: Ray passes outside the polygon against an edge (0 points)
+      assertNull(square.findIntersections(new Ray(p001, new Vector(0.5, -1, -1))),
+                 "Ray outside against an edge should miss the polygon");
+      // TC03: Ray passes outside the polygon against a vertex (0 points)
+      assertNull(square.findIntersections(new Ray(p001, new Vector(2, 2, -1))),
+                 "Ray outside against a vertex should miss the polygon");
+      // TC04: Ray through a polygon with the opposite order of the vertices
+      assertEquals(List.of(new Point(0, 0, 1)), pentagon.findIntersections(new Ray(Point.ZERO, Vector.AXIS_Z)),
+                   "Wrong intersection with the pentagon");
+      // TC05: Ray starts after the polygon (0 points)
+      assertNull(square.findIntersections(new Ray(new Point(1, 1, -1), new Vector(0, 0, -1))),
+                 "Ray going away from the polygon should miss it");
+      // TC06: Ray through a polygon of 3 vertices which is not a Triangle (1 point), and outside it (0 points)
+      Polygon triangular = new Polygon(new Point(0, 0, 0), new Point(2, 0, 0), new Point(0, 2, 0));
+      assertEquals(List.of(new Point(0.5, 0.5, 0)), triangular.findIntersections(new Ray(p001, new Vector(0, 0, -1))),
+                   "Wrong intersection with the polygon of 3 vertices");
+      assertNull(triangular.findIntersections(new Ray(p001, new Vector(1.5, 1.5, -1))),
+                 "Ray outside the polygon of 3 vertices should miss it");
+      assertEquals(1, triangular.calculateClosestIntersection(new Ray(p001, new Vector(0, 0, -1))).t, DELTA,
+                   "Wrong distance of the intersection with the polygon of 3 vertices");
+
+      // =============== Boundary Values Tests ==================
+      // TC11: Ray through an edge (0 points)
+      assertNull(square.findIntersections(new Ray(p001, new Vector(0.5, -0.5, -1))),
+                 "Ray through an edge should miss the polygon");
+      // TC12: Ray through a vertex (0 points)
+      assertNull(square.findIntersections(new Ray(p001, new Vector(1.5, 1.5, -1))),
+                 "Ray through a vertex should miss the polygon");
+      // TC13: Ray through the continuation of an edge (0 points)
+      assertNull(square.findIntersections(new Ray(p001, new Vector(2.5, -0.5, -1))),
+                 "Ray through the continuation of an edge should miss the polygon");
+      // TC14: Ray parallel to the polygon (0 points)
+      assertNull(square.findIntersections(new Ray(p001, Vector.AXIS_X)),
+                 "Ray parallel to the polygon should miss it");
+      // TC15: The intersection is beyond the maximal distance
+      Ray ray = new Ray(p001, new Vector(0, 0, -1));
+      assertNull(square.calculateClosestIntersection(ray, 0, 1), "Intersection beyond the interval");
+      assertEquals(1, square.calculateClosestIntersection(ray, 0, 2).t, DELTA, "Wrong distance of the intersection");
+   }
 }
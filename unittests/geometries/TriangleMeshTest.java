@@ -0,0 +1,192 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static geometries.HeightField.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.TriangleMesh}
+ * @author Jeshurun and Binyamin
+ */
+class TriangleMeshTest {
+    /** Delta value for accuracy when comparing the numbers of type 'double' in assertEquals */
+    private static final double DELTA = 0.000001;
+
+    /**
+     * Test method for {@link geometries.TriangleMesh#TriangleMesh(double[], int[], Material[], int[])}.
+     */
+    @Test
+    void testConstructor() {
+        double[] positions = {0, 0, 0, 1, 0, 0, 0, 1, 0};
+        Material[] materials = {new Material()};
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: A correct mesh
+        TriangleMesh mesh = new TriangleMesh(positions(), indices());
+        assertEquals(2 * (SIDE - 1) * (SIDE - 1), mesh.getTriangleCount(), "wrong amount of triangles");
+        assertEquals(SIDE * SIDE, mesh.getVertexCount(), "wrong amount of vertices");
+
+        // TC02: Index out of range
+        assertThrows(IllegalArgumentException.class, () -> new TriangleMesh(positions, new int[]{0, 1, 3}),
+                "a vertex index out of range should throw");
+
+        // TC03: Material index out of range
+        assertThrows(IllegalArgumentException.class,
+                () -> new TriangleMesh(positions, new int[]{0, 1, 2}, materials, new int[]{1}),
+                "a material index out of range should throw");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: Partial triangle
+        assertThrows(IllegalArgumentException.class, () -> new TriangleMesh(positions, new int[]{0, 1}),
+                "indices of a partial triangle should throw");
+        // TC12: Partial vertex
+        assertThrows(IllegalArgumentException.class, () -> new TriangleMesh(new double[]{0, 0}, new int[0]),
+                "coordinates of a partial vertex should throw");
+        // TC13: Materials without face materials
+        assertThrows(IllegalArgumentException.class, () -> new TriangleMesh(positions, new int[]{0, 1, 2}, materials, null),
+                "materials without face material indices should throw");
+        // TC14: An empty mesh has no box and no intersections
+        TriangleMesh empty = new TriangleMesh(new double[0], new int[0]);
+        assertNull(empty.getBoundingBox(), "empty mesh should have no box");
+        assertNull(empty.calculateIntersections(new Ray(Point.ZERO, Vector.AXIS_Z)), "empty mesh should have no intersections");
+    }
+
+    /**
+     * Test method for {@link geometries.TriangleMesh#calculateClosestIntersection(Ray)}.
+     */
+    @Test
+    void testCalculateClosestIntersection() {
+        double[] positions = positions();
+        int[] indices = indices();
+        int count = indices.length / 3;
+        // every third face gets a transparent material
+        Material opaque = new Material().setKD(0.5);
+        Material transparent = new Material().setKT(0.5);
+        int[] faceMaterials = new int[count];
+        List<Intersectable> triangles = new ArrayList<>();
+        for (int f = 0; f < count; f++) {
+            faceMaterials[f] = f % 3 == 0 ? 1 : 0;
+            Point[] corners = new Point[3];
+            for (int c = 0; c < 3; c++) {
+                int v = 3 * indices[3 * f + c];
+                corners[c] = new Point(positions[v], positions[v + 1], positions[v + 2]);
+            }
+            triangles.add(new Triangle(corners[0], corners[1], corners[2]).setMaterial(faceMaterials[f] == 1 ? transparent : opaque));
+        }
+        TriangleMesh mesh = new TriangleMesh(positions, indices, new Material[]{opaque, transparent}, faceMaterials);
+        Geometries all = new Geometries(triangles);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The mesh finds the same closest intersections, normals and materials as the triangles
+        for (int i = 0; i < 40; i++) {
+            Ray ray = new Ray(new Point(0.37 + i * 0.191, 0.53 + i * 0.173, 5), new Vector(0.05 * (i % 3), -0.04 * (i % 5), -1));
+            var expected = all.calculateClosestIntersection(ray);
+            var found = mesh.calculateClosestIntersection(ray);
+            if (expected == null) {
+                assertNull(found, "mesh should find no intersection");
+                continue;
+            }
+            assertNotNull(found, "mesh should find an intersection");
+            assertEquals(expected.t, found.t, DELTA, "wrong distance of the closest intersection");
+            assertEquals(expected.point, found.point, "wrong closest intersection");
+            assertSame(expected.material, found.material, "wrong material of the face");
+            assertEquals(expected.geometry.getNormal(expected.point), found.normal, "wrong normal of the face");
+            assertEquals(found.normal, mesh.getNormal(found.point), "wrong normal of a point on the mesh");
+        }
+
+        // TC02: A ray along the mesh crosses many faces, all of them are found
+        Ray along = new Ray(new Point(-1, 3.3, 0.4), new Vector(1, 0.01, 0));
+        var expectedList = all.calculateIntersections(along);
+        var foundList = mesh.calculateIntersections(along);
+        assertEquals(expectedList == null ? 0 : expectedList.size(), foundList == null ? 0 : foundList.size(),
+                "wrong amount of intersections along the mesh");
+
+        // TC03: The transparency through the faces of each material
+        Ray through = new Ray(new Point(0.3, 0.2, 5), new Vector(0, 0, -1));
+        assertEquals(all.calculateTransparency(through, 10, 0.001), mesh.calculateTransparency(through, 10, 0.001),
+                "wrong transparency through the mesh");
+
+        // TC04: A ray that misses the mesh
+        assertNull(mesh.calculateClosestIntersection(new Ray(new Point(-1, -1, 5), new Vector(0, 0, -1))),
+                "ray outside the mesh should miss it");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: A ray through a vertex of the mesh, the vertices belong to the triangles
+        assertEquals(new Point(2, 3, 0.6), mesh.calculateClosestIntersection(new Ray(new Point(2, 3, 5), new Vector(0, 0, -1))).point,
+                "ray through a vertex should hit the mesh at the vertex");
+        // TC12: A ray through an edge of the border of the mesh, and a ray just outside it
+        assertEquals(new Point(0.5, 0, 0.2), mesh.calculateClosestIntersection(new Ray(new Point(0.5, 0, 5), new Vector(0, 0, -1))).point,
+                "ray through an edge should hit the mesh on the edge");
+        assertNull(mesh.calculateClosestIntersection(new Ray(new Point(0.5, -0.001, 5), new Vector(0, 0, -1))),
+                "ray outside the edge should miss the mesh");
+        // TC13: The mesh material is used without face materials
+        TriangleMesh plain = (TriangleMesh) new TriangleMesh(positions, indices).setMaterial(transparent);
+        assertSame(transparent, plain.calculateClosestIntersection(through).material, "wrong material of the mesh");
+    }
+
+    /**
+     * Test method for {@link geometries.TriangleMesh#TriangleMesh(float[], int[], Material[], int[])}.
+     */
+    @Test
+    void testSinglePrecision() {
+        double[] positions = positions();
+        int[] indices = indices();
+        // the coordinates rounded to floats, and the same coordinates back in double precision
+        float[] floatPositions = new float[positions.length];
+        double[] roundedPositions = new double[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            floatPositions[i] = (float) positions[i];
+            roundedPositions[i] = floatPositions[i];
+        }
+        TriangleMesh single = new TriangleMesh(floatPositions, indices);
+        TriangleMesh reference = new TriangleMesh(roundedPositions, indices);
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The mesh in single precision is the mesh of the rounded vertices
+        assertTrue(single.isSinglePrecision(), "mesh of floats should be in single precision");
+        assertFalse(reference.isSinglePrecision(), "mesh of doubles should be in double precision");
+        assertEquals(reference.getVertexCount(), single.getVertexCount(), "wrong amount of vertices");
+        for (int i = 0; i < 40; i++) {
+            Ray ray = new Ray(new Point(0.37 + i * 0.191, 0.53 + i * 0.173, 5), new Vector(0.05 * (i % 3), -0.04 * (i % 5), -1));
+            var expected = reference.calculateClosestIntersection(ray);
+            var found = single.calculateClosestIntersection(ray);
+            if (expected == null) {
+                assertNull(found, "mesh in single precision should find no intersection");
+                continue;
+            }
+            assertNotNull(found, "mesh in single precision should find an intersection");
+            assertEquals(expected.t, found.t, "wrong distance of the closest intersection");
+            assertEquals(expected.normal, found.normal, "wrong normal of the face");
+        }
+
+        // TC02: The rounded box contains the box of the rounded vertices
+        AABB box = single.getBoundingBox();
+        AABB exact = reference.getBoundingBox();
+        for (int axis = 0; axis < 3; axis++) {
+            assertTrue(box.getMin().getCoordinate(axis) <= exact.getMin().getCoordinate(axis), "box minimum should round down");
+            assertTrue(box.getMax().getCoordinate(axis) >= exact.getMax().getCoordinate(axis), "box maximum should round up");
+        }
+
+        // =============== Boundary Values Tests ==================
+        // TC11: Rays through the shared vertices and edges of the rounded faces don't fall between them
+        for (int y = 1; y < SIDE - 1; y++)
+            for (int x = 1; x < SIDE - 1; x++) {
+                assertNotNull(single.calculateClosestIntersection(new Ray(new Point(x, y, 5), new Vector(0, 0, -1))),
+                        "ray through a shared vertex should hit the mesh");
+                assertNotNull(single.calculateClosestIntersection(new Ray(new Point(x + 0.5, y + 0.5, 5), new Vector(0, 0, -1))),
+                        "ray through a shared edge should hit the mesh");
+            }
+        // TC12: Rounding outwards keeps numbers that are floats already and never rounds inwards
+        assertEquals(0.5f, TriangleMesh.roundDown(0.5), "a float should not be rounded down");
+        assertEquals(0.5f, TriangleMesh.roundUp(0.5), "a float should not be rounded up");
+        assertTrue(TriangleMesh.roundDown(0.1) <= 0.1, "rounding down should not exceed the number");
+        assertTrue(TriangleMesh.roundUp(0.1) >= 0.1, "rounding up should not go below the number");
+        assertTrue(TriangleMesh.roundDown(-0.1) <= -0.1, "rounding down should not exceed a negative number");
+        assertTrue(TriangleMesh.roundUp(-0.1) >= -0.1, "rounding up should not go below a negative number");
+    }
+}
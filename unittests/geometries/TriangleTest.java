@@ -89,6 +89,16 @@ class TriangleTest {
         assertNull(
                 t.findIntersections(ray6),
                 "ERROR: findIntersections() wrong value");
+        // TC14: Ray parallel to the triangle in its plane (0 points)
+        Ray ray7 = new Ray(new Point(-1, 0.2, 0), new Vector(1, 0, 0));
+        assertNull(
+                t.findIntersections(ray7),
+                "ERROR: findIntersections() wrong value");
+        // TC15: Ray starts behind the triangle (0 points)
+        Ray ray8 = new Ray(new Point(0.2, 0.2, -1), new Vector(0, 0, -1));
+        assertNull(
+                t.findIntersections(ray8),
+                "ERROR: findIntersections() wrong value");
 
 
     }
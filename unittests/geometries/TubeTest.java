@@ -4,6 +4,9 @@ import org.junit.jupiter.api.Test;
 import primitives.Point;
 import primitives.Vector;
 import primitives.Ray;
+
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class TubeTest {
@@ -31,4 +34,53 @@ class TubeTest {
                 new Vector(0, 0, 1).normalize(),
                 "ERROR: getNormal() wrong value");
     }
-}
\ No newline at end of file
+
+    /**
+     * Test method for
+     * {@link geometries.Tube#findIntersections(primitives.Ray)}.
+     */
+    @Test
+    void findIntersections() {
+        Tube t = new Tube(1, new Ray(new Point(0, 0, 0), new Vector(0, 0, 1)));
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Ray starts outside and crosses the tube (2 points)
+        assertEquals(
+                List.of(new Point(-1, 0, 2), new Point(1, 0, 2)),
+                t.findIntersections(new Ray(new Point(-2, 0, 2), new Vector(1, 0, 0))),
+                "ERROR: findIntersections() wrong value");
+        // TC02: Ray starts inside the tube (1 point)
+        assertEquals(
+                List.of(new Point(0, 1, 4)),
+                t.findIntersections(new Ray(new Point(0, 0, 3), new Vector(0, 1, 1))),
+                "ERROR: findIntersections() wrong value");
+        // TC03: Ray starts after the tube (0 points)
+        assertNull(
+                t.findIntersections(new Ray(new Point(2, 0, 2), new Vector(1, 0, 0))),
+                "ERROR: findIntersections() wrong value");
+        // TC04: Ray passes beside the tube (0 points)
+        assertNull(
+                t.findIntersections(new Ray(new Point(-2, 2, 2), new Vector(1, 0, 0))),
+                "ERROR: findIntersections() wrong value");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: Ray tangent to the tube (0 points)
+        assertNull(
+                t.findIntersections(new Ray(new Point(-2, 1, 2), new Vector(1, 0, 0))),
+                "ERROR: findIntersections() wrong value");
+        // TC12: Ray parallel to the axis inside the tube (0 points)
+        assertNull(
+                t.findIntersections(new Ray(new Point(0.5, 0, 2), new Vector(0, 0, 1))),
+                "ERROR: findIntersections() wrong value");
+        // TC13: Ray starts on the tube and goes inside (1 point)
+        assertEquals(
+                List.of(new Point(1, 0, 2)),
+                t.findIntersections(new Ray(new Point(-1, 0, 2), new Vector(1, 0, 0))),
+                "ERROR: findIntersections() wrong value");
+        // TC14: The closest intersection within the distance only
+        Ray ray = new Ray(new Point(-2, 0, 2), new Vector(1, 0, 0));
+        assertEquals(new Point(1, 0, 2), t.calculateClosestIntersection(ray, 1.5, 10).point,
+                "ERROR: calculateClosestIntersection() wrong value");
+        assertNull(t.calculateClosestIntersection(ray, 0, 0.5),
+                "ERROR: calculateClosestIntersection() wrong value");
+    }
+}
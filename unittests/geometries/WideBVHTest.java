@@ -0,0 +1,180 @@
+package geometries;
+
+import org.junit.jupiter.api.Test;
+import primitives.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link geometries.WideBVH}
+ * @author Jeshurun and Binyamin
+ */
+class WideBVHTest {
+    /** Delta value for accuracy when comparing the numbers of type 'double' in assertEquals */
+    private static final double DELTA = 0.000001;
+
+    /**
+     * Creates a cloud of small spheres and triangles, some of them transparent
+     * @return the objects
+     */
+    private List<Intersectable> cloud() {
+        Random random = new Random(9);
+        List<Intersectable> objects = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            Point center = new Point(random.nextDouble() * 50, random.nextDouble() * 50, random.nextDouble() * 50);
+            if (i % 2 == 0)
+                objects.add(new Sphere(0.5 + random.nextDouble(), center)
+                        .setMaterial(new Material().setKT(i % 4 == 0 ? 0.5 : 0)));
+            else
+                objects.add(new Triangle(center, center.add(new Vector(2, 0, 0.5)), center.add(new Vector(0, 2, 1))));
+        }
+        return objects;
+    }
+
+    /**
+     * Creates random rays from outside the cloud
+     * @return the rays
+     */
+    private List<Ray> rays() {
+        Random random = new Random(10);
+        List<Ray> rays = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            rays.add(new Ray(new Point(-10, random.nextDouble() * 50, random.nextDouble() * 50),
+                    new Vector(1, random.nextDouble() - 0.5, random.nextDouble() - 0.5)));
+        // rays along the axes, parallel to the box faces
+        rays.add(new Ray(new Point(-10, 25, 25), Vector.AXIS_X));
+        rays.add(new Ray(new Point(25, 25, 100), new Vector(0, 0, -1)));
+        return rays;
+    }
+
+    /**
+     * Test method for {@link geometries.WideBVH#WideBVH(Intersectable, int)}.
+     */
+    @Test
+    void testWideBVH() {
+        Intersectable tree = new BVHBuilder().setFlatten(false).build(cloud());
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Wider nodes make fewer nodes
+        WideBVH wide4 = new WideBVH(tree, 4);
+        WideBVH wide8 = new WideBVH(tree, 8);
+        assertTrue(wide8.getNodeCount() < wide4.getNodeCount(), "8-wide tree should have fewer nodes");
+        assertEquals(tree.getBoundingBox().getMin(), wide4.getBoundingBox().getMin(), "wrong min of the box");
+
+        // TC02: The builder collapses the tree by the width
+        assertEquals(8, assertInstanceOf(WideBVH.class, new BVHBuilder().setWidth(8).build(cloud())).getWidth(),
+                "wrong width of the built tree");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: A single leaf
+        WideBVH single = new WideBVH(new Geometries(new Sphere(1, Point.ZERO)), 4);
+        assertEquals(2, single.calculateIntersections(new Ray(new Point(-5, 0, 0), Vector.AXIS_X)).size(),
+                "wrong amount of intersections of a single leaf");
+        // TC12: Illegal width
+        assertThrows(IllegalArgumentException.class, () -> new WideBVH(tree, 3), "width must be 4 or 8");
+        assertThrows(IllegalArgumentException.class, () -> new BVHBuilder().setWidth(16), "width must be 2, 4 or 8");
+    }
+
+    /**
+     * Test method for {@link geometries.WideBVH#calculateClosestIntersection(Ray)}.
+     */
+    @Test
+    void testIntersections() {
+        List<Intersectable> objects = cloud();
+        Geometries all = new Geometries(objects);
+        Intersectable tree = new BVHBuilder().setFlatten(false).build(objects);
+
+        for (int width : new int[]{4, 8}) {
+            WideBVH wide = new WideBVH(tree, width);
+            // ============ Equivalence Partitions Tests ==============
+            for (Ray ray : rays()) {
+                // TC01: The same amount of intersections as the list
+                var expected = all.calculateIntersections(ray);
+                var actual = wide.calculateIntersections(ray);
+                assertEquals(expected == null ? 0 : expected.size(), actual == null ? 0 : actual.size(),
+                        "wrong amount of intersections of " + width + "-wide tree");
+                // TC02: The same closest intersection as the list
+                var closest = all.calculateClosestIntersection(ray);
+                var found = wide.calculateClosestIntersection(ray);
+                assertEquals(closest == null, found == null, "wrong closest intersection of " + width + "-wide tree");
+                if (closest != null)
+                    assertEquals(closest.t, found.t, DELTA, "wrong closest distance of " + width + "-wide tree");
+                // TC03: The same transparency as the list
+                assertEquals(all.calculateTransparency(ray, 40, 0.001).d1(),
+                        wide.calculateTransparency(ray, 40, 0.001).d1(), DELTA,
+                        "wrong transparency of " + width + "-wide tree");
+            }
+        }
+    }
+
+    /**
+     * Test method for {@link geometries.WideBVH#testChildren(double[], double[], double[], double[], double[], double[], int, double[], double, double[])}
+     * and for the Vector API kernel of {@link geometries.WideBVH#VECTOR_BOX_TEST}, when it is available.
+     */
+    @Test
+    void testChildBoxes() {
+        Random random = new Random(11);
+        int slots = 64;
+        double[] minX = new double[slots], minY = new double[slots], minZ = new double[slots];
+        double[] maxX = new double[slots], maxY = new double[slots], maxZ = new double[slots];
+        for (int s = 0; s < slots; s++) {
+            minX[s] = random.nextInt(20) - 10;
+            minY[s] = random.nextInt(20) - 10;
+            minZ[s] = random.nextInt(20) - 10;
+            maxX[s] = minX[s] + random.nextInt(5);
+            maxY[s] = minY[s] + random.nextInt(5);
+            maxZ[s] = minZ[s] + random.nextInt(5);
+        }
+        // every seventh slot is empty
+        for (int s = 0; s < slots; s += 7) {
+            minX[s] = minY[s] = minZ[s] = Double.POSITIVE_INFINITY;
+            maxX[s] = maxY[s] = maxZ[s] = Double.NEGATIVE_INFINITY;
+        }
+
+        List<double[]> rays = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            rays.add(new double[]{random.nextInt(30) - 15, random.nextInt(30) - 15, random.nextInt(30) - 15,
+                    random.nextDouble() - 0.5, random.nextDouble() - 0.5, random.nextDouble() - 0.5});
+        // rays parallel to the axes, some with the origin on a slab plane
+        rays.add(new double[]{0, 0, -20, 0, 0, 1});
+        rays.add(new double[]{-20, 0, 0, 1, -0.0, 0});
+        rays.add(new double[]{3, -20, 3, 0, 1, 0});
+
+        for (int width : new int[]{4, 8}) {
+            double[] scalar = new double[width];
+            double[] vector = new double[width];
+            for (double[] ray : rays) {
+                double[] r = {ray[0], ray[1], ray[2], 1 / ray[3], 1 / ray[4], 1 / ray[5]};
+                double[] nearX = r[3] >= 0 ? minX : maxX, farX = r[3] >= 0 ? maxX : minX;
+                double[] nearY = r[4] >= 0 ? minY : maxY, farY = r[4] >= 0 ? maxY : minY;
+                double[] nearZ = r[5] >= 0 ? minZ : maxZ, farZ = r[5] >= 0 ? maxZ : minZ;
+                for (double tMax : new double[]{Double.POSITIVE_INFINITY, 12}) {
+                    for (int base = 0; base < slots; base += width) {
+                        // ============ Equivalence Partitions Tests ==============
+                        // TC01: The scalar loop finds the distance of the slab test of each box
+                        WideBVH.testChildren(nearX, farX, nearY, farY, nearZ, farZ, base, r, tMax, scalar);
+                        for (int lane = 0; lane < width; lane++) {
+                            int s = base + lane;
+                            assertEquals(BVHBuilder.boxDistance(minX[s], minY[s], minZ[s], maxX[s], maxY[s], maxZ[s],
+                                            r[0], r[1], r[2], r[3], r[4], r[5], tMax), scalar[lane],
+                                    "wrong distance of a " + width + "-wide child box");
+                        }
+                        // TC02: The Vector API kernel finds the same distances as the scalar loop
+                        if (WideBVH.VECTOR_BOX_TEST == null) continue;
+                        try {
+                            WideBVH.VECTOR_BOX_TEST.invokeExact(nearX, farX, nearY, farY, nearZ, farZ, base, r, tMax,
+                                    vector);
+                        } catch (Throwable e) {
+                            fail("the vector box test should not throw", e);
+                        }
+                        assertArrayEquals(scalar, vector, "wrong distances of the " + width + "-lane kernel");
+                    }
+                }
+            }
+        }
+    }
+}
@@ -101,4 +101,30 @@ class PointTest {
                 p1.distance(p1),
                 "ERROR: distance() for point from itself is not zero");
     }
-}
\ No newline at end of file
+
+    /**
+     * Test method for
+     * {@link primitives.Point#getCoordinate(int)}.
+     */
+    @Test
+    void getCoordinate() {
+        // ============ Equivalence Partitions Tests ==============
+        Point p = new Point(1, 2, 3);
+        //TC01: Test for the coordinates of a point
+        // the result should be 1, 2 and 3
+        assertEquals(1, p.getCoordinate(0), "ERROR: getCoordinate() wrong value");
+        assertEquals(2, p.getCoordinate(1), "ERROR: getCoordinate() wrong value");
+        assertEquals(3, p.getCoordinate(2), "ERROR: getCoordinate() wrong value");
+        //TC02: Test for a point created from a triad
+        // the result should equal the point created from the numbers
+        assertEquals(p, new Point(new Double3(1, 2, 3)), "ERROR: Point(Double3) wrong value");
+
+        // =============== Boundary Values Tests ==================
+        //TC11: Test for an index out of range
+        // the result should be exception
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> p.getCoordinate(3),
+                "ERROR: getCoordinate() out of range does not throw an exception");
+    }
+}
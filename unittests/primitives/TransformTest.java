@@ -0,0 +1,74 @@
+package primitives;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link primitives.Transform}
+ * @author Jeshurun and Binyamin
+ */
+class TransformTest {
+    /** Delta value for accuracy when comparing the numbers of type 'double' in assertEquals */
+    private static final double DELTA = 0.000001;
+
+    /**
+     * Asserts two points are equal up to the delta
+     * @param expected the expected point
+     * @param actual   the actual point
+     * @param message  the message on failure
+     */
+    private void assertPoint(Point expected, Point actual, String message) {
+        for (int axis = 0; axis < 3; axis++)
+            assertEquals(expected.getCoordinate(axis), actual.getCoordinate(axis), DELTA, message);
+    }
+
+    /**
+     * Test method for {@link primitives.Transform#transformPoint(Point)}.
+     */
+    @Test
+    void testTransformPoint() {
+        Point p = new Point(1, 2, 3);
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Translation
+        assertPoint(new Point(2, 2, 5), Transform.translation(new Vector(1, 0, 2)).transformPoint(p),
+                "wrong translated point");
+        // TC02: Scaling
+        assertPoint(new Point(2, 6, -3), Transform.scaling(2, 3, -1).transformPoint(p), "wrong scaled point");
+        // TC03: Rotation of 90 degrees around the z axis
+        assertPoint(new Point(-2, 1, 3), Transform.rotation(Vector.AXIS_Z, 90).transformPoint(p),
+                "wrong rotated point");
+        // TC04: Composition applies the first transformation first
+        Transform t = Transform.scaling(2).then(Transform.translation(new Vector(1, 1, 1)));
+        assertPoint(new Point(3, 5, 7), t.transformPoint(p), "wrong composed point");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: Identity
+        assertPoint(p, Transform.IDENTITY.transformPoint(p), "identity should not move the point");
+        // TC12: Singular transformation
+        assertThrows(IllegalArgumentException.class, () -> Transform.scaling(1, 0, 1),
+                "singular transformation should throw");
+    }
+
+    /**
+     * Test method for {@link primitives.Transform#inversePoint(Point)}.
+     */
+    @Test
+    void testInverse() {
+        Transform t = Transform.rotation(new Vector(1, 1, 0), 30)
+                .then(Transform.scaling(2, 0.5, 3))
+                .then(Transform.translation(new Vector(-4, 2, 7)));
+        Point p = new Point(1, -2, 5);
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The inverse undoes the transformation of a point
+        assertPoint(p, t.inversePoint(t.transformPoint(p)), "inverse should undo the point transformation");
+        // TC02: The inverse undoes the transformation of a vector
+        Vector v = new Vector(3, 1, -2);
+        assertPoint(v, t.inverseVector(t.transformVector(v)), "inverse should undo the vector transformation");
+        // TC03: A transformed normal stays orthogonal to a transformed tangent
+        Vector tangent = new Vector(1, 0, 0);
+        Vector normal = new Vector(0, 1, 1);
+        assertEquals(0, t.transformVector(tangent).dotProduct(t.transformNormal(normal)), DELTA,
+                "transformed normal should be orthogonal to the transformed surface");
+    }
+}
@@ -2,10 +2,18 @@ package renderer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 
 import org.junit.jupiter.api.Test;
 
+import geometries.Sphere;
 import primitives.*;
+import scene.Scene;
 
 /**
  * Testing Camera Class
@@ -87,5 +95,41 @@ class CameraTest {
       // =============== Boundary Values Tests ==================
       // BV01: set to a target on Y-axis without up
       assertThrows(IllegalArgumentException.class, () -> cameraBuilder.setDirection(new Point(0, 10, 0)).build());
+      // BV02: packets of no rays
+      assertThrows(IllegalArgumentException.class, () -> cameraBuilder.setPacketSize(0));
+   }
+
+   /**
+    * Test method for {@link renderer.Camera#renderImage()} with the wavefront ray tracer.
+    */
+   @Test
+   void testRenderImageWavefront() {
+      // a sphere that records the threads that intersect it
+      Set<Thread> threads = ConcurrentHashMap.newKeySet();
+      Scene scene = new Scene("Wavefront threads");
+      scene.geometries.add(new Sphere(5, new Point(0, 0, -50)) {
+         @Override
+         protected boolean calculateClosestHitHelper(Ray ray, double tMin, HitRecord hit) {
+            threads.add(Thread.currentThread());
+            return super.calculateClosestHitHelper(ray, tMin, hit);
+         }
+      });
+      Camera.Builder builder = cameraBuilder.setDirection(new Vector(0, 0, -1), Vector.AXIS_Y)
+         .setVpSize(20, 20).setResolution(64, 64).setDebugPrint(0)
+         .setRayTracer(scene, RayTracerType.WAVEFRONT);
+
+      // ============ Equivalence Partitions Tests ==============
+      // EP01: a set amount of threads runs the stages on a pool of that many threads
+      builder.setMultithreading(2).build().renderImage();
+      assertTrue(threads.size() <= 2, "the wavefront should run on at most 2 threads");
+      for (Thread thread : threads)
+         assertTrue(thread instanceof ForkJoinWorkerThread worker && worker.getPool() != ForkJoinPool.commonPool(),
+                    "the wavefront should run on its own pool");
+
+      // =============== Boundary Values Tests ==================
+      // BV01: without multi-threading the stages run on the calling thread
+      threads.clear();
+      builder.setMultithreading(0).build().renderImage();
+      assertEquals(Set.of(Thread.currentThread()), threads, "the wavefront should run on the calling thread");
    }
 }
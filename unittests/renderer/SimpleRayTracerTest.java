@@ -0,0 +1,70 @@
+package renderer;
+
+import geometries.*;
+import lighting.AmbientLight;
+import lighting.PointLight;
+import org.junit.jupiter.api.Test;
+import primitives.*;
+import scene.Scene;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link renderer.SimpleRayTracer}
+ * @author Jeshurun and Binyamin
+ */
+class SimpleRayTracerTest {
+
+    /**
+     * Asserts that two colors are the same up to a rounding of their components
+     * @param expected the expected color
+     * @param actual   the actual color
+     * @param message  the message of the failure
+     */
+    private void assertSameColor(Color expected, Color actual, String message) {
+        java.awt.Color e = expected.getColor();
+        java.awt.Color a = actual.getColor();
+        assertEquals(e.getRed(), a.getRed(), 1, message);
+        assertEquals(e.getGreen(), a.getGreen(), 1, message);
+        assertEquals(e.getBlue(), a.getBlue(), 1, message);
+    }
+
+    /**
+     * Test method for {@link renderer.SimpleRayTracer#traceRays(Ray[])}.
+     */
+    @Test
+    void testTraceRays() {
+        Scene scene = new Scene("Sorted rays scene")
+                .setAmbientLight(new AmbientLight(new Color(20, 20, 20)))
+                .setBackground(new Color(10, 30, 50));
+        scene.geometries.add(
+                new Sphere(30, new Point(-40, 0, -100)).setEmission(new Color(100, 20, 20))
+                        .setMaterial(new Material().setKD(0.4).setKS(0.3).setShininess(50).setKT(0.4).setKA(0.2)),
+                new Sphere(30, new Point(40, 0, -100)).setEmission(new Color(20, 100, 20))
+                        .setMaterial(new Material().setKD(0.4).setKS(0.3).setShininess(50).setKR(0.5)),
+                new Plane(new Point(0, -40, 0), Vector.AXIS_Y).setEmission(new Color(30, 30, 30))
+                        .setMaterial(new Material().setKD(0.5).setKR(0.3)));
+        scene.lights.add(new PointLight(new Color(500, 400, 300), new Point(0, 100, 0)));
+        SimpleRayTracer tracer = new SimpleRayTracer(scene);
+        // a tile of rays through the spheres, the mirror plane and the background
+        Ray[] tile = new Ray[100];
+        for (int i = 0; i < tile.length; i++)
+            tile[i] = new Ray(Point.ZERO, new Vector((i % 10 - 4.5) * 20, (i / 10 - 4.5) * 10, -100));
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: Sorted secondary rays give the colors of the recursive tracing
+        tracer.setRaySorting(true);
+        Color[] sorted = tracer.traceRays(tile);
+        tracer.setRaySorting(false);
+        for (int i = 0; i < tile.length; i++)
+            assertSameColor(tracer.traceRay(tile[i]), sorted[i], "wrong color of a sorted packet ray");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: A packet of a single ray that misses everything
+        tracer.setRaySorting(true);
+        Ray up = new Ray(Point.ZERO, new Vector(0, 1, 0));
+        assertSameColor(scene.background, tracer.traceRays(new Ray[]{up})[0], "ray that misses should get the background");
+        // TC12: An empty packet
+        assertEquals(0, tracer.traceRays(new Ray[0]).length, "empty packet should have no colors");
+    }
+}
@@ -0,0 +1,78 @@
+package renderer;
+
+import geometries.*;
+import lighting.AmbientLight;
+import lighting.PointLight;
+import lighting.SpotLight;
+import org.junit.jupiter.api.Test;
+import primitives.*;
+import scene.Scene;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link renderer.WavefrontRayTracer}
+ * @author Jeshurun and Binyamin
+ */
+class WavefrontRayTracerTest {
+
+    /**
+     * Asserts that two colors are the same up to a rounding of their components
+     * @param expected the expected color
+     * @param actual   the actual color
+     * @param message  the message of the failure
+     */
+    private void assertSameColor(Color expected, Color actual, String message) {
+        java.awt.Color e = expected.getColor();
+        java.awt.Color a = actual.getColor();
+        assertEquals(e.getRed(), a.getRed(), 1, message);
+        assertEquals(e.getGreen(), a.getGreen(), 1, message);
+        assertEquals(e.getBlue(), a.getBlue(), 1, message);
+    }
+
+    /**
+     * Test method for {@link renderer.WavefrontRayTracer#traceRays(Ray[])}.
+     */
+    @Test
+    void testTraceRays() {
+        Scene scene = new Scene("Wavefront scene")
+                .setAmbientLight(new AmbientLight(new Color(20, 20, 20)))
+                .setBackground(new Color(10, 30, 50));
+        scene.geometries.add(
+                new Sphere(30, new Point(-40, 0, -100)).setEmission(new Color(100, 20, 20))
+                        .setMaterial(new Material().setKD(0.4).setKS(0.3).setShininess(50).setKT(0.4).setKA(0.2)),
+                new Sphere(30, new Point(40, 0, -100)).setEmission(new Color(20, 100, 20))
+                        .setMaterial(new Material().setKD(0.4).setKS(0.3).setShininess(50).setKR(0.5)),
+                new Triangle(new Point(-20, 50, -60), new Point(20, 50, -60), new Point(0, 50, -140))
+                        .setEmission(new Color(20, 20, 60)).setMaterial(new Material().setKD(0.5).setKT(0.6)),
+                new Plane(new Point(0, -40, 0), Vector.AXIS_Y).setEmission(new Color(30, 30, 30))
+                        .setMaterial(new Material().setKD(0.5).setKR(0.3)));
+        scene.lights.add(new PointLight(new Color(500, 400, 300), new Point(0, 100, 0)));
+        scene.lights.add(new SpotLight(new Color(300, 300, 500), new Point(-100, 50, 50), new Vector(1, -0.5, -1)));
+        SimpleRayTracer recursive = new SimpleRayTracer(scene);
+        WavefrontRayTracer wavefront = new WavefrontRayTracer(scene);
+        // rays through the spheres, the triangle, the mirror plane and the background
+        Ray[] rays = new Ray[400];
+        for (int i = 0; i < rays.length; i++)
+            rays[i] = new Ray(Point.ZERO, new Vector((i % 20 - 9.5) * 10, (i / 20 - 9.5) * 8, -100));
+
+        // ============ Equivalence Partitions Tests ==============
+        // TC01: The waves give the colors of the recursive tracing
+        Color[] colors = wavefront.traceRays(rays);
+        for (int i = 0; i < rays.length; i++)
+            assertSameColor(recursive.traceRay(rays[i]), colors[i], "wrong color of a wavefront ray");
+
+        // TC02: The stages in parallel give the same colors
+        colors = wavefront.setParallel(true).traceRays(rays);
+        for (int i = 0; i < rays.length; i++)
+            assertSameColor(recursive.traceRay(rays[i]), colors[i], "wrong color of a parallel wavefront ray");
+
+        // =============== Boundary Values Tests ==================
+        // TC11: A single ray that misses everything
+        Ray up = new Ray(Point.ZERO, new Vector(0, 1, 1));
+        assertSameColor(scene.background, wavefront.traceRays(new Ray[]{up})[0],
+                "ray that misses should get the background");
+        // TC12: No rays
+        assertEquals(0, wavefront.traceRays(new Ray[0]).length, "no rays should have no colors");
+    }
+}
@@ -0,0 +1,97 @@
+package geometries;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * VectorBoxTest tests a ray against the child boxes of a {@link WideBVH} node with the
+ * {@code jdk.incubator.vector} API, 4 or 8 lanes at a time.<br>
+ * This class is in its own source root, compiled with {@code --add-modules jdk.incubator.vector},
+ * and is only reached through {@link WideBVH}, which looks it up reflectively and keeps its scalar
+ * loop when the class or the module is missing. It runs exactly the operations of the scalar loop,
+ * so both give the same distances.
+ * @author Jeshurun and Binyamin
+ */
+final class VectorBoxTest {
+    /*** The lanes for the children of a 4-wide node*/
+    private static final VectorSpecies<Double> FOUR = species(4);
+    /*** The lanes for the children of an 8-wide node*/
+    private static final VectorSpecies<Double> EIGHT = species(8);
+
+    /**
+     * Private constructor, the class only has a static kernel
+     */
+    private VectorBoxTest() {
+    }
+
+    /**
+     * Chooses the preferred lanes of the platform, but no more lanes than the children of a node
+     * @param width the amount of children of a node
+     * @return the species of the lanes
+     */
+    private static VectorSpecies<Double> species(int width) {
+        return DoubleVector.SPECIES_PREFERRED.length() <= width ? DoubleVector.SPECIES_PREFERRED
+                : VectorSpecies.of(double.class, VectorShape.forBitSize(Double.SIZE * width));
+    }
+
+    /**
+     * Tests the ray against the boxes of all the children of a node, a vector of children at a time.
+     * The slabs are those of {@link BVHBuilder#boxDistance}.
+     * @param nearX     the near x plane of each slot
+     * @param farX      the far x plane of each slot
+     * @param nearY     the near y plane of each slot
+     * @param farY      the far y plane of each slot
+     * @param nearZ     the near z plane of each slot
+     * @param farZ      the far z plane of each slot
+     * @param base      the first slot of the node
+     * @param r         the ray origin and the inverse of its direction coordinates
+     * @param tMax      the maximal distance
+     * @param distances filled with the entry distance into the box of each child, one per child
+     *                  of the node, or positive infinity if it is missed
+     */
+    static void testChildren(double[] nearX, double[] farX, double[] nearY, double[] farY,
+                             double[] nearZ, double[] farZ, int base, double[] r, double tMax,
+                             double[] distances) {
+        VectorSpecies<Double> species = distances.length == 4 ? FOUR : EIGHT;
+        double ox = r[0], oy = r[1], oz = r[2], ix = r[3], iy = r[4], iz = r[5];
+        DoubleVector miss = DoubleVector.broadcast(species, Double.POSITIVE_INFINITY);
+        for (int lane = 0; lane < distances.length; lane += species.length()) {
+            int s = base + lane;
+            DoubleVector tNear = DoubleVector.zero(species);
+            DoubleVector tFar = DoubleVector.broadcast(species, tMax);
+            tNear = near(tNear, DoubleVector.fromArray(species, nearX, s).sub(ox).mul(ix));
+            tFar = far(tFar, DoubleVector.fromArray(species, farX, s).sub(ox).mul(ix));
+            tNear = near(tNear, DoubleVector.fromArray(species, nearY, s).sub(oy).mul(iy));
+            tFar = far(tFar, DoubleVector.fromArray(species, farY, s).sub(oy).mul(iy));
+            tNear = near(tNear, DoubleVector.fromArray(species, nearZ, s).sub(oz).mul(iz));
+            tFar = far(tFar, DoubleVector.fromArray(species, farZ, s).sub(oz).mul(iz));
+            VectorMask<Double> hit = tNear.compare(VectorOperators.LE, tFar);
+            miss.blend(tNear, hit).intoArray(distances, lane);
+        }
+    }
+
+    /**
+     * Moves the entry distances to the distances of the near planes that are farther.
+     * Unlike {@link DoubleVector#max}, a NaN plane distance leaves the lane as is.
+     * @param tNear the entry distances
+     * @param t     the distances of the near planes
+     * @return the new entry distances
+     */
+    private static DoubleVector near(DoubleVector tNear, DoubleVector t) {
+        return tNear.blend(t, t.compare(VectorOperators.GT, tNear));
+    }
+
+    /**
+     * Moves the exit distances to the distances of the far planes that are nearer.
+     * Unlike {@link DoubleVector#min}, a NaN plane distance leaves the lane as is.
+     * @param tFar the exit distances
+     * @param t    the distances of the far planes
+     * @return the new exit distances
+     */
+    private static DoubleVector far(DoubleVector tFar, DoubleVector t) {
+        return tFar.blend(t, t.compare(VectorOperators.LT, tFar));
+    }
+}